@@ -103,6 +103,8 @@ public class ChecksumChecker
      *            <dd>Report only errors in the logs</dd>
      *            <dt>-p</dt>
      *            <dd>Don't prune results before running checker</dd>
+     *            <dt>-t</dt>
+     *            <dd>number of digest threads per assetstore</dd>
      *            </dl>
      */
     public static void main(String[] args)
@@ -122,6 +124,7 @@ public class ChecksumChecker
         options.addOption("c", "count", true, "Check count");
         options.addOption("a", "uri", true, "Specify a URI to check (canonical form)");
         options.addOption("v", "verbose", false, "Report all processing");
+        options.addOption("t", "threads", true, "Digest threads per assetstore");
 
         OptionBuilder.withArgName("bitstream-ids").hasArgs().withDescription(
                 "Space separated list of bitstream ids");
@@ -254,6 +257,12 @@ public class ChecksumChecker
             checker.setReportVerbose(true);
         }
 
+        // parallel checking
+        if (line.hasOption('t'))
+        {
+            checker.setThreads(Integer.parseInt(line.getOptionValue('t')));
+        }
+
         checker.setProcessStartDate(processStart);
         checker.setDispatcher(dispatcher);
         checker.setCollector(logger);
@@ -285,6 +294,7 @@ public class ChecksumChecker
         System.out
                 .println("\nCheck a defined number of bitstreams: ChecksumChecker -c 10");
         System.out.println("\nReport all processing (verbose)(default reports only errors): ChecksumChecker -v");
+        System.out.println("\nCheck with 4 threads per assetstore: ChecksumChecker -l -t 4");
         System.out.println("\nDefault (no arguments) is equivalent to '-c 1'");
         System.exit(0);
     }
@@ -84,6 +84,7 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -450,10 +451,10 @@ public class MediaFilterManager
         else
         {
             //otherwise, just find every item and process
-            List<Item> items = itemDAO.getItems();
-            for (int i = 0; i < items.size() && processed < max2Process; i++)
+            Iterator<Item> items = itemDAO.getItemIterator();
+            while (items.hasNext() && processed < max2Process)
             {
-            	applyFiltersItem(c, items.get(i));
+            	applyFiltersItem(c, items.next());
             }
         }
     }
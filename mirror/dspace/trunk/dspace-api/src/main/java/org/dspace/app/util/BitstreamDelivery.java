@@ -0,0 +1,615 @@
+/*
+ * BitstreamDelivery.java
+ *
+ * Version: $Revision$
+ *
+ * Date: $Date$
+ *
+ * Copyright (c) 2002-2005, Hewlett-Packard Company and Massachusetts
+ * Institute of Technology.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * - Neither the name of the Hewlett-Packard Company nor the name of the
+ * Massachusetts Institute of Technology nor the names of their
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package org.dspace.app.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.dspace.authorize.AuthorizeException;
+import org.dspace.content.Bitstream;
+import org.dspace.core.Utils;
+import org.dspace.storage.bitstore.AccessTracker;
+
+/**
+ * Sends the contents of bitstreams to web clients, for the user interfaces
+ * that deliver bitstreams.
+ * <P>
+ * Requests are answered as HTTP/1.1 asks for: bitstreams carry a strong
+ * <code>ETag</code> made from their stored checksum and a
+ * <code>Last-Modified</code> date, conditional requests
+ * (<code>If-Match</code>, <code>If-None-Match</code>,
+ * <code>If-Modified-Since</code>, <code>If-Unmodified-Since</code>) get
+ * 304 or 412 responses, and <code>Range</code> requests for one or more byte
+ * ranges get 206 responses, subject to <code>If-Range</code>.
+ * <P>
+ * Bitstreams in a local asset store are sent through a
+ * <code>FileChannel</code>, which starts straight at the first byte wanted
+ * and lets the platform move the bytes. Where the servlet container can send
+ * files itself (Tomcat's NIO and APR connectors say so with the
+ * <code>org.apache.tomcat.sendfile.support</code> request attribute), it is
+ * handed the file instead, and the bytes never enter the JVM at all. Other
+ * bitstreams are copied from their <code>InputStream</code>.
+ *
+ * @version $Revision$
+ */
+public class BitstreamDelivery
+{
+    /** Request attribute set by containers that can send files themselves */
+    private static final String SENDFILE_SUPPORT =
+        "org.apache.tomcat.sendfile.support";
+
+    /** Request attributes that tell the container which part to send */
+    private static final String SENDFILE_FILENAME =
+        "org.apache.tomcat.sendfile.filename";
+
+    private static final String SENDFILE_START =
+        "org.apache.tomcat.sendfile.start";
+
+    private static final String SENDFILE_END =
+        "org.apache.tomcat.sendfile.end";
+
+    /** Orders byte ranges by their first byte */
+    private static final Comparator<long[]> BY_START = new Comparator<long[]>()
+    {
+        public int compare(long[] a, long[] b)
+        {
+            return (a[0] < b[0]) ? -1 : ((a[0] == b[0]) ? 0 : 1);
+        }
+    };
+
+    /**
+     * Answer a GET or HEAD request for a bitstream. The response headers
+     * describing the bitstream as a whole, such as Content-Type and
+     * Content-Disposition, must already be set; this sets the status, the
+     * validators and the length, and sends as much of the bitstream as was
+     * asked for.
+     *
+     * @param request
+     *            the current request
+     * @param response
+     *            the response to send the bits in
+     * @param bitstream
+     *            the bitstream to send
+     */
+    public static void send(HttpServletRequest request,
+            HttpServletResponse response, Bitstream bitstream)
+        throws IOException, AuthorizeException
+    {
+        send(request, response, bitstream, null);
+    }
+
+    /**
+     * Answer a GET or HEAD request for a bitstream, writing the body to the
+     * given stream rather than the response's own. This is for frameworks
+     * that hand out their own output stream, such as Cocoon.
+     *
+     * @param request
+     *            the current request
+     * @param response
+     *            the response to set the status and headers on
+     * @param bitstream
+     *            the bitstream to send
+     * @param out
+     *            the stream to write the body to, or null to use the
+     *            response's
+     */
+    public static void send(HttpServletRequest request,
+            HttpServletResponse response, Bitstream bitstream,
+            OutputStream out) throws IOException, AuthorizeException
+    {
+        long size = bitstream.getSize();
+        String etag = getETag(bitstream);
+
+        // HTTP dates have no milliseconds
+        long lastModified = bitstream.getLastModified();
+        lastModified -= lastModified % 1000;
+
+        response.setHeader("Accept-Ranges", "bytes");
+        if (etag != null)
+        {
+            response.setHeader("ETag", etag);
+        }
+        if (lastModified > 0)
+        {
+            response.setDateHeader("Last-Modified", lastModified);
+        }
+
+        // Revalidating a cached copy counts as use, too
+        AccessTracker.record(bitstream.getID());
+
+        int status = checkConditions(request, etag, lastModified);
+        if (status != HttpServletResponse.SC_OK)
+        {
+            response.setStatus(status);
+            return;
+        }
+
+        List<long[]> ranges = getRanges(request, etag, lastModified, size);
+
+        if (ranges == null)
+        {
+            response.setHeader("Content-Length", String.valueOf(size));
+            sendRange(request, response, bitstream, 0, size, out);
+        }
+        else if (ranges.isEmpty())
+        {
+            response.setStatus(
+                    HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader("Content-Range", "bytes */" + size);
+            response.setHeader("Content-Length", "0");
+        }
+        else if (ranges.size() == 1)
+        {
+            long[] range = ranges.get(0);
+            long count = range[1] - range[0] + 1;
+
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", "bytes " + range[0] + "-"
+                    + range[1] + "/" + size);
+            response.setHeader("Content-Length", String.valueOf(count));
+            sendRange(request, response, bitstream, range[0], count, out);
+        }
+        else
+        {
+            sendMultipart(request, response, bitstream, ranges, out);
+        }
+    }
+
+    /**
+     * Write part of a bitstream to an output stream.
+     *
+     * @param bitstream
+     *            the bitstream to send
+     * @param start
+     *            offset of the first byte to send
+     * @param count
+     *            number of bytes to send
+     * @param out
+     *            the stream to write the bits to
+     */
+    public static void send(Bitstream bitstream, long start, long count,
+            OutputStream out) throws IOException, AuthorizeException
+    {
+        FileChannel channel = bitstream.retrieveChannel();
+
+        if (channel != null)
+        {
+            try
+            {
+                Utils.transfer(channel, start, count, out);
+            }
+            finally
+            {
+                channel.close();
+            }
+        }
+        else
+        {
+            InputStream is = bitstream.retrieve();
+
+            try
+            {
+                Utils.copyRange(is, start, count, out);
+            }
+            finally
+            {
+                is.close();
+            }
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Get the entity tag for a bitstream. It is derived from the checksum of
+     * the stored bits, so it is a strong validator: two responses with the
+     * same tag have the same bytes.
+     *
+     * @param bitstream
+     *            the bitstream
+     * @return the quoted entity tag, or null if the bitstream has no checksum
+     */
+    public static String getETag(Bitstream bitstream)
+    {
+        String checksum = bitstream.getChecksum();
+
+        if (checksum == null || checksum.length() == 0)
+        {
+            return null;
+        }
+
+        return "\"" + checksum + "\"";
+    }
+
+    /**
+     * Evaluate the conditional headers of a request, in the order RFC 7232
+     * gives them.
+     *
+     * @return 200 if the request should go ahead, otherwise the status to
+     *         answer it with (304 or 412)
+     */
+    private static int checkConditions(HttpServletRequest request,
+            String etag, long lastModified)
+    {
+        boolean getOrHead = "GET".equals(request.getMethod())
+                || "HEAD".equals(request.getMethod());
+
+        String ifMatch = request.getHeader("If-Match");
+        if (ifMatch != null)
+        {
+            if (!matches(ifMatch, etag, true))
+            {
+                return HttpServletResponse.SC_PRECONDITION_FAILED;
+            }
+        }
+        else
+        {
+            long since = getDateHeader(request, "If-Unmodified-Since");
+            if (since != -1 && lastModified > 0 && lastModified > since)
+            {
+                return HttpServletResponse.SC_PRECONDITION_FAILED;
+            }
+        }
+
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null)
+        {
+            if (matches(ifNoneMatch, etag, false))
+            {
+                return getOrHead ? HttpServletResponse.SC_NOT_MODIFIED
+                        : HttpServletResponse.SC_PRECONDITION_FAILED;
+            }
+        }
+        else if (getOrHead)
+        {
+            long since = getDateHeader(request, "If-Modified-Since");
+            if (since != -1 && lastModified > 0 && lastModified <= since)
+            {
+                return HttpServletResponse.SC_NOT_MODIFIED;
+            }
+        }
+
+        return HttpServletResponse.SC_OK;
+    }
+
+    /**
+     * Does an If-Match or If-None-Match header match the entity tag?
+     *
+     * @param header
+     *            the header value, "*" or a list of entity tags
+     * @param etag
+     *            the bitstream's entity tag, may be null
+     * @param strong
+     *            whether to use strong comparison, under which weak tags
+     *            never match
+     */
+    private static boolean matches(String header, String etag, boolean strong)
+    {
+        if (header.trim().equals("*"))
+        {
+            return true;
+        }
+
+        if (etag == null)
+        {
+            return false;
+        }
+
+        StringTokenizer st = new StringTokenizer(header, ",");
+        while (st.hasMoreTokens())
+        {
+            String tag = st.nextToken().trim();
+
+            if (tag.startsWith("W/"))
+            {
+                if (strong)
+                {
+                    continue;
+                }
+                tag = tag.substring(2);
+            }
+
+            if (tag.equals(etag))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Work out which byte ranges of the bitstream to send.
+     *
+     * @return null to send the whole bitstream (no Range header, a Range
+     *         header we can't parse, or an If-Range that doesn't match), an
+     *         empty list if none of the requested ranges can be satisfied,
+     *         or else the ranges as inclusive [first, last] pairs, sorted
+     *         with overlapping ones merged
+     */
+    private static List<long[]> getRanges(HttpServletRequest request,
+            String etag, long lastModified, long size)
+    {
+        String header = request.getHeader("Range");
+
+        if (header == null || !"GET".equals(request.getMethod()))
+        {
+            return null;
+        }
+
+        // A range of a representation other than the client's is useless
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange != null)
+        {
+            ifRange = ifRange.trim();
+
+            if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+            {
+                if (etag == null || !ifRange.equals(etag))
+                {
+                    return null;
+                }
+            }
+            else
+            {
+                long date = getDateHeader(request, "If-Range");
+                if (date == -1 || lastModified <= 0 || date != lastModified)
+                {
+                    return null;
+                }
+            }
+        }
+
+        header = header.trim();
+        if (!header.startsWith("bytes="))
+        {
+            return null;
+        }
+
+        List<long[]> ranges = new ArrayList<long[]>();
+        StringTokenizer st = new StringTokenizer(header.substring(6), ",");
+
+        if (!st.hasMoreTokens())
+        {
+            return null;
+        }
+
+        try
+        {
+            while (st.hasMoreTokens())
+            {
+                String spec = st.nextToken().trim();
+                int dash = spec.indexOf('-');
+                long first;
+                long last;
+
+                if (dash < 0)
+                {
+                    return null;
+                }
+                else if (dash == 0)
+                {
+                    // The last N bytes
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix < 0)
+                    {
+                        return null;
+                    }
+                    if (suffix == 0 || size == 0)
+                    {
+                        continue;
+                    }
+                    first = Math.max(0, size - suffix);
+                    last = size - 1;
+                }
+                else
+                {
+                    first = Long.parseLong(spec.substring(0, dash));
+                    last = (dash == spec.length() - 1) ? Long.MAX_VALUE
+                            : Long.parseLong(spec.substring(dash + 1));
+                    if (last < first)
+                    {
+                        return null;
+                    }
+                    if (first >= size)
+                    {
+                        continue;
+                    }
+                    last = Math.min(last, size - 1);
+                }
+
+                ranges.add(new long[] { first, last });
+            }
+        }
+        catch (NumberFormatException nfe)
+        {
+            return null;
+        }
+
+        // Merge ranges that overlap or touch, so that a request can't make
+        // us send the same bytes over and over
+        if (ranges.size() > 1)
+        {
+            Collections.sort(ranges, BY_START);
+
+            List<long[]> merged = new ArrayList<long[]>();
+            long[] current = ranges.get(0);
+
+            for (int i = 1; i < ranges.size(); i++)
+            {
+                long[] next = ranges.get(i);
+
+                if (next[0] <= current[1] + 1)
+                {
+                    current[1] = Math.max(current[1], next[1]);
+                }
+                else
+                {
+                    merged.add(current);
+                    current = next;
+                }
+            }
+            merged.add(current);
+            ranges = merged;
+        }
+
+        return ranges;
+    }
+
+    /**
+     * Send several byte ranges as a multipart/byteranges response.
+     */
+    private static void sendMultipart(HttpServletRequest request,
+            HttpServletResponse response, Bitstream bitstream,
+            List<long[]> ranges, OutputStream out)
+        throws IOException, AuthorizeException
+    {
+        String boundary = Utils.generateHexKey();
+        String type = bitstream.getFormat().getMIMEType();
+        long size = bitstream.getSize();
+
+        // Work out the part headers first, as we need the total length
+        byte[][] heads = new byte[ranges.size()][];
+        long length = 0;
+
+        for (int i = 0; i < heads.length; i++)
+        {
+            long[] range = ranges.get(i);
+            String head = "\r\n--" + boundary + "\r\n"
+                    + "Content-Type: " + type + "\r\n"
+                    + "Content-Range: bytes " + range[0] + "-" + range[1]
+                    + "/" + size + "\r\n\r\n";
+
+            heads[i] = head.getBytes("ISO-8859-1");
+            length += heads[i].length + (range[1] - range[0] + 1);
+        }
+
+        byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes("ISO-8859-1");
+        length += tail.length;
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setHeader("Content-Length", String.valueOf(length));
+
+        if ("HEAD".equals(request.getMethod()))
+        {
+            return;
+        }
+
+        if (out == null)
+        {
+            out = response.getOutputStream();
+        }
+
+        for (int i = 0; i < heads.length; i++)
+        {
+            long[] range = ranges.get(i);
+
+            out.write(heads[i]);
+            send(bitstream, range[0], range[1] - range[0] + 1, out);
+        }
+
+        out.write(tail);
+        out.flush();
+    }
+
+    /**
+     * Send one part of a bitstream as the body of a response, handing the
+     * file to the container if it can send it, or else writing it to the
+     * given stream (or the response's, if that is null).
+     */
+    private static void sendRange(HttpServletRequest request,
+            HttpServletResponse response, Bitstream bitstream, long start,
+            long count, OutputStream out)
+        throws IOException, AuthorizeException
+    {
+        if ("HEAD".equals(request.getMethod()))
+        {
+            return;
+        }
+
+        if (out == null
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT)))
+        {
+            File file = bitstream.retrieveFile();
+
+            if (file != null)
+            {
+                request.setAttribute(SENDFILE_FILENAME,
+                        file.getCanonicalPath());
+                request.setAttribute(SENDFILE_START, new Long(start));
+                request.setAttribute(SENDFILE_END, new Long(start + count));
+                return;
+            }
+        }
+
+        send(bitstream, start, count,
+                (out != null) ? out : response.getOutputStream());
+    }
+
+    /**
+     * Get a date header, treating one that can't be parsed as absent.
+     *
+     * @return the date in milliseconds, or -1
+     */
+    private static long getDateHeader(HttpServletRequest request, String name)
+    {
+        try
+        {
+            return request.getDateHeader(name);
+        }
+        catch (IllegalArgumentException iae)
+        {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,508 @@
+/*
+ * ResourcePolicyCache.java
+ *
+ * Version: $Revision$
+ *
+ * Date: $Date$
+ *
+ * Copyright (c) 2002-2005, Hewlett-Packard Company and Massachusetts
+ * Institute of Technology.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * - Neither the name of the Hewlett-Packard Company nor the name of the
+ * Massachusetts Institute of Technology nor the names of their
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package org.dspace.authorize.dao;
+
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+
+/**
+ * A process-wide, size-bounded LRU cache of the resource policies that apply
+ * to a given (resource type, resource ID, action). Anonymous READ checks on
+ * items and bitstreams account for most authorization lookups, and almost
+ * all of them ask about the same few thousand objects.
+ * <p>
+ * Every transaction that changes the <code>resourcepolicy</code> table also
+ * inserts a row into <code>resourcepolicychange</code>, numbered from a
+ * sequence; being insert-only, this never makes concurrent transactions wait
+ * for each other. Each JVM counts the recent rows at most every
+ * <code>authorize.policycache.interval</code> seconds and empties its cache
+ * when the count or the highest number has moved, so several web
+ * applications sharing a database never see stale policies for longer than
+ * that. The count also changes when a transaction commits after one that
+ * took a later number, which watching the highest number alone would miss.
+ * Rows further back than the counting window are deleted once enough of
+ * them have built up. Changes committed in this JVM empty the cache
+ * immediately, and a context with uncommitted policy changes never reads
+ * from or adds to the cache.
+ * <p>
+ * The cache size is set with <code>authorize.policycache.size</code>; 0
+ * disables it.
+ *
+ * @version $Revision$
+ */
+public class ResourcePolicyCache
+{
+    private static Logger log = Logger.getLogger(ResourcePolicyCache.class);
+
+    /** Maximum number of (type, id, action) entries */
+    private static final int maxSize;
+
+    /** How often to re-read the change log, in milliseconds */
+    private static final long checkInterval;
+
+    /**
+     * How far behind the highest change number to keep counting rows. A
+     * transaction that took its number further back than this, and commits
+     * after the count has moved on past it, goes unnoticed.
+     */
+    private static final int WINDOW = 1000;
+
+    static
+    {
+        maxSize = (ConfigurationManager.getProperty(
+                    "authorize.policycache.size") == null) ? 2000 :
+            ConfigurationManager.getIntProperty("authorize.policycache.size");
+
+        checkInterval = 1000L * ((ConfigurationManager.getProperty(
+                    "authorize.policycache.interval") == null) ? 5 :
+            ConfigurationManager.getIntProperty(
+                    "authorize.policycache.interval"));
+    }
+
+    private static Map<Long, Entry> cache =
+        new LinkedHashMap<Long, Entry>(16, 0.75f, true)
+        {
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest)
+            {
+                return size() > maxSize;
+            }
+        };
+
+    /** Incremented each time the cache is emptied */
+    private static volatile long generation = 0;
+
+    /** Change rows with higher numbers than this are counted */
+    private static int floor = 0;
+
+    /** The number of change rows above the floor when last counted */
+    private static long lastCount = -1;
+
+    /** The highest change number when last counted */
+    private static long lastChange = -1;
+
+    /** When the change log should next be read */
+    private static volatile long nextCheck = 0;
+
+    private static AtomicLong hits = new AtomicLong();
+
+    private static AtomicLong misses = new AtomicLong();
+
+    /**
+     * @return true if the cache is switched on
+     */
+    public static boolean isEnabled()
+    {
+        return maxSize > 0;
+    }
+
+    /**
+     * Return the cached policies for a resource and action, or null if they
+     * are not cached. The change log is read using the given context if it is
+     * due to be checked.
+     */
+    public static Policy[] get(Context context, int resourceType,
+            int resourceID, int actionID)
+    {
+        checkGeneration(context);
+
+        Entry entry;
+
+        synchronized (cache)
+        {
+            entry = cache.get(key(resourceType, resourceID, actionID));
+        }
+
+        if ((entry != null) && (entry.generation == generation)
+                && (System.currentTimeMillis() < entry.validUntil))
+        {
+            hits.incrementAndGet();
+            return entry.policies;
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Return the current generation of the cache. This must be read
+     * <em>before</em> loading policies that will be passed to
+     * {@link #put}, so that a change committed during the load is not
+     * missed.
+     */
+    public static long getGeneration()
+    {
+        return generation;
+    }
+
+    /**
+     * Add the policies for a resource and action to the cache.
+     *
+     * @param generation
+     *            the value of {@link #getGeneration} before the policies
+     *            were loaded
+     */
+    public static void put(int resourceType, int resourceID, int actionID,
+            Policy[] policies, long generation)
+    {
+        Entry entry = new Entry(policies, generation);
+
+        synchronized (cache)
+        {
+            if (generation == ResourcePolicyCache.generation)
+            {
+                cache.put(key(resourceType, resourceID, actionID), entry);
+            }
+        }
+    }
+
+    /**
+     * Empty the cache, and re-read the change log before anything else is
+     * cached. Called once a transaction that changed policies has been
+     * committed.
+     */
+    public static void invalidateAll()
+    {
+        nextCheck = 0;
+
+        synchronized (cache)
+        {
+            generation++;
+            cache.clear();
+        }
+    }
+
+    /**
+     * Record that the current transaction of the given context changes
+     * resource policies. A change row is inserted (once per transaction),
+     * which other JVMs will notice once it is committed.
+     */
+    public static void policiesChanged(Context context)
+    {
+        if (context.getPoliciesChanged())
+        {
+            return;
+        }
+
+        // Numbered straight from the sequence rather than through
+        // IDAllocator, whose blocks of IDs would put JVMs far out of order
+        String next = "oracle".equals(ConfigurationManager
+                .getProperty("db.name"))
+            ? "resourcepolicychange_seq.nextval"
+            : "getnextid('resourcepolicychange')";
+
+        try
+        {
+            DatabaseManager.updateQuery(context,
+                    "INSERT INTO resourcepolicychange (change_id) " +
+                    "VALUES (" + next + ")");
+        }
+        catch (SQLException sqle)
+        {
+            throw new RuntimeException(sqle);
+        }
+
+        context.setPoliciesChanged(true);
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public static long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that had to go to the database
+     */
+    public static long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of entries currently cached
+     */
+    public static int getSize()
+    {
+        synchronized (cache)
+        {
+            return cache.size();
+        }
+    }
+
+    private static void checkGeneration(Context context)
+    {
+        long now = System.currentTimeMillis();
+
+        if (now < nextCheck)
+        {
+            return;
+        }
+
+        nextCheck = now + checkInterval;
+
+        int pruneTo = -1;
+
+        try
+        {
+            synchronized (ResourcePolicyCache.class)
+            {
+                TableRow row = DatabaseManager.querySingle(context,
+                        "SELECT COUNT(*) AS num, MAX(change_id) AS last " +
+                        "FROM resourcepolicychange WHERE change_id > ?",
+                        new Integer(floor));
+
+                long count = row.getLongColumn("num");
+                long last = row.getLongColumn("last");
+
+                if ((count != lastCount) || (last != lastChange))
+                {
+                    synchronized (cache)
+                    {
+                        generation++;
+                        cache.clear();
+                    }
+
+                    if (log.isDebugEnabled())
+                    {
+                        log.debug("Policy change " + last + " seen; hits="
+                                + hits.get() + ", misses=" + misses.get());
+                    }
+                }
+
+                // Keep the count cheap; moving the floor changes the count,
+                // so the cache is emptied once more on the next check
+                if (count > 10 * WINDOW)
+                {
+                    floor = (int) last - WINDOW;
+                    count = -1;
+                    pruneTo = floor;
+                }
+
+                lastCount = count;
+                lastChange = last;
+            }
+        }
+        catch (SQLException sqle)
+        {
+            throw new RuntimeException(sqle);
+        }
+
+        if (pruneTo > 0)
+        {
+            prune(pruneTo);
+        }
+    }
+
+    /**
+     * Delete the change rows at or below the given number, which are behind
+     * the counting window. This uses its own context, so that the delete
+     * does not depend on the transaction of whoever happened to look up a
+     * policy. Other JVMs still counting those rows see their count change and
+     * empty their caches once.
+     */
+    private static void prune(int upTo)
+    {
+        Context context = null;
+
+        try
+        {
+            context = new Context();
+            int deleted = DatabaseManager.updateQuery(context,
+                    "DELETE FROM resourcepolicychange WHERE change_id <= ?",
+                    new Integer(upTo));
+            context.complete();
+
+            if (log.isDebugEnabled())
+            {
+                log.debug("Pruned " + deleted + " policy changes");
+            }
+        }
+        catch (SQLException sqle)
+        {
+            if (context != null)
+            {
+                context.abort();
+            }
+
+            // Only costs space; try again next time round
+            log.warn("Could not prune policy changes", sqle);
+        }
+    }
+
+    private static Long key(int resourceType, int resourceID, int actionID)
+    {
+        return Long.valueOf(((long) resourceType << 56)
+                | ((long) (actionID & 0xffff) << 32)
+                | (resourceID & 0xffffffffL));
+    }
+
+    /**
+     * The stored values of a single resource policy. Immutable, so it can be
+     * shared between threads; ResourcePolicy objects are built from it for
+     * each context.
+     */
+    public static class Policy
+    {
+        private final int id;
+        private final String uuid;
+        private final int resourceType;
+        private final int resourceID;
+        private final int actionID;
+        private final int epersonID;
+        private final int groupID;
+        private final Date startDate;
+        private final Date endDate;
+
+        public Policy(int id, String uuid, int resourceType, int resourceID,
+                int actionID, int epersonID, int groupID, Date startDate,
+                Date endDate)
+        {
+            this.id = id;
+            this.uuid = uuid;
+            this.resourceType = resourceType;
+            this.resourceID = resourceID;
+            this.actionID = actionID;
+            this.epersonID = epersonID;
+            this.groupID = groupID;
+            this.startDate = (startDate == null) ? null :
+                new Date(startDate.getTime());
+            this.endDate = (endDate == null) ? null :
+                new Date(endDate.getTime());
+        }
+
+        public int getID()
+        {
+            return id;
+        }
+
+        public String getUUID()
+        {
+            return uuid;
+        }
+
+        public int getResourceType()
+        {
+            return resourceType;
+        }
+
+        public int getResourceID()
+        {
+            return resourceID;
+        }
+
+        public int getAction()
+        {
+            return actionID;
+        }
+
+        public int getEPersonID()
+        {
+            return epersonID;
+        }
+
+        public int getGroupID()
+        {
+            return groupID;
+        }
+
+        public Date getStartDate()
+        {
+            return (startDate == null) ? null : new Date(startDate.getTime());
+        }
+
+        public Date getEndDate()
+        {
+            return (endDate == null) ? null : new Date(endDate.getTime());
+        }
+    }
+
+    /**
+     * The policies for one (type, id, action), along with the time at which
+     * one of them next becomes valid or expires. Until then the date checks
+     * made by AuthorizeManager give the same answer as when the entry was
+     * loaded; after it, the entry is reloaded.
+     */
+    private static class Entry
+    {
+        private final Policy[] policies;
+
+        private final long generation;
+
+        private final long validUntil;
+
+        Entry(Policy[] policies, long generation)
+        {
+            this.policies = policies;
+            this.generation = generation;
+
+            long now = System.currentTimeMillis();
+            long until = Long.MAX_VALUE;
+
+            for (Policy policy : policies)
+            {
+                if ((policy.startDate != null)
+                        && (policy.startDate.getTime() > now))
+                {
+                    until = Math.min(until, policy.startDate.getTime());
+                }
+
+                if ((policy.endDate != null)
+                        && (policy.endDate.getTime() >= now))
+                {
+                    until = Math.min(until, policy.endDate.getTime() + 1);
+                }
+            }
+
+            this.validUntil = until;
+        }
+    }
+}
@@ -40,6 +40,7 @@
 package org.dspace.authorize.dao.postgres;
 
 import org.dspace.authorize.ResourcePolicy;
+import org.dspace.authorize.dao.ResourcePolicyCache;
 import org.dspace.authorize.dao.ResourcePolicyDAO;
 import org.dspace.content.DSpaceObject;
 import org.dspace.core.Context;
@@ -71,6 +72,8 @@ public class ResourcePolicyDAOPostgres extends ResourcePolicyDAO
     {
         try
         {
+            ResourcePolicyCache.policiesChanged(context);
+
             SimpleIdentifier sid = ObjectIdentifierService.mintSimple();
             TableRow row = DatabaseManager.create(context, "resourcepolicy");
             row.setColumn("uuid", sid.getUUID().toString());
@@ -143,6 +146,8 @@ public class ResourcePolicyDAOPostgres extends ResourcePolicyDAO
 
             if (row != null)
             {
+                ResourcePolicyCache.policiesChanged(context);
+
                 populateTableRowFromResourcePolicy(rp, row);
                 DatabaseManager.update(context, row);
             }
@@ -165,6 +170,8 @@ public class ResourcePolicyDAOPostgres extends ResourcePolicyDAO
 
         try
         {
+            ResourcePolicyCache.policiesChanged(context);
+
             DatabaseManager.delete(context, "resourcepolicy", id);
         }
         catch (SQLException sqle)
@@ -234,21 +241,72 @@ public class ResourcePolicyDAOPostgres extends ResourcePolicyDAO
     @Override
     public List<ResourcePolicy> getPolicies(DSpaceObject dso, int actionID)
     {
-        try
+        int type = dso.getType();
+        int id = dso.getID();
+
+        // A context with uncommitted policy changes can't use the shared
+        // cache: it would miss its own changes, or publish them to others.
+        boolean useCache = ResourcePolicyCache.isEnabled()
+            && !context.getPoliciesChanged();
+
+        ResourcePolicyCache.Policy[] policies = null;
+
+        if (useCache)
         {
-            TableRowIterator tri = DatabaseManager.queryTable(context,
-                    "resourcepolicy",
-                    "SELECT policy_id FROM resourcepolicy " +
-                    "WHERE resource_type_id = ? AND resource_id = ? " +
-                    "AND action_id = ? ",
-                    dso.getType(), dso.getID(), actionID);
+            policies = ResourcePolicyCache.get(context, type, id, actionID);
+        }
 
-            return returnAsList(tri);
+        if (policies == null)
+        {
+            long generation = ResourcePolicyCache.getGeneration();
+
+            try
+            {
+                TableRowIterator tri = DatabaseManager.queryTable(context,
+                        "resourcepolicy",
+                        "SELECT * FROM resourcepolicy " +
+                        "WHERE resource_type_id = ? AND resource_id = ? " +
+                        "AND action_id = ? ",
+                        type, id, actionID);
+
+                List<TableRow> rows = tri.toList();
+                policies = new ResourcePolicyCache.Policy[rows.size()];
+
+                for (int i = 0; i < policies.length; i++)
+                {
+                    policies[i] = toPolicy(rows.get(i));
+                }
+            }
+            catch (SQLException sqle)
+            {
+                throw new RuntimeException(sqle);
+            }
+
+            if (useCache)
+            {
+                ResourcePolicyCache.put(type, id, actionID, policies,
+                        generation);
+            }
         }
-        catch (SQLException sqle)
+
+        List<ResourcePolicy> list =
+            new ArrayList<ResourcePolicy>(policies.length);
+
+        for (ResourcePolicyCache.Policy policy : policies)
         {
-            throw new RuntimeException(sqle);
+            // Prefer any copy this context already holds, as retrieve() does
+            ResourcePolicy rp = super.retrieve(policy.getID());
+
+            if (rp == null)
+            {
+                rp = new ResourcePolicy(context, policy.getID());
+                populateResourcePolicyFromPolicy(rp, policy);
+            }
+
+            list.add(rp);
         }
+
+        return list;
     }
 
     @Override
@@ -321,6 +379,34 @@ public class ResourcePolicyDAOPostgres extends ResourcePolicyDAO
         rp.setEndDate(endDate);
     }
 
+    private ResourcePolicyCache.Policy toPolicy(TableRow row)
+    {
+        return new ResourcePolicyCache.Policy(
+                row.getIntColumn("policy_id"),
+                row.getStringColumn("uuid"),
+                row.getIntColumn("resource_type_id"),
+                row.getIntColumn("resource_id"),
+                row.getIntColumn("action_id"),
+                row.getIntColumn("eperson_id"),
+                row.getIntColumn("epersongroup_id"),
+                row.getDateColumn("start_date"),
+                row.getDateColumn("end_date"));
+    }
+
+    private void populateResourcePolicyFromPolicy(ResourcePolicy rp,
+            ResourcePolicyCache.Policy policy)
+    {
+        rp.setSimpleIdentifier(new SimpleIdentifier(
+                    UUID.fromString(policy.getUUID())));
+        rp.setResourceID(policy.getResourceID());
+        rp.setResourceType(policy.getResourceType());
+        rp.setAction(policy.getAction());
+        rp.setEPersonID(policy.getEPersonID());
+        rp.setGroupID(policy.getGroupID());
+        rp.setStartDate(policy.getStartDate());
+        rp.setEndDate(policy.getEndDate());
+    }
+
     private void populateTableRowFromResourcePolicy(ResourcePolicy rp,
             TableRow row)
     {
@@ -64,8 +64,8 @@ import org.dspace.event.Event;
  * Perhaps this can be addressed if the Browse system is replaced.
  *
  * To handle create/modify events:  accumulate Sets of Items to be added
- * and updated out of the event stream.  Process them in endEvents()
- * filter out update requests for Items that were just created.
+ * and updated out of the event stream.  Process them together in end(),
+ * so that each browse table is updated once for the whole set.
  *
  * Recommended filter:  Item+Create|Modify|Modify_Metadata:Collection+Add|Remove
  *
@@ -140,23 +140,22 @@ public class BrowseConsumer implements Consumer
         if (toUpdate != null)
         {
 
-            // Update/Add items
-            for (Item i : toUpdate)
+            // Update/Add items, all in one pass over the browse tables
+            // FIXME: there is an exception handling problem here
+            try
             {
-                // FIXME: there is an exception handling problem here
-                try
-                {
-                    // Update browse indices
-                    IndexBrowse ib = new IndexBrowse(ctx);
-                    ib.indexItem(i);
-                }
-                catch (BrowseException e)
-                {
-                    log.error("caught exception: ", e);
-                    //throw new SQLException(e.getMessage());
-                }
+                IndexBrowse ib = new IndexBrowse(ctx);
+                ib.indexItems(toUpdate);
+            }
+            catch (BrowseException e)
+            {
+                log.error("caught exception: ", e);
+                //throw new SQLException(e.getMessage());
+            }
 
-                if (log.isDebugEnabled())
+            if (log.isDebugEnabled())
+            {
+                for (Item i : toUpdate)
                 {
                     log.debug("Updated browse indices for Item id=" + i.getID()
                             + ", oid=" + i.getIdentifier().getCanonicalForm());
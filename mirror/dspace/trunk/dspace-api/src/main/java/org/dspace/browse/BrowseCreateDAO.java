@@ -80,8 +80,34 @@ public interface BrowseCreateDAO
 	 */
 	public void deleteByItemID(String table, int itemID) throws BrowseException;
 
+	/**
+	 * Delete the records for all of the given item ids from the specified table.
+	 * 
+	 * @param 	table	the browse table to remove the indices from
+	 * @param	itemIDs	the database ids of the items to remove the indices for
+	 * @throws BrowseException
+	 */
+	public void deleteByItemIDs(String table, int[] itemIDs) throws BrowseException;
+
     public void deleteCommunityMappings(int itemID) throws BrowseException;
     public void updateCommunityMappings(int itemID) throws BrowseException;
+
+    /**
+     * Remove the community mappings for all of the given items.
+     * 
+     * @param itemIDs	the database ids of the items
+     * @throws BrowseException
+     */
+    public void deleteCommunityMappings(int[] itemIDs) throws BrowseException;
+
+    /**
+     * Replace the community mappings for all of the given items, including the
+     * ancestors of the communities they belong to.
+     * 
+     * @param itemIDs	the database ids of the items
+     * @throws BrowseException
+     */
+    public void updateCommunityMappings(int[] itemIDs) throws BrowseException;
 	
 	/**
 	 * Insert an index record into the given table for the given item id.  The Map should contain
@@ -106,6 +132,17 @@ public interface BrowseCreateDAO
 	 */
     public void insertIndex(String table, int itemID, Map sortCols) throws BrowseException;
 
+    /**
+     * Insert index records for a number of items at once.  The items must not
+     * already be in the table.
+     * 
+     * @param table		the browse table to insert the indices into
+     * @param sortCols	a map of item ids to the sort column values for that item,
+     * 					in the same form as for insertIndex
+     * @throws BrowseException
+     */
+    public void insertIndices(String table, Map<Integer, Map<Integer, String>> sortCols) throws BrowseException;
+
     /**
      * Updates an index record into the given table for the given item id.  The Map should contain
      * key value pairs representing the sort column integer representation and the normalised
@@ -177,17 +214,56 @@ public interface BrowseCreateDAO
 	 */
 	public int insertDistinctRecord(String table, String value, String sortValue) throws BrowseException;
 
+    /**
+     * Get the ids of a number of distinct values at once, inserting any values
+     * which are not yet in the table.
+     * 
+     * @param table		the distinct table
+     * @param values	a map of the values to their normalised sort values
+     * @return			a map of the values to their distinct ids
+     * @throws BrowseException
+     */
+    public Map<String, Integer> getDistinctIDs(String table, Map<String, String> values) throws BrowseException;
+
     /**
      * Update a mapping between an item id and a distinct metadata field such as an author,
      * who can appear in multiple items.  To get the id of the distinct record you should
      * use either getDistinctID or insertDistinctRecord as defined above.
      *
-     * @param table		 	the mapping table
+     * The reference counts of the distinct records are kept in step with the mappings,
+     * and any distinct record which is no longer mapped to an item is removed.
+     *
+     * @param disTable      the distinct value table
+     * @param mapTable      the mapping table
      * @param itemID		the item id
      * @param distinctIDs	the id of the distinct record
      * @throws BrowseException
      */
-    public boolean updateDistinctMappings(String table, int itemID, int[] distinctIDs) throws BrowseException;
+    public boolean updateDistinctMappings(String disTable, String mapTable, int itemID, int[] distinctIDs) throws BrowseException;
+
+    /**
+     * Update the mappings of a number of items at once, so that each item is
+     * mapped to exactly the distinct ids given for it.  An item given an empty
+     * array has all its mappings removed.  Reference counts are maintained,
+     * and values which are no longer referenced are removed.
+     * 
+     * @param disTable      the distinct table
+     * @param mapTable      the mapping table
+     * @param distinctIDs   a map of item ids to the distinct ids they should be mapped to
+     * @throws BrowseException
+     */
+    public void updateDistinctMappings(String disTable, String mapTable, Map<Integer, int[]> distinctIDs) throws BrowseException;
+
+    /**
+     * Remove all the mappings for the given item from a distinct mapping table,
+     * removing any distinct record which is then no longer mapped to an item.
+     *
+     * @param disTable      the distinct value table
+     * @param mapTable      the mapping table
+     * @param itemID        the item id
+     * @throws BrowseException
+     */
+    public void deleteDistinctMappings(String disTable, String mapTable, int itemID) throws BrowseException;
 	
 	/**
 	 * Find out of a given table exists.
@@ -379,11 +455,29 @@ public interface BrowseCreateDAO
 	/**
 	 * So that there are no distinct values indexed which are no longer referenced from the
 	 * map table, this method checks for values which are not referenced from the map,
-	 * and removes them.
+	 * and removes them.  It also recalculates the reference counts of the remaining values.
+	 * 
+	 * This scans the whole of both tables, so is intended to be run occasionally as a batch
+	 * job; day to day maintenance is done through the reference counts.
 	 * 
 	 * @param table		the name of the distinct index table
 	 * @param map		the name of the associated distinct mapping table.
 	 * @throws BrowseException
 	 */
 	public void pruneDistinct(String table, String map) throws BrowseException;
+
+	/**
+	 * Replace a browse table with a fully built copy of it.  The existing table (if any)
+	 * is dropped, the shadow table is renamed to take its place, and the indices which
+	 * were created on the shadow table are renamed to match.  The row count held for the
+	 * table is brought up to date.
+	 * 
+	 * Where the database allows it, this should happen within the current transaction so
+	 * that readers see either the old table or the new one, and never neither.
+	 * 
+	 * @param table		the name of the live browse table
+	 * @param shadow	the name of the table which is to replace it
+	 * @throws BrowseException
+	 */
+	public void swapTable(String table, String shadow) throws BrowseException;
 }
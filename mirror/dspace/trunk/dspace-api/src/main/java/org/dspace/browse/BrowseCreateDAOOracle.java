@@ -41,9 +41,12 @@ package org.dspace.browse;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.dspace.core.Context;
@@ -76,6 +79,9 @@ public class BrowseCreateDAOOracle implements BrowseCreateDAO
      */
     private Context context;
 
+    /** Reference count and BrowseCount maintenance shared with the other databases */
+    private BrowseDAOSupport support;
+
     /** Database specific set of utils used when prepping the database */
     private BrowseDAOUtils utils;
     
@@ -93,6 +99,7 @@ public class BrowseCreateDAOOracle implements BrowseCreateDAO
         
         // obtain the relevant Utils for this class
         utils = BrowseDAOFactory.getUtils(context);
+        support = new BrowseDAOSupport(context);
     }
 
     /*
@@ -165,7 +172,9 @@ public class BrowseCreateDAOOracle implements BrowseCreateDAO
     
             for (Integer i : sortCols)
             {
-                array.add("CREATE INDEX " + table + "_s" + i + "_idx ON " + table + "(sort_" + i + ")");
+                // index the sort column together with the item id, so that a
+                // browse can seek straight to the row after the last one seen
+                array.add("CREATE INDEX " + table + "_s" + i + "_idx ON " + table + "(sort_" + i + ", item_id)");
             }
             
             if (execute)
@@ -194,7 +203,7 @@ public class BrowseCreateDAOOracle implements BrowseCreateDAO
         try
         {
             String[] arr = new String[3];
-            arr[0] = "CREATE INDEX " + disTable + "_value_idx ON " + disTable + "(sort_value)";
+            arr[0] = "CREATE INDEX " + disTable + "_value_idx ON " + disTable + "(sort_value, id)";
             arr[1] = "CREATE INDEX " + mapTable + "_item_id_idx ON " + mapTable + "(item_id)";
             arr[2] = "CREATE INDEX " + mapTable + "_dist_idx ON " + mapTable + "(distinct_id)";
 
@@ -242,9 +251,9 @@ public class BrowseCreateDAOOracle implements BrowseCreateDAO
     }
 
     /* (non-Javadoc)
-     * @see org.dspace.browse.BrowseCreateDAO#updateDistinctMapping(java.lang.String, int, int)
+     * @see org.dspace.browse.BrowseCreateDAO#updateDistinctMappings(java.lang.String, java.lang.String, int, int[])
      */
-    public boolean updateDistinctMappings(String table, int itemID, int[] distinctIDs) throws BrowseException
+    public boolean updateDistinctMappings(String disTable, String mapTable, int itemID, int[] distinctIDs) throws BrowseException
     {
         try
         {
@@ -255,8 +264,11 @@ public class BrowseCreateDAOOracle implements BrowseCreateDAO
                     distinctIDs[i] = -1;
             }
 
+            List<Integer> added = new ArrayList<Integer>();
+            List<Integer> removed = new ArrayList<Integer>();
+
             // Find all existing mappings for this item
-            TableRowIterator tri = DatabaseManager.queryTable(context, table, "SELECT * FROM " + table + " WHERE item_id=?", itemID);
+            TableRowIterator tri = DatabaseManager.queryTable(context, mapTable, "SELECT * FROM " + mapTable + " WHERE item_id=?", itemID);
             if (tri != null)
             {
                 try
@@ -279,9 +291,12 @@ public class BrowseCreateDAOOracle implements BrowseCreateDAO
                             }
                         }
 
-                        // The item is no longer mapped to this community, so remove the database record
+                        // The item is no longer mapped to this value, so remove the database record
                         if (!itemIsMapped)
+                        {
                             DatabaseManager.delete(context, tr);
+                            removed.add(trDistinctID);
+                        }
                     }
                 }
                 finally
@@ -295,17 +310,22 @@ public class BrowseCreateDAOOracle implements BrowseCreateDAO
             {
                 if (distinctIDs[i] > -1)
                 {
-                    TableRow row = DatabaseManager.create(context, table);
+                    TableRow row = DatabaseManager.create(context, mapTable);
                     row.setColumn("item_id", itemID);
                     row.setColumn("distinct_id", distinctIDs[i]);
                     DatabaseManager.update(context, row);
+                    added.add(distinctIDs[i]);
                 }
             }
+
+            support.updateReferenceCounts(disTable, added, 1);
+            support.updateReferenceCounts(disTable, removed, -1);
+            support.deleteUnreferenced(disTable, removed);
         }
         catch (SQLException e)
         {
             log.error("caught exception: ", e);
-            String msg = "problem updating distinct mappings: table=" + table + ",item-id=" + itemID;
+            String msg = "problem updating distinct mappings: table=" + mapTable + ",item-id=" + itemID;
             throw new BrowseException(msg, e);
         }
 
@@ -322,12 +342,14 @@ public class BrowseCreateDAOOracle implements BrowseCreateDAO
             String create = "CREATE TABLE " + table + " (" +
                             "id INTEGER PRIMARY KEY, " + 
                             "value " + getValueColumnDefinition() + ", " +
-                            "sort_value " + getSortColumnDefinition() +
+                            "sort_value " + getSortColumnDefinition() + ", " +
+                            "ref_count INTEGER DEFAULT 0 NOT NULL" +
                             ")";
             
             if (execute)
             {
                 DatabaseManager.updateQuery(context, create);
+                support.resetCount(table);
             }
             return create + ";";
         }
@@ -361,6 +383,7 @@ public class BrowseCreateDAOOracle implements BrowseCreateDAO
             if (execute)
             {
                 DatabaseManager.updateQuery(context, createTable);
+                support.resetCount(table);
             }
             return createTable;
         }
@@ -401,7 +424,7 @@ public class BrowseCreateDAOOracle implements BrowseCreateDAO
         {
             Object[] params = { new Integer(itemID) };
             String dquery = "DELETE FROM " + table + " WHERE item_id=?";
-            DatabaseManager.updateQuery(context, dquery, params);
+            support.adjustCount(table, -DatabaseManager.updateQuery(context, dquery, params));
         }
         catch (SQLException e)
         {
@@ -411,6 +434,43 @@ public class BrowseCreateDAOOracle implements BrowseCreateDAO
 
     }
 
+    /* (non-Javadoc)
+     * @see org.dspace.browse.BrowseCreateDAO#deleteDistinctMappings(java.lang.String, java.lang.String, int)
+     */
+    public void deleteDistinctMappings(String disTable, String mapTable, int itemID)
+        throws BrowseException
+    {
+        TableRowIterator tri = null;
+
+        try
+        {
+            List<Integer> removed = new ArrayList<Integer>();
+
+            tri = DatabaseManager.query(context, "SELECT distinct_id FROM " + mapTable + " WHERE item_id = ?", itemID);
+            while (tri.hasNext())
+            {
+                removed.add(tri.next().getIntColumn("distinct_id"));
+            }
+
+            DatabaseManager.updateQuery(context, "DELETE FROM " + mapTable + " WHERE item_id = ?", itemID);
+
+            support.updateReferenceCounts(disTable, removed, -1);
+            support.deleteUnreferenced(disTable, removed);
+        }
+        catch (SQLException e)
+        {
+            log.error("caught exception: ", e);
+            throw new BrowseException(e);
+        }
+        finally
+        {
+            if (tri != null)
+            {
+                tri.close();
+            }
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.dspace.browse.BrowseCreateDAO#deleteCommunityMappings(java.lang.String, int)
      */
@@ -441,6 +501,7 @@ public class BrowseCreateDAOOracle implements BrowseCreateDAO
             if (execute)
             {
                 DatabaseManager.updateQuery(context, dropper);
+                support.clearCount(table);
             }
             return dropper + ";";
         }
@@ -641,7 +702,9 @@ public class BrowseCreateDAOOracle implements BrowseCreateDAO
             TableRow dr = DatabaseManager.create(context, table);
             dr.setColumn("value", utils.truncateValue(value));
             dr.setColumn("sort_value", utils.truncateSortValue(sortValue));
+            dr.setColumn("ref_count", 0);
             DatabaseManager.update(context, dr);
+            support.adjustCount(table, 1);
             int distinctID = dr.getIntColumn("id");
             
             if (log.isDebugEnabled())
@@ -679,6 +742,7 @@ public class BrowseCreateDAOOracle implements BrowseCreateDAO
             }
             
             DatabaseManager.update(context, row);
+            support.adjustCount(table, 1);
         }
         catch (SQLException e)
         {
@@ -760,6 +824,15 @@ public class BrowseCreateDAOOracle implements BrowseCreateDAO
                             " MINUS SELECT distinct_id AS id FROM " + map + ")";
             
             DatabaseManager.updateQuery(context, query);
+
+            // Bring the reference counts back in line with the map, in case
+            // any rows were changed without maintaining them
+            String recount = "UPDATE " + table + " SET ref_count = " +
+                            "(SELECT COUNT(*) FROM " + map + " WHERE " + map + ".distinct_id = " + table + ".id)";
+
+            DatabaseManager.updateQuery(context, recount);
+
+            support.recount(table);
         }
         catch (SQLException e)
         {
@@ -789,6 +862,400 @@ public class BrowseCreateDAOOracle implements BrowseCreateDAO
                 String deleteDistinct = "DELETE FROM " + map   + " WHERE item_id IN ( SELECT item_id FROM " + map   + " MINUS " + itemQuery + ")";
                 DatabaseManager.updateQuery(context, deleteDistinct);
             }
+
+            support.recount(table);
+        }
+        catch (SQLException e)
+        {
+            log.error("caught exception: ", e);
+            throw new BrowseException(e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.browse.BrowseCreateDAO#deleteByItemIDs(java.lang.String, int[])
+     */
+    public void deleteByItemIDs(String table, int[] itemIDs)
+        throws BrowseException
+    {
+        try
+        {
+            int deleted = 0;
+            for (int start = 0; start < itemIDs.length; start += BrowseDAOSupport.BATCH_SIZE)
+            {
+                Object[] chunk = BrowseDAOSupport.toParams(itemIDs, start);
+                deleted += DatabaseManager.updateQuery(context, "DELETE FROM " + table +
+                        " WHERE item_id IN (" + BrowseDAOSupport.placeholders(chunk.length) + ")", chunk);
+            }
+
+            support.adjustCount(table, -deleted);
+        }
+        catch (SQLException e)
+        {
+            log.error("caught exception: ", e);
+            throw new BrowseException(e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.browse.BrowseCreateDAO#insertIndices(java.lang.String, java.util.Map)
+     */
+    public void insertIndices(String table, Map<Integer, Map<Integer, String>> sortCols)
+        throws BrowseException
+    {
+        try
+        {
+            List<TableRow> rows = new ArrayList<TableRow>();
+            for (Map.Entry<Integer, Map<Integer, String>> entry : sortCols.entrySet())
+            {
+                TableRow row = DatabaseManager.row(table);
+                row.setColumn("item_id", entry.getKey().intValue());
+
+                for (Map.Entry<Integer, String> sortCol : entry.getValue().entrySet())
+                {
+                    row.setColumn("sort_" + sortCol.getKey().toString(), utils.truncateSortValue(sortCol.getValue()));
+                }
+
+                rows.add(row);
+            }
+
+            if (rows.size() > 0)
+            {
+                DatabaseManager.insert(context, rows);
+                support.adjustCount(table, rows.size());
+            }
+        }
+        catch (SQLException e)
+        {
+            log.error("caught exception: ", e);
+            throw new BrowseException(e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.browse.BrowseCreateDAO#getDistinctIDs(java.lang.String, java.util.Map)
+     */
+    public Map<String, Integer> getDistinctIDs(String table, Map<String, String> values)
+        throws BrowseException
+    {
+        try
+        {
+            // Key everything on the value as it is stored, which may be truncated
+            Map<String, String> stored = new HashMap<String, String>();
+            for (String value : values.keySet())
+            {
+                stored.put(value, utils.truncateValue(value));
+            }
+
+            // a CLOB can't be compared directly
+            String valueColumn = isValueColumnClob() ? "TO_CHAR(value)" : "value";
+
+            List<String> lookup = new ArrayList<String>(new HashSet<String>(stored.values()));
+            Map<String, Integer> found = new HashMap<String, Integer>();
+
+            for (int start = 0; start < lookup.size(); start += BrowseDAOSupport.BATCH_SIZE)
+            {
+                List<String> chunk = lookup.subList(start, Math.min(lookup.size(), start + BrowseDAOSupport.BATCH_SIZE));
+                TableRowIterator tri = DatabaseManager.query(context, "SELECT id, " + valueColumn + " AS value FROM " + table +
+                        " WHERE " + valueColumn + " IN (" + BrowseDAOSupport.placeholders(chunk.size()) + ")", chunk.toArray());
+                try
+                {
+                    while (tri.hasNext())
+                    {
+                        TableRow row = tri.next();
+                        found.put(row.getStringColumn("value"), new Integer(row.getIntColumn("id")));
+                    }
+                }
+                finally
+                {
+                    tri.close();
+                }
+            }
+
+            // Insert all the values which aren't there yet in one go
+            List<TableRow> rows = new ArrayList<TableRow>();
+            for (Map.Entry<String, String> entry : values.entrySet())
+            {
+                String value = stored.get(entry.getKey());
+                if (!found.containsKey(value))
+                {
+                    TableRow row = DatabaseManager.row(table);
+                    row.setColumn("value", value);
+                    row.setColumn("sort_value", utils.truncateSortValue(entry.getValue()));
+                    row.setColumn("ref_count", 0);
+                    rows.add(row);
+
+                    // Placeholder, so that the value is only inserted once
+                    found.put(value, null);
+                }
+            }
+
+            if (rows.size() > 0)
+            {
+                DatabaseManager.insert(context, rows);
+                support.adjustCount(table, rows.size());
+
+                for (TableRow row : rows)
+                {
+                    found.put(row.getStringColumn("value"), new Integer(row.getIntColumn("id")));
+                }
+            }
+
+            Map<String, Integer> ids = new HashMap<String, Integer>();
+            for (Map.Entry<String, String> entry : stored.entrySet())
+            {
+                ids.put(entry.getKey(), found.get(entry.getValue()));
+            }
+
+            return ids;
+        }
+        catch (SQLException e)
+        {
+            log.error("caught exception: ", e);
+            throw new BrowseException(e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.browse.BrowseCreateDAO#updateDistinctMappings(java.lang.String, java.lang.String, java.util.Map)
+     */
+    public void updateDistinctMappings(String disTable, String mapTable, Map<Integer, int[]> distinctIDs)
+        throws BrowseException
+    {
+        try
+        {
+            // The mappings each item should end up with
+            Map<Integer, Set<Integer>> wanted = new HashMap<Integer, Set<Integer>>();
+            for (Map.Entry<Integer, int[]> entry : distinctIDs.entrySet())
+            {
+                Set<Integer> ids = new HashSet<Integer>();
+                for (int i = 0; i < entry.getValue().length; i++)
+                {
+                    ids.add(new Integer(entry.getValue()[i]));
+                }
+                wanted.put(entry.getKey(), ids);
+            }
+
+            List<Integer> removedMaps = new ArrayList<Integer>();
+            List<Integer> removed = new ArrayList<Integer>();
+
+            // Compare against the existing mappings, crossing off those which are to stay
+            int[] itemIDs = BrowseDAOSupport.toArray(distinctIDs.keySet());
+            for (int start = 0; start < itemIDs.length; start += BrowseDAOSupport.BATCH_SIZE)
+            {
+                Object[] chunk = BrowseDAOSupport.toParams(itemIDs, start);
+                TableRowIterator tri = DatabaseManager.query(context, "SELECT map_id, item_id, distinct_id FROM " + mapTable +
+                        " WHERE item_id IN (" + BrowseDAOSupport.placeholders(chunk.length) + ")", chunk);
+                try
+                {
+                    while (tri.hasNext())
+                    {
+                        TableRow row = tri.next();
+                        Integer distinctID = new Integer(row.getIntColumn("distinct_id"));
+
+                        if (!wanted.get(new Integer(row.getIntColumn("item_id"))).remove(distinctID))
+                        {
+                            removedMaps.add(new Integer(row.getIntColumn("map_id")));
+                            removed.add(distinctID);
+                        }
+                    }
+                }
+                finally
+                {
+                    tri.close();
+                }
+            }
+
+            for (int start = 0; start < removedMaps.size(); start += BrowseDAOSupport.BATCH_SIZE)
+            {
+                List<Integer> chunk = removedMaps.subList(start, Math.min(removedMaps.size(), start + BrowseDAOSupport.BATCH_SIZE));
+                DatabaseManager.updateQuery(context, "DELETE FROM " + mapTable +
+                        " WHERE map_id IN (" + BrowseDAOSupport.placeholders(chunk.size()) + ")", chunk.toArray());
+            }
+
+            // Whatever is left needs to be added
+            List<TableRow> rows = new ArrayList<TableRow>();
+            List<Integer> added = new ArrayList<Integer>();
+            for (Map.Entry<Integer, Set<Integer>> entry : wanted.entrySet())
+            {
+                for (Integer distinctID : entry.getValue())
+                {
+                    TableRow row = DatabaseManager.row(mapTable);
+                    row.setColumn("item_id", entry.getKey().intValue());
+                    row.setColumn("distinct_id", distinctID.intValue());
+                    rows.add(row);
+                    added.add(distinctID);
+                }
+            }
+
+            if (rows.size() > 0)
+            {
+                DatabaseManager.insert(context, rows);
+            }
+
+            support.updateReferenceCounts(disTable, added, 1);
+            support.updateReferenceCounts(disTable, removed, -1);
+
+            // Only the values which have lost a reference can have become unused
+            support.deleteUnreferenced(disTable, removed);
+        }
+        catch (SQLException e)
+        {
+            log.error("caught exception: ", e);
+            throw new BrowseException("problem updating distinct mappings: table=" + mapTable, e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.browse.BrowseCreateDAO#deleteCommunityMappings(int[])
+     */
+    public void deleteCommunityMappings(int[] itemIDs)
+        throws BrowseException
+    {
+        try
+        {
+            for (int start = 0; start < itemIDs.length; start += BrowseDAOSupport.BATCH_SIZE)
+            {
+                Object[] chunk = BrowseDAOSupport.toParams(itemIDs, start);
+                DatabaseManager.updateQuery(context, "DELETE FROM Communities2Item WHERE item_id IN (" +
+                        BrowseDAOSupport.placeholders(chunk.length) + ")", chunk);
+            }
+        }
+        catch (SQLException e)
+        {
+            log.error("caught exception: ", e);
+            throw new BrowseException(e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.browse.BrowseCreateDAO#updateCommunityMappings(int[])
+     */
+    public void updateCommunityMappings(int[] itemIDs) throws BrowseException
+    {
+        deleteCommunityMappings(itemIDs);
+
+        try
+        {
+            // The hierarchy is small, so read it once rather than walking it per item
+            Map<Integer, Integer> parents = new HashMap<Integer, Integer>();
+            TableRowIterator tri = DatabaseManager.query(context, "SELECT child_comm_id, parent_comm_id FROM Community2Community");
+            try
+            {
+                while (tri.hasNext())
+                {
+                    TableRow row = tri.next();
+                    parents.put(new Integer(row.getIntColumn("child_comm_id")), new Integer(row.getIntColumn("parent_comm_id")));
+                }
+            }
+            finally
+            {
+                tri.close();
+            }
+
+            Map<Integer, Set<Integer>> communities = new HashMap<Integer, Set<Integer>>();
+            for (int start = 0; start < itemIDs.length; start += BrowseDAOSupport.BATCH_SIZE)
+            {
+                Object[] chunk = BrowseDAOSupport.toParams(itemIDs, start);
+                tri = DatabaseManager.query(context, "SELECT item_id, community_id FROM Community2Item WHERE item_id IN (" +
+                        BrowseDAOSupport.placeholders(chunk.length) + ")", chunk);
+                try
+                {
+                    while (tri.hasNext())
+                    {
+                        TableRow row = tri.next();
+                        Integer itemID = new Integer(row.getIntColumn("item_id"));
+
+                        Set<Integer> itemComms = communities.get(itemID);
+                        if (itemComms == null)
+                        {
+                            itemComms = new HashSet<Integer>();
+                            communities.put(itemID, itemComms);
+                        }
+
+                        // The item belongs to the community and all its ancestors
+                        Integer commID = new Integer(row.getIntColumn("community_id"));
+                        while (commID != null && itemComms.add(commID))
+                        {
+                            commID = parents.get(commID);
+                        }
+                    }
+                }
+                finally
+                {
+                    tri.close();
+                }
+            }
+
+            List<TableRow> rows = new ArrayList<TableRow>();
+            for (Map.Entry<Integer, Set<Integer>> entry : communities.entrySet())
+            {
+                for (Integer commID : entry.getValue())
+                {
+                    TableRow row = DatabaseManager.row("Communities2Item");
+                    row.setColumn("item_id", entry.getKey().intValue());
+                    row.setColumn("community_id", commID.intValue());
+                    rows.add(row);
+                }
+            }
+
+            if (rows.size() > 0)
+            {
+                DatabaseManager.insert(context, rows);
+            }
+        }
+        catch (SQLException e)
+        {
+            log.error("caught exception: ", e);
+            throw new BrowseException(e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.browse.BrowseCreateDAO#swapTable(java.lang.String, java.lang.String)
+     */
+    public void swapTable(String table, String shadow) throws BrowseException
+    {
+        // NOTE: Oracle commits after every DDL statement, so unlike Postgres the
+        // swap can't be made atomic; readers may briefly find the table missing
+        try
+        {
+            // the shadow's indices are named after it, so find them before it is renamed
+            List<String> indices = new ArrayList<String>();
+            TableRowIterator tri = DatabaseManager.query(context,
+                    "SELECT index_name FROM user_indexes WHERE table_name=?", shadow.toUpperCase());
+            try
+            {
+                while (tri.hasNext())
+                {
+                    indices.add(tri.next().getStringColumn("index_name"));
+                }
+            }
+            finally
+            {
+                tri.close();
+            }
+
+            if (testTableExistance(table))
+            {
+                DatabaseManager.updateQuery(context, "DROP TABLE " + table + " CASCADE CONSTRAINTS");
+            }
+
+            DatabaseManager.updateQuery(context, "ALTER TABLE " + shadow + " RENAME TO " + table);
+
+            // system named indices (such as the primary key) follow the table anyway
+            for (String index : indices)
+            {
+                if (index.startsWith(shadow.toUpperCase()))
+                {
+                    String renamed = table + index.substring(shadow.length());
+                    DatabaseManager.updateQuery(context, "ALTER INDEX " + index + " RENAME TO " + renamed);
+                }
+            }
+
+            support.clearCount(shadow);
+            support.clearCount(table);
+            support.recount(table);
         }
         catch (SQLException e)
         {
@@ -70,7 +70,9 @@ public interface BrowseDAO
 	
 	/**
 	 * This executes a query which will count the number of results for the
-	 * parameters you set.
+	 * parameters you set.  A count of a whole table, or of all the items with
+	 * a single value, is read from the totals maintained in the BrowseCount
+	 * table and the distinct value reference counts rather than counted.
 	 * 
 	 * @return		the integer value of the number of results found
 	 * @throws BrowseException
@@ -274,7 +276,50 @@ public interface BrowseDAO
 	 * @param offset
 	 */
 	public void setOffset(int offset);
-	
+
+	/**
+	 * Set the row after which results should be returned, as the value of the order
+	 * field and the id (the item id, or the distinct value id for a distinct browse)
+	 * of the last row of the previous page.  Unlike an offset, this is as cheap for
+	 * the last page of a browse as it is for the first, and when it is set any offset
+	 * is ignored.  A null value refers to a row with nothing in the order field.  The
+	 * default id is -1, which means do not seek.
+	 *
+	 * @param value		the order field value of the last row seen
+	 * @param id		the id of the last row seen
+	 */
+	public void setSeek(String value, int id);
+
+	/**
+	 * Get the order field value of the row after which results will be returned
+	 *
+	 * @return	the order field value, or null
+	 */
+	public String getSeekValue();
+
+	/**
+	 * Get the id of the row after which results will be returned
+	 *
+	 * @return	the id, or -1 if not seeking
+	 */
+	public int getSeekID();
+
+	/**
+	 * Get the order field value of the last row returned by doQuery or doValueQuery,
+	 * which can be passed to setSeek to obtain the next page of results.
+	 *
+	 * @return	the order field value of the last result
+	 */
+	public String getLastValue();
+
+	/**
+	 * Get the id of the last row returned by doQuery or doValueQuery, which can be
+	 * passed to setSeek to obtain the next page of results.
+	 *
+	 * @return	the id of the last result, or -1 if there were no results
+	 */
+	public int getLastID();
+
 	/**
 	 * Get the database field which will be used to do the sorting of result sets on.
 	 * 
@@ -130,6 +130,17 @@ public class BrowseDAOPostgres implements BrowseDAO
     
     /** whether this is a distinct browse or not */
     private boolean distinct = false;
+
+    /** the order field value and id of the row after which to start the browse */
+    private String seekValue = null;
+    private int seekID = -1;
+
+    /** whether the seek has moved on to the rows on the other side of the empty values */
+    private boolean seekTail = false;
+
+    /** the order field value and id of the last row returned */
+    private String lastValue = null;
+    private int lastID = -1;
     
     // administrative attributes for this class
     
@@ -167,6 +178,12 @@ public class BrowseDAOPostgres implements BrowseDAO
     public int doCountQuery()
         throws BrowseException
     {
+        int maintained = doMaintainedCountQuery();
+        if (maintained > -1)
+        {
+            return maintained;
+        }
+
         String query    = getQuery();
         Object[] params = getQueryParams();
         
@@ -206,6 +223,60 @@ public class BrowseDAOPostgres implements BrowseDAO
         }
     }
     
+    /**
+     * Read the count from the totals kept up to date as the browse tables are
+     * written, where they cover what is being counted: the whole of a table,
+     * or all of the items with a single value.  Anything constrained to a
+     * container or to a range of values has to be counted.
+     *
+     * @return  the count, or -1 if it has to be counted
+     * @throws BrowseException
+     */
+    private int doMaintainedCountQuery()
+        throws BrowseException
+    {
+        if (countValues == null || countValues.length != 1 || !"*".equals(countValues[0]))
+        {
+            return -1;
+        }
+
+        if (containerTable != null || (focusField != null && focusValue != null) ||
+                (seekID > -1 && orderField != null))
+        {
+            return -1;
+        }
+
+        try
+        {
+            if (value == null)
+            {
+                // the folded total, plus the changes recorded since
+                TableRow row = DatabaseManager.querySingle(context,
+                        "SELECT total + (SELECT COALESCE(SUM(delta), 0) FROM BrowseCountDelta " +
+                        "WHERE table_name = ?) AS total FROM BrowseCount WHERE table_name = ?", table, table);
+
+                return (row == null || row.isColumnNull("total")) ? -1 : row.getIntColumn("total");
+            }
+
+            if (!distinct && !valuePartial && valueField != null && tableDis != null && tableMap != null)
+            {
+                // every item with the value holds a reference to it
+                TableRow row = DatabaseManager.querySingle(context,
+                        "SELECT SUM(ref_count) AS num FROM " + tableDis + " WHERE sort_value = ?",
+                        utils.truncateSortValue(value));
+
+                return (row == null || row.isColumnNull("num")) ? 0 : (int) row.getLongColumn("num");
+            }
+
+            return -1;
+        }
+        catch (SQLException e)
+        {
+            log.error("caught exception: ", e);
+            throw new BrowseException(e);
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.dspace.browse.BrowseDAO#doMaxQuery(java.lang.String, java.lang.String, int)
      */
@@ -352,6 +423,42 @@ public class BrowseDAOPostgres implements BrowseDAO
      */
     public List doQuery()
         throws BrowseException
+    {
+        List results = new ArrayList();
+        lastValue = null;
+        lastID = -1;
+
+        doQuery(results);
+
+        if (continueSeek(results.size()))
+        {
+            int pageLimit = limit;
+            try
+            {
+                seekTail = true;
+                limit = pageLimit - results.size();
+                rebuildQuery = true;
+                doQuery(results);
+            }
+            finally
+            {
+                seekTail = false;
+                limit = pageLimit;
+                rebuildQuery = true;
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Run the full browse query, adding the items it returns to the results
+     *
+     * @param results   the list to add the items to
+     * @throws BrowseException
+     */
+    private void doQuery(List results)
+        throws BrowseException
     {
         String query = getQuery();
         Object[] params = getQueryParams();
@@ -368,7 +475,6 @@ public class BrowseDAOPostgres implements BrowseDAO
             tri = DatabaseManager.query(context, query, params);
             
             // go over the query results and process
-            List results = new ArrayList();
             ItemDAO itemDAO = ItemDAOFactory.getInstance(context);
             while (tri.hasNext())
             {
@@ -378,9 +484,8 @@ public class BrowseDAOPostgres implements BrowseDAO
 //                                                  itemsWithdrawn);
 //                results.add(browseItem);
                 results.add(itemDAO.retrieve(row.getIntColumn("item_id")));
+                recordLast(row, "item_id");
             }
-            
-            return results;
         }
         catch (SQLException e)
         {
@@ -401,6 +506,42 @@ public class BrowseDAOPostgres implements BrowseDAO
      */
     public List doValueQuery()
         throws BrowseException
+    {
+        List results = new ArrayList();
+        lastValue = null;
+        lastID = -1;
+
+        doValueQuery(results);
+
+        if (continueSeek(results.size()))
+        {
+            int pageLimit = limit;
+            try
+            {
+                seekTail = true;
+                limit = pageLimit - results.size();
+                rebuildQuery = true;
+                doValueQuery(results);
+            }
+            finally
+            {
+                seekTail = false;
+                limit = pageLimit;
+                rebuildQuery = true;
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Run the distinct value query, adding the values it returns to the results
+     *
+     * @param results   the list to add the values to
+     * @throws BrowseException
+     */
+    private void doValueQuery(List results)
+        throws BrowseException
     {
         String query = getQuery();
         Object[] params = getQueryParams();
@@ -414,15 +555,13 @@ public class BrowseDAOPostgres implements BrowseDAO
             tri = DatabaseManager.query(context, query, params);
             
             // go over the query results and process
-            List results = new ArrayList();
             while (tri.hasNext())
             {
                 TableRow row = tri.next();
                 String stringResult = row.getStringColumn("value");
                 results.add(stringResult);
+                recordLast(row, "id");
             }
-            
-            return results;
         }
         catch (SQLException e)
         {
@@ -656,6 +795,48 @@ public class BrowseDAOPostgres implements BrowseDAO
         this.offset = offset;
         this.rebuildQuery = true;
     }
+
+    /* (non-Javadoc)
+     * @see org.dspace.browse.BrowseDAO#setSeek(java.lang.String, int)
+     */
+    public void setSeek(String value, int id)
+    {
+        this.seekValue = value;
+        this.seekID = id;
+        this.rebuildQuery = true;
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.browse.BrowseDAO#getSeekValue()
+     */
+    public String getSeekValue()
+    {
+        return seekValue;
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.browse.BrowseDAO#getSeekID()
+     */
+    public int getSeekID()
+    {
+        return seekID;
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.browse.BrowseDAO#getLastValue()
+     */
+    public String getLastValue()
+    {
+        return lastValue;
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.browse.BrowseDAO#getLastID()
+     */
+    public int getLastID()
+    {
+        return lastID;
+    }
     
     /* (non-Javadoc)
      * @see org.dspace.browse.BrowseDAO#setOrderField(java.lang.String)
@@ -772,13 +953,16 @@ public class BrowseDAOPostgres implements BrowseDAO
         //     sort_value <= myvalue
         //     sort_1 >= myvalue
         buildWhereClauseJumpTo(queryBuf, params);
+
+        // carry on from the last value seen, if there was one
+        buildWhereClauseSeek(queryBuf, params, "id");
         
         // assemble the where clause out of the two possible value clauses
         // and include container support
         buildWhereClauseDistinctConstraints(queryBuf, params);
         
         // assemble the order by field
-        buildOrderBy(queryBuf);
+        buildOrderBy(queryBuf, "id");
         
         // prepare the limit and offset clauses
         buildRowLimitAndOffset(queryBuf, params);
@@ -813,6 +997,9 @@ public class BrowseDAOPostgres implements BrowseDAO
         //     sort_value <= myvalue
         //     sort_1 >= myvalue
         buildWhereClauseJumpTo(queryBuf, params);
+
+        // carry on from the last item seen, if there was one
+        buildWhereClauseSeek(queryBuf, params, "item_id");
         
         // assemble the value clause if we are to have one
         buildWhereClauseFilterValue(queryBuf, params);
@@ -822,7 +1009,7 @@ public class BrowseDAOPostgres implements BrowseDAO
         buildWhereClauseFullConstraints(queryBuf, params);
         
         // assemble the order by field
-        buildOrderBy(queryBuf);
+        buildOrderBy(queryBuf, "item_id");
         
         // prepare the limit and offset clauses
         buildRowLimitAndOffset(queryBuf, params);
@@ -835,25 +1022,23 @@ public class BrowseDAOPostgres implements BrowseDAO
      * return something of the form:
      * 
      * <code>
-     * ORDER BY [order field] (ASC | DESC)
+     * ORDER BY [order field] (ASC | DESC), [id field] (ASC | DESC)
      * </code>
      * 
+     * The id breaks ties between rows with the same value, so that the
+     * order is stable from one page to the next.
+     * 
      * @return  the ORDER BY clause
      */
-    private void buildOrderBy(StringBuffer queryBuf)
+    private void buildOrderBy(StringBuffer queryBuf, String idField)
     {
         if (orderField != null)
         {
+            String direction = isAscending() ? " ASC" : " DESC";
+
             queryBuf.append(" ORDER BY ");
-            queryBuf.append(orderField);
-            if (isAscending())
-            {
-                queryBuf.append(" ASC ");
-            }
-            else
-            {
-                queryBuf.append(" DESC ");
-            }
+            queryBuf.append(orderField).append(direction).append(", ");
+            queryBuf.append(table).append(".").append(idField).append(direction).append(" ");
         }
     }
     
@@ -869,6 +1054,9 @@ public class BrowseDAOPostgres implements BrowseDAO
      */
     private void buildRowLimitAndOffset(StringBuffer queryBuf, List params)
     {
+        // a seek replaces the offset
+        int offset = (seekID > -1 && this.offset > 0) ? 0 : this.offset;
+
         // prepare the LIMIT clause
         if (limit > 0)
         {
@@ -1278,6 +1466,92 @@ public class BrowseDAOPostgres implements BrowseDAO
         }
     }
 
+    /**
+     * Get the clause to continue the browse from the row after the one given
+     * by setSeek.  Will return something of the form:
+     * 
+     * <code>
+     * ([field], [id]) > ('[value]', [id value])
+     * </code>
+     * 
+     * or the same with &lt; when descending.  Rows with no value in the order
+     * field come after all the others when ascending, and before them when
+     * descending, but can't be reached by the comparison; they are browsed by
+     * id, and once one side of them runs out the rest of the page is taken
+     * from the other (see continueSeek).
+     */
+    private void buildWhereClauseSeek(StringBuffer queryBuf, List params, String idField)
+    {
+        if (seekID < 0 || orderField == null)
+        {
+            return;
+        }
+
+        String field = table + "." + orderField;
+        String id = table + "." + idField;
+        String comparator = isAscending() ? ">" : "<";
+
+        buildWhereClauseOpInsert(queryBuf);
+
+        if (seekTail)
+        {
+            queryBuf.append(" ").append(field).append(seekValue == null ? " IS NOT NULL " : " IS NULL ");
+        }
+        else if (seekValue == null)
+        {
+            queryBuf.append(" ").append(field).append(" IS NULL AND ");
+            queryBuf.append(id).append(comparator).append("? ");
+            params.add(new Integer(seekID));
+        }
+        else
+        {
+            // a row comparison, which can be answered from the index on ([field], [id])
+            queryBuf.append(" (").append(field).append(", ").append(id).append(")");
+            queryBuf.append(comparator).append("(?, ?) ");
+            params.add(utils.truncateSortValue(seekValue));
+            params.add(new Integer(seekID));
+        }
+    }
+
+    /**
+     * Whether a seek has reached the empty values (or, when descending, the end
+     * of them) before filling the page, so that the rest of the page has to be
+     * read from the other side of them.
+     *
+     * @param found     the number of results found so far
+     * @return  true if the browse should carry on past the empty values
+     */
+    private boolean continueSeek(int found)
+    {
+        if (seekID < 0 || seekTail || orderField == null || limit < 1 || found >= limit)
+        {
+            return false;
+        }
+
+        return isAscending() ? seekValue != null : seekValue == null;
+    }
+
+    /**
+     * Remember the order field value and id of a row, as the last one returned.
+     * If they weren't selected there is nothing to seek from.
+     *
+     * @param row       the row
+     * @param idField   the name of the id column
+     */
+    private void recordLast(TableRow row, String idField)
+    {
+        if (orderField != null && row.hasColumn(orderField) && row.hasColumn(idField))
+        {
+            lastValue = row.getStringColumn(orderField);
+            lastID = row.getIntColumn(idField);
+        }
+        else
+        {
+            lastValue = null;
+            lastID = -1;
+        }
+    }
+
     /**
      * Insert an operator into the where clause, and reset to ' AND '
      */
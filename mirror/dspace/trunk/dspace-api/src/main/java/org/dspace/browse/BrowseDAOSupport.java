@@ -0,0 +1,601 @@
+/*
+ * ItemCountDAOPostgres.java
+ *
+ * Copyright (c) 2002-2007, Hewlett-Packard Company and Massachusetts
+ * Institute of Technology.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * - Neither the name of the Hewlett-Packard Company nor the name of the
+ * Massachusetts Institute of Technology nor the names of their
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package org.dspace.browse;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.dspace.content.Community;
+import org.dspace.content.dao.CollectionDAO;
+import org.dspace.content.dao.CollectionDAOFactory;
+import org.dspace.content.dao.CommunityDAO;
+import org.dspace.content.dao.CommunityDAOFactory;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+/**
+ * SQL shared by the PostgreSQL and Oracle browse DAOs: keeping the reference
+ * counts of the distinct value tables, the BrowseCount totals and the cached
+ * item counts of collections and communities.  The few
+ * statements that differ between the two databases are chosen according to
+ * the configured <code>db.name</code>.
+ *
+ * @version $Revision$
+ */
+class BrowseDAOSupport
+{
+    /** log4j logger */
+    private static Logger log = Logger.getLogger(BrowseDAOSupport.class);
+
+    /** Maximum number of ids in the IN list of a single statement */
+    static final int BATCH_SIZE = 500;
+
+    /** Number of deltas recorded for a table between folds into its total */
+    private static final int FOLD_INTERVAL = 100;
+
+    /** Deltas recorded for each table since it was last folded */
+    private static final Map<String, Integer> unfolded = new HashMap<String, Integer>();
+
+    /** the DSpace context to run the statements in */
+    private Context context;
+
+    /** whether the database is Oracle rather than PostgreSQL */
+    private boolean oracle;
+
+    /**
+     * @param context   the DSpace context
+     */
+    BrowseDAOSupport(Context context)
+    {
+        this.context = context;
+        this.oracle = "oracle".equals(ConfigurationManager.getProperty("db.name"));
+    }
+
+    /**
+     * Add the given amount to the reference count of each of the given
+     * distinct values.  A value appearing in the list several times is
+     * adjusted once for each time it appears.
+     *
+     * @param table     the distinct value table
+     * @param ids       the ids of the distinct values
+     * @param delta     the amount to add per occurrence
+     * @throws SQLException
+     */
+    void updateReferenceCounts(String table, List<Integer> ids, int delta) throws SQLException
+    {
+        // Count the occurrences of each id, then group the ids by that count
+        // so that each group can be adjusted with the same statement
+        Map<Integer, Integer> occurrences = new HashMap<Integer, Integer>();
+        for (Integer id : ids)
+        {
+            Integer n = occurrences.get(id);
+            occurrences.put(id, new Integer(n == null ? 1 : n.intValue() + 1));
+        }
+
+        Map<Integer, List<Integer>> byCount = new HashMap<Integer, List<Integer>>();
+        for (Map.Entry<Integer, Integer> entry : occurrences.entrySet())
+        {
+            List<Integer> group = byCount.get(entry.getValue());
+            if (group == null)
+            {
+                group = new ArrayList<Integer>();
+                byCount.put(entry.getValue(), group);
+            }
+            group.add(entry.getKey());
+        }
+
+        for (Map.Entry<Integer, List<Integer>> entry : byCount.entrySet())
+        {
+            List<Integer> group = entry.getValue();
+            for (int start = 0; start < group.size(); start += BATCH_SIZE)
+            {
+                List<Integer> chunk = group.subList(start, Math.min(group.size(), start + BATCH_SIZE));
+
+                List<Object> params = new ArrayList<Object>();
+                params.add(new Integer(delta * entry.getKey().intValue()));
+                params.addAll(chunk);
+
+                DatabaseManager.updateQuery(context, "UPDATE " + table + " SET ref_count = ref_count + ? WHERE id IN (" +
+                        placeholders(chunk.size()) + ")", params.toArray());
+            }
+        }
+    }
+
+    /**
+     * Remove those of the given distinct values which are no longer referenced
+     * by any item.
+     *
+     * @param table     the distinct value table
+     * @param ids       the ids of the distinct values that may have become orphans
+     * @throws SQLException
+     */
+    void deleteUnreferenced(String table, List<Integer> ids) throws SQLException
+    {
+        int deleted = 0;
+        for (int start = 0; start < ids.size(); start += BATCH_SIZE)
+        {
+            List<Integer> chunk = ids.subList(start, Math.min(ids.size(), start + BATCH_SIZE));
+
+            deleted += DatabaseManager.updateQuery(context, "DELETE FROM " + table + " WHERE ref_count <= 0 AND id IN (" +
+                    placeholders(chunk.size()) + ")", chunk.toArray());
+        }
+
+        adjustCount(table, -deleted);
+    }
+
+    /**
+     * Record that the given number of rows were added to (or, if negative,
+     * removed from) the table.  The change is appended to BrowseCountDelta
+     * rather than applied to the table's BrowseCount row, so that concurrent
+     * indexing never waits on, or deadlocks over, a single row; readers add
+     * the deltas to the total.  Every so often the committed deltas are
+     * folded into the total, so that readers only ever have a few to add.
+     *
+     * @param table     the browse table
+     * @param delta     the number of rows inserted (or, if negative, deleted)
+     * @throws SQLException
+     */
+    void adjustCount(String table, int delta) throws SQLException
+    {
+        if (delta == 0)
+        {
+            return;
+        }
+
+        String nextID = oracle ? "browsecountdelta_seq.nextval" : "getnextid('browsecountdelta')";
+        DatabaseManager.updateQuery(context,
+                "INSERT INTO BrowseCountDelta (delta_id, table_name, delta) " +
+                "VALUES (" + nextID + ", ?, ?)", table, new Integer(delta));
+
+        if (dueForFold(table))
+        {
+            fold(table);
+        }
+    }
+
+    /**
+     * Note another delta for the table.
+     *
+     * @param table     the browse table
+     * @return  true if enough deltas have been recorded that they should be folded
+     */
+    private static boolean dueForFold(String table)
+    {
+        synchronized (unfolded)
+        {
+            Integer n = unfolded.get(table);
+            int count = (n == null ? 1 : n.intValue() + 1);
+            if (count < FOLD_INTERVAL)
+            {
+                unfolded.put(table, new Integer(count));
+                return false;
+            }
+
+            unfolded.remove(table);
+            return true;
+        }
+    }
+
+    /**
+     * Add the table's committed deltas to its BrowseCount total and delete
+     * them.  This runs in its own short transaction, so that the total is
+     * locked only for the fold and not for the rest of the caller's.  The
+     * rows are locked without waiting, so that folds never queue behind one
+     * another or behind a recount; if anything is locked, the fold is left
+     * for next time.
+     *
+     * @param table     the browse table
+     */
+    private void fold(String table)
+    {
+        Context c = null;
+        try
+        {
+            c = new Context();
+
+            TableRowIterator tri = DatabaseManager.query(c,
+                    "SELECT total FROM BrowseCount WHERE table_name = ? FOR UPDATE NOWAIT", table);
+            try
+            {
+                if (!tri.hasNext())
+                {
+                    return;
+                }
+            }
+            finally
+            {
+                tri.close();
+            }
+
+            List<Integer> ids = new ArrayList<Integer>();
+            long sum = 0;
+            tri = DatabaseManager.query(c,
+                    "SELECT delta_id, delta FROM BrowseCountDelta WHERE table_name = ? FOR UPDATE NOWAIT", table);
+            try
+            {
+                while (tri.hasNext())
+                {
+                    TableRow row = tri.next();
+                    ids.add(new Integer(row.getIntColumn("delta_id")));
+                    sum += row.getIntColumn("delta");
+                }
+            }
+            finally
+            {
+                tri.close();
+            }
+
+            if (ids.isEmpty())
+            {
+                return;
+            }
+
+            DatabaseManager.updateQuery(c, "UPDATE BrowseCount SET total = total + ? WHERE table_name = ?",
+                    new Long(sum), table);
+
+            int[] folded = toArray(ids);
+            for (int start = 0; start < folded.length; start += BATCH_SIZE)
+            {
+                Object[] chunk = toParams(folded, start);
+                DatabaseManager.updateQuery(c, "DELETE FROM BrowseCountDelta " +
+                        "WHERE delta_id IN (" + placeholders(chunk.length) + ")", chunk);
+            }
+
+            c.complete();
+        }
+        catch (SQLException e)
+        {
+            log.debug("Not folding the counts for " + table + " this time", e);
+        }
+        finally
+        {
+            if (c != null && c.isValid())
+            {
+                c.abort();
+            }
+        }
+    }
+
+    /**
+     * Start the count for a newly created table at zero, discarding anything
+     * recorded under its name before.  Creating the row here means that
+     * nothing else ever has to insert it, which two indexers could otherwise
+     * try to do at once.
+     *
+     * @param table     the browse table
+     * @throws SQLException
+     */
+    void resetCount(String table) throws SQLException
+    {
+        clearCount(table);
+        DatabaseManager.updateQuery(context,
+                "INSERT INTO BrowseCount (table_name, total) VALUES (?, 0)", table);
+    }
+
+    /**
+     * Forget the count for a table that is going away.
+     *
+     * @param table     the browse table
+     * @throws SQLException
+     */
+    void clearCount(String table) throws SQLException
+    {
+        DatabaseManager.updateQuery(context, "DELETE FROM BrowseCount WHERE table_name = ?", table);
+        DatabaseManager.updateQuery(context, "DELETE FROM BrowseCountDelta WHERE table_name = ?", table);
+    }
+
+    /**
+     * Fold the table's deltas into its BrowseCount total, by deleting them
+     * and setting the total from the rows actually in the table.  Only the
+     * deltas that were read are deleted, so that any committed meanwhile are
+     * kept.  This runs when the indexes are pruned, which is meant to be
+     * scheduled.
+     *
+     * @param table     the browse table
+     * @throws SQLException
+     */
+    void recount(String table) throws SQLException
+    {
+        List<Integer> ids = new ArrayList<Integer>();
+
+        TableRowIterator tri = DatabaseManager.query(context,
+                "SELECT delta_id FROM BrowseCountDelta WHERE table_name = ?", table);
+        try
+        {
+            while (tri.hasNext())
+            {
+                ids.add(new Integer(tri.next().getIntColumn("delta_id")));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+
+        int[] folded = new int[ids.size()];
+        for (int i = 0; i < folded.length; i++)
+        {
+            folded[i] = ids.get(i).intValue();
+        }
+
+        for (int start = 0; start < folded.length; start += BATCH_SIZE)
+        {
+            Object[] chunk = toParams(folded, start);
+            DatabaseManager.updateQuery(context, "DELETE FROM BrowseCountDelta " +
+                    "WHERE delta_id IN (" + placeholders(chunk.length) + ")", chunk);
+        }
+
+        // Counting and subtracting the remaining deltas in one statement sees
+        // each concurrent writer's rows and delta together, or neither
+        String correct = "(SELECT COUNT(*) FROM " + table + ") - " +
+                "(SELECT COALESCE(SUM(delta), 0) FROM BrowseCountDelta WHERE table_name = ?)";
+
+        int updated = DatabaseManager.updateQuery(context,
+                "UPDATE BrowseCount SET total = " + correct + " WHERE table_name = ?", table, table);
+
+        if (updated == 0)
+        {
+            DatabaseManager.updateQuery(context,
+                    "INSERT INTO BrowseCount (table_name, total) SELECT ?, " + correct +
+                    (oracle ? " FROM dual" : ""), table, table);
+        }
+    }
+
+    /**
+     * Adjust the cached counts of collections by the given amounts, and
+     * roll the changes up to every community above those collections.
+     * Containers which have no cached count yet are counted in full.
+     *
+     * @param dao               the item count DAO, to store full counts through
+     * @param collectionDeltas  map of collection ids to the change in their counts
+     * @throws SQLException
+     * @throws ItemCountException
+     */
+    void applyItemCountDeltas(ItemCountDAO dao, Map<Integer, Integer> collectionDeltas)
+        throws SQLException, ItemCountException
+    {
+        if (collectionDeltas.isEmpty())
+        {
+            return;
+        }
+
+        Set<Integer> missing = adjust("collection_item_count", "collection_id", collectionDeltas);
+        CollectionDAO collectionDAO = CollectionDAOFactory.getInstance(context);
+        for (Integer id : missing)
+        {
+            org.dspace.content.Collection collection = collectionDAO.retrieve(id.intValue());
+            if (collection != null)
+            {
+                dao.collectionCount(collection, collectionDAO.itemCount(collection));
+            }
+        }
+
+        // the parent of every community, so that we can walk up the hierarchy
+        Map<Integer, List<Integer>> parents = new HashMap<Integer, List<Integer>>();
+        TableRowIterator tri = DatabaseManager.query(context, "SELECT child_comm_id, parent_comm_id FROM community2community");
+        try
+        {
+            while (tri.hasNext())
+            {
+                TableRow row = tri.next();
+                addTo(parents, row.getIntColumn("child_comm_id"), row.getIntColumn("parent_comm_id"));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+
+        // the communities each of the collections is directly in
+        Map<Integer, List<Integer>> owners = new HashMap<Integer, List<Integer>>();
+        List<Integer> ids = new ArrayList<Integer>(collectionDeltas.keySet());
+        tri = DatabaseManager.query(context, "SELECT community_id, collection_id FROM community2collection " +
+                "WHERE collection_id IN (" + placeholders(ids.size()) + ")", ids.toArray());
+        try
+        {
+            while (tri.hasNext())
+            {
+                TableRow row = tri.next();
+                addTo(owners, row.getIntColumn("collection_id"), row.getIntColumn("community_id"));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+
+        // a community's count is the sum of the counts of the collections below it
+        Map<Integer, Integer> communityDeltas = new HashMap<Integer, Integer>();
+        for (Map.Entry<Integer, Integer> entry : collectionDeltas.entrySet())
+        {
+            Set<Integer> ancestors = new HashSet<Integer>();
+            LinkedList<Integer> queue = new LinkedList<Integer>();
+            if (owners.containsKey(entry.getKey()))
+            {
+                queue.addAll(owners.get(entry.getKey()));
+            }
+
+            while (!queue.isEmpty())
+            {
+                Integer community = queue.removeFirst();
+                if (ancestors.add(community) && parents.containsKey(community))
+                {
+                    queue.addAll(parents.get(community));
+                }
+            }
+
+            for (Integer community : ancestors)
+            {
+                Integer delta = communityDeltas.get(community);
+                int sum = entry.getValue().intValue() + (delta == null ? 0 : delta.intValue());
+                communityDeltas.put(community, new Integer(sum));
+            }
+        }
+
+        missing = adjust("community_item_count", "community_id", communityDeltas);
+        CommunityDAO communityDAO = CommunityDAOFactory.getInstance(context);
+        for (Integer id : missing)
+        {
+            Community community = communityDAO.retrieve(id.intValue());
+            if (community != null)
+            {
+                dao.communityCount(community, communityDAO.itemCount(community));
+            }
+        }
+    }
+
+    /**
+     * Add the deltas to the counts in the given table.  Containers with the
+     * same delta are updated together, so in the usual case of a single item
+     * changing this is one statement.
+     *
+     * @param table     the count table
+     * @param column    the container id column
+     * @param deltas    map of container ids to the change in their counts
+     * @return          the ids of the containers which had no count to adjust
+     * @throws SQLException
+     */
+    private Set<Integer> adjust(String table, String column, Map<Integer, Integer> deltas)
+        throws SQLException
+    {
+        Map<Integer, List<Integer>> byDelta = new HashMap<Integer, List<Integer>>();
+        for (Map.Entry<Integer, Integer> entry : deltas.entrySet())
+        {
+            if (entry.getValue().intValue() != 0)
+            {
+                addTo(byDelta, entry.getValue().intValue(), entry.getKey().intValue());
+            }
+        }
+
+        Set<Integer> missing = new HashSet<Integer>();
+        for (Map.Entry<Integer, List<Integer>> entry : byDelta.entrySet())
+        {
+            List<Integer> ids = entry.getValue();
+            List<Object> params = new ArrayList<Object>();
+            params.add(entry.getKey());
+            params.addAll(ids);
+
+            int updated = DatabaseManager.updateQuery(context, "UPDATE " + table + " SET count = count + ? " +
+                    "WHERE " + column + " IN (" + placeholders(ids.size()) + ")", params.toArray());
+
+            if (updated < ids.size())
+            {
+                missing.addAll(ids);
+                TableRowIterator tri = DatabaseManager.query(context, "SELECT " + column + " FROM " + table +
+                        " WHERE " + column + " IN (" + placeholders(ids.size()) + ")", ids.toArray());
+                try
+                {
+                    while (tri.hasNext())
+                    {
+                        missing.remove(new Integer(tri.next().getIntColumn(column)));
+                    }
+                }
+                finally
+                {
+                    tri.close();
+                }
+            }
+        }
+
+        return missing;
+    }
+
+    private static void addTo(Map<Integer, List<Integer>> map, int key, int value)
+    {
+        List<Integer> list = map.get(new Integer(key));
+        if (list == null)
+        {
+            list = new ArrayList<Integer>();
+            map.put(new Integer(key), list);
+        }
+        list.add(new Integer(value));
+    }
+
+    /**
+     * @param count     the number of parameters
+     * @return  a comma separated list of that many parameter markers
+     */
+    static String placeholders(int count)
+    {
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < count; i++)
+        {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param ids       the ids
+     * @param start     the position to start from
+     * @return  up to BATCH_SIZE of the ids, from the given position, as query parameters
+     */
+    static Object[] toParams(int[] ids, int start)
+    {
+        Object[] params = new Object[Math.min(ids.length - start, BATCH_SIZE)];
+        for (int i = 0; i < params.length; i++)
+        {
+            params[i] = new Integer(ids[start + i]);
+        }
+        return params;
+    }
+
+    /**
+     * @param ids       a collection of ids
+     * @return  the ids as an array
+     */
+    static int[] toArray(Collection<Integer> ids)
+    {
+        int[] arr = new int[ids.size()];
+        int i = 0;
+        for (Integer id : ids)
+        {
+            arr[i++] = id.intValue();
+        }
+        return arr;
+    }
+}
@@ -288,9 +288,13 @@ public class BrowseEngine
                 }
             }
 
+            // carry on from the last item of the previous page if we know it,
+            // in which case the offset is only used to number the results
+            dao.setSeek(scope.getSeekValue(), scope.getSeekID());
+
             int offset = scope.getOffset();
             String rawFocusValue = null;
-            if (offset < 1 && (scope.hasJumpToItem() || scope.hasJumpToValue() || scope.hasStartsWith()))
+            if (!scope.hasSeek() && offset < 1 && (scope.hasJumpToItem() || scope.hasJumpToValue() || scope.hasStartsWith()))
             {
                 // We need to convert these to an offset for the actual browse query.
                 // First, get a value that we can look up in the ordering field
@@ -358,6 +362,7 @@ public class BrowseEngine
                         offset = 0;
 
                     // And rerun the query
+                    dao.setSeek(null, -1);
                     dao.setOffset(offset);
                     results = dao.doQuery();
                 }
@@ -375,6 +380,7 @@ public class BrowseEngine
             if (offset + scope.getResultsPerPage() < total)
             {
                 browseInfo.setNextOffset(offset + scope.getResultsPerPage());
+                browseInfo.setNextSeek(dao.getLastValue(), dao.getLastID());
             }
 
             if (offset - scope.getResultsPerPage() > -1)
@@ -485,9 +491,14 @@ public class BrowseEngine
             // - sort_value < myvalue
             // = sort_1 > myvalue
             dao.setJumpToField("sort_value");
+
+            // carry on from the last value of the previous page if we know it,
+            // in which case the offset is only used to number the results
+            dao.setSeek(scope.getSeekValue(), scope.getSeekID());
+
             int offset = scope.getOffset();
             String rawFocusValue = null;
-            if (offset < 1 && scope.hasJumpToValue() || scope.hasStartsWith())
+            if (!scope.hasSeek() && (offset < 1 && scope.hasJumpToValue() || scope.hasStartsWith()))
             {
                 String focusValue = getJumpToValue();
 
@@ -535,6 +546,7 @@ public class BrowseEngine
                         offset = 0;
 
                     // And rerun the query
+                    dao.setSeek(null, -1);
                     dao.setOffset(offset);
                     results = dao.doValueQuery();
                 }
@@ -551,6 +563,7 @@ public class BrowseEngine
             if (offset + scope.getResultsPerPage() < total)
             {
                 browseInfo.setNextOffset(offset + scope.getResultsPerPage());
+                browseInfo.setNextSeek(dao.getLastValue(), dao.getLastID());
             }
 
             if (offset - scope.getResultsPerPage() > -1)
@@ -116,6 +116,10 @@ public class BrowseInfo
 
     /** offset of the item at the top of the previous page */
     private int prevOffset = -1;
+
+    /** sort value and id of the last result, to start the next page after */
+    private String nextSeekValue;
+    private int nextSeekID = -1;
 	
 	/** the value upon which we are focussing */
 	private String focus;
@@ -338,6 +342,33 @@ public class BrowseInfo
     {
     	return this.nextOffset;
     }
+
+    /**
+     * @param value	the sort value of the last result on this page
+     * @param id	the id of the last result on this page
+     */
+    public void setNextSeek(String value, int id)
+    {
+        this.nextSeekValue = value;
+        this.nextSeekID = id;
+    }
+
+    /**
+     * @return		the sort value to pass to BrowserScope.setSeek for the next page
+     */
+    public String getNextSeekValue()
+    {
+        return this.nextSeekValue;
+    }
+
+    /**
+     * @return		the id to pass to BrowserScope.setSeek for the next page, or -1
+     * 				if the next page can only be reached by offset
+     */
+    public int getNextSeekID()
+    {
+        return this.nextSeekID;
+    }
     
    /**
 	 * @return Returns the ascending.
@@ -0,0 +1,955 @@
+/*
+ * BrowseRebuilder.java
+ *
+ * Version: $Revision: $
+ *
+ * Date: $Date:  $
+ *
+ * Copyright (c) 2002-2007, Hewlett-Packard Company and Massachusetts
+ * Institute of Technology.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * - Neither the name of the Hewlett-Packard Company nor the name of the
+ * Massachusetts Institute of Technology nor the names of their
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package org.dspace.browse;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.dspace.content.Item;
+import org.dspace.content.dao.ItemDAO;
+import org.dspace.content.dao.ItemDAOFactory;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+import org.dspace.sort.OrderFormat;
+import org.dspace.sort.SortException;
+import org.dspace.sort.SortOption;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+/**
+ * Rebuilds every browse table from scratch, for use when the whole archive has
+ * to be reindexed.  Rather than loading and indexing the items one at a time,
+ * as IndexBrowse does, this:
+ * 
+ * <ul>
+ * <li>reads the metadata of all the archived and withdrawn items in a single
+ * query, ordered by item</li>
+ * <li>hands the items out in batches to a pool of worker threads, which work
+ * out the sort and distinct values using the OrderFormat delegates</li>
+ * <li>writes the results, in item order, into empty copies of the browse tables
+ * using JDBC batches, with primary keys reserved from the live tables' sequences</li>
+ * <li>builds the indices on the copies once all the rows are in, and finally
+ * swaps them in for the live tables</li>
+ * </ul>
+ * 
+ * The live tables are untouched until the swap, so browsing carries on as normal
+ * while the rebuild runs.  On PostgreSQL the swap happens within a single
+ * transaction; Oracle commits each DDL statement, so there the tables are
+ * swapped one after another.  Items changed while the rebuild is running are
+ * indexed into the live tables, which are then replaced, so once it is done
+ * the caller indexes those items again; {@link #getChangedItems} lists them.
+ * 
+ * The number of worker threads is set by <code>browse.rebuild.threads</code>
+ * in dspace.cfg, and defaults to the number of processors available.
+ */
+public class BrowseRebuilder
+{
+    /** log4j category */
+    private static Logger log = Logger.getLogger(BrowseRebuilder.class);
+
+    /** appended to the name of a live table to give the name of its copy */
+    private static final String SHADOW = "_new";
+
+    /** number of items handed to a worker thread at a time */
+    private static final int ITEMS_PER_TASK = 200;
+
+    /** number of rows to fetch from the database at a time */
+    private static final int FETCH_SIZE = 1000;
+
+    /** number of rows to send to the database in one JDBC batch */
+    private static final int BATCH_SIZE = 1000;
+
+    /** the table mapping items to all the communities above them */
+    private static final String COMMUNITY_MAPPINGS = "Communities2Item";
+
+    /** the metadata of every item which belongs in the browse tables */
+    private static final String ITEM_METADATA_QUERY =
+        "SELECT item.item_id, item.in_archive, item.withdrawn, " +
+        "metadatavalue.metadata_field_id, metadatavalue.text_value, metadatavalue.text_lang " +
+        "FROM item LEFT OUTER JOIN metadatavalue ON metadatavalue.item_id = item.item_id " +
+        "WHERE item.in_archive = ? OR item.withdrawn = ? " +
+        "ORDER BY item.item_id, metadatavalue.metadata_field_id, metadatavalue.place";
+
+    /** DSpace context */
+    private Context context;
+
+    /** the configured browse indices */
+    private BrowseIndex[] bis;
+
+    /** the configured sort options */
+    private SortOption[] sortOptions;
+
+    /** the DAO for write operations on the database */
+    private BrowseCreateDAO dao;
+
+    /** truncates values to fit the browse columns */
+    private BrowseDAOUtils utils;
+
+    /** the outputter class */
+    private BrowseOutput output;
+
+    /** number of worker threads */
+    private int threads;
+
+    /** the metadata field ids which feed each sort option */
+    private Set<Integer>[] sortFields;
+
+    /** the metadata field ids which feed each browse index (null if it isn't a metadata index) */
+    private Set<Integer>[] indexFields;
+
+    /** the distinct values written so far for each browse index, mapped to their ids */
+    private Map<String, Integer>[] distinctIDs;
+
+    /** when the rebuild started reading the items */
+    private Date started;
+
+    /**
+     * Create a new rebuilder.  The browse indices must already have had their
+     * metadata bits generated.
+     * 
+     * @param context	the DSpace context to do the rebuild with
+     * @param bis		the browse indices to build
+     * @param output	where to report progress
+     * @throws BrowseException
+     */
+    public BrowseRebuilder(Context context, BrowseIndex[] bis, BrowseOutput output)
+        throws BrowseException
+    {
+        this.context = context;
+        this.bis = bis;
+        this.output = output;
+        this.dao = BrowseDAOFactory.getCreateInstance(context);
+        this.utils = BrowseDAOFactory.getUtils(context);
+
+        threads = ConfigurationManager.getIntProperty("browse.rebuild.threads");
+        if (threads < 1)
+        {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    /**
+     * Rebuild all the browse tables.  The live tables must already exist, as
+     * the sequences they use provide the ids for the new rows.
+     * 
+     * @return	the number of items indexed
+     * @throws BrowseException
+     */
+    public int rebuild() throws BrowseException
+    {
+        try
+        {
+            started = new Date();
+
+            sortOptions = SortOption.getSortOptions().toArray(new SortOption[0]);
+            List<Integer> sortCols = new ArrayList<Integer>();
+            for (SortOption so : sortOptions)
+            {
+                sortCols.add(new Integer(so.getNumber()));
+            }
+
+            mapFields();
+
+            output.message("Creating new browse tables");
+            createShadowTables(sortCols);
+            context.commit();
+
+            output.message("Loading new browse tables using " + threads + " threads");
+            int count;
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try
+            {
+                count = load(pool);
+            }
+            finally
+            {
+                pool.shutdownNow();
+            }
+
+            output.message("Indexing new browse tables");
+            createShadowIndices(sortCols);
+
+            output.message("Rebuilding community mappings");
+            rebuildCommunityMappings();
+
+            output.message("Replacing browse tables");
+            swapTables();
+            context.commit();
+
+            return count;
+        }
+        catch (SortException se)
+        {
+            throw new BrowseException("Error in SortOptions", se);
+        }
+        catch (SQLException e)
+        {
+            log.error("caught exception: ", e);
+            throw new BrowseException(e);
+        }
+    }
+
+    /**
+     * List the items which have been modified since the rebuild started.  The
+     * rebuild loaded them as they were when it read them, and any changes made
+     * since went to the tables it replaced, so they have to be indexed again.
+     * Items deleted meanwhile are not listed; pruning the indexes drops them.
+     * 
+     * @return  the items changed since the rebuild started
+     * @throws BrowseException
+     */
+    public List<Item> getChangedItems() throws BrowseException
+    {
+        List<Item> items = new ArrayList<Item>();
+        if (started == null)
+        {
+            return items;
+        }
+
+        ItemDAO itemDAO = ItemDAOFactory.getInstance(context);
+        try
+        {
+            TableRowIterator tri = DatabaseManager.query(context,
+                    "SELECT item_id FROM item WHERE last_modified >= ?", new Timestamp(started.getTime()));
+            try
+            {
+                while (tri.hasNext())
+                {
+                    Item item = itemDAO.retrieve(tri.next().getIntColumn("item_id"));
+                    if (item != null)
+                    {
+                        items.add(item);
+                    }
+                }
+            }
+            finally
+            {
+                tri.close();
+            }
+        }
+        catch (SQLException e)
+        {
+            log.error("caught exception: ", e);
+            throw new BrowseException(e);
+        }
+
+        return items;
+    }
+
+    /**
+     * Work out which metadata fields feed each sort option and browse index,
+     * so that the workers can match values by field id alone.
+     */
+    @SuppressWarnings("unchecked")
+    private void mapFields() throws SQLException
+    {
+        sortFields = new Set[sortOptions.length];
+        indexFields = new Set[bis.length];
+        distinctIDs = new Map[bis.length];
+
+        for (int i = 0; i < sortOptions.length; i++)
+        {
+            sortFields[i] = new HashSet<Integer>();
+        }
+
+        for (int i = 0; i < bis.length; i++)
+        {
+            if (bis[i].isMetadataIndex())
+            {
+                indexFields[i] = new HashSet<Integer>();
+                distinctIDs[i] = new HashMap<String, Integer>();
+            }
+        }
+
+        TableRowIterator tri = DatabaseManager.query(context,
+                "SELECT MetadataFieldRegistry.metadata_field_id, MetadataSchemaRegistry.short_id, " +
+                "MetadataFieldRegistry.element, MetadataFieldRegistry.qualifier " +
+                "FROM MetadataFieldRegistry, MetadataSchemaRegistry " +
+                "WHERE MetadataFieldRegistry.metadata_schema_id = MetadataSchemaRegistry.metadata_schema_id");
+
+        try
+        {
+            while (tri.hasNext())
+            {
+                TableRow row = tri.next();
+                Integer fieldID = new Integer(row.getIntColumn("metadata_field_id"));
+                String schema = row.getStringColumn("short_id");
+                String element = row.getStringColumn("element");
+                String qualifier = row.getStringColumn("qualifier");
+
+                for (int i = 0; i < sortOptions.length; i++)
+                {
+                    if (matches(sortOptions[i].getMdBits(), schema, element, qualifier))
+                    {
+                        sortFields[i].add(fieldID);
+                    }
+                }
+
+                for (int i = 0; i < bis.length; i++)
+                {
+                    if (indexFields[i] == null)
+                    {
+                        continue;
+                    }
+
+                    for (int mdIdx = 0; mdIdx < bis[i].getMetadataCount(); mdIdx++)
+                    {
+                        if (matches(bis[i].getMdBits(mdIdx), schema, element, qualifier))
+                        {
+                            indexFields[i].add(fieldID);
+                        }
+                    }
+                }
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+    }
+
+    /**
+     * Does the field match the given schema, element and qualifier, in the same
+     * way as Item.getMetadata(schema, element, qualifier, Item.ANY)?
+     */
+    private static boolean matches(String[] md, String schema, String element, String qualifier)
+    {
+        if (!Item.ANY.equals(md[0]) && !md[0].equals(schema))
+        {
+            return false;
+        }
+
+        if (!Item.ANY.equals(md[1]) && !md[1].equals(element))
+        {
+            return false;
+        }
+
+        if (md[2] == null)
+        {
+            return qualifier == null;
+        }
+
+        return Item.ANY.equals(md[2]) || md[2].equals(qualifier);
+    }
+
+    /**
+     * Create empty copies of all the browse tables, removing any left behind
+     * by an earlier rebuild which didn't complete.
+     */
+    private void createShadowTables(List<Integer> sortCols) throws BrowseException
+    {
+        String[] itemTables = getItemTables();
+        for (int i = 0; i < itemTables.length; i++)
+        {
+            dropShadow(itemTables[i]);
+            output.sql(dao.createPrimaryTable(itemTables[i] + SHADOW, sortCols, true));
+        }
+
+        for (int i = 0; i < bis.length; i++)
+        {
+            if (bis[i].isMetadataIndex())
+            {
+                String dis = bis[i].getDistinctTableName();
+                String map = bis[i].getMapTableName();
+
+                dropShadow(map);
+                dropShadow(dis);
+                output.sql(dao.createDistinctTable(dis + SHADOW, true));
+                output.sql(dao.createDistinctMap(dis + SHADOW, map + SHADOW, true));
+            }
+        }
+
+        // the community mappings are replaced too, so that the rebuild never
+        // empties the live table; the columns are as in database_schema.sql
+        dropShadow(COMMUNITY_MAPPINGS);
+        String create = "CREATE TABLE " + COMMUNITY_MAPPINGS + SHADOW + " (" +
+                        "id INTEGER PRIMARY KEY, " +
+                        "community_id INTEGER REFERENCES Community(community_id), " +
+                        "item_id INTEGER REFERENCES Item(item_id))";
+        try
+        {
+            DatabaseManager.updateQuery(context, create);
+            output.sql(create);
+        }
+        catch (SQLException e)
+        {
+            log.error("caught exception: ", e);
+            throw new BrowseException(e);
+        }
+    }
+
+    private void dropShadow(String table) throws BrowseException
+    {
+        if (dao.testTableExistance(table + SHADOW))
+        {
+            output.sql(dao.dropIndexAndRelated(table + SHADOW, true));
+        }
+    }
+
+    /**
+     * Create the indices on the copies of the browse tables, now that they are full.
+     */
+    private void createShadowIndices(List<Integer> sortCols) throws BrowseException
+    {
+        String[] itemTables = getItemTables();
+        for (int i = 0; i < itemTables.length; i++)
+        {
+            outputSql(dao.createDatabaseIndices(itemTables[i] + SHADOW, sortCols, false, true));
+        }
+
+        for (int i = 0; i < bis.length; i++)
+        {
+            if (bis[i].isMetadataIndex())
+            {
+                String dis = bis[i].getDistinctTableName() + SHADOW;
+                String map = bis[i].getMapTableName() + SHADOW;
+
+                outputSql(dao.createMapIndices(dis, map, true));
+
+                // fills in the reference counts, which were written as zero
+                dao.pruneDistinct(dis, map);
+            }
+        }
+    }
+
+    /**
+     * Replace the live browse tables with the copies.
+     */
+    private void swapTables() throws BrowseException
+    {
+        String[] itemTables = getItemTables();
+        for (int i = 0; i < itemTables.length; i++)
+        {
+            dao.swapTable(itemTables[i], itemTables[i] + SHADOW);
+        }
+
+        for (int i = 0; i < bis.length; i++)
+        {
+            if (bis[i].isMetadataIndex())
+            {
+                String dis = bis[i].getDistinctTableName();
+                String map = bis[i].getMapTableName();
+
+                dao.swapTable(dis, dis + SHADOW);
+                dao.swapTable(map, map + SHADOW);
+            }
+        }
+
+        dao.swapTable(COMMUNITY_MAPPINGS, COMMUNITY_MAPPINGS + SHADOW);
+    }
+
+    private String[] getItemTables()
+    {
+        return new String[] { BrowseIndex.getItemBrowseIndex().getTableName(),
+                              BrowseIndex.getWithdrawnBrowseIndex().getTableName() };
+    }
+
+    private void outputSql(String[] sql) throws BrowseException
+    {
+        for (int i = 0; i < sql.length; i++)
+        {
+            output.sql(sql[i]);
+        }
+    }
+
+    /**
+     * Stream the metadata of all the items, have the workers index them, and
+     * write the results to the copies of the browse tables.  The results are
+     * written in the order the batches were read, and only a few batches are
+     * allowed to be outstanding at a time so that the whole archive is never
+     * held in memory.
+     * 
+     * @return	the number of items indexed
+     */
+    private int load(ExecutorService pool) throws BrowseException, SQLException
+    {
+        LinkedList<Future<List<IndexedItem>>> pending = new LinkedList<Future<List<IndexedItem>>>();
+        int count = 0;
+
+        TableRowIterator tri = DatabaseManager.queryLarge(context, FETCH_SIZE,
+                ITEM_METADATA_QUERY, Boolean.TRUE, Boolean.TRUE);
+        try
+        {
+            List<ItemRecord> batch = new ArrayList<ItemRecord>(ITEMS_PER_TASK);
+            ItemRecord current = null;
+
+            while (tri.hasNext())
+            {
+                TableRow row = tri.next();
+                int itemID = row.getIntColumn("item_id");
+
+                if (current == null || current.id != itemID)
+                {
+                    if (batch.size() == ITEMS_PER_TASK)
+                    {
+                        pending.add(pool.submit(new Indexer(batch)));
+                        batch = new ArrayList<ItemRecord>(ITEMS_PER_TASK);
+
+                        while (pending.size() > threads * 2)
+                        {
+                            count += write(pending.removeFirst().get());
+                        }
+                    }
+
+                    current = new ItemRecord(itemID, row.getBooleanColumn("in_archive"),
+                            row.getBooleanColumn("withdrawn"));
+                    batch.add(current);
+                }
+
+                if (!row.isColumnNull("metadata_field_id"))
+                {
+                    current.add(row.getIntColumn("metadata_field_id"), row.getStringColumn("text_value"),
+                            row.getStringColumn("text_lang"));
+                }
+            }
+
+            if (!batch.isEmpty())
+            {
+                pending.add(pool.submit(new Indexer(batch)));
+            }
+
+            while (!pending.isEmpty())
+            {
+                count += write(pending.removeFirst().get());
+            }
+
+            return count;
+        }
+        catch (InterruptedException e)
+        {
+            throw new BrowseException("Interrupted while rebuilding the browse tables", e);
+        }
+        catch (ExecutionException e)
+        {
+            log.error("caught exception: ", e.getCause());
+            throw new BrowseException(e.getCause());
+        }
+        finally
+        {
+            tri.close();
+        }
+    }
+
+    /**
+     * Write a batch of indexed items to the copies of the browse tables.
+     * 
+     * @return	the number of items written
+     */
+    private int write(List<IndexedItem> items) throws SQLException
+    {
+        String itemTable = BrowseIndex.getItemBrowseIndex().getTableName();
+        String withdrawnTable = BrowseIndex.getWithdrawnBrowseIndex().getTableName();
+
+        String[] itemColumns = new String[sortOptions.length + 2];
+        itemColumns[0] = "id";
+        itemColumns[1] = "item_id";
+        for (int i = 0; i < sortOptions.length; i++)
+        {
+            itemColumns[i + 2] = "sort_" + sortOptions[i].getNumber();
+        }
+
+        List<Object[]> itemRows = new ArrayList<Object[]>();
+        List<Object[]> withdrawnRows = new ArrayList<Object[]>();
+
+        for (IndexedItem item : items)
+        {
+            Object[] row = new Object[itemColumns.length];
+            row[1] = new Integer(item.id);
+            for (int i = 0; i < sortOptions.length; i++)
+            {
+                row[i + 2] = utils.truncateSortValue(item.sortValues[i]);
+            }
+
+            (item.withdrawn ? withdrawnRows : itemRows).add(row);
+        }
+
+        insertRows(itemTable, itemColumns, itemRows);
+        insertRows(withdrawnTable, itemColumns, withdrawnRows);
+
+        for (int i = 0; i < bis.length; i++)
+        {
+            if (distinctIDs[i] != null)
+            {
+                writeDistinct(i, items);
+            }
+        }
+
+        return items.size();
+    }
+
+    /**
+     * Write the distinct values and mappings of a batch of items for one browse index.
+     */
+    private void writeDistinct(int index, List<IndexedItem> items) throws SQLException
+    {
+        Map<String, Integer> ids = distinctIDs[index];
+
+        // values seen for the first time, which need a row in the distinct table
+        Map<String, String> newValues = new LinkedHashMap<String, String>();
+        int mappings = 0;
+
+        for (IndexedItem item : items)
+        {
+            if (item.distinct[index] == null)
+            {
+                continue;
+            }
+
+            for (Map.Entry<String, String> entry : item.distinct[index].entrySet())
+            {
+                String value = utils.truncateValue(entry.getKey());
+                if (!ids.containsKey(value) && !newValues.containsKey(value))
+                {
+                    newValues.put(value, utils.truncateSortValue(entry.getValue()));
+                }
+                mappings++;
+            }
+        }
+
+        if (newValues.size() > 0)
+        {
+            String disTable = bis[index].getDistinctTableName();
+            int[] newIDs = DatabaseManager.getNextIDs(context, disTable, newValues.size());
+            List<Object[]> rows = new ArrayList<Object[]>(newValues.size());
+
+            int i = 0;
+            for (Map.Entry<String, String> entry : newValues.entrySet())
+            {
+                Integer id = new Integer(newIDs[i++]);
+                ids.put(entry.getKey(), id);
+                rows.add(new Object[] { id, entry.getKey(), entry.getValue(), new Integer(0) });
+            }
+
+            insertRows(disTable, new String[] { "id", "value", "sort_value", "ref_count" }, rows);
+        }
+
+        if (mappings > 0)
+        {
+            String mapTable = bis[index].getMapTableName();
+            int[] mapIDs = DatabaseManager.getNextIDs(context, mapTable, mappings);
+            List<Object[]> rows = new ArrayList<Object[]>(mappings);
+            Set<Integer> mapped = new HashSet<Integer>();
+
+            int i = 0;
+            for (IndexedItem item : items)
+            {
+                if (item.distinct[index] == null)
+                {
+                    continue;
+                }
+
+                mapped.clear();
+                for (String value : item.distinct[index].keySet())
+                {
+                    Integer distinctID = ids.get(utils.truncateValue(value));
+
+                    // two values may be the same once truncated
+                    if (mapped.add(distinctID))
+                    {
+                        rows.add(new Object[] { new Integer(mapIDs[i++]), new Integer(item.id), distinctID });
+                    }
+                }
+            }
+
+            insertRows(mapTable, new String[] { "map_id", "item_id", "distinct_id" }, rows);
+        }
+    }
+
+    /**
+     * Insert rows into the copy of the given table using JDBC batches.  Rows
+     * for the item tables are given their ids here; all others arrive with
+     * them set.
+     */
+    private void insertRows(String table, String[] columns, List<Object[]> rows) throws SQLException
+    {
+        if (rows.isEmpty())
+        {
+            return;
+        }
+
+        if (rows.get(0)[0] == null)
+        {
+            int[] ids = DatabaseManager.getNextIDs(context, table, rows.size());
+            for (int i = 0; i < ids.length; i++)
+            {
+                rows.get(i)[0] = new Integer(ids[i]);
+            }
+        }
+
+        for (int start = 0; start < rows.size(); start += BATCH_SIZE)
+        {
+            DatabaseManager.insertValues(context, table + SHADOW, columns,
+                    rows.subList(start, Math.min(rows.size(), start + BATCH_SIZE)));
+        }
+    }
+
+    /**
+     * Fill the copy of the community mappings for every archived item in one
+     * pass, rather than walking the community hierarchy once per item, and
+     * index it.
+     */
+    private void rebuildCommunityMappings() throws SQLException, BrowseException
+    {
+        Map<Integer, Integer> parents = new HashMap<Integer, Integer>();
+        TableRowIterator tri = DatabaseManager.query(context,
+                "SELECT child_comm_id, parent_comm_id FROM Community2Community");
+        try
+        {
+            while (tri.hasNext())
+            {
+                TableRow row = tri.next();
+                parents.put(new Integer(row.getIntColumn("child_comm_id")),
+                            new Integer(row.getIntColumn("parent_comm_id")));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+
+        tri = DatabaseManager.query(context,
+                "SELECT Community2Item.item_id, Community2Item.community_id FROM Community2Item, item " +
+                "WHERE Community2Item.item_id = item.item_id AND item.in_archive = ? AND item.withdrawn = ? " +
+                "ORDER BY Community2Item.item_id", Boolean.TRUE, Boolean.FALSE);
+        try
+        {
+            String[] columns = new String[] { "id", "item_id", "community_id" };
+            List<Object[]> rows = new ArrayList<Object[]>();
+            Set<Integer> communities = new HashSet<Integer>();
+            int lastItemID = -1;
+
+            while (tri.hasNext())
+            {
+                TableRow row = tri.next();
+                int itemID = row.getIntColumn("item_id");
+
+                if (itemID != lastItemID)
+                {
+                    communities.clear();
+                    lastItemID = itemID;
+
+                    if (rows.size() >= BATCH_SIZE)
+                    {
+                        insertRows(COMMUNITY_MAPPINGS, columns, rows);
+                        rows.clear();
+                    }
+                }
+
+                // the item belongs to the community and all its ancestors
+                Integer communityID = new Integer(row.getIntColumn("community_id"));
+                while (communityID != null && communities.add(communityID))
+                {
+                    rows.add(new Object[] { null, new Integer(itemID), communityID });
+
+                    communityID = parents.get(communityID);
+                }
+            }
+
+            insertRows(COMMUNITY_MAPPINGS, columns, rows);
+        }
+        finally
+        {
+            tri.close();
+        }
+
+        // the names must stay within Oracle's 30 characters
+        String[] indices = new String[] {
+            "CREATE INDEX " + COMMUNITY_MAPPINGS + SHADOW + "_item_idx ON " + COMMUNITY_MAPPINGS + SHADOW + " (item_id)",
+            "CREATE INDEX " + COMMUNITY_MAPPINGS + SHADOW + "_comm_idx ON " + COMMUNITY_MAPPINGS + SHADOW + " (community_id)"
+        };
+        for (int i = 0; i < indices.length; i++)
+        {
+            DatabaseManager.updateQuery(context, indices[i]);
+            output.sql(indices[i]);
+        }
+    }
+
+    /**
+     * The metadata of a single item, as read from the database.
+     */
+    private static class ItemRecord
+    {
+        int id;
+
+        boolean archived;
+
+        boolean withdrawn;
+
+        List<Integer> fields = new ArrayList<Integer>();
+
+        List<String> values = new ArrayList<String>();
+
+        List<String> languages = new ArrayList<String>();
+
+        ItemRecord(int id, boolean archived, boolean withdrawn)
+        {
+            this.id = id;
+            this.archived = archived;
+            this.withdrawn = withdrawn;
+        }
+
+        void add(int field, String value, String language)
+        {
+            fields.add(new Integer(field));
+            values.add(value);
+            languages.add(language);
+        }
+    }
+
+    /**
+     * The browse values of a single item, ready to be written.
+     */
+    private static class IndexedItem
+    {
+        int id;
+
+        boolean withdrawn;
+
+        /** the normalised value for each sort option, or null */
+        String[] sortValues;
+
+        /** for each metadata index, the item's values mapped to their sort values */
+        Map<String, String>[] distinct;
+    }
+
+    /**
+     * Works out the browse values for a batch of items.  This only touches the
+     * fields of the rebuilder which are fixed before the workers start.
+     */
+    private class Indexer implements Callable<List<IndexedItem>>
+    {
+        private List<ItemRecord> items;
+
+        Indexer(List<ItemRecord> items)
+        {
+            this.items = items;
+        }
+
+        @SuppressWarnings("unchecked")
+        public List<IndexedItem> call()
+        {
+            List<IndexedItem> indexed = new ArrayList<IndexedItem>(items.size());
+
+            for (ItemRecord record : items)
+            {
+                IndexedItem item = new IndexedItem();
+                item.id = record.id;
+                item.withdrawn = record.withdrawn;
+                item.sortValues = new String[sortOptions.length];
+                item.distinct = new Map[bis.length];
+
+                // we only use the first value of each sort option's field
+                for (int i = 0; i < sortOptions.length; i++)
+                {
+                    for (int v = 0; v < record.fields.size(); v++)
+                    {
+                        if (sortFields[i].contains(record.fields.get(v)))
+                        {
+                            item.sortValues[i] = OrderFormat.makeSortString(record.values.get(v),
+                                    record.languages.get(v), sortOptions[i].getType());
+                            break;
+                        }
+                    }
+                }
+
+                // the metadata indices only hold items which are in the archive
+                if (record.archived && !record.withdrawn)
+                {
+                    for (int i = 0; i < bis.length; i++)
+                    {
+                        if (indexFields[i] == null)
+                        {
+                            continue;
+                        }
+
+                        for (int v = 0; v < record.fields.size(); v++)
+                        {
+                            if (!indexFields[i].contains(record.fields.get(v)))
+                            {
+                                continue;
+                            }
+
+                            String value = record.values.get(v);
+                            if (StringUtils.isEmpty(value))
+                            {
+                                log.error("Null metadata value for item " + record.id +
+                                        ", field id: " + record.fields.get(v));
+                            }
+                            else
+                            {
+                                if (item.distinct[i] == null)
+                                {
+                                    item.distinct[i] = new LinkedHashMap<String, String>();
+                                }
+
+                                if (!item.distinct[i].containsKey(value))
+                                {
+                                    item.distinct[i].put(value, OrderFormat.makeSortString(value,
+                                            record.languages.get(v), bis[i].getDataType()));
+                                }
+                            }
+                        }
+                    }
+                }
+
+                indexed.add(item);
+            }
+
+            return indexed;
+        }
+    }
+}
@@ -110,6 +110,10 @@ public class BrowserScope
     /** the number of items to offset into the result ie. 0 = 1st record */
     private int offset = 0;
 
+    /** the sort value and id of the last result on the previous page */
+    private String seekValue;
+    private int seekID = -1;
+
 	/**
 	 * Construct a new BrowserScope using the given Context 
 	 * 
@@ -417,6 +421,39 @@ public class BrowserScope
         this.offset = offset;
     }
 
+    /**
+     * Continue the browse from the result after the given one, as an alternative
+     * to the offset which doesn't get slower the further into the browse it is.
+     * The offset should still be set to the position of that result, so that the
+     * page can be numbered, but is not used to find the results.
+     * 
+     * @param value the sort value of the last result on the previous page, as
+     *              given by BrowseInfo.getNextSeekValue()
+     * @param id    the id of the last result on the previous page, as given
+     *              by BrowseInfo.getNextSeekID()
+     */
+    public void setSeek(String value, int id)
+    {
+        this.seekValue = value;
+        this.seekID = id;
+    }
+
+    /**
+     * @return the sort value of the result to continue the browse after
+     */
+    public String getSeekValue()
+    {
+        return seekValue;
+    }
+
+    /**
+     * @return the id of the result to continue the browse after, or -1
+     */
+    public int getSeekID()
+    {
+        return seekID;
+    }
+
 	/**
 	 * Obtain the sort option
 	 * 
@@ -645,4 +682,16 @@ public class BrowserScope
 		}
 		return false;
 	}
+	
+	/**
+	 * @return	true if continuing from a previous result, false if not
+	 */
+	public boolean hasSeek()
+	{
+		if (seekID == -1)
+		{
+			return false;
+		}
+		return true;
+	}
 }
@@ -38,9 +38,11 @@ package org.dspace.browse;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -306,9 +308,21 @@ public class IndexBrowse
     }
 
     /**
-     * Prune indexes - called from the public interfaces or at the end of a batch indexing process
+     * Remove all the mappings for the given item from the given metadata index
      */
-    private void pruneIndexes() throws BrowseException
+    private void removeDistinctIndex(int itemID, BrowseIndex bi)
+        throws BrowseException
+    {
+        dao.deleteDistinctMappings(bi.getDistinctTableName(), bi.getMapTableName(), itemID);
+    }
+
+    /**
+     * Prune indexes - removes index entries for items which are no longer in the
+     * archive, and distinct values which are no longer used.  This scans every
+     * browse table, so it is run at the end of a batch indexing process or as a
+     * scheduled job, rather than each time an item changes.
+     */
+    public void pruneIndexes() throws BrowseException
     {
         // go over the indices and prune
         for (int i = 0; i < bis.length; i++)
@@ -346,10 +360,169 @@ public class IndexBrowse
         if (item.isArchived() || item.isWithdrawn())
         {
             indexItem(new ItemMetadataProxy(item));
+        }
+    }
+    
+    /**
+     * Index a number of items at once.  This has the same effect as calling
+     * indexItem for each of them, but works on each browse table once for the
+     * whole set rather than once per item: the items' rows are deleted and
+     * re-inserted in bulk, their community mappings are refreshed together,
+     * and only the distinct values they no longer use are pruned.
+     * 
+     * @param items	the items to index
+     * @throws BrowseException
+     */
+    public void indexItems(Collection<Item> items)
+        throws BrowseException
+    {
+        // As with indexItem, items which are neither archived nor withdrawn
+        // have never been in the browse tables, so are skipped
+        List<Item> archived = new ArrayList<Item>();
+        List<Item> withdrawn = new ArrayList<Item>();
 
-            // Ensure that we remove any invalid entries
-            pruneIndexes();
+        for (Item item : items)
+        {
+            if (item.isWithdrawn())
+            {
+                withdrawn.add(item);
+            }
+            else if (item.isArchived())
+            {
+                archived.add(item);
+            }
+        }
+
+        if (archived.isEmpty() && withdrawn.isEmpty())
+        {
+            return;
+        }
+
+        try
+        {
+            Map<Integer, Map<Integer, String>> archivedSort = new HashMap<Integer, Map<Integer, String>>();
+            for (Item item : archived)
+            {
+                archivedSort.put(new Integer(item.getID()), getSortValues(new ItemMetadataProxy(item), null));
+            }
+
+            Map<Integer, Map<Integer, String>> withdrawnSort = new HashMap<Integer, Map<Integer, String>>();
+            for (Item item : withdrawn)
+            {
+                withdrawnSort.put(new Integer(item.getID()), getSortValues(new ItemMetadataProxy(item), null));
+            }
+
+            int[] archivedIDs = getIDs(archived);
+            int[] withdrawnIDs = getIDs(withdrawn);
+            int[] allIDs = new int[archivedIDs.length + withdrawnIDs.length];
+            System.arraycopy(archivedIDs, 0, allIDs, 0, archivedIDs.length);
+            System.arraycopy(withdrawnIDs, 0, allIDs, archivedIDs.length, withdrawnIDs.length);
+
+            // An item may have moved between the archived and withdrawn tables,
+            // so clear it out of both before putting it back in the right one
+            String itemTable = BrowseIndex.getItemBrowseIndex().getTableName();
+            String withdrawnTable = BrowseIndex.getWithdrawnBrowseIndex().getTableName();
+
+            dao.deleteByItemIDs(itemTable, allIDs);
+            dao.deleteByItemIDs(withdrawnTable, allIDs);
+            dao.insertIndices(itemTable, archivedSort);
+            dao.insertIndices(withdrawnTable, withdrawnSort);
+
+            dao.updateCommunityMappings(archivedIDs);
+            dao.deleteCommunityMappings(withdrawnIDs);
+
+            // Now update the metadata indexes
+            for (int i = 0; i < bis.length; i++)
+            {
+                if (bis[i].isMetadataIndex())
+                {
+                    log.debug("Indexing " + allIDs.length + " items for index: " + bis[i].getTableName());
+                    indexDistinct(bis[i], archived, withdrawnIDs);
+                }
+            }
+        }
+        catch (SQLException e)
+        {
+            log.error("caught exception: ", e);
+            throw new BrowseException(e);
+        }
+    }
+
+    /**
+     * Update the distinct value mappings of a metadata index for a set of items.
+     * 
+     * @param bi            the metadata index
+     * @param archived      the items in the archive, which are to be mapped to their values
+     * @param withdrawnIDs  the ids of withdrawn items, which are to lose all their mappings
+     * @throws BrowseException
+     */
+    private void indexDistinct(BrowseIndex bi, List<Item> archived, int[] withdrawnIDs)
+        throws BrowseException
+    {
+        // The values each item has, and the normalised version of every value seen
+        Map<Integer, Set<String>> itemValues = new HashMap<Integer, Set<String>>();
+        Map<String, String> sortValues = new HashMap<String, String>();
+
+        for (Item item : archived)
+        {
+            Set<String> valueSet = new HashSet<String>();
+
+            for (int mdIdx = 0; mdIdx < bi.getMetadataCount(); mdIdx++)
+            {
+                String[] md = bi.getMdBits(mdIdx);
+                DCValue[] values = item.getMetadata(md[0], md[1], md[2], Item.ANY);
+
+                for (int x = 0; x < values.length; x++)
+                {
+                    // Ensure that there is a value to index before inserting it
+                    if (StringUtils.isEmpty(values[x].value))
+                    {
+                        log.error("Null metadata value for item " + item.getID() + ", field: " +
+                                values[x].schema + "." +
+                                values[x].element +
+                                (values[x].qualifier == null ? "" : "." + values[x].qualifier));
+                    }
+                    else if (valueSet.add(values[x].value) && !sortValues.containsKey(values[x].value))
+                    {
+                        sortValues.put(values[x].value,
+                                OrderFormat.makeSortString(values[x].value, values[x].language, bi.getDataType()));
+                    }
+                }
+            }
+
+            itemValues.put(new Integer(item.getID()), valueSet);
+        }
+
+        Map<String, Integer> distinctIDs = dao.getDistinctIDs(bi.getDistinctTableName(), sortValues);
+
+        Map<Integer, int[]> mappings = new HashMap<Integer, int[]>();
+        for (Map.Entry<Integer, Set<String>> entry : itemValues.entrySet())
+        {
+            int[] ids = new int[entry.getValue().size()];
+            int didx = 0;
+            for (String value : entry.getValue())
+            {
+                ids[didx++] = distinctIDs.get(value).intValue();
+            }
+            mappings.put(entry.getKey(), ids);
+        }
+
+        for (int i = 0; i < withdrawnIDs.length; i++)
+        {
+            mappings.put(new Integer(withdrawnIDs[i]), new int[0]);
+        }
+
+        dao.updateDistinctMappings(bi.getDistinctTableName(), bi.getMapTableName(), mappings);
+    }
+
+    private int[] getIDs(List<Item> items)
+    {
+        int[] ids = new int[items.size()];
+        for (int i = 0; i < ids.length; i++)
+        {
+            ids[i] = items.get(i).getID();
         }
+        return ids;
     }
     
        /**
@@ -456,7 +629,7 @@ public class IndexBrowse
                     if (distIDSet.isEmpty())
                     {
                         // remove any old mappings
-                        removeIndex(item.getID(), bis[i].getMapTableName());
+                        removeDistinctIndex(item.getID(), bis[i]);
                     }
                     else
                     {
@@ -467,7 +640,7 @@ public class IndexBrowse
                         {
                             distIDarr[didx++] = distID;
                         }
-                        dao.updateDistinctMappings(bis[i].getMapTableName(), item.getID(), distIDarr);
+                        dao.updateDistinctMappings(bis[i].getDistinctTableName(), bis[i].getMapTableName(), item.getID(), distIDarr);
                     }
                 }
             }
@@ -593,7 +766,7 @@ public class IndexBrowse
 		    if (bis[i].isMetadataIndex())
 		    {
                 log.debug("Removing indexing for removed item " + itemID + ", for index: " + bis[i].getTableName());
-                removeIndex(itemID, bis[i].getMapTableName());
+                removeDistinctIndex(itemID, bis[i]);
             }
 	    }
 
@@ -602,9 +775,6 @@ public class IndexBrowse
         removeIndex(itemID, BrowseIndex.getWithdrawnBrowseIndex().getTableName());
         dao.deleteCommunityMappings(itemID);
 
-        // Ensure that we remove any invalid entries
-        pruneIndexes();
-
         return true;
 	}
 
@@ -628,6 +798,8 @@ public class IndexBrowse
 	    options.addOption("t", "tables", false, "create the tables only, do not attempt to index.  Mutually exclusive with -f and -i");
 	    options.addOption("i", "index", false, "actually do the indexing.  Mutually exclusive with -t and -f");
 	    options.addOption("f", "full", false, "make the tables, and do the indexing.  This forces -x.  Mutually exclusive with -t and -i");
+	    options.addOption("c", "prune", false, "remove index entries for items no longer in the archive and values no longer used, and recount value references.  Intended to be run as a scheduled job");
+	    options.addOption("b", "bulk", false, "rebuild all the tables in bulk alongside the existing ones, and swap them in when complete.  Mutually exclusive with -t, -f and -i");
 	    
 	    // these options can be specified only with the -f option
 	    options.addOption("r", "rebuild", false, "should we rebuild all the indices, which removes old index tables and creates new ones.  For use with -f. Mutually exclusive with -d");
@@ -665,6 +837,19 @@ public class IndexBrowse
 	    	return;
 	    }
 	    
+	    if (line.hasOption("c"))
+	    {
+	    	indexer.pruneIndexes();
+	    	context.complete();
+	    	return;
+	    }
+	    
+	    if (line.hasOption("b"))
+	    {
+	    	indexer.bulkRebuild();
+	    	return;
+	    }
+	    
 	    if (line.hasOption("f"))
 	    {
 	    	if (line.hasOption('r'))
@@ -1079,6 +1264,70 @@ public class IndexBrowse
 	    output.message("Browse indexing completed");
 	}
 
+    /**
+     * Rebuild all the browse tables in bulk, replacing the existing tables
+     * once the new ones are complete.  If the tables don't exist yet they
+     * are created first.
+     * 
+     * @throws SQLException
+     * @throws BrowseException
+     */
+    public void bulkRebuild()
+        throws SQLException, BrowseException
+    {
+        Date start = new Date();
+
+        output.message("Rebuilding browse indexes for DSpace in bulk");
+
+        if (!tablesExist())
+        {
+            output.message("Preparing browse tables");
+            setExecute(true);
+            prepTables();
+        }
+
+        BrowseRebuilder rebuilder = new BrowseRebuilder(context, bis, output);
+        int count = rebuilder.rebuild();
+
+        output.message("Indexing items changed during the rebuild");
+        indexItems(rebuilder.getChangedItems());
+        pruneIndexes();
+
+        context.complete();
+
+        long end = new Date().getTime() - start.getTime();
+
+        output.message("content indexed (" + Long.toString(end) + " ms)");
+        output.message("Items indexed: " + Integer.toString(count));
+        output.message("Browse indexing completed");
+    }
+
+    /**
+     * @return	true if all the tables for the configured browse indices exist
+     * @throws BrowseException
+     */
+    private boolean tablesExist()
+        throws BrowseException
+    {
+        if (!dao.testTableExistance(BrowseIndex.getItemBrowseIndex().getTableName()) ||
+            !dao.testTableExistance(BrowseIndex.getWithdrawnBrowseIndex().getTableName()))
+        {
+            return false;
+        }
+
+        for (int i = 0; i < bis.length; i++)
+        {
+            if (bis[i].isMetadataIndex() &&
+                (!dao.testTableExistance(bis[i].getDistinctTableName()) ||
+                 !dao.testTableExistance(bis[i].getMapTableName())))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     /**
      * create the indices for all the items
      * 
@@ -1101,14 +1350,18 @@ public class IndexBrowse
 //            BrowseItemDAO biDao = BrowseDAOFactory.getItemInstance(context);
 //            BrowseItem[] items = biDao.findAll();
             ItemDAO itemDAO = ItemDAOFactory.getInstance(context);
-            List<Item> items = itemDAO.getItems();
+            Iterator<Item> items = itemDAO.getItemIterator();
+            int count = 0;
 
     		// go through every item id, grab the relevant metadata
     		// and write it into the database
     		
 //    		for (int j = 0; j < items.length; j++)
-    		for (Item item : items)
+    		while (items.hasNext())
     		{
+                Item item = items.next();
+                count++;
+
 //                indexItem(new ItemMetadataProxy(items[j].getID(), items[j]));
                 indexItem(new ItemMetadataProxy(item));
     			
@@ -1125,7 +1378,7 @@ public class IndexBrowse
             context.commit();
     		
 //    		return items.length;
-    		return items.size();
+    		return count;
     	}
     	catch (SQLException e)
     	{
@@ -0,0 +1,295 @@
+/*
+ * ItemCountConsumer.java
+ *
+ * Version: $Revision: $
+ *
+ * Date: $Date:  $
+ *
+ * Copyright (c) 2002-2007, Hewlett-Packard Company and Massachusetts
+ * Institute of Technology.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * - Neither the name of the Hewlett-Packard Company nor the name of the
+ * Massachusetts Institute of Technology nor the names of their
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package org.dspace.browse;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.dspace.content.Collection;
+import org.dspace.content.Item;
+import org.dspace.content.dao.CollectionDAO;
+import org.dspace.content.dao.CollectionDAOFactory;
+import org.dspace.content.dao.ItemDAO;
+import org.dspace.content.dao.ItemDAOFactory;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Constants;
+import org.dspace.core.Context;
+import org.dspace.event.Consumer;
+import org.dspace.event.Event;
+
+/**
+ * Keeps the cached community and collection item counts up to date as
+ * items are installed, withdrawn, reinstated, mapped, unmapped and moved,
+ * so that ItemCounter doesn't have to be run to recount everything.
+ * 
+ * The events of a transaction are gathered per item.  At the end, an item
+ * which is in the archive counts +1 for each collection it was added to and
+ * -1 for each it was removed from; an item which was withdrawn counts -1 for
+ * each of its collections, and a reinstated one +1.  Where the events don't
+ * say enough to be sure of the change (the item was deleted, or both moved
+ * and withdrawn in one go) the collections involved are recounted instead.
+ * The changes are then applied to the collections and rolled up to the
+ * communities above them by ItemCountDAO.applyDeltas.
+ * 
+ * Nothing is done unless webui.strengths.cache is true.
+ * 
+ * Recommended filter:  Item+Modify|Modify_Metadata|Create|Delete:Collection+Add|Remove
+ */
+public class ItemCountConsumer implements Consumer
+{
+    /** log4j logger */
+    private static Logger log = Logger.getLogger(ItemCountConsumer.class);
+
+    /** what has happened to each item in this transaction, by item id */
+    private Map<Integer, ItemChanges> changes = null;
+
+    public void initialize()
+        throws Exception
+    {
+
+    }
+
+    public void consume(Context ctx, Event event)
+        throws Exception
+    {
+        if (changes == null)
+        {
+            changes = new HashMap<Integer, ItemChanges>();
+        }
+
+        int st = event.getSubjectType();
+        int et = event.getEventType();
+
+        switch (st)
+        {
+        // Items being withdrawn or reinstated, or deleted
+        case Constants.ITEM:
+            if (et == Event.DELETE)
+            {
+                getChanges(event.getSubjectID()).deleted = true;
+            }
+            else if (event.getDetail() != null)
+            {
+                // events may have been coalesced, so the detail can be a list
+                String[] details = event.getDetail().split("\\s*,\\s*");
+                for (int i = 0; i < details.length; i++)
+                {
+                    if ("WITHDRAW".equals(details[i]))
+                    {
+                        getChanges(event.getSubjectID()).withdrawn = true;
+                    }
+                    else if ("REINSTATE".equals(details[i]))
+                    {
+                        getChanges(event.getSubjectID()).reinstated = true;
+                    }
+                }
+            }
+            break;
+
+        // Items being added to (installed into, mapped into) and removed from collections
+        case Constants.COLLECTION:
+            if (event.getObjectType() == Constants.ITEM)
+            {
+                ItemChanges ic = getChanges(event.getObjectID());
+                Integer collectionID = new Integer(event.getSubjectID());
+
+                if (et == Event.ADD)
+                {
+                    // added and removed again cancel out
+                    if (!ic.removed.remove(collectionID))
+                    {
+                        ic.added.add(collectionID);
+                    }
+                }
+                else if (et == Event.REMOVE)
+                {
+                    if (!ic.added.remove(collectionID))
+                    {
+                        ic.removed.add(collectionID);
+                    }
+                }
+            }
+            break;
+
+        default:
+            log.debug("consume() ignoring event: " + event.toString());
+        }
+    }
+
+    public void end(Context ctx)
+        throws Exception
+    {
+        if (changes != null && ConfigurationManager.getBooleanProperty("webui.strengths.cache"))
+        {
+            try
+            {
+                Map<Integer, Integer> deltas = new HashMap<Integer, Integer>();
+                Set<Integer> recount = new HashSet<Integer>();
+
+                ItemDAO itemDAO = ItemDAOFactory.getInstance(ctx);
+                CollectionDAO collectionDAO = CollectionDAOFactory.getInstance(ctx);
+
+                for (Map.Entry<Integer, ItemChanges> entry : changes.entrySet())
+                {
+                    ItemChanges ic = entry.getValue();
+                    if (ic.isEmpty())
+                    {
+                        continue;
+                    }
+
+                    Item item = ic.deleted ? null : itemDAO.retrieve(entry.getKey().intValue());
+                    boolean moved = !ic.added.isEmpty() || !ic.removed.isEmpty();
+                    boolean statusChanged = ic.withdrawn || ic.reinstated;
+
+                    if (item == null || (moved && statusChanged) || (ic.withdrawn && ic.reinstated))
+                    {
+                        recount.addAll(ic.added);
+                        recount.addAll(ic.removed);
+                        if (item != null)
+                        {
+                            for (Collection collection : collectionDAO.getParentCollections(item))
+                            {
+                                recount.add(new Integer(collection.getID()));
+                            }
+                        }
+                    }
+                    else if (statusChanged)
+                    {
+                        int delta = ic.reinstated ? 1 : -1;
+                        List<Collection> collections = collectionDAO.getParentCollections(item);
+                        for (Collection collection : collections)
+                        {
+                            add(deltas, collection.getID(), delta);
+                        }
+                    }
+                    else if (item.isArchived() && !item.isWithdrawn())
+                    {
+                        // items outside the archive aren't counted, so only these matter
+                        for (Integer id : ic.added)
+                        {
+                            add(deltas, id.intValue(), 1);
+                        }
+                        for (Integer id : ic.removed)
+                        {
+                            add(deltas, id.intValue(), -1);
+                        }
+                    }
+                }
+
+                ItemCountDAO dao = ItemCountDAOFactory.getInstance(ctx);
+
+                for (Integer id : recount)
+                {
+                    Collection collection = collectionDAO.retrieve(id.intValue());
+                    if (collection != null)
+                    {
+                        deltas.remove(id);
+                        int delta = collectionDAO.itemCount(collection) - dao.getCount(collection);
+                        add(deltas, id.intValue(), delta);
+                    }
+                }
+
+                dao.applyDeltas(deltas);
+
+                // count updates wrote to the DB, so we have to commit.
+                ctx.commit();
+            }
+            catch (ItemCountException e)
+            {
+                log.error("caught exception: ", e);
+            }
+        }
+
+        changes = null;
+    }
+
+    public void finish(Context ctx)
+    {
+        changes = null;
+    }
+
+    private ItemChanges getChanges(int itemID)
+    {
+        Integer key = new Integer(itemID);
+        ItemChanges ic = changes.get(key);
+
+        if (ic == null)
+        {
+            ic = new ItemChanges();
+            changes.put(key, ic);
+        }
+
+        return ic;
+    }
+
+    private static void add(Map<Integer, Integer> deltas, int collectionID, int delta)
+    {
+        Integer key = new Integer(collectionID);
+        Integer current = deltas.get(key);
+        deltas.put(key, new Integer(delta + (current == null ? 0 : current.intValue())));
+    }
+
+    /**
+     * Everything that happened to one item in a transaction.
+     */
+    private static class ItemChanges
+    {
+        /** ids of the collections the item was added to */
+        Set<Integer> added = new HashSet<Integer>();
+
+        /** ids of the collections the item was removed from */
+        Set<Integer> removed = new HashSet<Integer>();
+
+        boolean withdrawn = false;
+
+        boolean reinstated = false;
+
+        boolean deleted = false;
+
+        boolean isEmpty()
+        {
+            return added.isEmpty() && removed.isEmpty() && !withdrawn && !reinstated && !deleted;
+        }
+    }
+}
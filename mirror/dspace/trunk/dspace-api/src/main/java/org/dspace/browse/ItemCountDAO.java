@@ -35,6 +35,8 @@
  */
 package org.dspace.browse;
 
+import java.util.Map;
+
 import org.dspace.content.Community;
 import org.dspace.content.Collection;
 import org.dspace.core.Context;
@@ -95,4 +97,14 @@ public interface ItemCountDAO
 	 * @throws ItemCountException
 	 */
 	public void remove(DSpaceObject dso) throws ItemCountException;
+	
+	/**
+	 * Adjust the cached counts of the given collections by the given amounts,
+	 * and those of every community above them.  This allows the counts to be
+	 * kept up to date as items are added and removed, without recounting.
+	 * 
+	 * @param collectionDeltas	map of collection ids to the change in their counts
+	 * @throws ItemCountException
+	 */
+	public void applyDeltas(Map<Integer, Integer> collectionDeltas) throws ItemCountException;
 }
@@ -46,6 +46,7 @@ import org.dspace.storage.rdbms.TableRow;
 import org.dspace.storage.rdbms.DatabaseManager;
 
 import java.sql.SQLException;
+import java.util.Map;
 
 /**
  * Postgres driver implementing ItemCountDAO interface to cache item
@@ -349,4 +350,26 @@ public class ItemCountDAOPostgres implements ItemCountDAO
                 tri.close();
         }
     }
+
+	/**
+	 * Adjust the cached counts of collections by the given amounts, and
+	 * roll the changes up to every community above those collections.
+	 * Containers which have no cached count yet are counted in full.
+	 * 
+	 * @param collectionDeltas	map of collection ids to the change in their counts
+	 * @throws ItemCountException
+	 */
+	public void applyDeltas(Map<Integer, Integer> collectionDeltas)
+		throws ItemCountException
+	{
+		try
+		{
+			new BrowseDAOSupport(context).applyItemCountDeltas(this, collectionDeltas);
+		}
+		catch (SQLException e)
+		{
+			log.error("caught exception: ", e);
+			throw new ItemCountException(e);
+		}
+	}
 }
@@ -72,8 +72,8 @@ public class ItemCounter
 	
 	/**
 	 * method invoked by CLI which will result in the number of items
-	 * in each community and collection being cached.  These counts will
-	 * not update themselves until this is run again.
+	 * in each community and collection being cached.  From then on the
+	 * counts are kept up to date by ItemCountConsumer, if it is configured.
 	 * 
 	 * @param args
 	 */
@@ -163,6 +163,13 @@ public final class BitstreamInfoDAO extends DAOSupport
         + "order by trunc(last_process_end_date, 'mi'), "
         + "bitstream_id " + "ASC) WHERE rownum=1";
     
+    /**
+     * Selects a batch of bitstreams in order of last processing end date.
+     * Conditions are added by getOldestBitstreams.
+     */
+    private static final String GET_OLDEST_BITSTREAMS = "select bitstream_id, last_process_end_date "
+            + "from most_recent_checksum where to_be_processed = ";
+
     /** SQL query to retrieve bitstreams for a given item. */
     private static final String ITEM_BITSTREAMS = "SELECT b2b.bitstream_id "
             + "FROM bundle2bitstream b2b, item2bundle i2b WHERE "
@@ -217,18 +224,7 @@ public final class BitstreamInfoDAO extends DAOSupport
         {
             conn = DatabaseManager.getConnection();
             stmt = conn.prepareStatement(UPDATE_CHECKSUM);
-            stmt.setString(1, (info.getCalculatedChecksum() != null) ? info
-                    .getCalculatedChecksum() : "");
-            stmt.setString(2, info.getStoredChecksum());
-            stmt.setBoolean(3, ChecksumCheckResults.CHECKSUM_MATCH.equals(info
-                    .getChecksumCheckResult()));
-            stmt.setBoolean(4, info.getToBeProcessed());
-            stmt.setTimestamp(5, new Timestamp(info.getProcessStartDate()
-                    .getTime()));
-            stmt.setTimestamp(6, new Timestamp(info.getProcessEndDate()
-                    .getTime()));
-            stmt.setString(7, info.getChecksumCheckResult());
-            stmt.setInt(8, info.getBitstreamId());
+            setUpdateParameters(stmt, info);
             stmt.executeUpdate();
             conn.commit();
         }
@@ -244,6 +240,71 @@ public final class BitstreamInfoDAO extends DAOSupport
         }
     }
 
+    /**
+     * Updates most_recent_checksum with the results of several checks, and
+     * records them in checksum_history, using JDBC batches and a single
+     * commit.
+     * 
+     * @param infos
+     *            The BitstreamInfos to update.
+     */
+    public void update(List<BitstreamInfo> infos)
+    {
+        if (infos.isEmpty())
+        {
+            return;
+        }
+
+        Connection conn = null;
+        PreparedStatement stmt = null;
+
+        try
+        {
+            conn = DatabaseManager.getConnection();
+            stmt = conn.prepareStatement(UPDATE_CHECKSUM);
+            for (BitstreamInfo info : infos)
+            {
+                // bitstreams which weren't found have no row to update
+                if (info.getInfoFound())
+                {
+                    setUpdateParameters(stmt, info);
+                    stmt.addBatch();
+                }
+            }
+            stmt.executeBatch();
+
+            checksumHistoryDAO.insertHistory(infos, conn);
+            conn.commit();
+        }
+        catch (SQLException e)
+        {
+            LOG.error("Problem updating checksum rows. " + e.getMessage(), e);
+            throw new RuntimeException("Problem updating checksum rows. "
+                    + e.getMessage(), e);
+        }
+        finally
+        {
+            cleanup(stmt, conn);
+        }
+    }
+
+    private void setUpdateParameters(PreparedStatement stmt, BitstreamInfo info)
+            throws SQLException
+    {
+        stmt.setString(1, (info.getCalculatedChecksum() != null) ? info
+                .getCalculatedChecksum() : "");
+        stmt.setString(2, info.getStoredChecksum());
+        stmt.setBoolean(3, ChecksumCheckResults.CHECKSUM_MATCH.equals(info
+                .getChecksumCheckResult()));
+        stmt.setBoolean(4, info.getToBeProcessed());
+        stmt.setTimestamp(5, new Timestamp(info.getProcessStartDate()
+                .getTime()));
+        stmt.setTimestamp(6, new Timestamp(info.getProcessEndDate()
+                .getTime()));
+        stmt.setString(7, info.getChecksumCheckResult());
+        stmt.setInt(8, info.getBitstreamId());
+    }
+
     /**
      * Find a bitstream by its id.
      * 
@@ -500,6 +561,90 @@ public final class BitstreamInfoDAO extends DAOSupport
         }
     }
 
+    /**
+     * Get a batch of the oldest bitstreams in the most recent checksum table,
+     * in order of last processing end date and then id. Each is returned as
+     * a BitstreamInfo holding only its id and its last processing end date,
+     * which can be passed back in to get the batch following it.
+     * 
+     * @param limit
+     *            the maximum number of bitstreams to return
+     * @param lessThanDate
+     *            if not null, only bitstreams last started before this date
+     * @param afterDate
+     *            if not null, only bitstreams after the one last processed
+     *            at this date with the id afterId
+     * @param afterId
+     *            the id of the bitstream to carry on after
+     * @return the bitstreams, empty if there are no more
+     */
+    public List<BitstreamInfo> getOldestBitstreams(int limit, Timestamp lessThanDate,
+            Timestamp afterDate, int afterId)
+    {
+        boolean oracle = "oracle".equals(ConfigurationManager.getProperty("db.name"));
+
+        StringBuffer sql = new StringBuffer(GET_OLDEST_BITSTREAMS);
+        sql.append(oracle ? "1" : "true");
+        if (lessThanDate != null)
+        {
+            sql.append(" and last_process_start_date < ?");
+        }
+        if (afterDate != null)
+        {
+            sql.append(" and (last_process_end_date > ? or "
+                    + "(last_process_end_date = ? and bitstream_id > ?))");
+        }
+        sql.append(" order by last_process_end_date, bitstream_id");
+
+        String query = oracle
+                ? "SELECT * FROM (" + sql + ") WHERE rownum <= " + limit
+                : sql + " LIMIT " + limit;
+
+        List<BitstreamInfo> infos = new ArrayList<BitstreamInfo>();
+
+        Connection conn = null;
+        PreparedStatement prepStmt = null;
+        ResultSet rs = null;
+
+        try
+        {
+            conn = DatabaseManager.getConnection();
+            prepStmt = conn.prepareStatement(query);
+
+            int i = 1;
+            if (lessThanDate != null)
+            {
+                prepStmt.setTimestamp(i++, lessThanDate);
+            }
+            if (afterDate != null)
+            {
+                prepStmt.setTimestamp(i++, afterDate);
+                prepStmt.setTimestamp(i++, afterDate);
+                prepStmt.setInt(i++, afterId);
+            }
+
+            rs = prepStmt.executeQuery();
+            while (rs.next())
+            {
+                BitstreamInfo info = new BitstreamInfo(rs.getInt(1));
+                info.setProcessEndDate(rs.getTimestamp(2));
+                infos.add(info);
+            }
+        }
+        catch (SQLException e)
+        {
+            LOG.error("Problem with get oldest bitstreams " + e.getMessage(), e);
+            throw new RuntimeException("Oldest bitstreams error. "
+                    + e.getMessage(), e);
+        }
+        finally
+        {
+            cleanup(prepStmt, conn, rs);
+        }
+
+        return infos;
+    }
+
     /**
      * Get the bitstream ids for a given Item
      * 
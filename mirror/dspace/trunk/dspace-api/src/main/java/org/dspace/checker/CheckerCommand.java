@@ -39,9 +39,20 @@ import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
+import org.dspace.core.ConfigurationManager;
 import org.dspace.core.Utils;
 
 /**
@@ -51,6 +62,14 @@ import org.dspace.core.Utils;
  * against the last calculated checksum for that bitstream.
  * </p>
  * 
+ * <p>
+ * If <code>checker.threads</code> is more than one, bitstreams are checked
+ * in parallel: each assetstore gets a pool of that many digest threads, and
+ * results are written to the database in batches of
+ * <code>checker.batchsize</code>. The rate at which each assetstore is read
+ * can be capped with <code>checker.throttle.mbps</code>.
+ * </p>
+ * 
  * @author Jim Downing
  * @author Grace Carpenter
  * @author Nathan Sarr
@@ -67,8 +86,8 @@ public final class CheckerCommand
     /** Default digest algorithm (MD5). */
     private static final String DEFAULT_DIGEST_ALGORITHM = "MD5";
 
-    /** 4 Meg byte array for reading file. */
-    private int BYTE_ARRAY_SIZE = 4 * 1024;
+    /** 64K byte array for reading file. */
+    private int BYTE_ARRAY_SIZE = 64 * 1024;
 
     /** BitstreamInfoDAO dependency. */
     private BitstreamInfoDAO bitstreamInfoDAO = null;
@@ -97,6 +116,15 @@ public final class CheckerCommand
     /** Report all processing */
     private boolean reportVerbose = false;
 
+    /** Number of digest threads per assetstore; 1 checks serially. */
+    private int threads = 1;
+
+    /** Number of results to write to the database at a time. */
+    private int batchSize = 100;
+
+    /** Read rate limits, by assetstore number (null for no limit). */
+    private Map<Integer, IOThrottle> throttles = new HashMap<Integer, IOThrottle>();
+
     /**
      * Default constructor uses DSpace plugin manager to construct dependencies.
      */
@@ -105,6 +133,16 @@ public final class CheckerCommand
         bitstreamInfoDAO = new BitstreamInfoDAO();
         bitstreamDAO = new BitstreamDAO();
         checksumHistoryDAO = new ChecksumHistoryDAO();
+
+        if (ConfigurationManager.getIntProperty("checker.threads") > 0)
+        {
+            threads = ConfigurationManager.getIntProperty("checker.threads");
+        }
+
+        if (ConfigurationManager.getIntProperty("checker.batchsize") > 0)
+        {
+            batchSize = ConfigurationManager.getIntProperty("checker.batchsize");
+        }
     }
 
     /**
@@ -137,6 +175,12 @@ public final class CheckerCommand
         // bitstream table - this always done.
         bitstreamInfoDAO.updateMissingBitstreams();
 
+        if (threads > 1)
+        {
+            processParallel();
+            return;
+        }
+
         int id = dispatcher.next();
 
         while (id != BitstreamDispatcher.SENTINEL)
@@ -144,13 +188,182 @@ public final class CheckerCommand
             LOG.debug("Processing bitstream id = " + id);
             BitstreamInfo info = checkBitstream(id);
 
-            if (reportVerbose
-                    || (info.getChecksumCheckResult() != ChecksumCheckResults.CHECKSUM_MATCH))
+            collect(info);
+
+            id = dispatcher.next();
+        }
+    }
+
+    /**
+     * Checks the bitstreams from the dispatcher using a pool of digest
+     * threads per assetstore. The dispatcher is only called from this
+     * thread, which also writes the results in batches.
+     */
+    private void processParallel()
+    {
+        Map<Integer, ExecutorService> pools = new HashMap<Integer, ExecutorService>();
+        final BlockingQueue<BitstreamInfo> results = new LinkedBlockingQueue<BitstreamInfo>();
+        final Semaphore slots = new Semaphore(batchSize * 2);
+        List<BitstreamInfo> pending = new ArrayList<BitstreamInfo>();
+
+        try
+        {
+            int id = dispatcher.next();
+
+            while (id != BitstreamDispatcher.SENTINEL)
             {
-                collector.collect(info);
+                LOG.debug("Dispatching bitstream id = " + id);
+                BitstreamInfo info = bitstreamInfoDAO.findByBitstreamId(id);
+
+                if (info == null)
+                {
+                    info = new BitstreamInfo(id);
+                    processNullInfoBitstream(info);
+                    collect(info);
+                }
+                else if (!info.getToBeProcessed())
+                {
+                    info
+                            .setChecksumCheckResult(ChecksumCheckResults.BITSTREAM_NOT_PROCESSED);
+                    collect(info);
+                }
+                else if (info.getDeleted())
+                {
+                    markDeleted(info);
+                    pending.add(info);
+                }
+                else
+                {
+                    // limit the number of bitstreams waiting for a thread
+                    slots.acquire();
+
+                    final BitstreamInfo task = info;
+                    final IOThrottle throttle = getThrottle(info.getStoreNumber());
+                    getPool(pools, info.getStoreNumber()).execute(new Runnable()
+                    {
+                        public void run()
+                        {
+                            try
+                            {
+                                digestBitstream(task, throttle);
+                            }
+                            finally
+                            {
+                                results.add(task);
+                                slots.release();
+                            }
+                        }
+                    });
+                }
+
+                results.drainTo(pending);
+                if (pending.size() >= batchSize)
+                {
+                    write(pending);
+                }
+
+                id = dispatcher.next();
             }
 
-            id = dispatcher.next();
+            // wait for the threads to finish, writing results as they come
+            for (ExecutorService pool : pools.values())
+            {
+                pool.shutdown();
+            }
+
+            for (ExecutorService pool : pools.values())
+            {
+                while (!pool.awaitTermination(1, TimeUnit.SECONDS))
+                {
+                    results.drainTo(pending);
+                    if (pending.size() >= batchSize)
+                    {
+                        write(pending);
+                    }
+                }
+            }
+
+            results.drainTo(pending);
+            write(pending);
+        }
+        catch (InterruptedException e)
+        {
+            LOG.error("Interrupted while checking bitstreams", e);
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            for (ExecutorService pool : pools.values())
+            {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Get the digest thread pool for an assetstore, creating it if need be.
+     */
+    private ExecutorService getPool(Map<Integer, ExecutorService> pools, int store)
+    {
+        Integer key = new Integer(store);
+        ExecutorService pool = pools.get(key);
+
+        if (pool == null)
+        {
+            pool = Executors.newFixedThreadPool(threads);
+            pools.put(key, pool);
+        }
+
+        return pool;
+    }
+
+    /**
+     * Get the read rate limit for an assetstore, from
+     * <code>checker.throttle.mbps.[store]</code> or else
+     * <code>checker.throttle.mbps</code>.
+     * 
+     * @return the limit, or null if there isn't one
+     */
+    private synchronized IOThrottle getThrottle(int store)
+    {
+        Integer key = new Integer(store);
+
+        if (!throttles.containsKey(key))
+        {
+            int mbps = ConfigurationManager.getIntProperty("checker.throttle.mbps." + store);
+            if (mbps <= 0)
+            {
+                mbps = ConfigurationManager.getIntProperty("checker.throttle.mbps");
+            }
+
+            throttles.put(key, (mbps > 0) ? new IOThrottle(mbps * 1024L * 1024L) : null);
+        }
+
+        return throttles.get(key);
+    }
+
+    /**
+     * Write a batch of results to the database, and pass them to the
+     * collector.
+     */
+    private void write(List<BitstreamInfo> infos)
+    {
+        bitstreamInfoDAO.update(infos);
+
+        for (BitstreamInfo info : infos)
+        {
+            collect(info);
+        }
+
+        infos.clear();
+    }
+
+    private void collect(BitstreamInfo info)
+    {
+        if (reportVerbose
+                || (info.getChecksumCheckResult() != ChecksumCheckResults.CHECKSUM_MATCH))
+        {
+            collector.collect(info);
         }
     }
 
@@ -206,6 +419,8 @@ public final class CheckerCommand
      *            InputStream to digest.
      * @param algorithm
      *            the algorithm to use when digesting.
+     * @param throttle
+     *            limits the read rate, may be null.
      * @todo Document the algorithm parameter
      * @return digest
      * 
@@ -215,7 +430,8 @@ public final class CheckerCommand
      * @throws java.io.IOException
      *             If an exception arises whilst reading the stream
      */
-    private String digestStream(InputStream stream, String algorithm)
+    private String digestStream(InputStream stream, String algorithm,
+            IOThrottle throttle)
             throws java.security.NoSuchAlgorithmException, java.io.IOException
     {
         // create the digest stream
@@ -223,11 +439,15 @@ public final class CheckerCommand
                 .getInstance(algorithm));
 
         byte[] bytes = new byte[BYTE_ARRAY_SIZE];
+        int read;
 
         // make sure all the data is read by the digester
-        while (dStream.read(bytes, 0, BYTE_ARRAY_SIZE) != -1)
+        while ((read = dStream.read(bytes, 0, BYTE_ARRAY_SIZE)) != -1)
         {
-            // no-op
+            if (throttle != null)
+            {
+                throttle.consume(read);
+            }
         }
 
         return Utils.toHex(dStream.getMessageDigest().digest());
@@ -269,6 +489,20 @@ public final class CheckerCommand
      *            a deleted bitstream.
      */
     private void processDeletedBitstream(BitstreamInfo info)
+    {
+        markDeleted(info);
+        bitstreamInfoDAO.update(info);
+        checksumHistoryDAO.insertHistory(info);
+    }
+
+    /**
+     * Set the result for a bitstream that was marked 'deleted', without
+     * writing it to the database.
+     * 
+     * @param info
+     *            a deleted bitstream.
+     */
+    private void markDeleted(BitstreamInfo info)
     {
         info.setProcessStartDate(new Date());
         info
@@ -276,8 +510,6 @@ public final class CheckerCommand
         info.setProcessStartDate(new Date());
         info.setProcessEndDate(new Date());
         info.setToBeProcessed(false);
-        bitstreamInfoDAO.update(info);
-        checksumHistoryDAO.insertHistory(info);
     }
 
     /**
@@ -315,6 +547,30 @@ public final class CheckerCommand
      *            BitstreamInfo to handle
      */
     private void processBitstream(BitstreamInfo info)
+    {
+        try
+        {
+            digestBitstream(info, getThrottle(info.getStoreNumber()));
+        }
+        finally
+        {
+            // record new checksum and comparison result in db
+            bitstreamInfoDAO.update(info);
+            checksumHistoryDAO.insertHistory(info);
+        }
+    }
+
+    /**
+     * Calculate the checksum of a bitstream and compare it with the stored
+     * one, setting the results on the info without writing them to the
+     * database. Safe to call from several threads at once.
+     * 
+     * @param info
+     *            BitstreamInfo to handle
+     * @param throttle
+     *            limits the read rate, may be null
+     */
+    private void digestBitstream(BitstreamInfo info, IOThrottle throttle)
     {
         info.setProcessStartDate(new Date());
 
@@ -323,15 +579,17 @@ public final class CheckerCommand
             info.setChecksumAlgorithm(DEFAULT_DIGEST_ALGORITHM);
         }
 
+        InputStream bitstream = null;
+
         try
         {
-            InputStream bitstream = bitstreamDAO.getBitstream(info
+            bitstream = bitstreamDAO.getBitstream(info
                     .getBitstreamId());
 
             info.setBitstreamFound(true);
 
             String checksum = digestStream(bitstream, info
-                    .getChecksumAlgorithm());
+                    .getChecksumAlgorithm(), throttle);
 
             info.setCalculatedChecksum(checksum);
 
@@ -370,12 +628,33 @@ public final class CheckerCommand
         {
             info.setProcessEndDate(new Date());
 
-            // record new checksum and comparison result in db
-            bitstreamInfoDAO.update(info);
-            checksumHistoryDAO.insertHistory(info);
+            if (bitstream != null)
+            {
+                try
+                {
+                    bitstream.close();
+                }
+                catch (IOException e)
+                {
+                    LOG.warn("Unable to close bitstream ID "
+                            + info.getBitstreamId(), e);
+                }
+            }
         }
     }
 
+    /**
+     * Set the number of digest threads to use per assetstore, overriding
+     * <code>checker.threads</code>. More than one checks in parallel.
+     * 
+     * @param threads
+     *            threads per assetstore
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
     /**
      * Get dispatcher being used by this run of the checker.
      * 
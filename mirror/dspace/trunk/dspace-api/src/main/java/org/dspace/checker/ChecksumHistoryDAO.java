@@ -6,6 +6,7 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
@@ -132,6 +133,55 @@ public class ChecksumHistoryDAO extends DAOSupport
         }
     }
 
+    /**
+     * Inserts the results of several checks into the checksum_history table
+     * as a JDBC batch, using the caller's connection. The caller commits.
+     * 
+     * @param infos
+     *            the BitstreamInfos representing the checks.
+     * @param conn
+     *            the connection to use.
+     * @throws SQLException
+     */
+    protected void insertHistory(List<BitstreamInfo> infos, Connection conn)
+            throws SQLException
+    {
+        PreparedStatement stmt = null;
+
+        try
+        {
+            if ("oracle".equals(ConfigurationManager.getProperty("db.name")))
+                stmt = conn.prepareStatement(INSERT_HISTORY_ORACLE);
+            else
+                stmt = conn.prepareStatement(INSERT_HISTORY);
+
+            for (BitstreamInfo info : infos)
+            {
+                // bitstreams which weren't found have no history
+                if (!info.getInfoFound())
+                {
+                    continue;
+                }
+
+                stmt.setInt(1, info.getBitstreamId());
+                stmt.setTimestamp(2, new java.sql.Timestamp(info
+                        .getProcessStartDate().getTime()));
+                stmt.setTimestamp(3, new java.sql.Timestamp(info
+                        .getProcessEndDate().getTime()));
+                stmt.setString(4, info.getStoredChecksum());
+                stmt.setString(5, info.getCalculatedChecksum());
+                stmt.setString(6, info.getChecksumCheckResult());
+                stmt.addBatch();
+            }
+
+            stmt.executeBatch();
+        }
+        finally
+        {
+            cleanup(stmt);
+        }
+    }
+
     /**
      * Deletes the bitstream from the bitstream_history table if it exist.
      * 
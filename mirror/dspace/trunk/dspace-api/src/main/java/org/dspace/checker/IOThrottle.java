@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2004-2005, Hewlett-Packard Company and Massachusetts
+ * Institute of Technology.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * - Neither the name of the Hewlett-Packard Company nor the name of the
+ * Massachusetts Institute of Technology nor the names of their
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package org.dspace.checker;
+
+import java.io.InterruptedIOException;
+
+/**
+ * <p>
+ * Limits the rate at which a group of threads read data, for example all the
+ * checksum workers reading from one assetstore. Each thread reports what it
+ * has read, and is made to sleep until the group is back under the limit.
+ * </p>
+ * 
+ * <p>
+ * Unused capacity is not saved up, so an idle period is not followed by a
+ * burst above the limit.
+ * </p>
+ */
+class IOThrottle
+{
+    /** the limit */
+    private double bytesPerMilli;
+
+    /** the time at which everything read so far would have been read at the limit */
+    private double next = 0;
+
+    /**
+     * @param bytesPerSecond
+     *            the limit for all threads together
+     */
+    IOThrottle(long bytesPerSecond)
+    {
+        this.bytesPerMilli = bytesPerSecond / 1000.0;
+    }
+
+    /**
+     * Account for bytes read, sleeping if they take the group over the limit.
+     * 
+     * @param bytes
+     *            the number of bytes just read
+     * @throws InterruptedIOException
+     *             if the thread is interrupted while sleeping
+     */
+    void consume(int bytes) throws InterruptedIOException
+    {
+        long wait;
+
+        synchronized (this)
+        {
+            long now = System.currentTimeMillis();
+            if (next < now)
+            {
+                next = now;
+            }
+            next += bytes / bytesPerMilli;
+            wait = (long) (next - now);
+        }
+
+        if (wait > 0)
+        {
+            try
+            {
+                Thread.sleep(wait);
+            }
+            catch (InterruptedException e)
+            {
+                throw new InterruptedIOException("Interrupted while throttled");
+            }
+        }
+    }
+}
@@ -33,7 +33,12 @@
  */
 package org.dspace.checker;
 
+import java.sql.Timestamp;
 import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.dspace.core.ConfigurationManager;
 
 /**
  * An implementation of the selection strategy that selects bitstreams in the
@@ -68,6 +73,25 @@ public class SimpleDispatcher implements BitstreamDispatcher
      */
     private BitstreamInfoDAO bitstreamInfoDAO;
 
+    /**
+     * Number of bitstream ids fetched from the database at a time.
+     */
+    private int batchSize = 100;
+
+    /**
+     * Ids fetched but not yet handed out.
+     */
+    private LinkedList<Integer> batch = new LinkedList<Integer>();
+
+    /**
+     * The last bitstream fetched, and when it was last processed. The next
+     * batch carries on from here, so that bitstreams which have been handed
+     * out but whose results have not yet been written are not fetched again.
+     */
+    private Timestamp cursorDate = null;
+
+    private int cursorId = -1;
+
     /**
      * Creates a new SimpleDispatcher.
      * 
@@ -83,6 +107,12 @@ public class SimpleDispatcher implements BitstreamDispatcher
         this.bitstreamInfoDAO = bitstreamInfoDAO;
         this.processStartTime = startTime;
         this.loopContinuously = looping;
+
+        int size = ConfigurationManager.getIntProperty("checker.batchsize");
+        if (size > 0)
+        {
+            batchSize = size;
+        }
     }
 
     /**
@@ -94,23 +124,55 @@ public class SimpleDispatcher implements BitstreamDispatcher
     }
 
     /**
-     * Selects the next candidate bitstream.
+     * Selects the next candidate bitstream. Candidates are fetched from the
+     * database in batches of <code>checker.batchsize</code>, oldest first.
      * 
      * @see org.dspace.checker.BitstreamDispatcher#next()
      */
     public synchronized int next()
+    {
+        if (batch.isEmpty())
+        {
+            fetch();
+
+            // when looping continuously, start again from the oldest
+            // once the end is reached
+            if (batch.isEmpty() && loopContinuously && cursorDate != null)
+            {
+                cursorDate = null;
+                cursorId = -1;
+                fetch();
+            }
+        }
+
+        return batch.isEmpty() ? SENTINEL : batch.removeFirst().intValue();
+    }
+
+    /**
+     * Fetch the next batch of candidates after the cursor.
+     */
+    private void fetch()
     {
         // should process loop infinitely through the
         // bitstreams in most_recent_checksum table?
+        Timestamp lessThanDate = null;
         if (!loopContinuously && (processStartTime != null))
         {
-            return bitstreamInfoDAO.getOldestBitstream(new java.sql.Timestamp(
-                    processStartTime.getTime()));
+            lessThanDate = new Timestamp(processStartTime.getTime());
         }
-        else
+
+        List<BitstreamInfo> infos = bitstreamInfoDAO.getOldestBitstreams(
+                batchSize, lessThanDate, cursorDate, cursorId);
+
+        for (BitstreamInfo info : infos)
         {
-            return bitstreamInfoDAO.getOldestBitstream();
-        }
+            batch.add(new Integer(info.getBitstreamId()));
 
+            if (info.getProcessEndDate() != null)
+            {
+                cursorDate = (Timestamp) info.getProcessEndDate();
+                cursorId = info.getBitstreamId();
+            }
+        }
     }
 }
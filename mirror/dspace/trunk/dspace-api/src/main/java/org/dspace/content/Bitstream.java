@@ -39,8 +39,10 @@
  */
 package org.dspace.content;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.util.List;
 
 import org.apache.log4j.Logger;
@@ -342,6 +344,46 @@ public class Bitstream extends DSpaceObject
         return BitstreamStorageManager.retrieve(context, getID());
     }
 
+    /**
+     * Retrieve a channel onto the contents of the bitstream, if it is stored
+     * in a local asset store.
+     *
+     * @return a channel from which the bitstream can be read, or null if the
+     *         bitstream has to be read through {@link #retrieve()}.
+     * @throws AuthorizeException
+     */
+    public FileChannel retrieveChannel() throws AuthorizeException, IOException
+    {
+        AuthorizeManager.authorizeAction(context, this, Constants.READ);
+
+        return BitstreamStorageManager.retrieveChannel(context, getID());
+    }
+
+    /**
+     * Retrieve the local file holding the contents of the bitstream, so that
+     * it can be handed to something that sends files itself.
+     *
+     * @return the file, or null if the bitstream is not in a local asset
+     *         store.
+     * @throws AuthorizeException
+     */
+    public File retrieveFile() throws AuthorizeException, IOException
+    {
+        AuthorizeManager.authorizeAction(context, this, Constants.READ);
+
+        return BitstreamStorageManager.retrieveFile(context, getID());
+    }
+
+    /**
+     * Get the time the contents of the bitstream were stored.
+     *
+     * @return the time in milliseconds, or 0 if it is not known
+     */
+    public long getLastModified()
+    {
+        return BitstreamStorageManager.getLastModified(context, getID());
+    }
+
     /**
      * Determine if this bitstream is registered
      *
@@ -648,14 +648,12 @@ public class Collection extends DSpaceObject
     public void addItem(Item item) throws AuthorizeException
     {
         ArchiveManager.move(context, item, null, this);
-        context.addEvent(new Event(Event.ADD, Constants.COLLECTION, getID(), Constants.ITEM, item.getID(), item.getIdentifier().getCanonicalForm()));
     }
 
     @Deprecated
     public void removeItem(Item item) throws AuthorizeException, IOException
     {
         ArchiveManager.move(context, item, this, null);
-        context.addEvent(new Event(Event.REMOVE, Constants.COLLECTION, getID(), Constants.ITEM, item.getID(), item.getIdentifier().getCanonicalForm()));
     }
 
     @Deprecated
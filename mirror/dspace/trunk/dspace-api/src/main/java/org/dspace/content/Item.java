@@ -973,8 +973,6 @@ public class Item extends DSpaceObject
     public void withdraw() throws AuthorizeException, IOException
     {
         ArchiveManager.withdrawItem(context, this);
-
-		context.addEvent(new Event(Event.MODIFY, Constants.ITEM, getID(), "WITHDRAW"));
     }
 
     /**
@@ -987,7 +985,6 @@ public class Item extends DSpaceObject
     public void reinstate() throws AuthorizeException, IOException
     {
         ArchiveManager.reinstateItem(context, this);
-        context.addEvent(new Event(Event.MODIFY, Constants.ITEM, getID(), "REINSTATE"));
     }
 
     /**
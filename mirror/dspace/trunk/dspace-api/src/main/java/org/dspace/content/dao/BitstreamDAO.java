@@ -178,4 +178,32 @@ public abstract class BitstreamDAO extends ContentDAO<BitstreamDAO>
     {
         return childDAO.getDeletedBitstreams();
     }
+
+    /**
+     * Count the bitstreams that are not marked deleted and whose bits live in
+     * the given file. With a content-addressed asset store several bitstreams
+     * can share one file, which may only be removed once this drops to zero.
+     *
+     * @param storeNumber the asset store the file is in
+     * @param internalID the internal id of the file
+     * @return the number of live bitstreams referring to the file
+     */
+    public int getReferenceCount(int storeNumber, String internalID)
+    {
+        return childDAO.getReferenceCount(storeNumber, internalID);
+    }
+
+    /**
+     * Add a row, already marked deleted, for a file that its bitstream no
+     * longer needs, such as the copy left behind when a bitstream moves to
+     * another asset store. Cleanup deletes the file unless a live bitstream
+     * uses it, and then removes the row.
+     *
+     * @param storeNumber the asset store the file is in
+     * @param internalID the internal id of the file
+     */
+    public void createDeleted(int storeNumber, String internalID)
+    {
+        childDAO.createDeleted(storeNumber, internalID);
+    }
 }
@@ -43,8 +43,11 @@ import org.dspace.authorize.AuthorizeException;
 import org.dspace.authorize.AuthorizeManager;
 import org.dspace.content.Bitstream;
 import org.dspace.content.BitstreamFormat;
+import org.dspace.content.Site;
+import org.dspace.core.Constants;
 import org.dspace.core.Context;
 import org.dspace.core.LogManager;
+import org.dspace.event.Event;
 
 /**
  * @author James Rutherford
@@ -70,6 +73,9 @@ public class BitstreamFormatDAOCore extends BitstreamFormatDAO
         log.info(LogManager.getHeader(context, "create_bitstream_format",
                 "bitstream_format_id=" + bitstreamFormat.getID()));
 
+        context.addEvent(new Event(Event.CREATE, Constants.SITE, Site.SITE_ID,
+                    RegistryCache.BITSTREAM_FORMAT));
+
         return bitstreamFormat;
     }
 
@@ -102,6 +108,9 @@ public class BitstreamFormatDAOCore extends BitstreamFormatDAO
                 "bitstream_format_id=" + bitstreamFormat.getID()));
 
         childDAO.update(bitstreamFormat);
+
+        context.addEvent(new Event(Event.MODIFY, Constants.SITE, Site.SITE_ID,
+                    RegistryCache.BITSTREAM_FORMAT));
     }
 
     @Override
@@ -126,5 +135,8 @@ public class BitstreamFormatDAOCore extends BitstreamFormatDAO
         context.removeCached(bitstreamFormat, id);
 
         childDAO.delete(id);
+
+        context.addEvent(new Event(Event.DELETE, Constants.SITE, Site.SITE_ID,
+                    RegistryCache.BITSTREAM_FORMAT));
     }
 }
@@ -350,6 +350,10 @@ public class CollectionDAOCore extends CollectionDAO
                 collection.getID(), null));
         context.addEvent(new Event(Event.MODIFY, Constants.ITEM,
                 item.getID(), null));
+        context.addEvent(new Event(Event.ADD, Constants.COLLECTION,
+                collection.getID(), Constants.ITEM, item.getID(),
+                item.getIdentifier() == null ? null :
+                        item.getIdentifier().getCanonicalForm()));
 
         // If we're adding the Item to the Collection, we bequeath the
         // policies unto it.
@@ -373,6 +377,10 @@ public class CollectionDAOCore extends CollectionDAO
                 collection.getID(), null));
         context.addEvent(new Event(Event.MODIFY, Constants.ITEM,
                 item.getID(), null));
+        context.addEvent(new Event(Event.REMOVE, Constants.COLLECTION,
+                collection.getID(), Constants.ITEM, item.getID(),
+                item.getIdentifier() == null ? null :
+                        item.getIdentifier().getCanonicalForm()));
 
         childDAO.unlink(collection, item);
 
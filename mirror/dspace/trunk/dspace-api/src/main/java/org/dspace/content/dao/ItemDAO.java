@@ -55,6 +55,7 @@ import org.dspace.uri.dao.*;
 
 import java.text.ParseException;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 
@@ -144,6 +145,18 @@ public abstract class ItemDAO extends ContentDAO<ItemDAO>
         return childDAO.getItems();
     }
 
+    /**
+     * Returns an iterator over the items that are both in the archive and not
+     * withdrawn, in item ID order. Unlike {@link #getItems()}, the items are
+     * retrieved a window at a time as the iterator advances, so this is the
+     * method to use when walking the whole archive. It is safe to commit the
+     * context while iterating.
+     */
+    public Iterator<Item> getItemIterator()
+    {
+        return childDAO.getItemIterator();
+    }
+
     /**
      * This function primarily exists to service the Harvest class. See that
      * class for documentation on usage.
@@ -213,6 +226,16 @@ public abstract class ItemDAO extends ContentDAO<ItemDAO>
         childDAO.loadMetadata(item);
     }
 
+    /**
+     * Load the metadata for a number of items at once, e.g. for a page of
+     * search or browse results. This costs far fewer queries than loading
+     * the metadata for each item separately.
+     */
+    public void loadMetadata(List<Item> items)
+    {
+        childDAO.loadMetadata(items);
+    }
+
     public List<DCValue> getMetadata(Item item, String schema, String element,
             String qualifier, String lang)
     {
@@ -47,8 +47,11 @@ import org.dspace.authorize.AuthorizeManager;
 import org.dspace.content.MetadataField;
 import org.dspace.content.MetadataSchema;
 import org.dspace.content.NonUniqueMetadataException;
+import org.dspace.content.Site;
+import org.dspace.core.Constants;
 import org.dspace.core.Context;
 import org.dspace.core.LogManager;
+import org.dspace.event.Event;
 
 public class MetadataFieldDAOCore extends MetadataFieldDAO
 {
@@ -86,6 +89,9 @@ public class MetadataFieldDAOCore extends MetadataFieldDAO
         log.info(LogManager.getHeader(context, "create_metadata_field",
                     "metadata_field_id=" + id));
 
+        context.addEvent(new Event(Event.CREATE, Constants.SITE, Site.SITE_ID,
+                    RegistryCache.METADATA_FIELD));
+
         return field;
     }
 
@@ -144,6 +150,9 @@ public class MetadataFieldDAOCore extends MetadataFieldDAO
                 "qualifier=" + qualifier));
 
         childDAO.update(field);
+
+        context.addEvent(new Event(Event.MODIFY, Constants.SITE, Site.SITE_ID,
+                    RegistryCache.METADATA_FIELD));
     }
 
     @Override
@@ -164,6 +173,9 @@ public class MetadataFieldDAOCore extends MetadataFieldDAO
         context.removeCached(field, id);
 
         childDAO.delete(id);
+
+        context.addEvent(new Event(Event.DELETE, Constants.SITE, Site.SITE_ID,
+                    RegistryCache.METADATA_FIELD));
     }
 
     @Override
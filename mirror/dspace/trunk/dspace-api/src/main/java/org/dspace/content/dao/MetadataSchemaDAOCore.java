@@ -47,8 +47,11 @@ import org.dspace.authorize.AuthorizeManager;
 import org.dspace.content.MetadataField;
 import org.dspace.content.MetadataSchema;
 import org.dspace.content.NonUniqueMetadataException;
+import org.dspace.content.Site;
+import org.dspace.core.Constants;
 import org.dspace.core.Context;
 import org.dspace.core.LogManager;
+import org.dspace.event.Event;
 
 public class MetadataSchemaDAOCore extends MetadataSchemaDAO
 {
@@ -72,6 +75,9 @@ public class MetadataSchemaDAOCore extends MetadataSchemaDAO
         log.info(LogManager.getHeader(context, "create_metadata_schema",
                     "metadata_schema_id=" + schema.getID()));
 
+        context.addEvent(new Event(Event.CREATE, Constants.SITE, Site.SITE_ID,
+                    RegistryCache.METADATA_SCHEMA));
+
         return schema;
     }
 
@@ -125,6 +131,9 @@ public class MetadataSchemaDAOCore extends MetadataSchemaDAO
                     "name=" + name));
 
         childDAO.update(schema);
+
+        context.addEvent(new Event(Event.MODIFY, Constants.SITE, Site.SITE_ID,
+                    RegistryCache.METADATA_SCHEMA));
     }
 
     @Override
@@ -150,5 +159,8 @@ public class MetadataSchemaDAOCore extends MetadataSchemaDAO
         }
 
         childDAO.delete(id);
+
+        context.addEvent(new Event(Event.DELETE, Constants.SITE, Site.SITE_ID,
+                    RegistryCache.METADATA_SCHEMA));
     }
 }
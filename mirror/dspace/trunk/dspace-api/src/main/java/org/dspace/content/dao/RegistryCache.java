@@ -0,0 +1,478 @@
+/*
+ * RegistryCache.java
+ *
+ * Version: $Revision$
+ *
+ * Date: $Date$
+ *
+ * Copyright (c) 2002-2005, Hewlett-Packard Company and Massachusetts
+ * Institute of Technology.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * - Neither the name of the Hewlett-Packard Company nor the name of the
+ * Massachusetts Institute of Technology nor the names of their
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package org.dspace.content.dao;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+/**
+ * A process-wide cache of the metadata schema, metadata field and bitstream
+ * format registries. These tables are tiny and almost never change, but are
+ * consulted every time an item is loaded, crosswalked or indexed.
+ * <p>
+ * Each registry is held as an immutable {@link Snapshot} of its rows. Readers
+ * never lock and never touch the database once a snapshot has been loaded;
+ * when a registry is edited the snapshot is simply thrown away (see
+ * {@link RegistryConsumer}) and a fresh one is loaded on the next lookup.
+ * Snapshots are always loaded through a separate connection, so they only
+ * ever contain committed data.
+ * <p>
+ * A context that has edited a registry reads that registry from the database
+ * until it commits, so that it sees its own changes; the snapshot is thrown
+ * away as soon as the edit is made, and again once it is committed.
+ * <p>
+ * Registry edits made by another JVM (e.g. the command line registry loader
+ * while the web applications are running) are not seen until the snapshot
+ * expires, <code>registry.cache.maxage</code> seconds (default 300) after it
+ * was loaded. New entries are found sooner, because a lookup that misses the
+ * cache falls through to the database.
+ *
+ * @version $Revision$
+ */
+public class RegistryCache
+{
+    private static Logger log = Logger.getLogger(RegistryCache.class);
+
+    /** The metadata schema registry */
+    public static final String METADATA_SCHEMA = "metadataschemaregistry";
+
+    /** The metadata field registry */
+    public static final String METADATA_FIELD = "metadatafieldregistry";
+
+    /** The bitstream format registry */
+    public static final String BITSTREAM_FORMAT = "bitstreamformatregistry";
+
+    /** How long a snapshot is used for, in milliseconds */
+    private static final long maxAge;
+
+    static
+    {
+        maxAge = 1000L * ((ConfigurationManager.getProperty(
+                    "registry.cache.maxage") == null) ? 300 :
+            ConfigurationManager.getIntProperty("registry.cache.maxage"));
+    }
+
+    /** Handed to contexts that have edited a registry: every lookup misses */
+    private static final Snapshot EMPTY =
+        new Snapshot(new ArrayList<TableRow>(), null);
+
+    /** The current snapshot of each registry, keyed by table name */
+    private static final ConcurrentHashMap<String, Snapshot> snapshots =
+        new ConcurrentHashMap<String, Snapshot>();
+
+    /**
+     * Bumped on every invalidation, so that a snapshot which was being loaded
+     * while a registry changed is not published. Only read or changed while
+     * holding the lock on <code>snapshots</code>.
+     */
+    private static long generation = 0;
+
+    /**
+     * Return the current snapshot of the given registry, loading it if
+     * necessary.
+     *
+     * @param registry one of METADATA_SCHEMA, METADATA_FIELD or
+     *                 BITSTREAM_FORMAT
+     * @return the snapshot
+     */
+    public static Snapshot getSnapshot(String registry)
+    {
+        Snapshot snapshot = snapshots.get(registry);
+
+        if ((snapshot == null) || snapshot.isExpired())
+        {
+            long current;
+            synchronized (snapshots)
+            {
+                current = generation;
+            }
+
+            snapshot = load(registry);
+
+            // Checked and published under the lock, so that an invalidation
+            // can't come in between
+            synchronized (snapshots)
+            {
+                if (generation == current)
+                {
+                    snapshots.put(registry, snapshot);
+                }
+            }
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Return the snapshot of the given registry to be used by the given
+     * context. If the context has edited the registry in its current
+     * transaction, this is an empty snapshot, so that its lookups all go to
+     * the database.
+     *
+     * @param context the context doing the lookup
+     * @param registry one of METADATA_SCHEMA, METADATA_FIELD or
+     *                 BITSTREAM_FORMAT
+     * @return the snapshot
+     */
+    public static Snapshot getSnapshot(Context context, String registry)
+    {
+        if (context.getRegistryChanged(registry))
+        {
+            return EMPTY;
+        }
+
+        return getSnapshot(registry);
+    }
+
+    /**
+     * Record that the given context is editing a registry: it stops using
+     * the cache for that registry until it commits, and the shared snapshot
+     * is discarded now and again once the edit is committed.
+     *
+     * @param context the context making the edit
+     * @param registry the registry being edited
+     */
+    public static void registryChanged(Context context, String registry)
+    {
+        context.setRegistryChanged(registry);
+        invalidate(registry);
+    }
+
+    /**
+     * Discard the snapshot of the given registry. The next lookup will load
+     * a fresh copy.
+     *
+     * @param registry the registry that has changed
+     */
+    public static void invalidate(String registry)
+    {
+        synchronized (snapshots)
+        {
+            generation++;
+            snapshots.remove(registry);
+        }
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("Invalidated cached " + registry);
+        }
+    }
+
+    /**
+     * Discard the snapshots of all the registries.
+     */
+    public static void invalidateAll()
+    {
+        synchronized (snapshots)
+        {
+            generation++;
+            snapshots.clear();
+        }
+    }
+
+    private static Snapshot load(String registry)
+    {
+        Context context = null;
+
+        try
+        {
+            context = new Context();
+
+            Snapshot snapshot;
+
+            if (METADATA_SCHEMA.equals(registry))
+            {
+                snapshot = new Snapshot(query(context, registry,
+                        "metadata_schema_id"), "metadata_schema_id");
+                snapshot.index("uuid");
+                snapshot.index("short_id");
+                snapshot.index("namespace");
+            }
+            else if (METADATA_FIELD.equals(registry))
+            {
+                snapshot = new Snapshot(query(context, registry,
+                        "metadata_field_id"), "metadata_field_id");
+                snapshot.index("uuid");
+
+                for (TableRow row : snapshot.rows)
+                {
+                    snapshot.put(Snapshot.fieldKey(
+                            row.getIntColumn("metadata_schema_id"),
+                            row.getStringColumn("element"),
+                            row.getStringColumn("qualifier")), row);
+                }
+            }
+            else if (BITSTREAM_FORMAT.equals(registry))
+            {
+                snapshot = new Snapshot(query(context, registry,
+                        "bitstream_format_id"), "bitstream_format_id");
+                snapshot.index("uuid");
+                snapshot.index("short_description");
+
+                // Internal formats are never matched by MIME type, since
+                // e.g. "License" is also text/plain
+                for (TableRow row : snapshot.rows)
+                {
+                    if (!row.getBooleanColumn("internal"))
+                    {
+                        snapshot.put(Snapshot.key("mimetype",
+                                row.getStringColumn("mimetype")), row);
+                    }
+                }
+
+                loadExtensions(context, snapshot);
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unknown registry "
+                        + registry);
+            }
+
+            if (log.isDebugEnabled())
+            {
+                log.debug("Loaded " + snapshot.rows.size() + " rows from "
+                        + registry);
+            }
+
+            return snapshot;
+        }
+        catch (SQLException sqle)
+        {
+            throw new RuntimeException(sqle);
+        }
+        finally
+        {
+            // Read only, so there is never anything to commit
+            if ((context != null) && context.isValid())
+            {
+                context.abort();
+            }
+        }
+    }
+
+    private static List<TableRow> query(Context context, String registry,
+            String idColumn) throws SQLException
+    {
+        TableRowIterator tri = DatabaseManager.queryTable(context, registry,
+                "SELECT * FROM " + registry + " ORDER BY " + idColumn);
+
+        return tri.toList();
+    }
+
+    private static void loadExtensions(Context context, Snapshot snapshot)
+        throws SQLException
+    {
+        Map<Integer, List<String>> extensions =
+            new HashMap<Integer, List<String>>();
+
+        TableRowIterator tri = DatabaseManager.query(context,
+                "SELECT bitstream_format_id, extension FROM fileextension " +
+                "ORDER BY file_extension_id");
+
+        try
+        {
+            while (tri.hasNext())
+            {
+                TableRow row = tri.next();
+                Integer id = row.getIntColumn("bitstream_format_id");
+                List<String> list = extensions.get(id);
+
+                if (list == null)
+                {
+                    list = new ArrayList<String>();
+                    extensions.put(id, list);
+                }
+
+                list.add(row.getStringColumn("extension"));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+
+        for (Map.Entry<Integer, List<String>> entry : extensions.entrySet())
+        {
+            snapshot.extensions.put(entry.getKey(),
+                    entry.getValue().toArray(new String[0]));
+        }
+    }
+
+    /**
+     * An immutable copy of one registry table. The rows are shared by every
+     * thread in the JVM, so callers must treat them as read-only.
+     */
+    public static class Snapshot
+    {
+        /** All the rows, in ID order */
+        private final List<TableRow> rows;
+
+        private final Map<Integer, TableRow> byID =
+            new HashMap<Integer, TableRow>();
+
+        private final Map<String, TableRow> byKey =
+            new HashMap<String, TableRow>();
+
+        private final Map<Integer, String[]> extensions =
+            new HashMap<Integer, String[]>();
+
+        /** When this snapshot should be reloaded */
+        private final long expires;
+
+        private Snapshot(List<TableRow> rows, String idColumn)
+        {
+            this.rows = Collections.unmodifiableList(rows);
+
+            for (TableRow row : rows)
+            {
+                byID.put(row.getIntColumn(idColumn), row);
+            }
+
+            expires = (maxAge > 0) ?
+                System.currentTimeMillis() + maxAge : Long.MAX_VALUE;
+        }
+
+        /**
+         * @param id the primary key of the row
+         * @return the row, or null if it is not in the snapshot
+         */
+        public TableRow get(int id)
+        {
+            return byID.get(id);
+        }
+
+        /**
+         * Look up a row by a column which is unique within the registry,
+         * such as <code>short_id</code> or <code>short_description</code>.
+         *
+         * @param column the column name
+         * @param value the value of that column
+         * @return the row, or null if it is not in the snapshot
+         */
+        public TableRow get(String column, String value)
+        {
+            return byKey.get(key(column, value));
+        }
+
+        /**
+         * Look up a metadata field by schema, element and qualifier.
+         *
+         * @return the row, or null if it is not in the snapshot
+         */
+        public TableRow getField(int schemaID, String element,
+                String qualifier)
+        {
+            return byKey.get(fieldKey(schemaID, element, qualifier));
+        }
+
+        /**
+         * @return all the rows in the registry, in ID order
+         */
+        public List<TableRow> getAll()
+        {
+            return rows;
+        }
+
+        /**
+         * @param formatID a bitstream format ID
+         * @return a copy of the file extensions registered for that format
+         */
+        public String[] getExtensions(int formatID)
+        {
+            String[] list = extensions.get(formatID);
+
+            return (list == null) ? new String[0] : list.clone();
+        }
+
+        boolean isExpired()
+        {
+            return System.currentTimeMillis() > expires;
+        }
+
+        private void index(String column)
+        {
+            for (TableRow row : rows)
+            {
+                put(key(column, row.getStringColumn(column)), row);
+            }
+        }
+
+        private void put(String key, TableRow row)
+        {
+            // Keep the first (lowest ID) row if a key is not unique
+            if (!byKey.containsKey(key))
+            {
+                byKey.put(key, row);
+            }
+        }
+
+        private static String key(String column, String value)
+        {
+            return column + '\u0000' + value;
+        }
+
+        private static String fieldKey(int schemaID, String element,
+                String qualifier)
+        {
+            StringBuffer key = new StringBuffer("field\u0000");
+            key.append(schemaID).append('\u0000').append(element);
+
+            if (qualifier != null)
+            {
+                key.append('\u0000').append(qualifier);
+            }
+
+            return key.toString();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * RegistryConsumer.java
+ *
+ * Version: $Revision$
+ *
+ * Date: $Date$
+ *
+ * Copyright (c) 2002-2005, Hewlett-Packard Company and Massachusetts
+ * Institute of Technology.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * - Neither the name of the Hewlett-Packard Company nor the name of the
+ * Massachusetts Institute of Technology nor the names of their
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package org.dspace.content.dao;
+
+import org.apache.log4j.Logger;
+
+import org.dspace.core.Constants;
+import org.dspace.core.Context;
+import org.dspace.event.Consumer;
+import org.dspace.event.Event;
+
+/**
+ * Discards the cached copy of a registry once a transaction that edited it
+ * has been committed. Registry edits are reported as events on the Site,
+ * with the name of the registry as the event detail.
+ *
+ * Recommended filter:  Site+Create|Modify|Delete
+ *
+ * @version $Revision$
+ */
+public class RegistryConsumer implements Consumer
+{
+    /** log4j logger */
+    private static Logger log = Logger.getLogger(RegistryConsumer.class);
+
+    public void initialize() throws Exception
+    {
+    }
+
+    public void consume(Context context, Event event) throws Exception
+    {
+        String registry = event.getDetail();
+
+        if (event.getSubjectType() != Constants.SITE || registry == null)
+        {
+            return;
+        }
+
+        if (RegistryCache.METADATA_SCHEMA.equals(registry)
+                || RegistryCache.METADATA_FIELD.equals(registry)
+                || RegistryCache.BITSTREAM_FORMAT.equals(registry))
+        {
+            RegistryCache.invalidate(registry);
+        }
+        else
+        {
+            log.debug("Ignoring event for " + registry);
+        }
+    }
+
+    public void end(Context context) throws Exception
+    {
+    }
+
+    public void finish(Context context) throws Exception
+    {
+    }
+}
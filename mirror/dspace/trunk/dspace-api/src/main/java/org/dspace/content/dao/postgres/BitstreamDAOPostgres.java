@@ -243,6 +243,43 @@ public class BitstreamDAOPostgres extends BitstreamDAO
         }
     }
 
+    @Override
+    public int getReferenceCount(int storeNumber, String internalID)
+    {
+        try
+        {
+            TableRow row = DatabaseManager.querySingle(context,
+                    "SELECT COUNT(*) AS num FROM bitstream " +
+                    "WHERE store_number = ? AND internal_id = ? " +
+                    "AND deleted <> '1'",
+                    new Integer(storeNumber), internalID);
+
+            return (int) row.getLongColumn("num");
+        }
+        catch (SQLException sqle)
+        {
+            throw new RuntimeException(sqle);
+        }
+    }
+
+    @Override
+    public void createDeleted(int storeNumber, String internalID)
+    {
+        try
+        {
+            TableRow row = DatabaseManager.create(context, "bitstream");
+            row.setColumn("uuid", UUID.randomUUID().toString());
+            row.setColumn("store_number", storeNumber);
+            row.setColumn("internal_id", internalID);
+            row.setColumn("deleted", true);
+            DatabaseManager.update(context, row);
+        }
+        catch (SQLException sqle)
+        {
+            throw new RuntimeException(sqle);
+        }
+    }
+
     ////////////////////////////////////////////////////////////////////
     // Utility methods
     ////////////////////////////////////////////////////////////////////
@@ -383,7 +420,15 @@ public class BitstreamDAOPostgres extends BitstreamDAO
         row.setColumn("uuid", bitstream.getIdentifier().getUUID().toString());
 
         row.setColumn("sequence_id", sequenceID);
-        row.setColumn("store_number", storeNumber);
+
+        // Live bitstreams are moved between asset stores by the storage
+        // layer, which updates the row itself; an object loaded before the
+        // move must not put back the store its bits have left
+        if (deleted || internalID == null || row.isColumnNull("internal_id")
+                || !internalID.equals(row.getStringColumn("internal_id")))
+        {
+            row.setColumn("store_number", storeNumber);
+        }
         row.setColumn("bitstream_format_id", bitstreamFormat.getID());
         row.setColumn("size_bytes", sizeBytes);
 
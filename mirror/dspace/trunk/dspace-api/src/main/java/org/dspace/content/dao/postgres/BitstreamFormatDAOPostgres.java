@@ -49,6 +49,7 @@ import org.dspace.core.Context;
 import org.dspace.core.LogManager;
 import org.dspace.content.BitstreamFormat;
 import org.dspace.content.dao.BitstreamFormatDAO;
+import org.dspace.content.dao.RegistryCache;
 import org.dspace.uri.ObjectIdentifier;
 import org.dspace.storage.rdbms.DatabaseManager;
 import org.dspace.storage.rdbms.TableRow;
@@ -91,10 +92,17 @@ public class BitstreamFormatDAOPostgres extends BitstreamFormatDAO
     @Override
     public BitstreamFormat retrieve(int id)
     {
+        RegistryCache.Snapshot snapshot = getSnapshot();
+        TableRow row = snapshot.get(id);
+
+        if (row != null)
+        {
+            return retrieve(row, snapshot.getExtensions(id));
+        }
+
         try
         {
-            TableRow row = DatabaseManager.find(context,
-                    "bitstreamformatregistry", id);
+            row = DatabaseManager.find(context, "bitstreamformatregistry", id);
 
             if (row == null)
             {
@@ -115,9 +123,18 @@ public class BitstreamFormatDAOPostgres extends BitstreamFormatDAO
     @Override
     public BitstreamFormat retrieve(UUID uuid)
     {
+        RegistryCache.Snapshot snapshot = getSnapshot();
+        TableRow row = snapshot.get("uuid", uuid.toString());
+
+        if (row != null)
+        {
+            return retrieve(row, snapshot.getExtensions(
+                        row.getIntColumn("bitstream_format_id")));
+        }
+
         try
         {
-            TableRow row = DatabaseManager.findByUnique(context,
+            row = DatabaseManager.findByUnique(context,
                     "bitstreamformatregistry", "uuid", uuid.toString());
 
             if (row == null)
@@ -139,9 +156,18 @@ public class BitstreamFormatDAOPostgres extends BitstreamFormatDAO
     @Override
     public BitstreamFormat retrieveByShortDescription(String desc)
     {
+        RegistryCache.Snapshot snapshot = getSnapshot();
+        TableRow row = snapshot.get("short_description", desc);
+
+        if (row != null)
+        {
+            return retrieve(row, snapshot.getExtensions(
+                        row.getIntColumn("bitstream_format_id")));
+        }
+
         try
         {
-            TableRow row = DatabaseManager.findByUnique(context,
+            row = DatabaseManager.findByUnique(context,
                     "bitstreamformatregistry", "short_description", desc);
 
             return retrieve(row);
@@ -155,11 +181,25 @@ public class BitstreamFormatDAOPostgres extends BitstreamFormatDAO
     @Override
     public BitstreamFormat retrieveByMimeType(String mimeType)
     {
+        // The lookup has always been a LIKE, so a MIME type containing
+        // wildcards has to go to the database
+        boolean pattern = (mimeType.indexOf('%') >= 0)
+                || (mimeType.indexOf('_') >= 0);
+
+        RegistryCache.Snapshot snapshot = getSnapshot();
+        TableRow row = pattern ? null : snapshot.get("mimetype", mimeType);
+
+        if (row != null)
+        {
+            return retrieve(row, snapshot.getExtensions(
+                        row.getIntColumn("bitstream_format_id")));
+        }
+
         try
         {
             // NOTE: Avoid internal formats since e.g. "License" also has
             // a MIMEtype of text/plain.
-            TableRow row = DatabaseManager.querySingle(context,
+            row = DatabaseManager.querySingle(context,
                 "SELECT * FROM bitstreamformatregistry " +
                 "WHERE mimetype LIKE ? AND internal = '0'", mimeType);
 
@@ -176,6 +216,9 @@ public class BitstreamFormatDAOPostgres extends BitstreamFormatDAO
     {
         try
         {
+            RegistryCache.registryChanged(context,
+                    RegistryCache.BITSTREAM_FORMAT);
+
             TableRow row = DatabaseManager.find(context,
                     "bitstreamformatregistry", bitstreamFormat.getID());
 
@@ -219,6 +262,9 @@ public class BitstreamFormatDAOPostgres extends BitstreamFormatDAO
     {
         try
         {
+            RegistryCache.registryChanged(context,
+                    RegistryCache.BITSTREAM_FORMAT);
+
             BitstreamFormat unknown = BitstreamFormat.findUnknown(context);
 
             // Set bitstreams with this format to "unknown"
@@ -304,6 +350,16 @@ public class BitstreamFormatDAOPostgres extends BitstreamFormatDAO
     // Utility methods
     ////////////////////////////////////////////////////////////////////
 
+    /**
+     * Lookups are answered from the registry cache where possible; anything
+     * not found there (e.g. a format created earlier in this transaction) is
+     * read from the database as before.
+     */
+    private RegistryCache.Snapshot getSnapshot()
+    {
+        return RegistryCache.getSnapshot(context, RegistryCache.BITSTREAM_FORMAT);
+    }
+
     private BitstreamFormat retrieve(TableRow row)
     {
         if (row == null)
@@ -311,9 +367,16 @@ public class BitstreamFormatDAOPostgres extends BitstreamFormatDAO
             return null;
         }
 
+        return retrieve(row, getExtensions(
+                    row.getIntColumn("bitstream_format_id")));
+    }
+
+    private BitstreamFormat retrieve(TableRow row, String[] extensions)
+    {
         int id = row.getIntColumn("bitstream_format_id");
         BitstreamFormat bitstreamFormat = new BitstreamFormat(context, id);
         populateBitstreamFormatFromTableRow(bitstreamFormat, row);
+        bitstreamFormat.setExtensions(extensions);
 
         return bitstreamFormat;
     }
@@ -337,14 +400,23 @@ public class BitstreamFormatDAOPostgres extends BitstreamFormatDAO
     {
         UUID uuid = UUID.fromString(row.getStringColumn("uuid"));
         bitstreamFormat.setIdentifier(new ObjectIdentifier(uuid));
+        bitstreamFormat.setMIMEType(row.getStringColumn("mimetype"));
+        bitstreamFormat.setShortDescription(
+            row.getStringColumn("short_description"));
+        bitstreamFormat.setDescription(row.getStringColumn("description"));
+        bitstreamFormat.setSupportLevel(row.getIntColumn("support_level"));
+        bitstreamFormat.setInternal(row.getBooleanColumn("internal"));
+    }
 
+    private String[] getExtensions(int id)
+    {
         List<String> extensions = new ArrayList<String>();
 
         try
         {
             TableRowIterator tri = DatabaseManager.query(context,
                     "SELECT extension FROM fileextension " +
-                    "WHERE bitstream_format_id= ? ", bitstreamFormat.getID());
+                    "WHERE bitstream_format_id= ? ", id);
 
             for (TableRow extensionRow : tri.toList())
             {
@@ -356,14 +428,7 @@ public class BitstreamFormatDAOPostgres extends BitstreamFormatDAO
             throw new RuntimeException(sqle);
         }
 
-        bitstreamFormat.setExtensions(
-                (String[]) extensions.toArray(new String[0]));
-        bitstreamFormat.setMIMEType(row.getStringColumn("mimetype"));
-        bitstreamFormat.setShortDescription(
-            row.getStringColumn("short_description"));
-        bitstreamFormat.setDescription(row.getStringColumn("description"));
-        bitstreamFormat.setSupportLevel(row.getIntColumn("support_level"));
-        bitstreamFormat.setInternal(row.getBooleanColumn("internal"));
+        return (String[]) extensions.toArray(new String[0]);
     }
 
     private void populateTableRowFromBitstreamFormat(BitstreamFormat
@@ -46,7 +46,11 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.TimeZone;
 import java.util.UUID;
 
@@ -57,13 +61,7 @@ import org.dspace.content.Collection;
 import org.dspace.content.DSpaceObject;
 import org.dspace.content.DCValue;
 import org.dspace.content.Item;
-import org.dspace.content.MetadataField;
-import org.dspace.content.MetadataSchema;
 import org.dspace.content.MetadataValue;
-import org.dspace.content.dao.MetadataFieldDAO;
-import org.dspace.content.dao.MetadataFieldDAOFactory;
-import org.dspace.content.dao.MetadataSchemaDAO;
-import org.dspace.content.dao.MetadataSchemaDAOFactory;
 import org.dspace.content.proxy.ItemProxy;
 import org.dspace.content.dao.ItemDAO;
 import org.dspace.uri.ObjectIdentifier;
@@ -120,6 +118,12 @@ public class ItemDAOPostgres extends ItemDAO
         "    )" +
         ")";
 
+    /** The number of items whose metadata is read by a single query */
+    private static final int METADATA_BATCH_SIZE = 100;
+
+    /** The number of item IDs read by each query of an item iterator */
+    private static final int ITERATOR_WINDOW_SIZE = 1000;
+
     public ItemDAOPostgres(Context context)
     {
         super(context);
@@ -238,6 +242,12 @@ public class ItemDAOPostgres extends ItemDAO
         }
     }
 
+    @Override
+    public Iterator<Item> getItemIterator()
+    {
+        return new ArchivedItemIterator(ITERATOR_WINDOW_SIZE);
+    }
+
     @Override
     public List<Item> getItems(DSpaceObject scope,
             String startDate, String endDate, int offset, int limit,
@@ -659,6 +669,129 @@ public class ItemDAOPostgres extends ItemDAO
         return items;
     }
 
+    /**
+     * Iterates over the items in the archive by reading their IDs a window
+     * at a time, each window starting after the last ID of the one before.
+     * Every window is a separate short query rather than a cursor held open
+     * for the whole iteration, so callers can commit (which would close a
+     * cursor) as often as they like. Items from a window are removed from the
+     * context cache once the iterator moves on to the next one.
+     */
+    private class ArchivedItemIterator implements Iterator<Item>
+    {
+        private int windowSize;
+
+        /** The IDs in the current window */
+        private List<Integer> window = new ArrayList<Integer>();
+
+        /** The position of the next ID in the window */
+        private int position = 0;
+
+        /** The highest item ID seen so far */
+        private int lastID = -1;
+
+        /** True once a window has come back less than full */
+        private boolean exhausted = false;
+
+        /** The items handed out from the current window */
+        private List<Item> retrieved = new ArrayList<Item>();
+
+        ArchivedItemIterator(int windowSize)
+        {
+            this.windowSize = windowSize;
+        }
+
+        public boolean hasNext()
+        {
+            if (position < window.size())
+            {
+                return true;
+            }
+
+            if (!exhausted)
+            {
+                nextWindow();
+            }
+
+            return position < window.size();
+        }
+
+        public Item next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+
+            Item item = retrieve(window.get(position++));
+            retrieved.add(item);
+
+            return item;
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        private void nextWindow()
+        {
+            for (Item item : retrieved)
+            {
+                context.removeCached(item, item.getID());
+            }
+            retrieved.clear();
+
+            window.clear();
+            position = 0;
+
+            String query = "SELECT item_id FROM item " +
+                    "WHERE in_archive = '1' AND withdrawn = '0' " +
+                    "AND item_id > ? ORDER BY item_id";
+
+            if ("oracle".equals(ConfigurationManager.getProperty("db.name")))
+            {
+                query = "SELECT * FROM (" + query + ") WHERE ROWNUM <= ?";
+            }
+            else
+            {
+                query += " LIMIT ?";
+            }
+
+            try
+            {
+                TableRowIterator tri = DatabaseManager.query(context, query,
+                        lastID, windowSize);
+
+                try
+                {
+                    while (tri.hasNext())
+                    {
+                        window.add(tri.next().getIntColumn("item_id"));
+                    }
+                }
+                finally
+                {
+                    tri.close();
+                }
+            }
+            catch (SQLException sqle)
+            {
+                throw new RuntimeException(sqle);
+            }
+
+            if (window.size() < windowSize)
+            {
+                exhausted = true;
+            }
+
+            if (window.size() > 0)
+            {
+                lastID = window.get(window.size() - 1);
+            }
+        }
+    }
+
     private void populateTableRowFromItem(Item item, TableRow row)
     {
         EPerson submitter = item.getSubmitter();
@@ -700,50 +833,105 @@ public class ItemDAOPostgres extends ItemDAO
     @Override
     public void loadMetadata(Item item)
     {
-        MetadataFieldDAO mfDAO = MetadataFieldDAOFactory.getInstance(context);
-        MetadataSchemaDAO msDAO = MetadataSchemaDAOFactory.getInstance(context);
+        List<Item> items = new ArrayList<Item>(1);
+        items.add(item);
 
-        try
-        {
-            TableRowIterator tri = DatabaseManager.queryTable(context,
-                    "metadatavalue",
-                    "SELECT * FROM MetadataValue " +
-                    "WHERE item_id = ? " +
-                    "ORDER BY metadata_field_id, place",
-                    item.getID());
+        loadMetadata(items);
+    }
 
-            List<DCValue> metadata = new ArrayList<DCValue>();
+    /**
+     * Load the metadata for the given items with one query per
+     * METADATA_BATCH_SIZE items. The field and schema names are joined in by
+     * the query itself, so no registry lookups are needed per value. Items
+     * whose metadata is already in memory are left alone.
+     */
+    @Override
+    public void loadMetadata(List<Item> allItems)
+    {
+        List<Item> items = new ArrayList<Item>(allItems.size());
 
-            for (TableRow row : tri.toList())
+        for (Item item : allItems)
+        {
+            if (!(item instanceof ItemProxy) ||
+                    !((ItemProxy) item).isMetadataLoaded())
             {
-                // Get the associated metadata field and schema information
-                int fieldID = row.getIntColumn("metadata_field_id");
-                MetadataField field = mfDAO.retrieve(fieldID);
+                items.add(item);
+            }
+        }
 
-                if (field == null)
-                {
-                    log.error("Loading item - cannot find metadata field "
-                            + fieldID);
-                }
-                else
+        for (int start = 0; start < items.size(); start += METADATA_BATCH_SIZE)
+        {
+            int end = Math.min(start + METADATA_BATCH_SIZE, items.size());
+
+            loadMetadataBatch(items.subList(start, end));
+        }
+    }
+
+    private void loadMetadataBatch(List<Item> items)
+    {
+        Map<Integer, List<DCValue>> metadata =
+            new HashMap<Integer, List<DCValue>>();
+        Object[] params = new Object[items.size()];
+        StringBuffer ids = new StringBuffer();
+
+        for (int i = 0; i < items.size(); i++)
+        {
+            Item item = items.get(i);
+
+            metadata.put(item.getID(), new ArrayList<DCValue>());
+            params[i] = item.getID();
+            ids.append((i == 0) ? "?" : ", ?");
+        }
+
+        try
+        {
+            TableRowIterator tri = DatabaseManager.query(context,
+                    "SELECT mv.item_id, mv.metadata_field_id, mv.text_value, " +
+                    "mv.text_lang, mfr.metadata_field_id AS registry_field_id, " +
+                    "mfr.element, mfr.qualifier, msr.short_id " +
+                    "FROM metadatavalue mv " +
+                    "LEFT JOIN metadatafieldregistry mfr " +
+                    "ON mv.metadata_field_id = mfr.metadata_field_id " +
+                    "LEFT JOIN metadataschemaregistry msr " +
+                    "ON mfr.metadata_schema_id = msr.metadata_schema_id " +
+                    "WHERE mv.item_id IN (" + ids + ") " +
+                    "ORDER BY mv.item_id, mv.metadata_field_id, mv.place",
+                    params);
+
+            try
+            {
+                while (tri.hasNext())
                 {
-                    MetadataSchema schema =
-                        msDAO.retrieve(field.getSchemaID());
+                    TableRow row = tri.next();
+
+                    if (row.isColumnNull("registry_field_id"))
+                    {
+                        log.error("Loading item - cannot find metadata field "
+                                + row.getIntColumn("metadata_field_id"));
+                        continue;
+                    }
 
                     // Make a DCValue object
                     DCValue dcv = new DCValue();
-                    dcv.schema = schema.getName();
-                    dcv.element = field.getElement();
-                    dcv.qualifier = field.getQualifier();
+                    dcv.schema = row.getStringColumn("short_id");
+                    dcv.element = row.getStringColumn("element");
+                    dcv.qualifier = row.getStringColumn("qualifier");
                     dcv.language = row.getStringColumn("text_lang");
                     dcv.value = row.getStringColumn("text_value");
 
-                    // Add it to the item
-                    metadata.add(dcv);
+                    metadata.get(row.getIntColumn("item_id")).add(dcv);
                 }
             }
+            finally
+            {
+                tri.close();
+            }
 
-            item.setMetadata(metadata);
+            // Add it to the items
+            for (Item item : items)
+            {
+                item.setMetadata(metadata.get(item.getID()));
+            }
         }
         catch (SQLException sqle)
         {
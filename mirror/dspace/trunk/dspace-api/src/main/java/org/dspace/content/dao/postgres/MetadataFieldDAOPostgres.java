@@ -51,6 +51,7 @@ import org.dspace.authorize.AuthorizeException;
 import org.dspace.content.MetadataField;
 import org.dspace.content.MetadataSchema;
 import org.dspace.content.dao.MetadataFieldDAO;
+import org.dspace.content.dao.RegistryCache;
 import org.dspace.core.Context;
 import org.dspace.storage.rdbms.DatabaseManager;
 import org.dspace.storage.rdbms.TableRow;
@@ -89,10 +90,16 @@ public class MetadataFieldDAOPostgres extends MetadataFieldDAO
     @Override
     public MetadataField retrieve(int id)
     {
+        TableRow row = getSnapshot().get(id);
+
+        if (row != null)
+        {
+            return retrieve(row);
+        }
+
         try
         {
-            TableRow row = DatabaseManager.find(context,
-                    "metadatafieldregistry", id);
+            row = DatabaseManager.find(context, "metadatafieldregistry", id);
 
             return retrieve(row);
         }
@@ -105,9 +112,16 @@ public class MetadataFieldDAOPostgres extends MetadataFieldDAO
     @Override
     public MetadataField retrieve(UUID uuid)
     {
+        TableRow row = getSnapshot().get("uuid", uuid.toString());
+
+        if (row != null)
+        {
+            return retrieve(row);
+        }
+
         try
         {
-            TableRow row = DatabaseManager.findByUnique(context,
+            row = DatabaseManager.findByUnique(context,
                     "metadatafieldregistry", "uuid", uuid.toString());
 
             return retrieve(row);
@@ -122,6 +136,13 @@ public class MetadataFieldDAOPostgres extends MetadataFieldDAO
     public MetadataField retrieve(int schemaID, String element,
             String qualifier)
     {
+        TableRow row = getSnapshot().getField(schemaID, element, qualifier);
+
+        if (row != null)
+        {
+            return retrieve(row);
+        }
+
         try
         {
             TableRowIterator tri = null;
@@ -146,7 +167,6 @@ public class MetadataFieldDAOPostgres extends MetadataFieldDAO
                         schemaID, element, qualifier);
             }
 
-            TableRow row = null;
             if (tri.hasNext())
             {
                 row = tri.next();
@@ -166,6 +186,9 @@ public class MetadataFieldDAOPostgres extends MetadataFieldDAO
     {
         try
         {
+            RegistryCache.registryChanged(context,
+                    RegistryCache.METADATA_FIELD);
+
             int id = field.getID();
             TableRow row = DatabaseManager.find(context,
                     "metadatafieldregistry", id);
@@ -231,6 +254,9 @@ public class MetadataFieldDAOPostgres extends MetadataFieldDAO
     {
         try
         {
+            RegistryCache.registryChanged(context,
+                    RegistryCache.METADATA_FIELD);
+
             DatabaseManager.delete(context, "metadatafieldregistry", id);
         }
         catch (SQLException sqle)
@@ -303,7 +329,17 @@ public class MetadataFieldDAOPostgres extends MetadataFieldDAO
     // Utility methods
     ////////////////////////////////////////////////////////////////////
 
-    private MetadataField retrieve(TableRow row) throws SQLException
+    /**
+     * Lookups are answered from the registry cache where possible; anything
+     * not found there (e.g. a field created earlier in this transaction) is
+     * read from the database as before.
+     */
+    private RegistryCache.Snapshot getSnapshot()
+    {
+        return RegistryCache.getSnapshot(context, RegistryCache.METADATA_FIELD);
+    }
+
+    private MetadataField retrieve(TableRow row)
     {
         if (row == null)
         {
@@ -51,6 +51,7 @@ import org.dspace.authorize.AuthorizeException;
 import org.dspace.content.MetadataSchema;
 import org.dspace.core.Context;
 import org.dspace.content.dao.MetadataSchemaDAO;
+import org.dspace.content.dao.RegistryCache;
 import org.dspace.storage.rdbms.DatabaseManager;
 import org.dspace.storage.rdbms.TableRow;
 import org.dspace.storage.rdbms.TableRowIterator;
@@ -89,10 +90,16 @@ public class MetadataSchemaDAOPostgres extends MetadataSchemaDAO
     @Override
     public MetadataSchema retrieve(int id)
     {
+        TableRow row = getSnapshot().get(id);
+
+        if (row != null)
+        {
+            return retrieve(row);
+        }
+
         try
         {
-            TableRow row = DatabaseManager.find(context,
-                    "metadataschemaregistry", id);
+            row = DatabaseManager.find(context, "metadataschemaregistry", id);
 
             return retrieve(row);
         }
@@ -105,9 +112,16 @@ public class MetadataSchemaDAOPostgres extends MetadataSchemaDAO
     @Override
     public MetadataSchema retrieve(UUID uuid)
     {
+        TableRow row = getSnapshot().get("uuid", uuid.toString());
+
+        if (row != null)
+        {
+            return retrieve(row);
+        }
+
         try
         {
-            TableRow row = DatabaseManager.findByUnique(context,
+            row = DatabaseManager.findByUnique(context,
                     "metadataschemaregistry", "uuid", uuid.toString());
 
             return retrieve(row);
@@ -121,9 +135,16 @@ public class MetadataSchemaDAOPostgres extends MetadataSchemaDAO
     @Override
     public MetadataSchema retrieveByName(String name)
     {
+        TableRow row = getSnapshot().get("short_id", name);
+
+        if (row != null)
+        {
+            return retrieve(row);
+        }
+
         try
         {
-            TableRow row = DatabaseManager.findByUnique(context,
+            row = DatabaseManager.findByUnique(context,
                     "metadataschemaregistry", "short_id", name);
 
             return retrieve(row);
@@ -137,9 +158,16 @@ public class MetadataSchemaDAOPostgres extends MetadataSchemaDAO
     @Override
     public MetadataSchema retrieveByNamespace(String namespace)
     {
+        TableRow row = getSnapshot().get("namespace", namespace);
+
+        if (row != null)
+        {
+            return retrieve(row);
+        }
+
         try
         {
-            TableRow row = DatabaseManager.findByUnique(context,
+            row = DatabaseManager.findByUnique(context,
                     "metadataschemaregistry", "namespace", namespace);
 
             return retrieve(row);
@@ -155,6 +183,9 @@ public class MetadataSchemaDAOPostgres extends MetadataSchemaDAO
     {
         try
         {
+            RegistryCache.registryChanged(context,
+                    RegistryCache.METADATA_SCHEMA);
+
             int id = schema.getID();
             TableRow row = DatabaseManager.find(context,
                     "metadataschemaregistry", id);
@@ -199,6 +230,9 @@ public class MetadataSchemaDAOPostgres extends MetadataSchemaDAO
     {
         try
         {
+            RegistryCache.registryChanged(context,
+                    RegistryCache.METADATA_SCHEMA);
+
             DatabaseManager.delete(context, "metadataschemaregistry", id);
         }
         catch (SQLException sqle)
@@ -296,7 +330,17 @@ public class MetadataSchemaDAOPostgres extends MetadataSchemaDAO
     // Utility methods
     ////////////////////////////////////////////////////////////////////
 
-    private MetadataSchema retrieve(TableRow row) throws SQLException
+    /**
+     * Lookups are answered from the registry cache where possible; anything
+     * not found there (e.g. a schema created earlier in this transaction) is
+     * read from the database as before.
+     */
+    private RegistryCache.Snapshot getSnapshot()
+    {
+        return RegistryCache.getSnapshot(context, RegistryCache.METADATA_SCHEMA);
+    }
+
+    private MetadataSchema retrieve(TableRow row)
     {
         if (row == null)
         {
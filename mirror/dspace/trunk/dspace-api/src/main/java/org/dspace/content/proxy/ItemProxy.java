@@ -150,6 +150,15 @@ public class ItemProxy extends Item
         super.setMetadata(metadata);
     }
 
+    /**
+     * @return true if the item's metadata has already been read from the
+     *         data store
+     */
+    public boolean isMetadataLoaded()
+    {
+        return metadataLoaded;
+    }
+
     @Override
     public void addMetadata(String schema, String element, String qualifier,
             String lang, String... values)
@@ -66,6 +66,7 @@ import org.dspace.eperson.EPerson;
 import org.dspace.eperson.Group;
 import org.dspace.eperson.dao.GroupDAO;
 import org.dspace.eperson.dao.GroupDAOFactory;
+import org.dspace.event.Event;
 import org.dspace.uri.ExternalIdentifier;
 
 public abstract class ArchiveManager
@@ -123,6 +124,8 @@ public abstract class ArchiveManager
         // Update item in DB
         itemDAO.update(item);
 
+        context.addEvent(new Event(Event.MODIFY, Constants.ITEM, item.getID(), "WITHDRAW"));
+
         // and all of our authorization policies
         // FIXME: not very "multiple-inclusion" friendly
         AuthorizeManager.removeAllPolicies(context, item);
@@ -172,6 +175,8 @@ public abstract class ArchiveManager
         // Update item in DB
         itemDAO.update(item);
 
+        context.addEvent(new Event(Event.MODIFY, Constants.ITEM, item.getID(), "REINSTATE"));
+
         // authorization policies
         if (parents.size() > 0)
         {
@@ -42,20 +42,26 @@ package org.dspace.core;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 
+import org.dspace.authorize.dao.ResourcePolicyCache;
+import org.dspace.content.dao.RegistryCache;
 import org.dspace.eperson.EPerson;
 import org.dspace.eperson.Group;
 import org.dspace.eperson.dao.GroupDAO;
 import org.dspace.eperson.dao.GroupDAOFactory;
 import org.dspace.event.Dispatcher;
 import org.dspace.event.Event;
+import org.dspace.event.EventCoalescer;
 import org.dspace.event.EventManager;
 import org.dspace.dao.GlobalDAO;
 import org.dspace.dao.GlobalDAOFactory;
@@ -104,10 +110,25 @@ public class Context
 
     /** Group IDs of special groups user is a member of */
     private List<Integer> specialGroups;
+
+    /**
+     * IDs of every group the current user belongs to, directly, through
+     * group nesting or as a special group. Worked out on first use.
+     */
+    private BitSet groupMembership;
+
+    /** Whether the current transaction has changed any resource policies */
+    private boolean policiesChanged;
+
+    /** The registries the current transaction has changed */
+    private Set<String> registriesChanged = new HashSet<String>();
     
     /** Content events */
     private List<Event> events = null;
 
+    /** Merges redundant events as they are added */
+    private EventCoalescer coalescer = null;
+
     /** Event dispatcher name */
     private String dispName = null;
 
@@ -164,6 +185,7 @@ public class Context
     public void setCurrentUser(EPerson user)
     {
         currentUser = user;
+        groupMembership = null;
     }
 
     /**
@@ -292,9 +314,11 @@ public class Context
                 }
                 
                 dispatcher = EventManager.getDispatcher(dispName);
+                dispatcher.prepare(this);
                 
                 // Commit any changes made as part of the transaction
                 dao.saveTransaction();
+                transactionCommitted();
                 
                 dispatcher.dispatch(this);
             }
@@ -302,6 +326,7 @@ public class Context
             {
                 // Commit any changes made as part of the transaction
                 dao.saveTransaction();
+                transactionCommitted();
             }
         }
         finally
@@ -314,6 +339,7 @@ public class Context
                     events = null;
                 }
             }
+            coalescer = null;
             if(dispatcher != null)
             {
             	/* 
@@ -350,9 +376,13 @@ public class Context
         if (events == null)
         {
             events = Collections.synchronizedList(new ArrayList<Event>());
+            coalescer = new EventCoalescer();
         }
         
-        events.add(event);
+        if (!coalescer.merge(event))
+        {
+            events.add(event);
+        }
     }
 
     /**
@@ -365,6 +395,7 @@ public class Context
     {
         List<Event> tmp = events;
         events = null;
+        coalescer = null;
         return tmp;
     }
 
@@ -380,6 +411,28 @@ public class Context
     {
         dao.abortTransaction();
         events = null;
+        coalescer = null;
+        policiesChanged = false;
+        registriesChanged.clear();
+    }
+
+    /**
+     * Tidy up any process-wide caches that the transaction just committed
+     * may have made stale.
+     */
+    private void transactionCommitted()
+    {
+        if (policiesChanged)
+        {
+            ResourcePolicyCache.invalidateAll();
+            policiesChanged = false;
+        }
+
+        for (String registry : registriesChanged)
+        {
+            RegistryCache.invalidate(registry);
+        }
+        registriesChanged.clear();
     }
 
     /**
@@ -459,6 +512,7 @@ public class Context
     public void setSpecialGroup(int groupID)
     {
         specialGroups.add(groupID);
+        groupMembership = null;
     }
 
     /**
@@ -491,6 +545,96 @@ public class Context
         return groups.toArray(new Group[0]);
     }
 
+    /**
+     * Get the IDs of the special groups that the current user is a member
+     * of, without retrieving the groups themselves.
+     *
+     * @return the special group IDs
+     */
+    public int[] getSpecialGroupIDs()
+    {
+        int[] ids = new int[specialGroups.size()];
+
+        for (int i = 0; i < ids.length; i++)
+        {
+            ids[i] = specialGroups.get(i);
+        }
+
+        return ids;
+    }
+
+    /**
+     * Get the IDs of all the groups the current user is a member of, if they
+     * have been worked out already. The returned set must not be modified.
+     *
+     * @return the group IDs, or <code>null</code> if not yet known
+     */
+    public BitSet getGroupMembership()
+    {
+        return groupMembership;
+    }
+
+    /**
+     * Remember the IDs of all the groups the current user is a member of, or
+     * pass <code>null</code> to forget them after membership has changed.
+     *
+     * @param groupIDs
+     *            the group IDs
+     */
+    public void setGroupMembership(BitSet groupIDs)
+    {
+        groupMembership = groupIDs;
+    }
+
+    /**
+     * Find out whether resource policies have been changed in the current
+     * transaction. Such a context must not use the shared policy cache,
+     * since it can see changes that no other context can yet.
+     *
+     * @return true if policies have been changed since the last commit
+     */
+    public boolean getPoliciesChanged()
+    {
+        return policiesChanged;
+    }
+
+    /**
+     * Record that resource policies have been changed in the current
+     * transaction.
+     *
+     * @param changed
+     *            true if policies have been changed
+     */
+    public void setPoliciesChanged(boolean changed)
+    {
+        policiesChanged = changed;
+    }
+
+    /**
+     * Find out whether the given registry has been changed in the current
+     * transaction. Such a context must not use the shared registry cache for
+     * that registry, since it can see changes that no other context can yet.
+     *
+     * @param registry
+     *            the registry's table name
+     * @return true if the registry has been changed since the last commit
+     */
+    public boolean getRegistryChanged(String registry)
+    {
+        return registriesChanged.contains(registry);
+    }
+
+    /**
+     * Record that a registry has been changed in the current transaction.
+     *
+     * @param registry
+     *            the registry's table name
+     */
+    public void setRegistryChanged(String registry)
+    {
+        registriesChanged.add(registry);
+    }
+
     protected void finalize() throws Throwable
     {
         super.finalize();
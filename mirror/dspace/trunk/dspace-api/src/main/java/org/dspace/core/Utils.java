@@ -45,6 +45,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.rmi.dgc.VMID;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -296,6 +299,91 @@ public class Utils
         output.flush();
     }
 
+    /**
+     * Copy part of a file to an OutputStream. The bytes are transferred by
+     * the channel from the given position on, so nothing before it is read,
+     * and where the platform allows it they don't pass through the Java heap.
+     *
+     * @param source
+     *            The channel to read from
+     * @param position
+     *            The position in the file of the first byte to copy
+     * @param count
+     *            The number of bytes to copy
+     * @param destination
+     *            The OutputStream to copy the bytes to
+     */
+    public static void transfer(final FileChannel source, long position,
+            final long count, final OutputStream destination)
+            throws IOException
+    {
+        final WritableByteChannel target = Channels.newChannel(destination);
+        final long end = position + count;
+
+        while (position < end)
+        {
+            long sent = source.transferTo(position, end - position, target);
+
+            // Nothing left to send - the file is shorter than expected
+            if (sent <= 0)
+            {
+                break;
+            }
+
+            position += sent;
+        }
+    }
+
+    /**
+     * Copy part of an InputStream to an OutputStream, skipping over the bytes
+     * before the start rather than reading them.
+     *
+     * @param source
+     *            The InputStream to obtain data from
+     * @param start
+     *            The number of bytes to skip
+     * @param count
+     *            The number of bytes to copy
+     * @param destination
+     *            The OutputStream to copy the bytes to
+     */
+    public static void copyRange(final InputStream source, long start,
+            long count, final OutputStream destination) throws IOException
+    {
+        while (start > 0)
+        {
+            long skipped = source.skip(start);
+
+            if (skipped <= 0)
+            {
+                // skip() may give up early; a read tells us if it's the end
+                if (source.read() == -1)
+                {
+                    return;
+                }
+                skipped = 1;
+            }
+
+            start -= skipped;
+        }
+
+        final byte[] buffer = new byte[1024 * 8];
+
+        while (count > 0)
+        {
+            int read = source.read(buffer, 0,
+                    (int) Math.min(buffer.length, count));
+
+            if (read == -1)
+            {
+                break;
+            }
+
+            destination.write(buffer, 0, read);
+            count -= read;
+        }
+    }
+
     /**
      * Replace characters that could be interpreted as HTML codes with symbolic
      * references (entities). This function should be called before displaying
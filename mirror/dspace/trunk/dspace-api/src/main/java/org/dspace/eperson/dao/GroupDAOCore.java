@@ -50,6 +50,7 @@ import org.dspace.uri.ObjectIdentifier;
 import org.dspace.uri.ObjectIdentifierService;
 import org.dspace.uri.dao.ObjectIdentifierStorageException;
 
+import java.util.BitSet;
 import java.util.List;
 import java.util.Set;
 
@@ -175,6 +176,9 @@ public class GroupDAOCore extends GroupDAO
             oidDAO.update(group.getIdentifier());
 
             childDAO.update(group);
+
+            // Membership may have changed
+            context.setGroupMembership(null);
         }
         catch (ObjectIdentifierStorageException e)
         {
@@ -207,6 +211,8 @@ public class GroupDAOCore extends GroupDAO
                         id));
 
             childDAO.delete(id);
+
+            context.setGroupMembership(null);
         }
         catch (ObjectIdentifierStorageException e)
         {
@@ -232,6 +238,10 @@ public class GroupDAOCore extends GroupDAO
      * Group. The reason we take an ID rather than a full object is because we
      * may be able to give a really quick answer without having to actually
      * inspect the Group beyond knowing its ID.
+     * <p>
+     * The full set of groups the user belongs to is worked out the first
+     * time this is called and kept in the context, so that checking the many
+     * policies on e.g. an item page doesn't cost a query per policy.
      */
     public boolean currentUserInGroup(int groupID)
     {
@@ -253,9 +263,21 @@ public class GroupDAOCore extends GroupDAO
         // only test for membership if context contains a user
         if (currentuser != null)
         {
-            Set<Integer> groupIDs = getGroupIDs(currentuser);
+            BitSet groupIDs = context.getGroupMembership();
+
+            if (groupIDs == null)
+            {
+                groupIDs = new BitSet();
+
+                for (Integer id : getGroupIDs(currentuser))
+                {
+                    groupIDs.set(id);
+                }
+
+                context.setGroupMembership(groupIDs);
+            }
 
-            return groupIDs.contains(groupID);
+            return (groupID > 0) && groupIDs.get(groupID);
         }
 
         return false;
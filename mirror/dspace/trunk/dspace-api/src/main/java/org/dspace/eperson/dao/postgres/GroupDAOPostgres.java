@@ -66,6 +66,9 @@ import org.dspace.storage.rdbms.TableRowIterator;
  */
 public class GroupDAOPostgres extends GroupDAO
 {
+    /** Maximum number of IDs to put in a single IN (...) clause */
+    private static final int GROUP_BATCH_SIZE = 500;
+
     public GroupDAOPostgres(Context context)
     {
         this.context = context;
@@ -173,6 +176,18 @@ public class GroupDAOPostgres extends GroupDAO
     {
         try
         {
+            // Groups that contained this one, whose cached descendants will
+            // need recalculating once it has gone
+            List<Integer> ancestors = new ArrayList<Integer>();
+            TableRowIterator tri = DatabaseManager.query(context,
+                    "SELECT parent_id FROM group2groupcache WHERE child_id = ?",
+                    id);
+
+            for (TableRow row : tri.toList())
+            {
+                ancestors.add(row.getIntColumn("parent_id"));
+            }
+
             // Remove any group memberships first
             DatabaseManager.updateQuery(context,
                     "DELETE FROM epersongroup2eperson " +
@@ -197,6 +212,11 @@ public class GroupDAOPostgres extends GroupDAO
                     "WHERE eperson_group_id = ? ",
                     id);
 
+            if (ancestors.size() > 0)
+            {
+                rethinkGroupCache(ancestors.toArray(new Integer[0]));
+            }
+
             // Remove ourself
             DatabaseManager.delete(context, "epersongroup", id);
         }
@@ -295,67 +315,60 @@ public class GroupDAOPostgres extends GroupDAO
     {
         try
         {
-            // two queries - first to get groups eperson is a member of
-            // second query gets parent groups for groups eperson is a member of
-            TableRowIterator tri = DatabaseManager.queryTable(context,
-                    "epersongroup2eperson",
-                    "SELECT eperson_group_id " +
-                    "FROM epersongroup2eperson WHERE eperson_id = ?",
-                     eperson.getID());
-
-            Set<Integer> groupIDs = new HashSet<Integer>();
-
-            for (TableRow row : tri.toList())
-            {
-                int childID = row.getIntColumn("eperson_group_id");
-                groupIDs.add(childID);
-            }
-
             // Also need to get all "Special Groups" user is a member of!
             // Otherwise, you're ignoring the user's membership to these groups!
-            for (Group group : context.getSpecialGroups())
+            int[] specialGroupIDs = context.getSpecialGroupIDs();
+
+            // One query for the groups the eperson is a member of, the parents
+            // of those groups, and the parents of any special groups. Plain
+            // UNIONs, so this works on Oracle as well.
+            StringBuffer query = new StringBuffer(
+                    "SELECT eperson_group_id AS group_id " +
+                    "FROM epersongroup2eperson WHERE eperson_id = ? " +
+                    "UNION " +
+                    "SELECT g2gc.parent_id AS group_id " +
+                    "FROM group2groupcache g2gc, epersongroup2eperson eg2e " +
+                    "WHERE g2gc.child_id = eg2e.eperson_group_id " +
+                    "AND eg2e.eperson_id = ?");
+
+            Object[] parameters = new Object[2 + specialGroupIDs.length];
+            parameters[0] = eperson.getID();
+            parameters[1] = eperson.getID();
+
+            if (specialGroupIDs.length > 0)
             {
-                groupIDs.add(group.getID());
-            }
+                query.append(" UNION SELECT parent_id AS group_id " +
+                        "FROM group2groupcache WHERE child_id IN (");
 
-            // now we have all owning groups, also grab all parents of owning groups
-            // yes, I know this could have been done as one big query and a union,
-            // but doing the Oracle port taught me to keep to simple SQL!
+                for (int i = 0; i < specialGroupIDs.length; i++)
+                {
+                    query.append((i == 0) ? "?" : ", ?");
+                    parameters[2 + i] = specialGroupIDs[i];
+                }
 
-            String groupQuery = "";
+                query.append(")");
+            }
 
-            // Build a list of query parameters
-            Object[] parameters = new Object[groupIDs.size()];
-            int idx = 0;
-            for (Integer groupID : groupIDs)
-            {
-                parameters[idx++] = groupID;
+            TableRowIterator tri = DatabaseManager.query(context,
+                    query.toString(), parameters);
 
-                groupQuery += "child_id= ? ";
+            Set<Integer> groupIDs = new HashSet<Integer>();
 
-                if (idx < groupIDs.size())
+            try
+            {
+                while (tri.hasNext())
                 {
-                    groupQuery += " OR ";
+                    groupIDs.add(tri.next().getIntColumn("group_id"));
                 }
             }
-
-            if (groupIDs.size() == 0)
+            finally
             {
-                // don't do query, isn't member of any groups
-                return groupIDs;
+                tri.close();
             }
 
-            // was member of at least one group
-            // NOTE: even through the query is built dynamicaly all data is
-            // seperated into the the parameters array.
-            tri = DatabaseManager.queryTable(context, "group2groupcache",
-                    "SELECT parent_id FROM group2groupcache WHERE " +
-                    groupQuery, parameters);
-
-            for (TableRow row : tri.toList())
+            for (int id : specialGroupIDs)
             {
-                int parentID = row.getIntColumn("parent_id");
-                groupIDs.add(parentID);
+                groupIDs.add(id);
             }
 
             return groupIDs;
@@ -440,7 +453,7 @@ public class GroupDAOPostgres extends GroupDAO
                 row.setColumn("child_id", child.getID());
                 DatabaseManager.update(context, row);
 
-                rethinkGroupCache();
+                rethinkGroupCache(parent.getID());
             }
             catch (SQLException sqle)
             {
@@ -461,7 +474,7 @@ public class GroupDAOPostgres extends GroupDAO
                         "WHERE parent_id = ? AND child_id = ?",
                         parent.getID(), child.getID());
 
-                rethinkGroupCache();
+                rethinkGroupCache(parent.getID());
             }
             catch (SQLException sqle)
             {
@@ -692,112 +705,214 @@ public class GroupDAOPostgres extends GroupDAO
     }
 
     /**
-     * Regenerate the group cache AKA the group2groupcache table in the
-     * database - meant to be called when a group is added or removed from
-     * another group
+     * Bring the group cache AKA the group2groupcache table up to date after
+     * group2group has changed - meant to be called when a group is added to
+     * or removed from another group.
+     * <p>
+     * Only the descendants of the given group and of its ancestors can have
+     * changed, so only their entries are recalculated; the difference is then
+     * applied with batched inserts and deletes, rather than emptying and
+     * rebuilding the whole table.
+     *
+     * @param groupIDs
+     *            the groups whose children have changed
      */
-    private void rethinkGroupCache() throws SQLException
+    private void rethinkGroupCache(Integer... groupIDs) throws SQLException
     {
-        // read in the group2group table
+        // read in the group2group table, in both directions
         TableRowIterator tri = DatabaseManager.queryTable(context,
-                "group2group", "SELECT * FROM group2group");
+                "group2group", "SELECT parent_id, child_id FROM group2group");
 
+        Map<Integer, Set<Integer>> children =
+            new HashMap<Integer, Set<Integer>>();
         Map<Integer, Set<Integer>> parents =
             new HashMap<Integer, Set<Integer>>();
 
-        for (TableRow row : tri.toList())
+        try
         {
-            Integer parentID = row.getIntColumn("parent_id");
-            Integer childID = row.getIntColumn("child_id");
-
-            // if parent doesn't have an entry, create one
-            if (!parents.containsKey(parentID))
+            while (tri.hasNext())
             {
-                Set<Integer> children = new HashSet<Integer>();
+                TableRow row = tri.next();
+                Integer parentID = row.getIntColumn("parent_id");
+                Integer childID = row.getIntColumn("child_id");
 
-                // add child id to the list
-                children.add(childID);
-                parents.put(parentID, children);
-            }
-            else
-            {
-                // parent has an entry, now add the child to the parent's record
-                // of children
-                Set<Integer> children = (Set<Integer>) parents.get(parentID);
-                children.add(childID);
+                addToMapSet(children, parentID, childID);
+                addToMapSet(parents, childID, parentID);
             }
         }
-        
-        // now parents is a hash of all of the IDs of groups that are parents
-        // and each hash entry is a hash of all of the IDs of children of those
-        // parent groups
-        // so now to establish all parent,child relationships we can iterate
-        // through the parents hash
+        finally
+        {
+            tri.close();
+        }
+
+        // the groups whose set of descendants may have changed
+        Set<Integer> affected = new HashSet<Integer>();
+
+        for (Integer groupID : groupIDs)
+        {
+            affected.add(groupID);
+            affected.addAll(getReachable(parents, groupID));
+        }
+
+        // what the cache currently says about them: parent -> child -> row id
+        Map<Integer, Map<Integer, Integer>> cached =
+            new HashMap<Integer, Map<Integer, Integer>>();
+        List<Integer> ids = new ArrayList<Integer>(affected);
 
-        for (Integer parentID : parents.keySet())
+        for (int start = 0; start < ids.size(); start += GROUP_BATCH_SIZE)
         {
-            Set<Integer> myChildren = getChildren(parents, parentID);
+            List<Integer> batch = ids.subList(start,
+                    Math.min(start + GROUP_BATCH_SIZE, ids.size()));
 
-            for (Integer childID : myChildren)
+            tri = DatabaseManager.query(context,
+                    "SELECT id, parent_id, child_id FROM group2groupcache " +
+                    "WHERE parent_id IN (" + placeholders(batch.size()) + ")",
+                    batch.toArray());
+
+            try
+            {
+                while (tri.hasNext())
+                {
+                    TableRow row = tri.next();
+                    Integer parentID = row.getIntColumn("parent_id");
+                    Map<Integer, Integer> rows = cached.get(parentID);
+
+                    if (rows == null)
+                    {
+                        rows = new HashMap<Integer, Integer>();
+                        cached.put(parentID, rows);
+                    }
+
+                    rows.put(row.getIntColumn("child_id"),
+                            row.getIntColumn("id"));
+                }
+            }
+            finally
             {
-                ((Set<Integer>) parents.get(parentID)).add(childID);
+                tri.close();
             }
         }
 
-        // empty out group2groupcache table
-        DatabaseManager.updateQuery(context,
-                "DELETE FROM group2groupcache WHERE id >= 0");
+        // work out the difference
+        List<TableRow> inserts = new ArrayList<TableRow>();
+        List<Integer> deletes = new ArrayList<Integer>();
 
-        for (Integer parent : parents.keySet())
+        for (Integer parentID : affected)
         {
-            Set<Integer> children = parents.get(parent);
+            Set<Integer> descendants = getReachable(children, parentID);
+            Map<Integer, Integer> rows = cached.get(parentID);
 
-            for (Integer child : children)
+            if (rows == null)
             {
-                TableRow row = DatabaseManager.create(context,
-                        "group2groupcache");
-
-                int parentID = parent.intValue();
-                int childID = child.intValue();
+                rows = new HashMap<Integer, Integer>();
+            }
 
-                row.setColumn("parent_id", parentID);
-                row.setColumn("child_id", childID);
+            for (Integer childID : descendants)
+            {
+                if (!rows.containsKey(childID))
+                {
+                    TableRow row = DatabaseManager.row("group2groupcache");
+                    row.setColumn("parent_id", parentID.intValue());
+                    row.setColumn("child_id", childID.intValue());
+                    inserts.add(row);
+                }
+            }
 
-                DatabaseManager.update(context, row);
+            for (Map.Entry<Integer, Integer> entry : rows.entrySet())
+            {
+                if (!descendants.contains(entry.getKey()))
+                {
+                    deletes.add(entry.getValue());
+                }
             }
         }
+
+        for (int start = 0; start < deletes.size(); start += GROUP_BATCH_SIZE)
+        {
+            List<Integer> batch = deletes.subList(start,
+                    Math.min(start + GROUP_BATCH_SIZE, deletes.size()));
+
+            DatabaseManager.updateQuery(context,
+                    "DELETE FROM group2groupcache " +
+                    "WHERE id IN (" + placeholders(batch.size()) + ")",
+                    batch.toArray());
+        }
+
+        if (inserts.size() > 0)
+        {
+            DatabaseManager.insert(context, inserts);
+        }
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("group2groupcache: " + affected.size() +
+                    " groups checked, " + inserts.size() + " rows added, " +
+                    deletes.size() + " rows removed");
+        }
+    }
+
+    private static void addToMapSet(Map<Integer, Set<Integer>> map,
+            Integer key, Integer value)
+    {
+        Set<Integer> set = map.get(key);
+
+        if (set == null)
+        {
+            set = new HashSet<Integer>();
+            map.put(key, set);
+        }
+
+        set.add(value);
     }
 
     /**
-     * Used recursively to generate a map of ALL of the children of the given
-     * parent
-     * 
-     * @param parents
-     *            Map of parent,child relationships
-     * @param parent
-     *            the parent you're interested in
-     * @return Map whose keys are all of the children of a parent
+     * Find every group reachable from the given one by following the given
+     * map, e.g. all of its descendants when given a map of parents to
+     * children.
+     *
+     * @param map
+     *            Map of group IDs to the IDs of their neighbours
+     * @param start
+     *            the group you're interested in
+     * @return the IDs of all of the reachable groups
      */
-    private Set getChildren(Map<Integer, Set<Integer>> parents, Integer parent)
+    private static Set<Integer> getReachable(Map<Integer, Set<Integer>> map,
+            Integer start)
     {
-        Set<Integer> myChildren = new HashSet<Integer>();
+        Set<Integer> reached = new HashSet<Integer>();
+        List<Integer> queue = new ArrayList<Integer>();
+        queue.add(start);
 
-        // degenerate case, this parent has no children
-        if (!parents.containsKey(parent))
+        // breadth first, and safe even if someone has managed to create a
+        // cycle of groups
+        for (int i = 0; i < queue.size(); i++)
         {
-            return myChildren;
+            Set<Integer> next = map.get(queue.get(i));
+
+            if (next != null)
+            {
+                for (Integer id : next)
+                {
+                    if (reached.add(id))
+                    {
+                        queue.add(id);
+                    }
+                }
+            }
         }
 
-        // got this far, so we must have children
-        for (Integer childID : parents.get(parent))
-        {
-            // add this child's ID to our return set
-            myChildren.add(childID);
+        return reached;
+    }
 
-            // and now its children
-            myChildren.addAll(getChildren(parents, childID));
+    private static String placeholders(int count)
+    {
+        StringBuffer sb = new StringBuffer();
+
+        for (int i = 0; i < count; i++)
+        {
+            sb.append((i == 0) ? "?" : ", ?");
         }
 
-        return myChildren;
+        return sb.toString();
     }
 }
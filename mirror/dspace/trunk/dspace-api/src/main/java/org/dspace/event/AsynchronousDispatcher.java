@@ -0,0 +1,667 @@
+/*
+ * AsynchronousDispatcher.java
+ *
+ * Version: $Revision$
+ *
+ * Date: $Date$
+ *
+ * Copyright (c) 2002-2007, Hewlett-Packard Company and Massachusetts
+ * Institute of Technology.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * - Neither the name of the Hewlett-Packard Company nor the name of the
+ * Massachusetts Institute of Technology nor the names of their
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package org.dspace.event;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+import org.dspace.core.Utils;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+/**
+ * A dispatcher which delivers events to its consumers after the request that
+ * produced them has finished. When the context is committed, one row per
+ * event and interested consumer is written to the <code>eventqueue</code>
+ * table <em>in the same transaction</em> as the changes that caused the
+ * events, so events are never lost and never delivered for changes that were
+ * rolled back. A background worker thread per consumer then reads its rows in
+ * batches, delivers them to its own instance of the consumer and deletes them.
+ * <p>
+ * Delivery is at-least-once: if a worker dies between delivering a batch and
+ * deleting it, the batch is delivered again. An event whose delivery fails is
+ * retried up to <code>event.queue.attempts</code> times and then left in the
+ * queue, and logged, for an administrator to look at. Until then the
+ * consumer's later events wait behind it, so that they are never delivered
+ * out of order. Workers in different
+ * JVMs coordinate through a row lock in <code>eventqueuelock</code>, so each
+ * consumer sees its events one batch at a time, in order.
+ * <p>
+ * Consumers which must have run before <code>commit()</code> returns, such as
+ * those maintaining in-memory caches, can be listed in
+ * <code>event.dispatcher.&lt;name&gt;.synchronous</code>; they are called
+ * directly, exactly as {@link BasicDispatcher} would.
+ * 
+ * @version $Revision$
+ */
+public class AsynchronousDispatcher extends BasicDispatcher
+{
+    /** log4j category */
+    private static Logger log = Logger.getLogger(AsynchronousDispatcher.class);
+
+    /** Number of events a worker reads from the queue at a time */
+    private static final int BATCH_SIZE = getConfig("event.queue.batchsize", 100);
+
+    /** Seconds a worker waits between polls of an empty queue */
+    private static final int INTERVAL = getConfig("event.queue.interval", 5);
+
+    /** Number of times delivery of an event is attempted */
+    private static final int MAX_ATTEMPTS = getConfig("event.queue.attempts", 5);
+
+    /** The workers running in this JVM, keyed by consumer name */
+    private static Map<String, Worker> workers =
+        new ConcurrentHashMap<String, Worker>();
+
+    /** Profiles of the consumers that are called asynchronously */
+    private Map<String, ConsumerProfile> queued =
+        new HashMap<String, ConsumerProfile>();
+
+    /** Names of the consumers that are called synchronously */
+    private Set<String> synchronous = new HashSet<String>();
+
+    /** Consumers that had events queued in the current transaction */
+    private Set<String> pending = new HashSet<String>();
+
+    public AsynchronousDispatcher(String name)
+    {
+        super(name);
+
+        String list = ConfigurationManager.getProperty("event.dispatcher."
+                + name + ".synchronous");
+
+        if (list != null && list.trim().length() > 0)
+        {
+            synchronous.addAll(Arrays.asList(list.trim().split("\\s*,\\s*")));
+        }
+    }
+
+    public void addConsumerProfile(ConsumerProfile cp)
+            throws IllegalArgumentException
+    {
+        if (synchronous.contains(cp.getName()))
+        {
+            super.addConsumerProfile(cp);
+            return;
+        }
+
+        if (queued.containsKey(cp.getName()))
+        {
+            throw new IllegalArgumentException(
+                    "This dispatcher already has a consumer named \""
+                            + cp.getName() + "\"");
+        }
+
+        queued.put(cp.getName(), cp);
+
+        if (ConfigurationManager.getBooleanProperty("event.queue.workers",
+                true))
+        {
+            Worker.start(cp.getName());
+        }
+    }
+
+    /**
+     * Write a queue row for every event and asynchronous consumer that wants
+     * it, as part of the transaction about to be committed. The events are
+     * then handed back to the context for the synchronous consumers.
+     * 
+     * @param ctx
+     *            the execution context
+     */
+    public void prepare(Context ctx)
+    {
+        pending.clear();
+
+        List<Event> events = ctx.getEvents();
+
+        if (events == null)
+        {
+            return;
+        }
+
+        String tid = "TX" + Utils.generateKey();
+        int user = (ctx.getCurrentUser() != null) ? ctx.getCurrentUser()
+                .getID() : -1;
+
+        try
+        {
+            List<TableRow> rows = new ArrayList<TableRow>();
+
+            for (Event event : events)
+            {
+                event.setDispatcher(getIdentifier());
+                event.setTransactionID(tid);
+
+                for (ConsumerProfile cp : queued.values())
+                {
+                    if (event.pass(cp.getFilters()))
+                    {
+                        rows.add(toRow(cp.getName(), event, user));
+                        pending.add(cp.getName());
+                    }
+                }
+            }
+
+            if (log.isDebugEnabled())
+            {
+                log.debug("Queueing " + rows.size() + " deliveries for "
+                        + events.size() + " events");
+            }
+
+            // Workers read the queue in ID order, so the IDs must not come
+            // from a block this JVM reserved before other JVMs took later ones
+            DatabaseManager.insertInSequence(ctx, rows);
+        }
+        catch (SQLException sqle)
+        {
+            throw new RuntimeException(sqle);
+        }
+
+        for (Event event : events)
+        {
+            ctx.addEvent(event);
+        }
+    }
+
+    /**
+     * Deliver the events to the synchronous consumers, and wake up the
+     * workers of the consumers that have new events queued.
+     * 
+     * @param ctx
+     *            the execution context
+     */
+    public void dispatch(Context ctx)
+    {
+        super.dispatch(ctx);
+
+        for (String consumer : pending)
+        {
+            Worker worker = workers.get(consumer);
+
+            if (worker != null)
+            {
+                worker.wake();
+            }
+        }
+
+        pending.clear();
+    }
+
+    /**
+     * Return how far behind the given consumer is: the age, in milliseconds,
+     * of the oldest event in the last batch its worker read from the queue.
+     * Zero if the queue was empty, or -1 if there is no worker for that
+     * consumer in this JVM.
+     * 
+     * @param consumer
+     *            the configured name of the consumer
+     * @return the consumer's lag in milliseconds
+     */
+    public static long getLag(String consumer)
+    {
+        Worker worker = workers.get(consumer);
+
+        return (worker == null) ? -1 : worker.lag;
+    }
+
+    /**
+     * Return the number of events waiting in the queue for the given
+     * consumer, including those that have been given up on.
+     * 
+     * @param context
+     *            the DSpace context
+     * @param consumer
+     *            the configured name of the consumer
+     * @return the number of queued events
+     * @throws SQLException
+     */
+    public static int getQueueSize(Context context, String consumer)
+            throws SQLException
+    {
+        TableRow row = DatabaseManager.querySingle(context,
+                "SELECT COUNT(*) AS num FROM eventqueue WHERE consumer = ?",
+                consumer);
+
+        return (int) row.getLongColumn("num");
+    }
+
+    private static TableRow toRow(String consumer, Event event, int user)
+            throws SQLException
+    {
+        TableRow row = DatabaseManager.row("eventqueue");
+
+        row.setColumn("consumer", consumer);
+        row.setColumn("event_type", event.getEventType());
+        row.setColumn("subject_type", event.getSubjectType());
+        row.setColumn("subject_id", event.getSubjectID());
+
+        if (event.getObjectType() >= 0)
+        {
+            row.setColumn("object_type", event.getObjectType());
+            row.setColumn("object_id", event.getObjectID());
+        }
+        else
+        {
+            row.setColumnNull("object_type");
+            row.setColumnNull("object_id");
+        }
+
+        if (event.getDetail() != null)
+        {
+            row.setColumn("detail", event.getDetail());
+        }
+        else
+        {
+            row.setColumnNull("detail");
+        }
+
+        row.setColumn("transaction_id", event.getTransactionID());
+        row.setColumn("eperson_id", (event.getCurrentUser() >= 0) ? event
+                .getCurrentUser() : user);
+        row.setColumn("time_stamp", event.getTimeStamp());
+        row.setColumn("attempts", 0);
+
+        return row;
+    }
+
+    private static Event toEvent(TableRow row)
+    {
+        Event event;
+
+        if (row.isColumnNull("object_type"))
+        {
+            event = new Event(row.getIntColumn("event_type"), row
+                    .getIntColumn("subject_type"), row
+                    .getIntColumn("subject_id"), row.getStringColumn("detail"));
+        }
+        else
+        {
+            event = new Event(row.getIntColumn("event_type"), row
+                    .getIntColumn("subject_type"), row
+                    .getIntColumn("subject_id"), row
+                    .getIntColumn("object_type"), row
+                    .getIntColumn("object_id"), row.getStringColumn("detail"));
+        }
+
+        event.setTransactionID(row.getStringColumn("transaction_id"));
+        event.setCurrentUser(row.getIntColumn("eperson_id"));
+        event.setTimeStamp(row.getLongColumn("time_stamp"));
+
+        return event;
+    }
+
+    private static int getConfig(String property, int defaultValue)
+    {
+        int value = ConfigurationManager.getIntProperty(property);
+
+        return (value > 0) ? value : defaultValue;
+    }
+
+    /**
+     * Delivers the queued events of one consumer, using its own instance of
+     * that consumer.
+     */
+    private static class Worker extends Thread
+    {
+        private String consumerName;
+
+        private Consumer consumer;
+
+        private volatile long lag = 0;
+
+        private boolean woken = false;
+
+        /**
+         * Start the worker for the given consumer, unless it is already
+         * running in this JVM.
+         */
+        static synchronized void start(String consumerName)
+        {
+            if (workers.containsKey(consumerName))
+            {
+                return;
+            }
+
+            Worker worker = new Worker(consumerName);
+            workers.put(consumerName, worker);
+            worker.start();
+        }
+
+        private Worker(String consumerName)
+        {
+            super("EventQueue-" + consumerName);
+            this.consumerName = consumerName;
+            setDaemon(true);
+        }
+
+        synchronized void wake()
+        {
+            woken = true;
+            notify();
+        }
+
+        public void run()
+        {
+            try
+            {
+                consumer = ConsumerProfile.makeConsumerProfile(consumerName)
+                        .getConsumer();
+                consumer.initialize();
+                createLock();
+            }
+            catch (Exception e)
+            {
+                log.error("Cannot start event queue worker for consumer \""
+                        + consumerName + "\"", e);
+                workers.remove(consumerName);
+                return;
+            }
+
+            while (true)
+            {
+                int delivered;
+
+                try
+                {
+                    delivered = deliverBatch();
+                }
+                catch (Exception e)
+                {
+                    log.error("Error delivering queued events to consumer \""
+                            + consumerName + "\"", e);
+                    delivered = 0;
+                }
+
+                // A full batch means there is probably more waiting
+                if (delivered < BATCH_SIZE)
+                {
+                    synchronized (this)
+                    {
+                        try
+                        {
+                            if (!woken)
+                            {
+                                wait(INTERVAL * 1000L);
+                            }
+                        }
+                        catch (InterruptedException ie)
+                        {
+                            return;
+                        }
+
+                        woken = false;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Deliver the next batch of events in the queue, and remove the ones
+         * that were consumed. Delivery stops at the first event that fails.
+         * 
+         * @return the number of events read from the queue, or the number
+         *         consumed if one failed
+         */
+        private int deliverBatch() throws Exception
+        {
+            Context context = new Context();
+            List<Integer> ids = new ArrayList<Integer>();
+
+            try
+            {
+                context.setIgnoreAuthorization(true);
+
+                // Serialises the workers for this consumer across JVMs until
+                // the transaction ends
+                DatabaseManager.query(context,
+                        "SELECT consumer FROM eventqueuelock "
+                                + "WHERE consumer = ? FOR UPDATE",
+                        consumerName).close();
+
+                List<TableRow> rows = readBatch(context);
+
+                if (rows.isEmpty())
+                {
+                    lag = 0;
+                    context.abort();
+                    return 0;
+                }
+
+                lag = System.currentTimeMillis()
+                        - rows.get(0).getLongColumn("time_stamp");
+
+                if (log.isDebugEnabled())
+                {
+                    log.debug("Delivering " + rows.size()
+                            + " queued events to \"" + consumerName
+                            + "\", lag=" + lag + "ms");
+                }
+
+                List<Integer> consumed = new ArrayList<Integer>();
+                List<Integer> failed = new ArrayList<Integer>();
+
+                for (TableRow row : rows)
+                {
+                    int id = row.getIntColumn("queue_id");
+                    ids.add(id);
+
+                    try
+                    {
+                        Event event = toEvent(row);
+                        consumer.consume(context, event);
+                        consumed.add(id);
+                    }
+                    catch (Exception e)
+                    {
+                        log.error("Consumer(\"" + consumerName
+                                + "\").consume threw: " + e.toString(), e);
+                        failed.add(id);
+
+                        if (row.getIntColumn("attempts") + 1 >= MAX_ATTEMPTS)
+                        {
+                            log.error("Giving up on queued event " + id
+                                    + " for consumer \"" + consumerName + "\"");
+                        }
+
+                        // The rest of the batch may depend on this event,
+                        // e.g. later changes to the same object; leave it
+                        // for the retry
+                        break;
+                    }
+                }
+
+                consumer.end(context);
+
+                update(context, "DELETE FROM eventqueue", consumed);
+                update(context,
+                        "UPDATE eventqueue SET attempts = attempts + 1",
+                        failed);
+
+                context.complete();
+
+                // After a failure, wait before retrying rather than going
+                // straight back for a full batch
+                return failed.isEmpty() ? rows.size() : consumed.size();
+            }
+            catch (Exception e)
+            {
+                if (context.isValid())
+                {
+                    context.abort();
+                }
+
+                // Count the attempt against the whole batch, so that one bad
+                // event cannot block the queue forever
+                recordFailure(ids);
+                throw e;
+            }
+        }
+
+        private List<TableRow> readBatch(Context context) throws SQLException
+        {
+            String query = "SELECT * FROM eventqueue "
+                    + "WHERE consumer = ? AND attempts < ? ORDER BY queue_id";
+
+            if ("oracle".equals(ConfigurationManager.getProperty("db.name")))
+            {
+                query = "SELECT * FROM (" + query + ") WHERE ROWNUM <= ?";
+            }
+            else
+            {
+                query = query + " LIMIT ?";
+            }
+
+            TableRowIterator tri = DatabaseManager.queryTable(context,
+                    "eventqueue", query, consumerName, MAX_ATTEMPTS,
+                    BATCH_SIZE);
+
+            try
+            {
+                return tri.toList();
+            }
+            finally
+            {
+                tri.close();
+            }
+        }
+
+        private void recordFailure(List<Integer> ids)
+        {
+            if (ids.isEmpty())
+            {
+                return;
+            }
+
+            Context context = null;
+
+            try
+            {
+                context = new Context();
+                update(context,
+                        "UPDATE eventqueue SET attempts = attempts + 1", ids);
+                context.complete();
+            }
+            catch (SQLException sqle)
+            {
+                log.error("Cannot record failed delivery to consumer \""
+                        + consumerName + "\"", sqle);
+
+                if (context != null && context.isValid())
+                {
+                    context.abort();
+                }
+            }
+        }
+
+        /**
+         * Make sure there is a lock row for this consumer. Another JVM may
+         * be doing the same, so a failed insert is not an error.
+         */
+        private void createLock() throws SQLException
+        {
+            Context context = new Context();
+
+            try
+            {
+                TableRow row = DatabaseManager.querySingle(context,
+                        "SELECT consumer FROM eventqueuelock WHERE consumer = ?",
+                        consumerName);
+
+                if (row == null)
+                {
+                    DatabaseManager.updateQuery(context,
+                            "INSERT INTO eventqueuelock (consumer) VALUES (?)",
+                            consumerName);
+                }
+
+                context.complete();
+            }
+            catch (SQLException sqle)
+            {
+                log.debug("Lock row for consumer \"" + consumerName
+                        + "\" created elsewhere", sqle);
+            }
+            finally
+            {
+                if (context.isValid())
+                {
+                    context.abort();
+                }
+            }
+        }
+
+        /**
+         * Run the given DELETE or UPDATE statement against the queue rows
+         * with the given IDs, a limited number at a time.
+         */
+        private static void update(Context context, String statement,
+                List<Integer> ids) throws SQLException
+        {
+            for (int start = 0; start < ids.size(); start += BATCH_SIZE)
+            {
+                List<Integer> chunk = ids.subList(start, Math.min(ids.size(),
+                        start + BATCH_SIZE));
+                StringBuffer sql = new StringBuffer(statement);
+                sql.append(" WHERE queue_id IN (");
+
+                for (int i = 0; i < chunk.size(); i++)
+                {
+                    sql.append((i == 0) ? "?" : ", ?");
+                }
+
+                sql.append(")");
+
+                DatabaseManager.updateQuery(context, sql.toString(), chunk
+                        .toArray());
+            }
+        }
+    }
+}
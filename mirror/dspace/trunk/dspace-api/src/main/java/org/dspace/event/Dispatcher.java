@@ -97,6 +97,18 @@ public abstract class Dispatcher
     public abstract void addConsumerProfile(ConsumerProfile cp)
             throws IllegalArgumentException;
 
+    /**
+     * Called by the Context just before the transaction that produced the
+     * events is committed, so a dispatcher can record them as part of that
+     * same transaction. The default implementation does nothing.
+     * 
+     * @param ctx
+     *            the execution context object
+     */
+    public void prepare(Context ctx)
+    {
+    }
+
     /**
      * Dispatch all events added to this Context according to configured
      * consumers.
@@ -50,6 +50,7 @@ import org.dspace.uri.IdentifierService;
 import org.dspace.uri.IdentifierException;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -174,6 +175,9 @@ public class Event implements Serializable
     /** event (action) type - above enumeration */
     private int eventType;
 
+    /** all the event types merged into this event, including eventType */
+    private int eventTypeMask;
+
     /** object-type of SUBJECT - see above enumeration */
     private int subjectType;
 
@@ -230,6 +234,7 @@ public class Event implements Serializable
     public Event(int eventType, int subjectType, int subjectID, String detail)
     {
         this.eventType = eventType;
+        this.eventTypeMask = eventType;
         this.subjectType = coreTypeToMask(subjectType);
         this.subjectID = subjectID;
         timeStamp = System.currentTimeMillis();
@@ -257,6 +262,7 @@ public class Event implements Serializable
             int objectID, String detail)
     {
         this.eventType = eventType;
+        this.eventTypeMask = eventType;
         this.subjectType = coreTypeToMask(subjectType);
         this.subjectID = subjectID;
         this.objectType = coreTypeToMask(objectType);
@@ -453,6 +459,16 @@ public class Event implements Serializable
         return eventType;
     }
 
+    /**
+     * @returns bitmask of every event type that was merged into this event
+     *          by an EventCoalescer. Just the event type if nothing was
+     *          merged.
+     */
+    public int getEventTypeMask()
+    {
+        return eventTypeMask;
+    }
+
     /**
      * Get the text name of event (action) type.
      * 
@@ -500,6 +516,18 @@ public class Event implements Serializable
         return timeStamp;
     }
 
+    /**
+     * Sets the timestamp, e.g. when restoring an event that was queued for
+     * later delivery.
+     * 
+     * @param timeStamp
+     *            milliseconds since the epoch
+     */
+    void setTimeStamp(long timeStamp)
+    {
+        this.timeStamp = timeStamp;
+    }
+
     /**
      * @returns hashcode identifier of name of Dispatcher which first dispatched
      *          this event. (Needed by asynch dispatch code.)
@@ -570,7 +598,7 @@ public class Event implements Serializable
         {
             int filter[] = (int[]) fi.next();
             if ((subjectType & filter[SUBJECT_MASK]) != 0
-                    && (eventType & filter[EVENT_MASK]) != 0)
+                    && (eventTypeMask & filter[EVENT_MASK]) != 0)
                 result = true;
         }
 
@@ -583,6 +611,62 @@ public class Event implements Serializable
         return result;
     }
 
+    /**
+     * Merge a later event on the same subject into this one. The event type
+     * becomes the most significant of the two (CREATE, then MODIFY_METADATA,
+     * then MODIFY), the type mask records both, and the details are combined
+     * into a comma-separated list without duplicates.
+     * 
+     * @param other
+     *            the later event
+     */
+    void merge(Event other)
+    {
+        eventTypeMask |= other.eventTypeMask;
+
+        if (rank(other.eventType) > rank(eventType))
+        {
+            eventType = other.eventType;
+        }
+
+        if (detail == null)
+        {
+            detail = other.detail;
+        }
+        else if (other.detail != null)
+        {
+            StringBuffer merged = new StringBuffer(detail);
+            List<String> parts = Arrays.asList(detail.split("\\s*,\\s*"));
+            String added[] = other.detail.split("\\s*,\\s*");
+
+            for (int i = 0; i < added.length; ++i)
+            {
+                if (!parts.contains(added[i]))
+                {
+                    merged.append(", ").append(added[i]);
+                }
+            }
+
+            detail = merged.toString();
+        }
+    }
+
+    // significance of the event types that can be merged
+    private static int rank(int eventType)
+    {
+        switch (eventType)
+        {
+        case CREATE:
+            return 3;
+        case MODIFY_METADATA:
+            return 2;
+        case MODIFY:
+            return 1;
+        default:
+            return 0;
+        }
+    }
+
     // dumb integer "log base 2", returns -1 if there are no 1's in number.
     private static int log2(int n)
     {
@@ -0,0 +1,144 @@
+/*
+ * EventCoalescer.java
+ *
+ * Version: $Revision$
+ *
+ * Date: $Date$
+ *
+ * Copyright (c) 2002-2007, Hewlett-Packard Company and Massachusetts
+ * Institute of Technology.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * - Neither the name of the Hewlett-Packard Company nor the name of the
+ * Massachusetts Institute of Technology nor the names of their
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package org.dspace.event;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Constants;
+
+/**
+ * Removes redundant events from a context's event stream as they are added,
+ * so that consumers doing expensive work per object (e.g. reindexing an Item)
+ * only see each object once per transaction.
+ * <p>
+ * CREATE, MODIFY and MODIFY_METADATA events without an object are merged per
+ * subject into the first such event: see {@link Event#merge(Event)}. Other
+ * events (ADD, REMOVE, DELETE) carry information the consumers need, so only
+ * exact duplicates of those are dropped, and an ADD or REMOVE is only a
+ * duplicate if no opposite REMOVE or ADD of the same object came in between:
+ * consumers keeping counts must see ADD, REMOVE, ADD as a net addition.
+ * Events on the Site are never merged, since their detail names what
+ * changed.
+ * <p>
+ * Coalescing can be turned off with <code>event.coalesce = false</code> in
+ * dspace.cfg.
+ * 
+ * @version $Revision$
+ */
+public class EventCoalescer
+{
+    /** Event types that can be merged into one event per subject */
+    private static final int MERGEABLE = Event.CREATE | Event.MODIFY
+            | Event.MODIFY_METADATA;
+
+    private static final boolean ENABLED = ConfigurationManager
+            .getBooleanProperty("event.coalesce", true);
+
+    /** The mergeable events seen so far, keyed by subject */
+    private Map<String, Event> bySubject = new HashMap<String, Event>();
+
+    /** Keys of the other events seen so far */
+    private Set<String> seen = new HashSet<String>();
+
+    /**
+     * The type of the last ADD or REMOVE seen for each subject and object,
+     * keyed by subject and object
+     */
+    private Map<String, Integer> lastChange = new HashMap<String, Integer>();
+
+    /**
+     * Fold the given event into the events already seen, if possible.
+     * 
+     * @param event
+     *            the event being added
+     * @return <code>true</code> if the event was merged into an earlier one
+     *         and should be discarded, <code>false</code> if it should be
+     *         added to the event stream
+     */
+    public boolean merge(Event event)
+    {
+        if (!ENABLED)
+        {
+            return false;
+        }
+
+        String subject = event.getSubjectType() + ":" + event.getSubjectID();
+
+        if ((event.getEventType() & MERGEABLE) != 0
+                && event.getObjectType() < 0
+                && event.getSubjectType() != Constants.SITE)
+        {
+            Event earlier = bySubject.get(subject);
+
+            if (earlier == null)
+            {
+                bySubject.put(subject, event);
+                return false;
+            }
+
+            earlier.merge(event);
+            return true;
+        }
+
+        String object = event.getObjectType() + ":" + event.getObjectID();
+        String key = subject + ":" + event.getEventType() + ":" + object + ":"
+                + event.getDetail();
+
+        if ((event.getEventType() & (Event.ADD | Event.REMOVE)) != 0)
+        {
+            Integer type = new Integer(event.getEventType());
+            Integer last = lastChange.put(subject + ":" + object, type);
+
+            // Adding back what was removed (or vice versa) is a change, even
+            // if the same event was seen before that
+            if (!type.equals(last))
+            {
+                seen.add(key);
+                return false;
+            }
+        }
+
+        return !seen.add(key);
+    }
+}
@@ -69,6 +69,8 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.Directory;
 import org.dspace.content.Bitstream;
 import org.dspace.content.Bundle;
 import org.dspace.content.Collection;
@@ -106,6 +108,11 @@ import org.dspace.sort.OrderFormat;
  * repeats regularly, a failed attempt to index from the UI will be "caught" up
  * on in that cron.
  *
+ * With search.indexer.service enabled, writes go through a single writer
+ * kept open per JVM instead (see IndexingService), and processes that find
+ * the index held by another queue their work for it rather than wait on the
+ * lock.
+ *
  * @author Mark Diggory
  * @author Graham Triggs
  */
@@ -276,6 +283,13 @@ public class DSIndexer
 
         Term t = new Term("uri", uri);
 
+        if (IndexingService.isEnabled() && !IndexingService.acquire())
+        {
+            // another process holds the index, leave the work to it
+            IndexingService.enqueue(IndexingService.INDEX, uri);
+            return;
+        }
+
         try
         {
             switch (dso.getType())
@@ -357,6 +371,18 @@ public class DSIndexer
     public static void unIndexContent(Context context, String uri)
             throws IOException
     {
+        if (IndexingService.isEnabled())
+        {
+            if (uri != null)
+            {
+                IndexingService.delete(new Term("uri", uri));
+            }
+            else
+            {
+                log.warn("unindex of content with null uri attempted");
+            }
+            return;
+        }
 
         IndexWriter writer = openIndex(false);
 
@@ -410,6 +436,12 @@ public class DSIndexer
     {
         itemDAO = ItemDAOFactory.getInstance(c);
 
+        /* Release the shared writer, if this process holds it */
+        if (IndexingService.isEnabled())
+        {
+            IndexingService.close();
+        }
+
     	/* Create a new index, blowing away the old. */
         openIndex(true).close();
 
@@ -427,6 +459,12 @@ public class DSIndexer
      */
     public static void optimizeIndex(Context c) throws IOException
     {
+        if (IndexingService.isEnabled())
+        {
+            IndexingService.optimize();
+            return;
+        }
+
         IndexWriter writer = openIndex(false);
 
         try
@@ -454,7 +492,7 @@ public class DSIndexer
         Context context = new Context();
         context.setIgnoreAuthorization(true);
 
-        String usage = "org.dspace.search.DSIndexer [-cbhof[r <item uri>]] or nothing to update/clean an existing index.";
+        String usage = "org.dspace.search.DSIndexer [-cbphof[r <item uri>]] or nothing to update/clean an existing index.";
         Options options = new Options();
         HelpFormatter formatter = new HelpFormatter();
         CommandLine line = null;
@@ -479,6 +517,10 @@ public class DSIndexer
                 "(re)build index, wiping out current one if it exists").create(
                 "b"));
 
+        options.addOption(OptionBuilder.isRequired(false).withDescription(
+                "with -b, build the new index using several threads (see search.rebuild.threads)").create(
+                "p"));
+
         options.addOption(OptionBuilder
                         .isRequired(false)
                         .withDescription(
@@ -521,6 +563,11 @@ public class DSIndexer
             log.info("Cleaning Index");
             cleanIndex(context);
         }
+        else if (line.hasOption("b") && line.hasOption("p"))
+        {
+            log.info("(Re)building index from scratch in parallel.");
+            new IndexRebuilder(context, 0).rebuild();
+        }
         else if (line.hasOption("b"))
         {
             log.info("(Re)building index from scratch.");
@@ -533,6 +580,11 @@ public class DSIndexer
             updateIndex(context, line.hasOption("f"));
         }
 
+        if (IndexingService.isEnabled())
+        {
+            IndexingService.shutdown();
+        }
+
         log.info("Done with indexing");
     }
 
@@ -555,7 +607,9 @@ public class DSIndexer
      * At first it may appear counterintuitive to have an IndexWriter/Reader
      * opened and closed on each DSO. But this allows the UI processes
      * to step in and attain a lock and write to the index even if other
-     * processes/jvms are running a reindex.
+     * processes/jvms are running a reindex. In indexing service mode the
+     * writer is shared and flushed in batches instead, and other processes
+     * queue their changes for this one.
      *
      * @param context
      * @param force
@@ -563,8 +617,10 @@ public class DSIndexer
     public static void updateIndex(Context context, boolean force) {
     		try
     		{
-                for (Item item : itemDAO.getItems())
+                Iterator<Item> items = itemDAO.getItemIterator();
+                while (items.hasNext())
                 {
+                    Item item = items.next();
     	            indexContent(context,item,force);
     	            item.decache();
     	        }
@@ -603,11 +659,14 @@ public class DSIndexer
      */
     public static void cleanIndex(Context context) throws IOException
     {
+        IndexSearcher searcher = null;
+
         try
         {
             ObjectIdentifier oi = null;
 
-            IndexReader reader = DSQuery.getIndexReader();
+            searcher = DSQuery.acquireSearcher();
+            IndexReader reader = searcher.getIndexReader();
 
             for(int i = 0 ; i < reader.numDocs(); i++)
             {
@@ -642,6 +701,10 @@ public class DSIndexer
             log.error("caught exception: ", e);
             throw new RuntimeException(e);
         }
+        finally
+        {
+            DSQuery.releaseSearcher(searcher);
+        }
     }
 
 	/**
@@ -740,23 +803,32 @@ public class DSIndexer
 		boolean reindexItem = false;
 		boolean inIndex = false;
 
-		IndexReader ir = DSQuery.getIndexReader();
-
-		TermDocs docs = ir.termDocs(t);
+		IndexSearcher searcher = DSQuery.acquireSearcher();
 
-		while(docs.next())
+		try
 		{
-			inIndex = true;
-			int id = docs.doc();
-			Document doc = ir.document(id);
+			IndexReader ir = searcher.getIndexReader();
+
+			TermDocs docs = ir.termDocs(t);
+
+			while(docs.next())
+			{
+				inIndex = true;
+				int id = docs.doc();
+				Document doc = ir.document(id);
 
-			Field lastIndexed = doc.getField(LAST_INDEXED_FIELD);
+				Field lastIndexed = doc.getField(LAST_INDEXED_FIELD);
 
-			if (lastIndexed == null || Long.parseLong(lastIndexed.stringValue()) <
-					lastModified.getTime()) {
-				reindexItem = true;
+				if (lastIndexed == null || Long.parseLong(lastIndexed.stringValue()) <
+						lastModified.getTime()) {
+					reindexItem = true;
+				}
 			}
 		}
+		finally
+		{
+			DSQuery.releaseSearcher(searcher);
+		}
 
 		return reindexItem || !inIndex;
 	}
@@ -764,12 +836,45 @@ public class DSIndexer
     /**
      * prepare index, opening writer, and wiping out existing index if necessary
      */
-    private static IndexWriter openIndex(boolean wipe_existing)
+    static IndexWriter openIndex(boolean wipe_existing)
+            throws IOException
+    {
+        return openIndex(index_directory, wipe_existing);
+    }
+
+    /**
+     * prepare an index in the given directory, opening writer, and wiping out
+     * existing index if necessary
+     */
+    static IndexWriter openIndex(String directory, boolean wipe_existing)
             throws IOException
     {
 
-    	IndexWriter writer = new IndexWriter(index_directory, getAnalyzer(), wipe_existing);
+    	IndexWriter writer = new IndexWriter(directory, getAnalyzer(), wipe_existing);
 
+        setMaxFieldLength(writer);
+
+        return writer;
+    }
+
+    /**
+     * open a writer on the live index that doesn't commit until it is closed,
+     * so that searchers go on seeing the index as it was until then.  The
+     * index is created if there isn't one yet.
+     */
+    static IndexWriter openIndexWithoutCommit(Directory directory)
+            throws IOException
+    {
+        IndexWriter writer = new IndexWriter(directory, false, getAnalyzer(),
+                !IndexReader.indexExists(directory));
+
+        setMaxFieldLength(writer);
+
+        return writer;
+    }
+
+    private static void setMaxFieldLength(IndexWriter writer)
+    {
         /* Set maximum number of terms to index if present in dspace.cfg */
         if (maxfieldlength == -1)
         {
@@ -779,8 +884,6 @@ public class DSIndexer
         {
             writer.setMaxFieldLength(maxfieldlength);
         }
-
-        return writer;
     }
 
     /**
@@ -834,6 +937,12 @@ public class DSIndexer
      */
     private static void writeDocument(Term t, Document doc) throws IOException
     {
+        if (IndexingService.isEnabled())
+        {
+            IndexingService.update(t, doc);
+            return;
+        }
+
         IndexWriter writer = null;
 
         try
@@ -863,6 +972,18 @@ public class DSIndexer
      */
     private static void buildDocument(Context context, Community community, Term t)
     throws SQLException, IOException
+    {
+        writeDocument(t, buildDocument(context, community));
+    }
+
+    /**
+     * Build a Lucene document for a DSpace Community, without writing it.
+     *
+     * @param context Users Context
+     * @param community Community to be indexed
+     * @return the document
+     */
+    static Document buildDocument(Context context, Community community)
     {
         // Create Lucene Document
         String uri = community.getIdentifier().getCanonicalForm();
@@ -877,7 +998,7 @@ public class DSIndexer
         	doc.add(new Field("default", name, Field.Store.NO, Field.Index.TOKENIZED));
         }
 
-        writeDocument(t, doc);
+        return doc;
     }
 
     /**
@@ -890,6 +1011,20 @@ public class DSIndexer
      */
     private static void buildDocument(Context context, Collection collection, Term t)
     throws SQLException, IOException
+    {
+        writeDocument(t, buildDocument(context, collection));
+    }
+
+    /**
+     * Build a Lucene document for a DSpace Collection, without writing it.
+     *
+     * @param context Users Context
+     * @param collection Collection to be indexed
+     * @return the document
+     * @throws SQLException
+     */
+    static Document buildDocument(Context context, Collection collection)
+    throws SQLException
     {
         String location_text = buildCollectionLocationString(context, collection);
 
@@ -906,7 +1041,7 @@ public class DSIndexer
         	doc.add(new Field("default", name, Field.Store.NO, Field.Index.TOKENIZED));
         }
 
-        writeDocument(t, doc);
+        return doc;
     }
 
     /**
@@ -920,6 +1055,41 @@ public class DSIndexer
      */
     private static void buildDocument(Context context, Item item, Term t)
     throws SQLException, IOException
+    {
+        String uri = item.getIdentifier().getCanonicalForm();
+
+        Vector<InputStreamReader> readers = new Vector<InputStreamReader>();
+
+        Document doc = buildDocument(context, item, readers);
+
+        //write the index and close the inputstreamreaders
+        try {
+            writeDocument(t, doc);
+            log.info("Wrote Item: " + uri + " to Index");
+        }
+        catch(Exception e)
+        {
+        	log.error(e.getMessage(),e);
+        }
+        finally
+        {
+            closeReaders(readers);
+        }
+    }
+
+    /**
+     * Build a Lucene document for a DSpace Item. The full text of the TEXT
+     * bundle is added as readers, which are also added to <code>readers</code>
+     * so that the caller can close them once the document has been written.
+     *
+     * @param context Users Context
+     * @param item The DSpace Item to be indexed
+     * @param readers collects the readers opened on the item's bitstreams
+     * @return the document
+     * @throws SQLException
+     */
+    static Document buildDocument(Context context, Item item, Vector<InputStreamReader> readers)
+    throws SQLException
     {
     	// get the location string (for searching by collection & community)
         String location = buildItemLocationString(context, item);
@@ -1026,7 +1196,9 @@ public class DSIndexer
 
         log.debug("  Added Sorting");
 
-        Vector<InputStreamReader> readers = new Vector<InputStreamReader>();
+        FacetIndex.addFields(doc, item);
+
+        log.debug("  Added Facets");
 
         try
         {
@@ -1070,28 +1242,27 @@ public class DSIndexer
         	log.error(e.getMessage(),e);
         }
 
-        //write the index and close the inputstreamreaders
-        try {
-            writeDocument(t, doc);
-            log.info("Wrote Item: " + uri + " to Index");
-        }
-        catch(Exception e)
-        {
-        	log.error(e.getMessage(),e);
-        }
-        finally
-        {
-        	Iterator<InputStreamReader> itr = readers.iterator();
-        	while (itr.hasNext())
-        	{
-        		InputStreamReader reader = itr.next();
-        		if (reader != null)
-        		{
-        			reader.close();
-        		}
-        	}
-    		log.debug("closed " + readers.size() + " readers");
-        }
+        return doc;
+    }
+
+    /**
+     * Close the bitstream readers of a document once it has been written.
+     *
+     * @param readers the readers to close
+     * @throws IOException
+     */
+    static void closeReaders(Vector<InputStreamReader> readers) throws IOException
+    {
+    	Iterator<InputStreamReader> itr = readers.iterator();
+    	while (itr.hasNext())
+    	{
+    		InputStreamReader reader = itr.next();
+    		if (reader != null)
+    		{
+    			reader.close();
+    		}
+    	}
+		log.debug("closed " + readers.size() + " readers");
     }
 
     /**
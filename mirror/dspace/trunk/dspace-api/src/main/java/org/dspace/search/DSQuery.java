@@ -41,22 +41,29 @@ package org.dspace.search;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.queryParser.TokenMgrError;
+import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.Hits;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.Searcher;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldDocCollector;
 import org.apache.oro.text.perl.Perl5Util;
 import org.dspace.content.Collection;
 import org.dspace.content.Community;
@@ -88,14 +95,17 @@ public class DSQuery
 
     static final String COMMUNITY = "" + Constants.COMMUNITY;
 
-    // cache a Lucene IndexSearcher for more efficient searches
-    private static IndexSearcher searcher = null;
+    // share a Lucene IndexSearcher between searches, reopened in the background
+    private static SearcherManager manager = null;
 
     private static String indexDir = null;
     
     private static String operator = null;
-    
-    private static long lastModified;
+
+    // the stored fields read from each hit
+    private static final FieldSelector HIT_FIELDS = new MapFieldSelector(new String[] {
+            "search.resourceid", "search.resourcetype", "uri", "type"
+        });
     
     /** log4j logger */
     private static Logger log = Logger.getLogger(DSQuery.class);
@@ -112,6 +122,14 @@ public class DSQuery
         indexDir = ConfigurationManager.getProperty("search.dir");
         
         operator = ConfigurationManager.getProperty("search.operator");   
+
+        int interval = ConfigurationManager.getIntProperty("search.refresh.interval");
+        if (interval < 1)
+        {
+            interval = 1;
+        }
+
+        manager = new SearcherManager(indexDir, interval * 1000L);
     }
 
     /**
@@ -127,12 +145,11 @@ public class DSQuery
     {
         String querystring = args.getQuery();
         QueryResults qr = new QueryResults();
-        List<Integer> hitIds     = new ArrayList<Integer>();
         List<String> hitURIs = new ArrayList<String>();
         List<Integer> hitTypes = new ArrayList<Integer>();
 
         // set up the QueryResults object
-        qr.setHitIds(hitIds);
+        qr.setHitIds(new int[0]);
         qr.setHitURIs(hitURIs);
         qr.setHitTypes(hitTypes);
         qr.setStart(args.getStart());
@@ -146,11 +163,11 @@ public class DSQuery
         querystring = stripURIs(querystring); // remove URIs from query string
         querystring = stripAsterisk(querystring); // remove asterisk from beginning of string
 
+        // grab a searcher, and do the search
+        IndexSearcher searcher = manager.acquire();
+
         try
         {
-            // grab a searcher, and do the search
-            Searcher searcher = getSearcher(c);
-
             QueryParser qp = new QueryParser("default", DSIndexer.getAnalyzer());
             log.info("Final query string: " + querystring);
             
@@ -163,8 +180,12 @@ public class DSQuery
             	qp.setDefaultOperator(QueryParser.AND_OPERATOR);
             }
             
-            Query myquery = qp.parse(querystring);
-            Hits hits = null;
+            Query myquery = addFacetFilters(qp.parse(querystring), args);
+            String[] facetNames = getFacetNames(args);
+            TopDocs hits = null;
+
+            // only the hits up to the end of the requested page are kept
+            int wanted = Math.max(1, args.getStart() + args.getPageSize());
 
             try
             {
@@ -174,7 +195,7 @@ public class DSQuery
                             new SortField("search.resourcetype", true),
                             new SortField(null, SortField.SCORE, SortOption.ASCENDING.equals(args.getSortOrder()))
                         };
-                    hits = searcher.search(myquery, new Sort(sortFields));
+                    hits = search(searcher, myquery, new Sort(sortFields), wanted, facetNames, args, qr);
                 }
                 else
                 {
@@ -183,7 +204,7 @@ public class DSQuery
                             new SortField("sort_" + args.getSortOption().getName(), SortOption.DESCENDING.equals(args.getSortOrder())),
                             SortField.FIELD_SCORE
                         };
-                    hits = searcher.search(myquery, new Sort(sortFields));
+                    hits = search(searcher, myquery, new Sort(sortFields), wanted, facetNames, args, qr);
                 }
             }
             catch (Exception e)
@@ -191,28 +212,32 @@ public class DSQuery
                 // Lucene can throw an exception if it is unable to determine a sort time from the specified field
                 // Provide a fall back that just works on relevancy.
                 log.error("Unable to use speficied sort option: " + (args.getSortOption() == null ? "type/relevance": args.getSortOption().getName()));
-                hits = searcher.search(myquery, new Sort(SortField.FIELD_SCORE));
+                hits = search(searcher, myquery, new Sort(SortField.FIELD_SCORE), wanted, facetNames, args, qr);
             }
 
             // set total number of hits
-            qr.setHitCount(hits.length());
+            qr.setHitCount(hits.totalHits);
 
-            // We now have a bunch of hits - snip out a 'window'
+            // We now have the top hits - snip out a 'window'
             // defined in start, count and return the URIs
             // from that window
             // first, are there enough hits?
-            if (args.getStart() < hits.length())
+            if (args.getStart() < hits.scoreDocs.length)
             {
                 // get as many as we can, up to the window size
                 // how many are available after snipping off at offset 'start'?
-                int hitsRemaining = hits.length() - args.getStart();
+                int hitsRemaining = hits.scoreDocs.length - args.getStart();
 
                 int hitsToProcess = (hitsRemaining < args.getPageSize()) ? hitsRemaining
                         : args.getPageSize();
 
+                int[] hitIds = new int[hitsToProcess];
+                IndexReader reader = searcher.getIndexReader();
+
                 for (int i = args.getStart(); i < (args.getStart() + hitsToProcess); i++)
                 {
-                    Document d = hits.doc(i);
+                    // only load the stored fields needed to identify the hit
+                    Document d = reader.document(hits.scoreDocs[i].doc, HIT_FIELDS);
 
                     String resourceId   = d.get("search.resourceid");
                     String resourceType = d.get("search.resourcetype");
@@ -236,8 +261,10 @@ public class DSQuery
                     }
 
                     hitURIs.add(uriText);
-                    hitIds.add( resourceId == null ? null: Integer.parseInt(resourceId) );
+                    hitIds[i - args.getStart()] = (resourceId == null ? -1 : Integer.parseInt(resourceId));
                 }
+
+                qr.setHitIds(hitIds);
             }
         }
         catch (NumberFormatException e)
@@ -262,10 +289,89 @@ public class DSQuery
             log.warn(LogManager.getHeader(c, "Query too broad", e.toString()));
             qr.setErrorMsg("Your query was too broad. Try a narrower query.");
         }
+        finally
+        {
+            manager.release(searcher);
+        }
 
         return qr;
     }
 
+    /**
+     * Run the search, keeping the top <code>wanted</code> hits. If facets
+     * are asked for, they are counted over every hit in the same pass and
+     * set on the results.
+     */
+    private static TopDocs search(IndexSearcher searcher, Query query, Sort sort, int wanted,
+            String[] facetNames, QueryArgs args, QueryResults qr) throws IOException
+    {
+        if (facetNames == null)
+        {
+            return searcher.search(query, null, wanted, sort);
+        }
+
+        IndexReader reader = searcher.getIndexReader();
+        TopFieldDocCollector top = new TopFieldDocCollector(reader, sort, wanted);
+        FacetIndex.Counter counter = new FacetIndex.Counter(reader, facetNames, top);
+
+        searcher.search(query, counter);
+
+        qr.setFacets(counter.getFacets(args.getFacetLimit()));
+        return top.topDocs();
+    }
+
+    /**
+     * The facets asked for which are configured, or null if there are none.
+     */
+    private static String[] getFacetNames(QueryArgs args)
+    {
+        if (args.getFacetNames() == null)
+        {
+            return null;
+        }
+
+        List<String> configured = Arrays.asList(FacetIndex.getFacetNames());
+        List<String> names = new ArrayList<String>();
+        for (String name : args.getFacetNames())
+        {
+            if (configured.contains(name))
+            {
+                names.add(name);
+            }
+            else
+            {
+                log.warn("Ignoring unknown search facet: " + name);
+            }
+        }
+
+        return names.isEmpty() ? null : names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Require the facet values the query args are filtered on.
+     */
+    private static Query addFacetFilters(Query query, QueryArgs args)
+    {
+        if (args.getFacetFilters().isEmpty())
+        {
+            return query;
+        }
+
+        BooleanQuery filtered = new BooleanQuery();
+        filtered.add(query, BooleanClause.Occur.MUST);
+
+        for (Map.Entry<String, List<String>> filter : args.getFacetFilters().entrySet())
+        {
+            for (String value : filter.getValue())
+            {
+                Term t = new Term(FacetIndex.FIELD_PREFIX + filter.getKey(), value);
+                filtered.add(new TermQuery(t), BooleanClause.Occur.MUST);
+            }
+        }
+
+        return filtered;
+    }
+
     static String checkEmptyQuery(String myquery)
     {
         if (myquery.equals(""))
@@ -423,22 +529,12 @@ public class DSQuery
     }
 
     /**
-     * Close any IndexSearcher that is currently open.
+     * Close any IndexSearcher that is currently open. Searches still using it
+     * finish first.
      */
     public static void close()
     {
-        if (searcher != null)
-        {
-            try
-            {
-                searcher.close();
-                searcher = null;
-            }
-            catch (IOException ioe)
-            {
-                log.error("DSQuery: Unable to close open IndexSearcher", ioe);
-            }
-        }
+        manager.close();
     }
 
     public static void main(String[] args)
@@ -449,69 +545,29 @@ public class DSQuery
         }
     }
 
-    /*---------  protected methods ----------*/
+    /*---------  package methods ----------*/
 
-    /**	
-     * get an IndexReader.
-     * @throws IOException 
+    /**
+     * get the shared IndexSearcher. It must be given back with
+     * releaseSearcher once it is no longer needed, and should not be held
+     * for long as it keeps the index files it was opened on from being
+     * removed.
+     * @throws IOException
      */
-    protected static IndexReader getIndexReader() 
-    	throws IOException
+    static IndexSearcher acquireSearcher()
+            throws IOException
     {
-    	return getSearcher(null).getIndexReader();
+        return manager.acquire();
     }
-    
+
     /**
-     * get an IndexSearcher, hopefully a cached one (gives much better
-     * performance.) checks to see if the index has been modified - if so, it
-     * creates a new IndexSearcher
+     * give back a searcher obtained from acquireSearcher.
+     * @throws IOException
      */
-    protected static synchronized IndexSearcher getSearcher(Context c)
+    static void releaseSearcher(IndexSearcher searcher)
             throws IOException
     {
-       
-        // If we have already opened a searcher, check to see if the index has been updated
-        // If it has, we need to close the existing searcher - we will open a new one later
-        if (searcher != null && lastModified != IndexReader.getCurrentVersion(indexDir))
-        {
-            try
-            {
-                // Close the cached IndexSearcher
-                searcher.close();
-            }
-            catch (IOException ioe)
-            {
-                // Index is probably corrupt. Log the error, but continue to either:
-                // 1) Return existing searcher (may yet throw exception, no worse than throwing here)
-                log.warn("DSQuery: Unable to check for updated index", ioe);
-            }
-            finally
-            {
-            	searcher = null;
-            }
-        }
-
-        // There is no existing searcher - either this is the first execution,
-        // or the index has been updated and we closed the old index.
-        if (searcher == null)
-        {
-            // So, open a new searcher
-            lastModified = IndexReader.getCurrentVersion(indexDir);
-            searcher = new IndexSearcher(indexDir){
-            	/* 
-            	 * TODO: Has Lucene fixed this bug yet?
-            	 * Lucene doesn't release read locks in 
-            	 * windows properly on finalize. Our hack
-            	 * extend IndexSearcher to force close().
-            	 */
-                protected void finalize() throws Throwable {
-            		this.close();
-            		super.finalize();
-            	}
-            };
-        }
-
-        return searcher;
+        manager.release(searcher);
     }
 }
 
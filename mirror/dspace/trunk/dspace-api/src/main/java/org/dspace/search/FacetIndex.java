@@ -0,0 +1,466 @@
+/*
+ * FacetIndex.java
+ *
+ * Location: $URL$
+ * 
+ * Version: $Revision$
+ * 
+ * Date: $Date$
+ *
+ * Copyright (c) 2002-2007, Hewlett-Packard Company and Massachusetts
+ * Institute of Technology.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * - Neither the name of the Hewlett-Packard Company nor the name of the
+ * Massachusetts Institute of Technology nor the names of their
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package org.dspace.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.HitCollector;
+import org.apache.lucene.util.PriorityQueue;
+import org.dspace.content.Collection;
+import org.dspace.content.DCValue;
+import org.dspace.content.Item;
+import org.dspace.core.ConfigurationManager;
+
+/**
+ * Facet counts for search results.  The facets are configured in dspace.cfg
+ * as <code>search.facet.[number] = [name]:[schema.element.qualifier]</code>,
+ * optionally followed by <code>:year</code> to facet a date on its year.  In
+ * place of a metadata field, <code>collection</code> facets on the ids of the
+ * collections an item is in.  Each value is indexed untokenized in a field
+ * named <code>facet.[name]</code>.
+ *
+ * To count the facets of a result set without loading any documents, each
+ * facet field is "uninverted" once per IndexReader: its terms are numbered in
+ * order and every document gets the list of term numbers it has.  Counting
+ * a hit is then a walk over that short list.  The tables are cached for as
+ * long as the reader is in use, and SearcherManager builds them before it
+ * swaps in a reopened searcher, so searches don't pay for them.
+ *
+ * @version $Revision$
+ */
+class FacetIndex
+{
+    /** log4j logger */
+    private static Logger log = Logger.getLogger(FacetIndex.class);
+
+    /** prefix of the index field holding each facet */
+    static final String FIELD_PREFIX = "facet.";
+
+    private static final Pattern YEAR = Pattern.compile("^\\s*(\\d{4})");
+
+    // Class to hold the facet configuration (one instance per config line)
+    private static class FacetConfig
+    {
+        String name;
+        String schema;
+        String element;
+        String qualifier = null;
+        boolean year = false;
+        boolean collection = false;
+    }
+
+    private static FacetConfig[] facetConfigArr;
+
+    /** facet tables, per reader and then per facet name */
+    private static Map<IndexReader, Map<String, FacetIndex>> cache =
+            new WeakHashMap<IndexReader, Map<String, FacetIndex>>();
+
+    static
+    {
+        List<FacetConfig> configs = new ArrayList<FacetConfig>();
+
+        // read in search.facet.1, search.facet.2....
+        String line;
+        for (int i = 1; (line = ConfigurationManager.getProperty("search.facet." + i)) != null; i++)
+        {
+            String[] configLine = line.trim().split(":");
+            FacetConfig fc = new FacetConfig();
+            fc.name = configLine[0];
+
+            if (configLine.length < 2)
+            {
+                throw new RuntimeException("Malformed configuration line: search.facet." + i);
+            }
+
+            if ("collection".equals(configLine[1]))
+            {
+                fc.collection = true;
+            }
+            else
+            {
+                String[] parts = configLine[1].split("\\.");
+                switch (parts.length)
+                {
+                case 3:
+                    fc.qualifier = "*".equals(parts[2]) ? Item.ANY : parts[2];
+                case 2:
+                    fc.schema = parts[0];
+                    fc.element = parts[1];
+                    break;
+                default:
+                    throw new RuntimeException("Malformed configuration line: search.facet." + i);
+                }
+            }
+
+            fc.year = configLine.length > 2 && "year".equalsIgnoreCase(configLine[2]);
+
+            configs.add(fc);
+        }
+
+        facetConfigArr = configs.toArray(new FacetConfig[configs.size()]);
+    }
+
+    /**
+     * @return the names of the configured facets
+     */
+    static String[] getFacetNames()
+    {
+        String[] names = new String[facetConfigArr.length];
+        for (int i = 0; i < names.length; i++)
+        {
+            names[i] = facetConfigArr[i].name;
+        }
+        return names;
+    }
+
+    /**
+     * Add the configured facet fields of an item to its document.
+     *
+     * @param doc the item's document
+     * @param item the item
+     */
+    static void addFields(Document doc, Item item)
+    {
+        for (FacetConfig fc : facetConfigArr)
+        {
+            String field = FIELD_PREFIX + fc.name;
+
+            if (fc.collection)
+            {
+                Collection[] collections = item.getCollections();
+                for (int i = 0; i < collections.length; i++)
+                {
+                    doc.add(new Field(field, Integer.toString(collections[i].getID()),
+                            Field.Store.NO, Field.Index.UN_TOKENIZED));
+                }
+                continue;
+            }
+
+            DCValue[] values = item.getMetadata(fc.schema, fc.element, fc.qualifier, Item.ANY);
+            for (int i = 0; i < values.length; i++)
+            {
+                String value = values[i].value;
+                if (StringUtils.isBlank(value))
+                {
+                    continue;
+                }
+
+                if (fc.year)
+                {
+                    Matcher m = YEAR.matcher(value);
+                    if (!m.find())
+                    {
+                        continue;
+                    }
+                    value = m.group(1);
+                }
+
+                doc.add(new Field(field, value.trim(), Field.Store.NO, Field.Index.UN_TOKENIZED));
+            }
+        }
+    }
+
+    /**
+     * Get the table for a facet over a reader, building it if need be.
+     *
+     * @param reader the reader being searched
+     * @param name the facet name
+     * @return the facet table
+     * @throws IOException
+     */
+    static FacetIndex getInstance(IndexReader reader, String name) throws IOException
+    {
+        Map<String, FacetIndex> fields;
+        synchronized (cache)
+        {
+            fields = cache.get(reader);
+            if (fields == null)
+            {
+                fields = new HashMap<String, FacetIndex>();
+                cache.put(reader, fields);
+            }
+        }
+
+        synchronized (fields)
+        {
+            FacetIndex fi = fields.get(name);
+            if (fi == null)
+            {
+                fi = new FacetIndex(reader, FIELD_PREFIX + name);
+                fields.put(name, fi);
+            }
+            return fi;
+        }
+    }
+
+    /**
+     * Build the tables of all the configured facets for a reader.
+     *
+     * @param reader the reader
+     */
+    static void warm(IndexReader reader)
+    {
+        for (FacetConfig fc : facetConfigArr)
+        {
+            try
+            {
+                getInstance(reader, fc.name);
+            }
+            catch (IOException ioe)
+            {
+                log.warn("Unable to warm facet " + fc.name, ioe);
+            }
+        }
+    }
+
+    /** the terms of the field, in term order */
+    private String[] values;
+
+    /** where each document's term numbers start in ords (maxDoc + 1 entries) */
+    private int[] starts;
+
+    /** the term numbers of every document, one document after another */
+    private int[] ords;
+
+    private FacetIndex(IndexReader reader, String field) throws IOException
+    {
+        long start = System.currentTimeMillis();
+
+        int maxDoc = reader.maxDoc();
+        starts = new int[maxDoc + 1];
+
+        // first pass: find the terms, and how many each document has
+        List<String> terms = new ArrayList<String>();
+        TermEnum te = reader.terms(new Term(field, ""));
+        TermDocs td = reader.termDocs();
+        try
+        {
+            do
+            {
+                Term t = te.term();
+                if (t == null || !t.field().equals(field))
+                {
+                    break;
+                }
+
+                terms.add(t.text());
+                td.seek(te);
+                while (td.next())
+                {
+                    starts[td.doc() + 1]++;
+                }
+            }
+            while (te.next());
+        }
+        finally
+        {
+            te.close();
+        }
+
+        for (int i = 0; i < maxDoc; i++)
+        {
+            starts[i + 1] += starts[i];
+        }
+
+        values = terms.toArray(new String[terms.size()]);
+        ords = new int[starts[maxDoc]];
+
+        // second pass: fill in each document's term numbers
+        int[] next = new int[maxDoc];
+        System.arraycopy(starts, 0, next, 0, maxDoc);
+        try
+        {
+            for (int ord = 0; ord < values.length; ord++)
+            {
+                td.seek(new Term(field, values[ord]));
+                while (td.next())
+                {
+                    ords[next[td.doc()]++] = ord;
+                }
+            }
+        }
+        finally
+        {
+            td.close();
+        }
+
+        log.debug("Built facet table for " + field + ": " + values.length + " terms, "
+                + ords.length + " postings in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Count the terms of a document.
+     */
+    private void count(int doc, int[] counts)
+    {
+        for (int i = starts[doc]; i < starts[doc + 1]; i++)
+        {
+            counts[ords[i]]++;
+        }
+    }
+
+    /**
+     * The most frequent values, most frequent first, ties broken on value.
+     */
+    private List<FacetValue> top(int[] counts, final int limit)
+    {
+        if (limit < 1)
+        {
+            return new ArrayList<FacetValue>();
+        }
+
+        PriorityQueue pq = new PriorityQueue()
+        {
+            {
+                initialize(limit);
+            }
+
+            protected boolean lessThan(Object a, Object b)
+            {
+                FacetValue fa = (FacetValue) a;
+                FacetValue fb = (FacetValue) b;
+                if (fa.getCount() != fb.getCount())
+                {
+                    return fa.getCount() < fb.getCount();
+                }
+                return fa.getValue().compareTo(fb.getValue()) > 0;
+            }
+        };
+
+        int min = 0;
+        for (int ord = 0; ord < counts.length; ord++)
+        {
+            // cheap check before creating an object for the queue
+            if (counts[ord] > min || (counts[ord] > 0 && pq.size() < limit))
+            {
+                pq.insert(new FacetValue(values[ord], counts[ord]));
+                if (pq.size() == limit)
+                {
+                    min = ((FacetValue) pq.top()).getCount();
+                }
+            }
+        }
+
+        FacetValue[] result = new FacetValue[pq.size()];
+        for (int i = result.length - 1; i >= 0; i--)
+        {
+            result[i] = (FacetValue) pq.pop();
+        }
+
+        List<FacetValue> list = new ArrayList<FacetValue>(result.length);
+        for (int i = 0; i < result.length; i++)
+        {
+            list.add(result[i]);
+        }
+        return list;
+    }
+
+    /**
+     * Counts the facets of every hit, passing the hits on to another
+     * collector (which gathers the page of results) as it goes.
+     */
+    static class Counter extends HitCollector
+    {
+        private String[] names;
+
+        private FacetIndex[] facets;
+
+        private int[][] counts;
+
+        private HitCollector next;
+
+        Counter(IndexReader reader, String[] names, HitCollector next) throws IOException
+        {
+            this.names = names;
+            this.next = next;
+
+            facets = new FacetIndex[names.length];
+            counts = new int[names.length][];
+            for (int i = 0; i < names.length; i++)
+            {
+                facets[i] = getInstance(reader, names[i]);
+                counts[i] = new int[facets[i].values.length];
+            }
+        }
+
+        public void collect(int doc, float score)
+        {
+            for (int i = 0; i < facets.length; i++)
+            {
+                facets[i].count(doc, counts[i]);
+            }
+
+            next.collect(doc, score);
+        }
+
+        /**
+         * @param limit the number of values to return per facet
+         * @return the top values of each facet, by facet name
+         */
+        Map<String, List<FacetValue>> getFacets(int limit)
+        {
+            Map<String, List<FacetValue>> result = new LinkedHashMap<String, List<FacetValue>>();
+            for (int i = 0; i < facets.length; i++)
+            {
+                result.put(names[i], facets[i].top(counts[i], limit));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,621 @@
+/*
+ * IndexRebuilder.java
+ *
+ * Location: $URL$
+ * 
+ * Version: $Revision$
+ * 
+ * Date: $Date$
+ *
+ * Copyright (c) 2002-2007, Hewlett-Packard Company and Massachusetts
+ * Institute of Technology.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * - Neither the name of the Hewlett-Packard Company nor the name of the
+ * Massachusetts Institute of Technology nor the names of their
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package org.dspace.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.dspace.content.Collection;
+import org.dspace.content.Community;
+import org.dspace.content.Item;
+import org.dspace.content.dao.CollectionDAO;
+import org.dspace.content.dao.CollectionDAOFactory;
+import org.dspace.content.dao.CommunityDAO;
+import org.dspace.content.dao.CommunityDAOFactory;
+import org.dspace.content.dao.ItemDAO;
+import org.dspace.content.dao.ItemDAOFactory;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Constants;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+/**
+ * Rebuilds the search index from scratch using several threads, for use when
+ * the whole archive has to be reindexed.  Rather than building and writing
+ * the item documents one at a time, as DSIndexer.createIndex does, this:
+ *
+ * <ul>
+ * <li>streams the ids of the archived items from the database on one
+ * thread</li>
+ * <li>has a pool of workers, each with its own Context, load the items,
+ * build their Lucene documents (including the TEXT bundle full text) and
+ * write them into a private sub-index</li>
+ * <li>writes the collections and communities into one more sub-index</li>
+ * <li>replaces the documents in the live index with the merged sub-indexes,
+ * using a writer that only commits when it is closed</li>
+ * <li>indexes again the items modified since the rebuild started, whose
+ * changes the merge replaced, and removes those deleted meanwhile</li>
+ * </ul>
+ *
+ * Searchers only ever see the old index or the complete new one, never an
+ * empty or partly merged one, so searching carries on throughout.
+ *
+ * The number of workers is set by <code>search.rebuild.threads</code> in
+ * dspace.cfg, and defaults to the number of processors available.  Progress,
+ * throughput and an estimate of the time left are printed as it goes.
+ *
+ * @version $Revision$
+ */
+public class IndexRebuilder
+{
+    /** log4j category */
+    private static Logger log = Logger.getLogger(IndexRebuilder.class);
+
+    /** the items which belong in the search index */
+    private static final String ITEM_QUERY =
+        "SELECT item_id FROM item WHERE in_archive = ? AND withdrawn = ? ORDER BY item_id";
+
+    private static final String ITEM_COUNT_QUERY =
+        "SELECT COUNT(*) AS num FROM item WHERE in_archive = ? AND withdrawn = ?";
+
+    /** the items modified since a given time */
+    private static final String CHANGED_QUERY =
+        "SELECT item_id FROM item WHERE last_modified >= ? ORDER BY item_id";
+
+    /** put on the queue once per worker to tell it there are no more items */
+    private static final Integer END = new Integer(-1);
+
+    /** number of item ids which may wait on the queue, per worker */
+    private static final int QUEUE_PER_WORKER = 100;
+
+    /** how often to report progress, in milliseconds */
+    private static final long REPORT_INTERVAL = 10000;
+
+    /** DSpace context */
+    private Context context;
+
+    /** the live index directory */
+    private String indexDir;
+
+    /** holds the sub-indexes while they are built */
+    private File workDir;
+
+    /** number of worker threads */
+    private int threads;
+
+    /** item ids waiting for a worker */
+    private BlockingQueue<Integer> queue;
+
+    /** number of items written to the sub-indexes so far */
+    private AtomicInteger indexed = new AtomicInteger();
+
+    /** set if the rebuild has failed, so the other threads stop */
+    private volatile boolean aborted = false;
+
+    /** when the rebuild started reading the items */
+    private Date started;
+
+    /**
+     * Create a new rebuilder.
+     *
+     * @param context   the DSpace context to do the rebuild with
+     * @param threads   the number of workers, or 0 to use the configured number
+     */
+    public IndexRebuilder(Context context, int threads)
+    {
+        this.context = context;
+        this.indexDir = ConfigurationManager.getProperty("search.dir");
+        this.workDir = new File(indexDir + "-rebuild");
+
+        if (threads < 1)
+        {
+            threads = ConfigurationManager.getIntProperty("search.rebuild.threads");
+        }
+        if (threads < 1)
+        {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Rebuild the search index, replacing the existing one.
+     *
+     * @return  the number of items indexed
+     * @throws IOException
+     * @throws SQLException
+     */
+    public int rebuild() throws IOException, SQLException
+    {
+        started = new Date();
+        int total = countItems();
+
+        message("Indexing " + total + " items using " + threads + " threads");
+
+        deleteWorkDir();
+        workDir.mkdirs();
+
+        queue = new ArrayBlockingQueue<Integer>(threads * QUEUE_PER_WORKER);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        List<Future<Integer>> workers = new ArrayList<Future<Integer>>();
+        File[] parts = new File[threads + 1];
+
+        long start = System.currentTimeMillis();
+        try
+        {
+            Future<Integer> reader = pool.submit(new ItemReader());
+
+            for (int i = 0; i < threads; i++)
+            {
+                parts[i] = new File(workDir, "part" + i);
+                workers.add(pool.submit(new Worker(parts[i])));
+            }
+
+            waitFor(reader, total, start);
+            for (Future<Integer> worker : workers)
+            {
+                waitFor(worker, total, start);
+            }
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        message("Built " + indexed.get() + " item documents in " + formatTime(elapsed)
+                + " (" + rate(indexed.get(), elapsed) + " items/s)");
+
+        message("Indexing collections and communities");
+        parts[threads] = new File(workDir, "containers");
+        indexContainers(parts[threads]);
+
+        message("Merging " + parts.length + " sub-indexes into " + indexDir);
+        merge(parts);
+
+        deleteWorkDir();
+
+        message("Indexing items changed during the rebuild");
+        int changed = replay();
+        message("Indexed " + changed + " changed items");
+
+        return indexed.get();
+    }
+
+    /**
+     * Wait for a thread to finish, reporting progress while it runs.  If it
+     * failed, stop the others and rethrow its exception.
+     */
+    private void waitFor(Future<Integer> future, int total, long start)
+        throws IOException, SQLException
+    {
+        while (true)
+        {
+            try
+            {
+                future.get(REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+                return;
+            }
+            catch (TimeoutException te)
+            {
+                reportProgress(total, start);
+            }
+            catch (InterruptedException ie)
+            {
+                aborted = true;
+                throw new IOException("Interrupted while rebuilding search index");
+            }
+            catch (ExecutionException ee)
+            {
+                aborted = true;
+
+                Throwable cause = ee.getCause();
+                if (cause instanceof IOException)
+                {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof SQLException)
+                {
+                    throw (SQLException) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    private void reportProgress(int total, long start)
+    {
+        int done = indexed.get();
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+        StringBuffer msg = new StringBuffer();
+        msg.append("Indexed ").append(done).append(" of ").append(total).append(" items (");
+        msg.append(rate(done, elapsed)).append(" items/s");
+
+        if (done > 0 && total > done)
+        {
+            long remaining = (long) ((total - done) * ((double) elapsed / done));
+            msg.append(", about ").append(formatTime(remaining)).append(" remaining");
+        }
+        msg.append(")");
+
+        message(msg.toString());
+    }
+
+    private static String rate(int count, long millis)
+    {
+        return String.valueOf(Math.round(count * 10000.0 / millis) / 10.0);
+    }
+
+    private static String formatTime(long millis)
+    {
+        long secs = millis / 1000;
+        return (secs / 3600) + ":" + pad((secs / 60) % 60) + ":" + pad(secs % 60);
+    }
+
+    private static String pad(long n)
+    {
+        return n < 10 ? "0" + n : String.valueOf(n);
+    }
+
+    private void message(String msg)
+    {
+        System.out.println(msg);
+        log.info(msg);
+    }
+
+    private int countItems() throws SQLException
+    {
+        TableRow row = DatabaseManager.querySingle(context, ITEM_COUNT_QUERY,
+                Boolean.TRUE, Boolean.FALSE);
+
+        return (int) row.getLongColumn("num");
+    }
+
+    /**
+     * Replace the live index with the merged sub-indexes.  addIndexes
+     * optimizes as it merges, so the result needs no further optimizing.
+     * Every document has a search.resourcetype, so deleting by each type
+     * removes the old documents; the deletes are applied before the
+     * sub-indexes are added.  Nothing is committed, and so nothing is seen
+     * by searchers, until the writer is closed.
+     */
+    private void merge(File[] parts) throws IOException
+    {
+        if (IndexingService.isEnabled())
+        {
+            IndexingService.close();
+        }
+
+        Directory[] dirs = new Directory[parts.length];
+        for (int i = 0; i < parts.length; i++)
+        {
+            dirs[i] = FSDirectory.getDirectory(parts[i]);
+        }
+
+        Directory live = FSDirectory.getDirectory(indexDir);
+        try
+        {
+            IndexWriter writer = DSIndexer.openIndexWithoutCommit(live);
+            boolean success = false;
+            try
+            {
+                int[] types = { Constants.ITEM, Constants.COLLECTION, Constants.COMMUNITY };
+                for (int i = 0; i < types.length; i++)
+                {
+                    writer.deleteDocuments(new Term("search.resourcetype",
+                            Integer.toString(types[i])));
+                }
+
+                writer.addIndexes(dirs);
+                success = true;
+            }
+            finally
+            {
+                if (success)
+                {
+                    writer.close();
+                }
+                else
+                {
+                    writer.abort();
+                }
+            }
+        }
+        finally
+        {
+            live.close();
+            for (int i = 0; i < dirs.length; i++)
+            {
+                dirs[i].close();
+            }
+        }
+    }
+
+    /**
+     * Index again the items modified since the rebuild started.  Changes made
+     * meanwhile went to the live index, whose documents the merge replaced,
+     * and the workers may have read the items before they changed.  Items
+     * deleted meanwhile are not in the database to be found, so the index is
+     * cleaned of them.
+     *
+     * @return  the number of changed items
+     */
+    private int replay() throws IOException, SQLException
+    {
+        List<Integer> ids = new ArrayList<Integer>();
+        TableRowIterator tri = DatabaseManager.query(context, CHANGED_QUERY,
+                new Timestamp(started.getTime()));
+        try
+        {
+            while (tri.hasNext())
+            {
+                ids.add(new Integer(tri.next().getIntColumn("item_id")));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+
+        ItemDAO dao = ItemDAOFactory.getInstance(context);
+        for (Integer id : ids)
+        {
+            Item item = dao.retrieve(id.intValue());
+            if (item != null)
+            {
+                DSIndexer.indexContent(context, item, true);
+                dao.decache(item);
+            }
+        }
+
+        DSIndexer.cleanIndex(context);
+
+        return ids.size();
+    }
+
+    /**
+     * Write the documents for all collections and communities into a
+     * sub-index of their own.
+     */
+    private void indexContainers(File dir) throws IOException, SQLException
+    {
+        IndexWriter writer = DSIndexer.openIndex(dir.getPath(), true);
+        try
+        {
+            CollectionDAO collectionDAO = CollectionDAOFactory.getInstance(context);
+            for (Collection collection : collectionDAO.getCollections())
+            {
+                writer.addDocument(DSIndexer.buildDocument(context, collection));
+                context.removeCached(collection, collection.getID());
+            }
+
+            CommunityDAO communityDAO = CommunityDAOFactory.getInstance(context);
+            for (Community community : communityDAO.getCommunities())
+            {
+                writer.addDocument(DSIndexer.buildDocument(context, community));
+                context.removeCached(community, community.getID());
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    private void deleteWorkDir()
+    {
+        if (workDir.exists())
+        {
+            delete(workDir);
+        }
+    }
+
+    private static void delete(File file)
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (int i = 0; i < children.length; i++)
+            {
+                delete(children[i]);
+            }
+        }
+
+        if (!file.delete())
+        {
+            log.warn("Unable to delete " + file);
+        }
+    }
+
+    /**
+     * Puts a bounded queue on the workers; blocks (checking for failure
+     * elsewhere) while they catch up.
+     */
+    private void put(Integer id) throws InterruptedException
+    {
+        while (!queue.offer(id, 1, TimeUnit.SECONDS))
+        {
+            if (aborted)
+            {
+                throw new InterruptedException("Search index rebuild aborted");
+            }
+        }
+    }
+
+    /**
+     * Streams the ids of the items to index onto the queue, then tells each
+     * worker there are no more.
+     */
+    private class ItemReader implements Callable<Integer>
+    {
+        public Integer call() throws Exception
+        {
+            int count = 0;
+
+            TableRowIterator tri = DatabaseManager.query(context, ITEM_QUERY,
+                    Boolean.TRUE, Boolean.FALSE);
+            try
+            {
+                while (tri.hasNext() && !aborted)
+                {
+                    put(new Integer(tri.next().getIntColumn("item_id")));
+                    count++;
+                }
+            }
+            finally
+            {
+                tri.close();
+
+                for (int i = 0; i < threads && !aborted; i++)
+                {
+                    put(END);
+                }
+            }
+
+            return new Integer(count);
+        }
+    }
+
+    /**
+     * Takes item ids off the queue and writes their documents into a
+     * sub-index of its own.
+     */
+    private class Worker implements Callable<Integer>
+    {
+        private File dir;
+
+        Worker(File dir)
+        {
+            this.dir = dir;
+        }
+
+        public Integer call() throws Exception
+        {
+            int count = 0;
+
+            Context c = new Context();
+            c.setIgnoreAuthorization(true);
+
+            IndexWriter writer = DSIndexer.openIndex(dir.getPath(), true);
+            try
+            {
+                ItemDAO dao = ItemDAOFactory.getInstance(c);
+
+                while (!aborted)
+                {
+                    Integer id = queue.poll(1, TimeUnit.SECONDS);
+                    if (id == null)
+                    {
+                        continue;
+                    }
+                    if (id.equals(END))
+                    {
+                        break;
+                    }
+
+                    Item item = dao.retrieve(id.intValue());
+                    if (item == null)
+                    {
+                        continue;
+                    }
+
+                    Vector<InputStreamReader> readers = new Vector<InputStreamReader>();
+                    try
+                    {
+                        Document doc = DSIndexer.buildDocument(c, item, readers);
+                        writer.addDocument(doc);
+                        count++;
+                        indexed.incrementAndGet();
+                    }
+                    catch (SQLException e)
+                    {
+                        log.error("Unable to index item " + id, e);
+                    }
+                    catch (IOException e)
+                    {
+                        log.error("Unable to index item " + id, e);
+                    }
+                    finally
+                    {
+                        DSIndexer.closeReaders(readers);
+                        dao.decache(item);
+                    }
+                }
+            }
+            finally
+            {
+                writer.close();
+                c.abort();
+            }
+
+            return new Integer(count);
+        }
+    }
+}
@@ -0,0 +1,584 @@
+/*
+ * IndexingService.java
+ *
+ * Location: $URL$
+ * 
+ * Version: $Revision$
+ * 
+ * Date: $Date$
+ *
+ * Copyright (c) 2002-2007, Hewlett-Packard Company and Massachusetts
+ * Institute of Technology.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * - Neither the name of the Hewlett-Packard Company nor the name of the
+ * Massachusetts Institute of Technology nor the names of their
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package org.dspace.search;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.dspace.content.DSpaceObject;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+import org.dspace.uri.IdentifierService;
+import org.dspace.uri.ObjectIdentifier;
+
+/**
+ * Keeps a single Lucene IndexWriter open for the lifetime of the JVM and
+ * batches the adds and deletes made through it, rather than opening and
+ * closing a writer (and taking write.lock) for every document.
+ *
+ * Changes are flushed to the index, and so become visible to searchers, once
+ * <code>search.indexer.batchsize</code> documents are pending or
+ * <code>search.indexer.flush</code> seconds have passed since the last flush,
+ * whichever comes first.  After <code>search.indexer.idle</code> seconds
+ * without any work the writer is closed so that write.lock is released.
+ *
+ * Only one process can hold the writer at a time.  While another process
+ * holds it, index requests are not made to wait on the lock; instead the
+ * URIs are written to files in the <code>search.indexer.queue</code>
+ * directory, and whichever process holds the writer picks them up on its
+ * next flush.
+ *
+ * This mode is switched on with <code>search.indexer.service = true</code>.
+ * When it is off DSIndexer opens a writer per document as before.
+ *
+ * @version $Revision$
+ */
+class IndexingService
+{
+    private static final Logger log = Logger.getLogger(IndexingService.class);
+
+    /** queued operation: (re)index the object with the given URI */
+    static final String INDEX = "index";
+
+    /** queued operation: remove the document with the given URI */
+    static final String DELETE = "delete";
+
+    /** queued operation: optimize the index */
+    static final String OPTIMIZE = "optimize";
+
+    private static final String QUEUE_SUFFIX = ".queue";
+
+    private static final boolean enabled =
+            ConfigurationManager.getBooleanProperty("search.indexer.service", false);
+
+    private static final String indexDir = ConfigurationManager.getProperty("search.dir");
+
+    private static int batchSize = ConfigurationManager.getIntProperty("search.indexer.batchsize");
+
+    private static long flushInterval = ConfigurationManager.getIntProperty("search.indexer.flush") * 1000L;
+
+    private static long idleTimeout = ConfigurationManager.getIntProperty("search.indexer.idle") * 1000L;
+
+    private static File queueDir;
+
+    /** the shared writer, or null if this JVM does not currently hold it */
+    private static IndexWriter writer = null;
+
+    /** number of adds and deletes made since the last flush */
+    private static int pending = 0;
+
+    private static long lastFlush = 0;
+
+    private static long lastUsed = 0;
+
+    /** operations waiting to be written to the queue directory */
+    private static List<String> spool = new ArrayList<String>();
+
+    private static Timer timer = null;
+
+    static
+    {
+        if (batchSize < 1)
+        {
+            batchSize = 500;
+        }
+
+        if (flushInterval < 1)
+        {
+            flushInterval = 5000;
+        }
+
+        if (idleTimeout < flushInterval)
+        {
+            idleTimeout = Math.max(60000, flushInterval);
+        }
+
+        String queue = ConfigurationManager.getProperty("search.indexer.queue");
+        if (queue != null)
+        {
+            queueDir = new File(queue);
+        }
+        else
+        {
+            queueDir = new File(new File(indexDir).getParentFile(), "search-queue");
+        }
+
+        if (enabled)
+        {
+            Runtime.getRuntime().addShutdownHook(new Thread("IndexingService shutdown")
+            {
+                public void run()
+                {
+                    shutdown();
+                }
+            });
+        }
+    }
+
+    private IndexingService()
+    {
+    }
+
+    /**
+     * @return true if the indexing service mode is configured
+     */
+    static boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Try to take hold of the shared writer for this JVM.  Returns false
+     * without waiting if another process currently holds the index lock.
+     *
+     * @return true if this JVM now holds the shared writer
+     * @throws IOException
+     */
+    static synchronized boolean acquire() throws IOException
+    {
+        startTimer();
+
+        if (writer != null)
+        {
+            return true;
+        }
+
+        if (IndexReader.isLocked(indexDir))
+        {
+            return false;
+        }
+
+        writer = DSIndexer.openIndex(false);
+        pending = 0;
+        lastFlush = System.currentTimeMillis();
+        lastUsed = lastFlush;
+
+        log.info("Opened shared index writer on " + indexDir);
+
+        return true;
+    }
+
+    /**
+     * Replace the document under the given term, or queue the URI for the
+     * process holding the index if that is not this one.
+     *
+     * @param t the URI term of the document
+     * @param doc the new document
+     * @throws IOException
+     */
+    static synchronized void update(Term t, Document doc) throws IOException
+    {
+        if (!acquire())
+        {
+            enqueue(INDEX, t.text());
+            return;
+        }
+
+        writer.updateDocument(t, doc);
+        written();
+    }
+
+    /**
+     * Delete the documents under the given term, or queue the delete for the
+     * process holding the index if that is not this one.
+     *
+     * @param t the URI term of the document
+     * @throws IOException
+     */
+    static synchronized void delete(Term t) throws IOException
+    {
+        if (!acquire())
+        {
+            enqueue(DELETE, t.text());
+            return;
+        }
+
+        writer.deleteDocuments(t);
+        written();
+    }
+
+    /**
+     * Flush any pending changes and optimize the index, or queue the
+     * optimize for the process holding the index.
+     *
+     * @throws IOException
+     */
+    static synchronized void optimize() throws IOException
+    {
+        if (!acquire())
+        {
+            enqueue(OPTIMIZE, null);
+            return;
+        }
+
+        writer.optimize();
+        pending = 0;
+        lastFlush = System.currentTimeMillis();
+        lastUsed = lastFlush;
+    }
+
+    /**
+     * Queue an operation for whichever process holds the index.
+     *
+     * @param op one of INDEX, DELETE or OPTIMIZE
+     * @param uri the URI of the object, or null for OPTIMIZE
+     */
+    static synchronized void enqueue(String op, String uri)
+    {
+        startTimer();
+
+        spool.add(uri == null ? op : op + " " + uri);
+
+        if (spool.size() >= batchSize)
+        {
+            writeSpool();
+        }
+    }
+
+    /**
+     * Flush and close the shared writer, releasing the index lock.  The
+     * writer is opened again on the next update.
+     *
+     * @throws IOException
+     */
+    static synchronized void close() throws IOException
+    {
+        if (writer != null)
+        {
+            try
+            {
+                writer.close();
+                log.info("Closed shared index writer on " + indexDir);
+            }
+            finally
+            {
+                writer = null;
+                pending = 0;
+            }
+        }
+    }
+
+    /**
+     * Write out anything still spooled and release the writer.  Called when
+     * the JVM exits.
+     */
+    static synchronized void shutdown()
+    {
+        if (timer != null)
+        {
+            timer.cancel();
+            timer = null;
+        }
+
+        writeSpool();
+
+        try
+        {
+            close();
+        }
+        catch (IOException e)
+        {
+            log.error("Unable to close shared index writer", e);
+        }
+    }
+
+    ////////////////////////////////////
+    //      Private
+    ////////////////////////////////////
+
+    private static void written() throws IOException
+    {
+        lastUsed = System.currentTimeMillis();
+
+        if (++pending >= batchSize)
+        {
+            flush();
+        }
+    }
+
+    private static void flush() throws IOException
+    {
+        writer.flush();
+
+        log.debug("Flushed " + pending + " index changes");
+
+        pending = 0;
+        lastFlush = System.currentTimeMillis();
+    }
+
+    private static void startTimer()
+    {
+        if (timer == null)
+        {
+            timer = new Timer("IndexingService", true);
+            timer.schedule(new TimerTask()
+            {
+                public void run()
+                {
+                    tick();
+                }
+            }, flushInterval, flushInterval);
+        }
+    }
+
+    /**
+     * Periodic housekeeping: flush pending changes that have waited long
+     * enough, release an idle writer, and work through the queue directory
+     * if this process can hold the index.
+     */
+    private static void tick()
+    {
+        try
+        {
+            synchronized (IndexingService.class)
+            {
+                writeSpool();
+
+                long now = System.currentTimeMillis();
+
+                if (writer != null && pending > 0 && now - lastFlush >= flushInterval)
+                {
+                    flush();
+                }
+
+                if (writer != null && pending == 0 && now - lastUsed >= idleTimeout)
+                {
+                    close();
+                }
+            }
+
+            drainQueue();
+        }
+        catch (Exception e)
+        {
+            log.error("Index service housekeeping failed", e);
+        }
+    }
+
+    /**
+     * Write the spooled operations to a new file in the queue directory.
+     * Files are written under a temporary name and renamed when complete, so
+     * a reader never sees a partial file.  Names start with the current time
+     * so that they sort in the order they were written.
+     */
+    private static void writeSpool()
+    {
+        if (spool.isEmpty())
+        {
+            return;
+        }
+
+        PrintWriter out = null;
+        try
+        {
+            queueDir.mkdirs();
+            File tmp = File.createTempFile(System.currentTimeMillis() + "-", ".tmp", queueDir);
+
+            out = new PrintWriter(new FileWriter(tmp));
+            for (String line : spool)
+            {
+                out.println(line);
+            }
+            out.close();
+            out = null;
+
+            String name = tmp.getName();
+            File done = new File(queueDir, name.substring(0, name.length() - 4) + QUEUE_SUFFIX);
+            if (!tmp.renameTo(done))
+            {
+                throw new IOException("Unable to rename " + tmp + " to " + done);
+            }
+
+            log.debug("Queued " + spool.size() + " index operations in " + done);
+            spool.clear();
+        }
+        catch (IOException e)
+        {
+            // keep the operations, the next tick will try again
+            log.error("Unable to write index queue to " + queueDir, e);
+        }
+        finally
+        {
+            if (out != null)
+            {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Apply the files waiting in the queue directory, oldest first, if this
+     * process holds (or can take) the index writer.
+     */
+    private static void drainQueue() throws Exception
+    {
+        String[] names = queueDir.list();
+        if (names == null || names.length == 0)
+        {
+            return;
+        }
+
+        Arrays.sort(names);
+
+        Context context = null;
+        try
+        {
+            for (String name : names)
+            {
+                if (!name.endsWith(QUEUE_SUFFIX))
+                {
+                    continue;
+                }
+
+                // stop if another process has the index, it will drain the
+                // queue itself
+                if (!acquire())
+                {
+                    return;
+                }
+
+                // claim the file, in case another process gets to it first
+                File file = new File(queueDir, name);
+                File work = new File(queueDir, name + ".work");
+                if (!file.renameTo(work))
+                {
+                    continue;
+                }
+
+                if (context == null)
+                {
+                    context = new Context();
+                    context.setIgnoreAuthorization(true);
+                }
+
+                apply(context, work);
+
+                if (!work.delete())
+                {
+                    log.warn("Unable to remove index queue file " + work);
+                }
+            }
+        }
+        finally
+        {
+            if (context != null)
+            {
+                context.abort();
+            }
+        }
+    }
+
+    private static void apply(Context context, File file) throws Exception
+    {
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        int count = 0;
+
+        try
+        {
+            String line;
+            while ((line = in.readLine()) != null)
+            {
+                int space = line.indexOf(' ');
+                String op = space < 0 ? line : line.substring(0, space);
+                String uri = space < 0 ? null : line.substring(space + 1);
+
+                try
+                {
+                    if (OPTIMIZE.equals(op))
+                    {
+                        optimize();
+                    }
+                    else if (DELETE.equals(op))
+                    {
+                        delete(new Term("uri", uri));
+                    }
+                    else if (INDEX.equals(op))
+                    {
+                        ObjectIdentifier oi = ObjectIdentifier.parseCanonicalForm(uri);
+                        DSpaceObject dso = (DSpaceObject) IdentifierService.getResource(context, oi);
+
+                        if (dso == null)
+                        {
+                            delete(new Term("uri", uri));
+                        }
+                        else
+                        {
+                            DSIndexer.indexContent(context, dso, true);
+                            context.removeCached(dso, dso.getID());
+                        }
+                    }
+                    else
+                    {
+                        log.warn("Unknown index queue operation: " + line);
+                    }
+
+                    count++;
+                }
+                catch (Exception e)
+                {
+                    log.error("Failed to apply queued index operation: " + line, e);
+                }
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+
+        log.info("Applied " + count + " queued index operations from " + file.getName());
+    }
+}
@@ -44,6 +44,8 @@ import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 import javax.servlet.http.HttpServletRequest;
 
@@ -71,6 +73,14 @@ public class QueryArgs
 
     private String sortOrder = SortOption.DESCENDING;
 
+    // the facets to count over the results, and how many values of each
+    private String[] facetNames = null;
+
+    private int facetLimit = 10;
+
+    // facet values the results must have, facet name -> values
+    private HashMap<String, List<String>> facetFilters = new HashMap<String, List<String>>();
+
     /** number of metadata elements to display before truncating using "et al" */
     private int etAl = ConfigurationManager.getIntProperty("webui.itemlist.author-limit");
 
@@ -176,6 +186,78 @@ public class QueryArgs
         this.sortOrder = sortOrder;
     }
 
+    /**
+     * set the facets to count over the whole result set. The names are
+     * those configured as search.facet.[number]; unknown names are ignored.
+     * (the default is no facets)
+     *
+     * @param names facet names, or null for none
+     */
+    public void setFacetNames(String[] names)
+    {
+        facetNames = names;
+    }
+
+    /**
+     * @return the facets to count, or null for none
+     */
+    public String[] getFacetNames()
+    {
+        return facetNames;
+    }
+
+    /**
+     * set the number of values to return for each facet, most frequent
+     * first (the default is 10)
+     *
+     * @param limit number of values per facet, at least 1
+     */
+    public void setFacetLimit(int limit)
+    {
+        if (limit < 1)
+        {
+            throw new IllegalArgumentException("Facet limit must be at "
+                    + "least 1, not " + limit);
+        }
+
+        facetLimit = limit;
+    }
+
+    /**
+     * @return the number of values to return for each facet
+     */
+    public int getFacetLimit()
+    {
+        return facetLimit;
+    }
+
+    /**
+     * restrict the results to those with the given facet value, as returned
+     * in the facet counts of an earlier search. May be called more than once
+     * to narrow further.
+     *
+     * @param name facet name
+     * @param value facet value
+     */
+    public void addFacetFilter(String name, String value)
+    {
+        List<String> values = facetFilters.get(name);
+        if (values == null)
+        {
+            values = new ArrayList<String>();
+            facetFilters.put(name, values);
+        }
+        values.add(value);
+    }
+
+    /**
+     * @return the facet values the results must have, facet name -> values
+     */
+    public Map<String, List<String>> getFacetFilters()
+    {
+        return facetFilters;
+    }
+
     /**
      * Builds an advanced-query description string.
      *
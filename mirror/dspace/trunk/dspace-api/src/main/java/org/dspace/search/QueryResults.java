@@ -40,6 +40,7 @@
 package org.dspace.search;
 
 import java.util.List;
+import java.util.Map;
 
 import org.dspace.core.ConfigurationManager;
 
@@ -59,7 +60,9 @@ public class QueryResults
                             // communities)
 
     private List hitTypes; // Resource type - from Constants
-    private List hitIds;   // Resource ids
+    private int[] hitIds;  // Resource ids, -1 where not in the index
+
+    private Map<String, List<FacetValue>> facets; // facet name -> top values
 
     private String errorMsg; //error string, if there is one
 
@@ -135,14 +138,20 @@ public class QueryResults
         return hitURIs;
     }
 
-    /** set the List of ids corresponding to hits */
-    public void setHitIds(List myHits)
+    /**
+     * set the ids corresponding to hits, in the same order as the URIs; -1
+     * marks a hit indexed without its id
+     */
+    public void setHitIds(int[] myHits)
     {
         hitIds = myHits;
     }
 
-    /** get the List of handles corresponding to hits */
-    public List getHitIds()
+    /**
+     * get the ids corresponding to hits, in the same order as the URIs; -1
+     * marks a hit indexed without its id, which must be looked up by URI
+     */
+    public int[] getHitIds()
     {
         return hitIds;
     }
@@ -159,6 +168,22 @@ public class QueryResults
         return hitTypes;
     }
 
+    /** set the facet counts, facet name -> top values */
+    public void setFacets(Map<String, List<FacetValue>> newFacets)
+    {
+        facets = newFacets;
+    }
+
+    /**
+     * get the facet counts asked for in the QueryArgs, as a map from facet
+     * name to its most frequent values over all the hits (not just this
+     * page), most frequent first
+     */
+    public Map<String, List<FacetValue>> getFacets()
+    {
+        return facets;
+    }
+
     /** set error message */
     public void setErrorMsg(String msg)
     {
@@ -0,0 +1,337 @@
+/*
+ * SearcherManager.java
+ *
+ * Location: $URL$
+ * 
+ * Version: $Revision$
+ * 
+ * Date: $Date$
+ *
+ * Copyright (c) 2002-2007, Hewlett-Packard Company and Massachusetts
+ * Institute of Technology.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * - Neither the name of the Hewlett-Packard Company nor the name of the
+ * Massachusetts Institute of Technology nor the names of their
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package org.dspace.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.dspace.sort.SortException;
+import org.dspace.sort.SortOption;
+
+/**
+ * Hands out a shared IndexSearcher without any locking on the search path,
+ * and keeps it up to date with the index in the background.
+ *
+ * Searchers are reference counted: each call to <code>acquire</code> must be
+ * matched by a call to <code>release</code>, and a searcher is only closed
+ * once it has been replaced and the last search using it has released it.
+ *
+ * A background thread checks every <code>search.refresh.interval</code>
+ * seconds whether the index has changed.  If it has, the reader is reopened
+ * (which only opens the segments that are new), and the sort fields are
+ * loaded into the FieldCache by running a sorted search on each of them,
+ * and the facet tables are built (see FacetIndex), all before the new
+ * searcher is swapped in.  Searches therefore never wait for a reopen, at
+ * the cost of seeing changes up to one interval late.
+ *
+ * @version $Revision$
+ */
+class SearcherManager
+{
+    /** log4j logger */
+    private static Logger log = Logger.getLogger(SearcherManager.class);
+
+    /** the directory of the index being searched */
+    private String indexDir;
+
+    /** how often to check for changes to the index, in milliseconds */
+    private long interval;
+
+    /** the searcher new searches are given */
+    private AtomicReference<CountedSearcher> current = new AtomicReference<CountedSearcher>();
+
+    private Timer timer = null;
+
+    /**
+     * An IndexSearcher which counts the searches using it.  The manager holds
+     * one reference for as long as it is the current searcher.
+     */
+    private static class CountedSearcher extends IndexSearcher
+    {
+        private AtomicInteger refs = new AtomicInteger(1);
+
+        CountedSearcher(IndexReader reader)
+        {
+            super(reader);
+        }
+
+        /**
+         * Take a reference, unless the searcher has already been closed.
+         */
+        boolean tryIncRef()
+        {
+            while (true)
+            {
+                int n = refs.get();
+                if (n <= 0)
+                {
+                    return false;
+                }
+                if (refs.compareAndSet(n, n + 1))
+                {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Drop a reference, closing the searcher and its reader when the
+         * last one goes.
+         */
+        void decRef() throws IOException
+        {
+            if (refs.decrementAndGet() == 0)
+            {
+                try
+                {
+                    close();
+                }
+                finally
+                {
+                    getIndexReader().close();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param indexDir the index directory
+     * @param interval how often to check for changes, in milliseconds
+     */
+    SearcherManager(String indexDir, long interval)
+    {
+        this.indexDir = indexDir;
+        this.interval = interval;
+    }
+
+    /**
+     * Get the current searcher.  The first call opens the index; after that
+     * this never blocks.  The searcher must be given back with
+     * <code>release</code> when the search is done with it.
+     *
+     * @return the current searcher
+     * @throws IOException
+     */
+    IndexSearcher acquire() throws IOException
+    {
+        while (true)
+        {
+            CountedSearcher searcher = current.get();
+
+            if (searcher == null)
+            {
+                open();
+            }
+            else if (searcher.tryIncRef())
+            {
+                return searcher;
+            }
+            // otherwise it was replaced and closed in the meantime, try again
+        }
+    }
+
+    /**
+     * Give back a searcher obtained from <code>acquire</code>.
+     *
+     * @param searcher the searcher, may be null
+     * @throws IOException
+     */
+    void release(IndexSearcher searcher) throws IOException
+    {
+        if (searcher != null)
+        {
+            ((CountedSearcher) searcher).decRef();
+        }
+    }
+
+    /**
+     * Reopen the searcher if the index has changed since it was opened.  The
+     * new searcher is warmed before it replaces the current one.
+     *
+     * @throws IOException
+     */
+    synchronized void maybeRefresh() throws IOException
+    {
+        CountedSearcher old = current.get();
+        if (old == null)
+        {
+            return;
+        }
+
+        IndexReader reader = old.getIndexReader();
+        if (reader.isCurrent())
+        {
+            return;
+        }
+
+        IndexReader fresh = reader.reopen();
+        if (fresh == reader)
+        {
+            return;
+        }
+
+        CountedSearcher searcher = new CountedSearcher(fresh);
+        warm(searcher);
+
+        current.set(searcher);
+        old.decRef();
+
+        log.debug("Reopened searcher on " + indexDir);
+    }
+
+    /**
+     * Stop checking for changes and close the current searcher once the
+     * searches using it have finished.  A later <code>acquire</code> opens
+     * the index again.
+     */
+    synchronized void close()
+    {
+        if (timer != null)
+        {
+            timer.cancel();
+            timer = null;
+        }
+
+        CountedSearcher old = current.getAndSet(null);
+        if (old != null)
+        {
+            try
+            {
+                old.decRef();
+            }
+            catch (IOException ioe)
+            {
+                log.error("Unable to close IndexSearcher", ioe);
+            }
+        }
+    }
+
+    /**
+     * Open the first searcher, and start the refresh thread.
+     */
+    private synchronized void open() throws IOException
+    {
+        if (current.get() != null)
+        {
+            return;
+        }
+
+        CountedSearcher searcher = new CountedSearcher(IndexReader.open(indexDir));
+        warm(searcher);
+        current.set(searcher);
+
+        if (timer == null)
+        {
+            timer = new Timer("SearcherManager", true);
+            timer.schedule(new TimerTask()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        maybeRefresh();
+                    }
+                    catch (Exception e)
+                    {
+                        // try again next time round
+                        log.warn("Unable to reopen searcher on " + indexDir, e);
+                    }
+                }
+            }, interval, interval);
+        }
+    }
+
+    /**
+     * Load the fields that searches sort on into the FieldCache, by running
+     * a sorted search on each, so that the first real search doesn't have to.
+     */
+    private void warm(IndexSearcher searcher)
+    {
+        for (String field : getSortFields())
+        {
+            try
+            {
+                searcher.search(new MatchAllDocsQuery(), null, 1,
+                        new Sort(new SortField(field)));
+            }
+            catch (Exception e)
+            {
+                // the field may not be in the index yet
+                log.debug("Unable to warm sort field " + field + ": " + e.getMessage());
+            }
+        }
+
+        FacetIndex.warm(searcher.getIndexReader());
+    }
+
+    private List<String> getSortFields()
+    {
+        List<String> fields = new ArrayList<String>();
+        fields.add("search.resourcetype");
+
+        try
+        {
+            for (SortOption so : SortOption.getSortOptions())
+            {
+                fields.add("sort_" + so.getName());
+            }
+        }
+        catch (SortException se)
+        {
+            log.warn("Unable to read sort options", se);
+        }
+
+        return fields;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * AccessTracker.java
+ *
+ * Version: $Revision$
+ *
+ * Date: $Date$
+ *
+ * Copyright (c) 2002-2005, Hewlett-Packard Company and Massachusetts
+ * Institute of Technology.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * - Neither the name of the Hewlett-Packard Company nor the name of the
+ * Massachusetts Institute of Technology nor the names of their
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package org.dspace.storage.bitstore;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.storage.rdbms.DatabaseManager;
+
+/**
+ * Remembers when bitstreams were last downloaded, so that the storage policy
+ * can keep the ones in use on fast storage.
+ * <P>
+ * Downloads are noted in memory and written to the
+ * <code>last_accessed</code> column of the bitstream table in one batch
+ * every <code>assetstore.access.flush</code> seconds (default 60), so that
+ * sending a bitstream doesn't cost a database write. Times noted since the
+ * last batch are lost if the JVM stops; for deciding whether a bitstream has
+ * been used in the last few days that doesn't matter.
+ * <P>
+ * Nothing is recorded unless bitstreams are tiered, i.e.
+ * <code>assetstore.tier.cold</code> is set.
+ *
+ * @version $Revision$
+ */
+public class AccessTracker
+{
+    /** log4j log */
+    private static Logger log = Logger.getLogger(AccessTracker.class);
+
+    private static final String UPDATE_ACCESSED =
+        "UPDATE bitstream SET last_accessed = ? WHERE bitstream_id = ?";
+
+    /** Whether downloads are recorded at all */
+    private static final boolean enabled =
+        ConfigurationManager.getProperty("assetstore.tier.cold") != null;
+
+    /** Download times not yet written, by bitstream ID */
+    private static Map<Integer, Long> pending =
+        new ConcurrentHashMap<Integer, Long>();
+
+    private static Timer timer = null;
+
+    /**
+     * Note that a bitstream has just been downloaded.
+     *
+     * @param bitstreamID
+     *            the ID of the bitstream
+     */
+    public static void record(int bitstreamID)
+    {
+        if (!enabled)
+        {
+            return;
+        }
+
+        pending.put(new Integer(bitstreamID),
+                new Long(System.currentTimeMillis()));
+
+        if (timer == null)
+        {
+            start();
+        }
+    }
+
+    private static synchronized void start()
+    {
+        if (timer != null)
+        {
+            return;
+        }
+
+        int interval = ConfigurationManager
+                .getIntProperty("assetstore.access.flush");
+        long period = ((interval > 0) ? interval : 60) * 1000L;
+
+        timer = new Timer("AccessTracker", true);
+        timer.schedule(new TimerTask()
+        {
+            public void run()
+            {
+                flush();
+            }
+        }, period, period);
+    }
+
+    /**
+     * Write the download times noted since the last call to the database.
+     */
+    public static void flush()
+    {
+        if (pending.isEmpty())
+        {
+            return;
+        }
+
+        Connection conn = null;
+        PreparedStatement stmt = null;
+
+        try
+        {
+            conn = DatabaseManager.getConnection();
+            stmt = conn.prepareStatement(UPDATE_ACCESSED);
+
+            Iterator<Integer> ids = pending.keySet().iterator();
+            while (ids.hasNext())
+            {
+                Integer id = ids.next();
+                Long time = pending.remove(id);
+
+                if (time != null)
+                {
+                    stmt.setTimestamp(1, new Timestamp(time.longValue()));
+                    stmt.setInt(2, id.intValue());
+                    stmt.addBatch();
+                }
+            }
+
+            stmt.executeBatch();
+            conn.commit();
+        }
+        catch (SQLException sqle)
+        {
+            log.error("Problem recording bitstream downloads: "
+                    + sqle.getMessage(), sqle);
+        }
+        finally
+        {
+            try
+            {
+                if (stmt != null)
+                {
+                    stmt.close();
+                }
+            }
+            catch (SQLException sqle)
+            {
+                log.warn("Problem closing statement", sqle);
+            }
+
+            if (conn != null)
+            {
+                DatabaseManager.freeConnection(conn);
+            }
+        }
+    }
+}
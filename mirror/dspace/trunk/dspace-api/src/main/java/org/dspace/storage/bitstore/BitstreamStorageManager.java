@@ -40,12 +40,15 @@
 package org.dspace.storage.bitstore;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 
 import org.apache.log4j.Logger;
@@ -58,7 +61,11 @@ import org.dspace.content.dao.BitstreamDAOFactory;
 import org.dspace.core.ConfigurationManager;
 import org.dspace.core.Constants;
 import org.dspace.core.Context;
+import org.dspace.core.PluginConfigurationError;
+import org.dspace.core.PluginManager;
 import org.dspace.core.Utils;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
 import edu.sdsc.grid.io.FileFactory;
 import edu.sdsc.grid.io.GeneralFile;
 import edu.sdsc.grid.io.GeneralFileOutputStream;
@@ -141,6 +148,29 @@ public class BitstreamStorageManager
 	 */
 	public static final String REGISTERED_FLAG = "-R";
 
+	/**
+	 * This prefix string marks content-addressed bitstreams in internal_id.
+	 * The rest of the internal_id is the SHA-256 digest of the bits, which
+	 * is also the file name.
+	 */
+	public static final String DIGEST_FLAG = "-D";
+
+	/**
+	 * Whether new bitstreams are stored under their SHA-256 digest, so that
+	 * identical content is only stored once
+	 */
+	private static boolean contentAddressed;
+
+    /**
+     * How long, in milliseconds, a content-addressed file is kept after it was
+     * last stored again, so that bitstreams in transactions not yet committed
+     * are counted before it is deleted
+     */
+    private static long dedupGrace;
+
+    /** Decides which asset store bitstreams are kept in */
+    private static StoragePolicy storagePolicy = null;
+
     /* Read in the asset stores from the config. */
     static
     {
@@ -240,6 +270,20 @@ public class BitstreamStorageManager
 
         // Read asset store to put new files in. Default is 0.
         incoming = ConfigurationManager.getIntProperty("assetstore.incoming");
+
+        contentAddressed = ConfigurationManager
+                .getBooleanProperty("assetstore.dedup");
+
+        if (contentAddressed && !(assetStores[incoming] instanceof LocalFile))
+        {
+            log.warn("assetstore.dedup is only supported for local asset "
+                    + "stores; storing new bitstreams under random names");
+            contentAddressed = false;
+        }
+
+        int graceHours = ConfigurationManager
+                .getIntProperty("assetstore.dedup.grace");
+        dedupGrace = (graceHours > 0 ? graceHours : 24) * 60L * 60 * 1000;
     }
 
     /**
@@ -268,6 +312,13 @@ public class BitstreamStorageManager
      * and some or all of the bits have also been stored.
      * </ul>
      *
+     * <p>
+     * If <code>assetstore.dedup</code> is set, the bits are first copied to
+     * a temporary file and then moved to a path derived from their SHA-256
+     * digest. If a file with that digest is already there, the copy is
+     * discarded and the bitstream shares the existing file.
+     * </p>
+     *
      * @param context
      *            The current context
      * @param is
@@ -311,9 +362,18 @@ public class BitstreamStorageManager
 		// Read through a digest input stream that will work out the MD5
         DigestInputStream dis = null;
 
+        // ...and, for a content-addressed store, another for the SHA-256
+        DigestInputStream sha = null;
+
         try
         {
             dis = new DigestInputStream(is, MessageDigest.getInstance("MD5"));
+
+            if (contentAddressed)
+            {
+                sha = new DigestInputStream(dis,
+                        MessageDigest.getInstance("SHA-256"));
+            }
         }
         // Should never happen
         catch (NoSuchAlgorithmException nsae)
@@ -321,7 +381,7 @@ public class BitstreamStorageManager
             log.warn("Caught NoSuchAlgorithmException", nsae);
         }
 
-        Utils.bufferedCopy(dis, fos);
+        Utils.bufferedCopy(sha != null ? sha : dis, fos);
         fos.close();
         is.close();
 
@@ -332,10 +392,71 @@ public class BitstreamStorageManager
             bitstream.setChecksum(Utils.toHex(dis.getMessageDigest().digest()));
             bitstream.setChecksumAlgorithm("MD5");
         }
+
+        if (sha != null)
+        {
+            String digestId = DIGEST_FLAG
+                    + Utils.toHex(sha.getMessageDigest().digest());
+
+            file = moveToDigestPath(file, getFile(incoming, digestId));
+            bitstream.setInternalID(digestId);
+        }
+
+        // Now that its size is known, let the storage policy choose where the
+        // bitstream should be kept
+        int store = getStoragePolicy().place(context, bitstream);
+        boolean placed = false;
+
+        if (store != incoming && isStore(store))
+        {
+            try
+            {
+                // Should this transaction not commit, cleanup finds the copy
+                // by this row and deletes it
+                storeCopyMetadata(store, bitstream.getInternalID());
+
+                copyToStore(bitstream, incoming, store);
+                bitstream.setStoreNumber(store);
+                file = getFile(store, bitstream.getInternalID());
+                placed = true;
+            }
+            catch (IOException ioe)
+            {
+                log.warn("Could not place bitstream " + bitstream.getID()
+                        + " in asset store " + store
+                        + ", leaving it in store " + incoming, ioe);
+            }
+        }
         bitstream.setDeleted(false);
 
         dao.update(bitstream);
 
+        // The DAO leaves the store of a live bitstream to the storage layer,
+        // so write it here. Tiering counts idle time from here until the
+        // first download; the file's own time changes whenever it is moved.
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+
+        try
+        {
+            DatabaseManager.updateQuery(context,
+                    "UPDATE bitstream SET store_number = ?, " +
+                    "last_accessed = ?, last_modified = ? " +
+                    "WHERE bitstream_id = ?",
+                    new Integer(bitstream.getStoreNumber()), now, now,
+                    new Integer(bitstream.getID()));
+        }
+        catch (SQLException sqle)
+        {
+            throw new RuntimeException(sqle);
+        }
+
+        // The incoming copy is deleted by cleanup, and only if this
+        // transaction commits
+        if (placed)
+        {
+            releaseFile(context, incoming, bitstream.getInternalID());
+        }
+
         if (log.isDebugEnabled())
         {
             log.debug("Stored bitstream " + bitstream.getID() + " in file "
@@ -343,6 +464,68 @@ public class BitstreamStorageManager
         }
     }
 
+    /**
+     * Move a newly stored file to its content-addressed path. If the path is
+     * already taken, identical bits are stored there and the new file is
+     * deleted instead.
+     *
+     * @param file
+     *            The newly stored file
+     * @param target
+     *            The file named after the digest of its contents
+     * @return The file now holding the bits
+     */
+    private static GeneralFile moveToDigestPath(GeneralFile file,
+            GeneralFile target)
+        throws IOException
+    {
+        GeneralFile parent = target.getParentFile();
+
+        if (!parent.exists())
+        {
+            parent.mkdirs();
+        }
+
+        // Another store may rename its own copy onto the target at the same
+        // time; either way the same bits end up there
+        if (target.exists() || !file.renameTo(target))
+        {
+            if (!target.exists())
+            {
+                throw new IOException("Could not move "
+                        + file.getAbsolutePath() + " to "
+                        + target.getAbsolutePath());
+            }
+
+            // Touch the shared file, so that a cleanup running now sees it
+            // as recent and leaves it, by which time this bitstream will be
+            // counted as a reference to it
+            target.setLastModified(System.currentTimeMillis());
+
+            // If a cleanup moved the file aside before it was touched, it is
+            // being deleted: put our own copy in its place instead
+            if (target.exists())
+            {
+                file.delete();
+
+                if (log.isDebugEnabled())
+                {
+                    log.debug("Content of " + file.getAbsolutePath()
+                            + " is already stored in "
+                            + target.getAbsolutePath());
+                }
+            }
+            else if (!file.renameTo(target) && !target.exists())
+            {
+                throw new IOException("Could not move "
+                        + file.getAbsolutePath() + " to "
+                        + target.getAbsolutePath());
+            }
+        }
+
+        return target;
+    }
+
 	/**
 	 * Register a bitstream already in storage.
 	 *
@@ -460,6 +643,19 @@ public class BitstreamStorageManager
 
         dao.update(bitstream);
 
+        try
+        {
+            DatabaseManager.updateQuery(context,
+                    "UPDATE bitstream SET last_modified = ? " +
+                    "WHERE bitstream_id = ?",
+                    new Timestamp(System.currentTimeMillis()),
+                    new Integer(bitstream.getID()));
+        }
+        catch (SQLException sqle)
+        {
+            throw new RuntimeException(sqle);
+        }
+
 		if (log.isDebugEnabled())
 		{
 			log.debug("Stored bitstream " + bitstream.getID() + " in file "
@@ -483,6 +679,17 @@ public class BitstreamStorageManager
 	    return false;
 	}
 
+	/**
+	 * Does the internal_id column in the bitstream row indicate the bitstream
+	 * is stored under its digest, and may share its file with others
+	 *
+	 * @param internalId the value of the internal_id column
+	 * @return true if the bitstream is content-addressed
+	 */
+	public static boolean isContentAddressed(String internalId) {
+	    return internalId != null && internalId.startsWith(DIGEST_FLAG);
+	}
+
     /**
      * Retrieve the bits for the bitstream with ID. If the bitstream does not
      * exist, or is marked deleted, returns null.
@@ -510,6 +717,95 @@ public class BitstreamStorageManager
 		return (file != null) ? FileFactory.newFileInputStream(file) : null;
     }
 
+    /**
+     * Retrieve the file holding the bits for the bitstream with ID, if it is
+     * in a local asset store. Returns null if the bitstream does not exist,
+     * or is kept somewhere other than the local file system (e.g. SRB).
+     *
+     * @param context
+     *            The current context
+     * @param id
+     *            The ID of the bitstream to retrieve
+     * @exception IOException
+     *                If a problem occurs while determining the file
+     *
+     * @return The local file, or null
+     */
+    public static File retrieveFile(Context context, int id)
+            throws IOException
+    {
+        Bitstream b = BitstreamDAOFactory.getInstance(context).retrieve(id);
+
+        if (b == null)
+        {
+            return null;
+        }
+
+        GeneralFile file = getFile(b.getStoreNumber(), b.getInternalID());
+
+        return (file instanceof LocalFile)
+                ? new File(file.getAbsolutePath()) : null;
+    }
+
+    /**
+     * Return the time the bits for the bitstream with ID were stored. The
+     * bits of a bitstream never change once stored, so this serves as its
+     * last-modified time when sending it. It is kept in the database, as the
+     * time of the file itself changes when the file is moved to another
+     * store or, if it is shared, stored again.
+     *
+     * @param context
+     *            The current context
+     * @param id
+     *            The ID of the bitstream
+     *
+     * @return The time in milliseconds, or 0 if it is not known
+     */
+    public static long getLastModified(Context context, int id)
+    {
+        try
+        {
+            TableRow row = DatabaseManager.querySingle(context,
+                    "SELECT last_modified FROM bitstream " +
+                    "WHERE bitstream_id = ?", new Integer(id));
+
+            if (row == null || row.isColumnNull("last_modified"))
+            {
+                return 0;
+            }
+
+            return row.getDateColumn("last_modified").getTime();
+        }
+        catch (SQLException sqle)
+        {
+            throw new RuntimeException(sqle);
+        }
+    }
+
+    /**
+     * Retrieve a channel onto the bits for the bitstream with ID. A channel
+     * can hand ranges of the file to an output directly, so callers sending
+     * bitstreams should prefer it to {@link #retrieve} where it is available.
+     * Returns null if the bitstream does not exist or is not in a local asset
+     * store, in which case use <code>retrieve</code>.
+     *
+     * @param context
+     *            The current context
+     * @param id
+     *            The ID of the bitstream to retrieve
+     * @exception IOException
+     *                If a problem occurs while opening the file
+     *
+     * @return A channel to read the bits from, or null
+     */
+    public static FileChannel retrieveChannel(Context context, int id)
+            throws IOException
+    {
+        File file = retrieveFile(context, id);
+
+        return (file != null) ? new FileInputStream(file).getChannel() : null;
+    }
+
     /**
      * Clean up the bitstream storage area. This method deletes any bitstreams
      * which are more than 1 hour old and marked deleted. The deletions cannot
@@ -560,14 +856,68 @@ public class BitstreamStorageManager
                 }
 
                 // This is a small chance that this is a file which is
-                // being stored -- get it next time.
-                if (isRecent(file))
+                // being stored -- get it next time. Content-addressed files
+                // may be being stored again by a long-running transaction.
+                if (isRecent(file)
+                        || (isContentAddressed(bitstream.getInternalID())
+                            && isWithinGrace(file)))
                 {
                 	log.debug("file is recent");
                     continue;
                 }
 
-                if (deleteDbRecords)
+                // do not delete registered bitstreams
+                boolean registered =
+                    isRegisteredBitstream(bitstream.getInternalID());
+
+                if (!registered)
+                {
+                    // Content-addressed files are shared between all
+                    // bitstreams with the same bits; only delete when none
+                    // is left
+                    boolean success;
+                    if (isContentAddressed(bitstream.getInternalID()))
+                    {
+                        success = deleteUnreferenced(bitstreamDAO,
+                                bitstream.getStoreNumber(),
+                                bitstream.getInternalID(), file);
+                    }
+                    // A copy given up by a move may be in use again
+                    else
+                    {
+                        success = (bitstreamDAO.getReferenceCount(
+                                bitstream.getStoreNumber(),
+                                bitstream.getInternalID()) == 0)
+                            && file.delete();
+                    }
+
+                    if (log.isDebugEnabled())
+                    {
+                        log.debug("Deleted bitstream " + bid + " (file "
+                                + file.getAbsolutePath() + ") with result "
+                                + success);
+                    }
+
+                    // if the file was deleted then
+                    // try deleting the parents
+                    // Otherwise the cleanup script is set to
+                    // leave the db records then the file
+                    // and directories have already been deleted
+                    // if this is turned off then it still looks like the
+                    // file exists
+                    if (success)
+                    {
+                        deleteParents(file);
+                    }
+                }
+
+                // Keep the record of a file that could not be deleted yet,
+                // e.g. a shared file stored again within the grace period,
+                // so that the next cleanup tries again
+                if (deleteDbRecords && (registered || !file.exists()
+                        || bitstreamDAO.getReferenceCount(
+                                bitstream.getStoreNumber(),
+                                bitstream.getInternalID()) > 0))
                 {
                     log.debug("deleting db record");
                     bitstreamInfoDAO.deleteBitstreamInfoWithHistory(bid);
@@ -580,32 +930,6 @@ public class BitstreamStorageManager
                     context.setIgnoreAuthorization(ignoreAuth);
                 }
 
-				if (isRegisteredBitstream(bitstream.getInternalID()))
-                {
-				    continue;			// do not delete registered bitstreams
-				}
-
-                boolean success = file.delete();
-
-                if (log.isDebugEnabled())
-                {
-                    log.debug("Deleted bitstream " + bid + " (file "
-                            + file.getAbsolutePath() + ") with result "
-                            + success);
-                }
-
-                // if the file was deleted then
-                // try deleting the parents
-                // Otherwise the cleanup script is set to
-                // leave the db records then the file
-                // and directories have already been deleted
-                // if this is turned off then it still looks like the
-                // file exists
-                if (success)
-                {
-                    deleteParents(file);
-                }
-
                 // Make sure to commit our outstanding work every 100
                 // iterations. Otherwise you risk losing the entire transaction
                 // if we hit an exception, which isn't useful at all for large
@@ -636,10 +960,247 @@ public class BitstreamStorageManager
         }
     }
 
+    /**
+     * Move a bitstream to another asset store. The bits are copied and the
+     * copy checked against the bitstream's checksum, the bitstream row is
+     * pointed at the new copy and committed, together with a deleted row for
+     * the old copy, so that cleanup deletes it - unless other bitstreams
+     * still share it. Registered and
+     * deleted bitstreams are never moved.
+     *
+     * @param context
+     *            The current context; it is committed
+     * @param bitstream
+     *            The bitstream to move
+     * @param store
+     *            The number of the asset store to move it to
+     * @exception IOException
+     *                If the bits could not be copied
+     *
+     * @return true if the bitstream was moved
+     */
+    public static boolean migrate(Context context, Bitstream bitstream,
+            int store) throws IOException
+    {
+        int from = bitstream.getStoreNumber();
+        String internalId = bitstream.getInternalID();
+
+        // Default to zero ('assetstore.dir') for backwards compatibility
+        if (from == -1)
+        {
+            from = 0;
+        }
+
+        if (store == from || !isStore(store) || internalId == null
+                || isRegisteredBitstream(internalId) || bitstream.isDeleted())
+        {
+            return false;
+        }
+
+        boolean created = copyToStore(bitstream, from, store);
+
+        try
+        {
+            // Only point the row at the new copy if nothing has moved,
+            // replaced or deleted the bitstream in the meantime
+            String fromClause = (from == 0)
+                    ? "(store_number IS NULL OR store_number <= 0)"
+                    : "store_number = " + from;
+
+            int updated = DatabaseManager.updateQuery(context,
+                    "UPDATE bitstream SET store_number = ? " +
+                    "WHERE bitstream_id = ? AND " + fromClause +
+                    " AND internal_id = ? AND deleted <> '1'",
+                    new Integer(store), new Integer(bitstream.getID()),
+                    internalId);
+
+            // Another move may have put the copy there first, and its row may
+            // point at it now, so only give up a copy this call made; cleanup
+            // keeps it if any move that found it there has claimed it
+            if (updated > 0)
+            {
+                releaseFile(context, from, internalId);
+            }
+            else if (created)
+            {
+                releaseFile(context, store, internalId);
+            }
+
+            context.commit();
+
+            if (updated == 0)
+            {
+                return false;
+            }
+        }
+        catch (SQLException sqle)
+        {
+            throw new RuntimeException(sqle);
+        }
+
+        bitstream.setStoreNumber(store);
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("Moved bitstream " + bitstream.getID() + " from store "
+                    + from + " to store " + store);
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the storage policy in use: the single plugin configured for
+     * {@link StoragePolicy}, or a {@link ConfigurableStoragePolicy}.
+     */
+    static synchronized StoragePolicy getStoragePolicy()
+    {
+        if (storagePolicy == null)
+        {
+            try
+            {
+                storagePolicy = (StoragePolicy) PluginManager
+                        .getSinglePlugin(StoragePolicy.class);
+            }
+            catch (PluginConfigurationError pce)
+            {
+                storagePolicy = new ConfigurableStoragePolicy();
+            }
+        }
+
+        return storagePolicy;
+    }
+
     ////////////////////////////////////////
     // Internal methods
     ////////////////////////////////////////
 
+    /**
+     * Is there an asset store with this number?
+     */
+    private static boolean isStore(int store)
+    {
+        return store >= 0 && store < assetStores.length;
+    }
+
+    /**
+     * Copy the file for a bitstream from one asset store to another. The copy
+     * is written under a temporary name and checked against the bitstream's
+     * MD5 checksum before it takes the real name, so a failed copy never
+     * replaces good bits. A file already in the target store, put there by
+     * an earlier or concurrent move, is not replaced: it was checked the same
+     * way.
+     *
+     * @param bitstream
+     *            The bitstream to copy
+     * @param from
+     *            The store it is in now
+     * @param to
+     *            The store to copy it to
+     * @return true if this call wrote the copy, false if the file was already
+     *         in the target store
+     */
+    private static boolean copyToStore(Bitstream bitstream, int from,
+            int to) throws IOException
+    {
+        String internalId = bitstream.getInternalID();
+        GeneralFile source = getFile(from, internalId);
+        GeneralFile target = getFile(to, internalId);
+
+        if (target.exists())
+        {
+            // Touch a shared file, for the same reason moveToDigestPath does
+            if (isContentAddressed(internalId))
+            {
+                target.setLastModified(System.currentTimeMillis());
+            }
+            return false;
+        }
+
+        GeneralFile parent = target.getParentFile();
+
+        if (!parent.exists())
+        {
+            parent.mkdirs();
+        }
+
+        // Named uniquely, as another migration may be copying the same file
+        GeneralFile temp = FileFactory.newFile(parent, target.getName() + "."
+                + Utils.generateHexKey() + ".tmp");
+        DigestInputStream dis = null;
+
+        try
+        {
+            dis = new DigestInputStream(FileFactory.newFileInputStream(source),
+                    MessageDigest.getInstance("MD5"));
+        }
+        catch (NoSuchAlgorithmException nsae)
+        {
+            log.warn("Caught NoSuchAlgorithmException", nsae);
+            throw new IOException("Invalid checksum algorithm");
+        }
+
+        GeneralFileOutputStream fos = FileFactory.newFileOutputStream(temp);
+
+        try
+        {
+            Utils.bufferedCopy(dis, fos);
+        }
+        finally
+        {
+            fos.close();
+            dis.close();
+        }
+
+        String checksum = Utils.toHex(dis.getMessageDigest().digest());
+
+        if ("MD5".equals(bitstream.getChecksumAlgorithm())
+                && bitstream.getChecksum() != null
+                && !bitstream.getChecksum().equals(checksum))
+        {
+            temp.delete();
+            throw new IOException("Copy of bitstream " + bitstream.getID()
+                    + " in store " + to + " does not match its checksum");
+        }
+
+        // A concurrent move of the same file finished first
+        if (target.exists())
+        {
+            temp.delete();
+            return false;
+        }
+
+        if (!temp.renameTo(target))
+        {
+            temp.delete();
+            throw new IOException("Could not move " + temp.getAbsolutePath()
+                    + " to " + target.getAbsolutePath());
+        }
+
+        return true;
+    }
+
+    /**
+     * Give up a bitstream's file in a store it has left. The file is not
+     * deleted here: the current transaction may not commit, and a shared
+     * file may have been stored again too recently. Instead a deleted row is
+     * added for it, so that cleanup deletes it once no bitstream uses it,
+     * retrying until it can.
+     *
+     * @param context
+     *            The current context
+     * @param store
+     *            The store the file is in
+     * @param internalId
+     *            The internal id of the file
+     */
+    private static void releaseFile(Context context, int store,
+            String internalId)
+    {
+        BitstreamDAOFactory.getInstance(context).createDeleted(store,
+                internalId);
+    }
+
     /**
      * Return true if this file is too recent to be deleted, false otherwise.
      *
@@ -661,6 +1222,76 @@ public class BitstreamStorageManager
         return (now - lastmod) < (1 * 60 * 1000);
     }
 
+    /**
+     * Return true if a content-addressed file was stored again too recently to
+     * be deleted: see <code>assetstore.dedup.grace</code>.
+     *
+     * @param file
+     *            The file to check
+     * @return True if this file may have references not yet committed
+     */
+    private static boolean isWithinGrace(GeneralFile file)
+    {
+        return System.currentTimeMillis() - file.lastModified() < dedupGrace;
+    }
+
+    /**
+     * Delete a content-addressed file if no bitstream refers to it. As
+     * <code>store</code> may be reusing the file at the same moment, it is
+     * first renamed aside, so that a <code>store</code> that comes later
+     * puts its own copy in its place, and then checked again, so that one
+     * that touched it just before is not left pointing at nothing.
+     *
+     * @param dao
+     *            The DAO to count references with
+     * @param store
+     *            The store the file is in
+     * @param internalId
+     *            The internal id of the file
+     * @param file
+     *            The file
+     * @return True if the file was deleted
+     */
+    private static boolean deleteUnreferenced(BitstreamDAO dao, int store,
+            String internalId, GeneralFile file) throws IOException
+    {
+        if (isWithinGrace(file) || dao.getReferenceCount(store, internalId) > 0)
+        {
+            log.debug("file is still referenced");
+            return false;
+        }
+
+        GeneralFile tombstone = FileFactory.newFile(file.getParentFile(),
+                file.getName() + ".deleted");
+
+        if (!file.renameTo(tombstone))
+        {
+            return false;
+        }
+
+        // The rename keeps the modification time, so a touch from a store
+        // that found the file just before it was moved shows up here
+        if (isWithinGrace(tombstone)
+                || dao.getReferenceCount(store, internalId) > 0)
+        {
+            // A store that came after the rename has put its own copy back
+            if (file.exists())
+            {
+                tombstone.delete();
+            }
+            else if (!tombstone.renameTo(file))
+            {
+                log.error("Could not move " + tombstone.getAbsolutePath()
+                        + " back to " + file.getAbsolutePath());
+            }
+
+            log.debug("file is still referenced");
+            return false;
+        }
+
+        return tombstone.delete();
+    }
+
     /**
      * Delete empty parent directories.
      *
@@ -733,6 +1364,11 @@ public class BitstreamStorageManager
 		}
         else
         {
+			if (isContentAddressed(sInternalId))
+            {
+				sInternalId = sInternalId.substring(DIGEST_FLAG.length());
+			}
+
 			// Sanity Check: If the internal ID contains a
 			// pathname separator, it's probably an attempt to
 			// make a path traversal attack, so ignore the path
@@ -801,6 +1437,34 @@ public class BitstreamStorageManager
 		return buf.toString();
 	}
 
+    /**
+     * Record a copy of a new bitstream in another asset store as deleted,
+     * using a separate Context like storeInitialMetadata. Once the new
+     * bitstream is committed, cleanup finds it using the copy and only
+     * removes the record; otherwise it deletes the copy.
+     */
+    private static void storeCopyMetadata(int store, String internalID)
+    {
+        Context tempContext = null;
+
+        try
+        {
+            tempContext = new Context();
+            BitstreamDAOFactory.getInstance(tempContext).createDeleted(store,
+                    internalID);
+            tempContext.complete();
+        }
+        catch (SQLException sqle)
+        {
+            if (tempContext != null)
+            {
+                tempContext.abort();
+            }
+
+            throw new RuntimeException(sqle);
+        }
+    }
+
     /**
      * This inserts some metadata into the storage layer using a separate
      * Context to ensure that there is some record of the file in the metadata
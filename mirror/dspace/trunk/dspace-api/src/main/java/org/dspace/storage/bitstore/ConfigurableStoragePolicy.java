@@ -0,0 +1,275 @@
+/*
+ * ConfigurableStoragePolicy.java
+ *
+ * Version: $Revision$
+ *
+ * Date: $Date$
+ *
+ * Copyright (c) 2002-2005, Hewlett-Packard Company and Massachusetts
+ * Institute of Technology.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * - Neither the name of the Hewlett-Packard Company nor the name of the
+ * Massachusetts Institute of Technology nor the names of their
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package org.dspace.storage.bitstore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.dspace.content.Bitstream;
+import org.dspace.content.BitstreamFormat;
+import org.dspace.content.Bundle;
+import org.dspace.content.Collection;
+import org.dspace.content.Item;
+import org.dspace.content.dao.BundleDAO;
+import org.dspace.content.dao.BundleDAOFactory;
+import org.dspace.content.dao.ItemDAO;
+import org.dspace.content.dao.ItemDAOFactory;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+
+/**
+ * Storage policy configured in <code>dspace.cfg</code>.
+ * <P>
+ * Placement rules are read from <code>assetstore.place.1</code>,
+ * <code>assetstore.place.2</code>... in the form
+ * <code>store:condition:value</code>, where the condition is one of
+ * <ul>
+ * <li><code>size</code> - the bitstream has at least <em>value</em> bytes
+ * <li><code>format</code> - the bitstream's MIME type starts with
+ * <em>value</em>
+ * <li><code>collection</code> - the bitstream's item is owned by the
+ * collection with database ID <em>value</em>
+ * </ul>
+ * The first rule that matches decides the store. A new bitstream has no
+ * format yet and is in no item, so only <code>size</code> rules can place
+ * it when it is stored; <code>format</code> and <code>collection</code>
+ * rules move it the next time the asset stores are migrated (see
+ * {@link StorageMigrator}). Bitstreams no rule matches
+ * are tiered by use if <code>assetstore.tier.hot</code> and
+ * <code>assetstore.tier.cold</code> are set: a bitstream in the hot store not
+ * downloaded for <code>assetstore.tier.cold.after</code> days is moved to the
+ * cold store, and one in the cold store downloaded within the last
+ * <code>assetstore.tier.hot.within</code> days is moved back.
+ *
+ * @version $Revision$
+ */
+public class ConfigurableStoragePolicy implements StoragePolicy
+{
+    /** log4j log */
+    private static Logger log = Logger.getLogger(ConfigurableStoragePolicy.class);
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    /** One placement rule */
+    private static class Rule
+    {
+        int store;
+        String condition;
+        String value;
+        long size;
+    }
+
+    private List<Rule> rules = new ArrayList<Rule>();
+
+    /** Store for new bitstreams no rule matches */
+    private int incoming;
+
+    /** Tier stores, or -1 if bitstreams aren't tiered */
+    private int hot = -1;
+    private int cold = -1;
+
+    private long coldAfter;
+    private long hotWithin;
+
+    public ConfigurableStoragePolicy()
+    {
+        incoming = ConfigurationManager.getIntProperty("assetstore.incoming");
+
+        for (int i = 1; ; i++)
+        {
+            String spec = ConfigurationManager.getProperty("assetstore.place."
+                    + i);
+            if (spec == null)
+            {
+                break;
+            }
+
+            String[] parts = spec.trim().split(":", 3);
+            try
+            {
+                Rule rule = new Rule();
+                rule.store = Integer.parseInt(parts[0].trim());
+                rule.condition = parts[1].trim();
+                rule.value = parts[2].trim();
+
+                if ("size".equals(rule.condition))
+                {
+                    rule.size = Long.parseLong(rule.value);
+                }
+                else if (!"format".equals(rule.condition)
+                        && !"collection".equals(rule.condition))
+                {
+                    throw new IllegalArgumentException(rule.condition);
+                }
+
+                rules.add(rule);
+            }
+            catch (RuntimeException e)
+            {
+                log.warn("Ignoring bad rule assetstore.place." + i + " = "
+                        + spec);
+            }
+        }
+
+        if (ConfigurationManager.getProperty("assetstore.tier.hot") != null
+                && ConfigurationManager.getProperty("assetstore.tier.cold") != null)
+        {
+            hot = ConfigurationManager.getIntProperty("assetstore.tier.hot");
+            cold = ConfigurationManager.getIntProperty("assetstore.tier.cold");
+
+            int after = ConfigurationManager
+                    .getIntProperty("assetstore.tier.cold.after");
+            int within = ConfigurationManager
+                    .getIntProperty("assetstore.tier.hot.within");
+
+            coldAfter = ((after > 0) ? after : 90) * DAY;
+            hotWithin = ((within > 0) ? within : 7) * DAY;
+        }
+    }
+
+    public int place(Context context, Bitstream bitstream)
+    {
+        Rule rule = match(context, bitstream, false);
+
+        return (rule != null) ? rule.store : incoming;
+    }
+
+    public int migrate(Context context, Bitstream bitstream, long lastAccessed)
+    {
+        int current = bitstream.getStoreNumber();
+        if (current == -1)
+        {
+            current = 0;
+        }
+
+        Rule rule = match(context, bitstream, true);
+        if (rule != null)
+        {
+            return rule.store;
+        }
+
+        if (hot == -1 || (current != hot && current != cold))
+        {
+            return current;
+        }
+
+        // Without a recorded time there is nothing to go on; the file's own
+        // time is no use, as every move resets it
+        if (lastAccessed <= 0)
+        {
+            return current;
+        }
+
+        long idle = System.currentTimeMillis() - lastAccessed;
+
+        if (current == hot && idle > coldAfter)
+        {
+            return cold;
+        }
+        if (current == cold && idle < hotWithin)
+        {
+            return hot;
+        }
+        return current;
+    }
+
+    /**
+     * Find the first rule that matches a bitstream, or null. Only
+     * <code>size</code> rules are tried unless <code>all</code> is set.
+     */
+    private Rule match(Context context, Bitstream bitstream, boolean all)
+    {
+        for (Rule rule : rules)
+        {
+            if ("size".equals(rule.condition))
+            {
+                if (bitstream.getSize() >= rule.size)
+                {
+                    return rule;
+                }
+            }
+            else if (!all)
+            {
+                continue;
+            }
+            else if ("format".equals(rule.condition))
+            {
+                BitstreamFormat format = bitstream.getFormat();
+                if (format != null && format.getMIMEType() != null
+                        && format.getMIMEType().startsWith(rule.value))
+                {
+                    return rule;
+                }
+            }
+            else if (inCollection(context, bitstream, rule.value))
+            {
+                return rule;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Is the bitstream in an item owned by the collection with the given ID?
+     */
+    private boolean inCollection(Context context, Bitstream bitstream,
+            String collectionID)
+    {
+        BundleDAO bundleDAO = BundleDAOFactory.getInstance(context);
+        ItemDAO itemDAO = ItemDAOFactory.getInstance(context);
+
+        for (Bundle bundle : bundleDAO.getBundles(bitstream))
+        {
+            for (Item item : itemDAO.getParentItems(bundle))
+            {
+                Collection owner = item.getOwningCollection();
+                if (owner != null
+                        && collectionID.equals(String.valueOf(owner.getID())))
+                {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+}
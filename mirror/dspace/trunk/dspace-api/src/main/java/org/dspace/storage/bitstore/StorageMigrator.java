@@ -0,0 +1,223 @@
+/*
+ * StorageMigrator.java
+ *
+ * Version: $Revision$
+ *
+ * Date: $Date$
+ *
+ * Copyright (c) 2002-2005, Hewlett-Packard Company and Massachusetts
+ * Institute of Technology.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * - Neither the name of the Hewlett-Packard Company nor the name of the
+ * Massachusetts Institute of Technology nor the names of their
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package org.dspace.storage.bitstore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+import org.apache.log4j.Logger;
+import org.dspace.content.Bitstream;
+import org.dspace.content.dao.BitstreamDAO;
+import org.dspace.content.dao.BitstreamDAOFactory;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+/**
+ * Moves bitstreams between asset stores as the storage policy decides, for
+ * example from a fast store to a slower one once they are no longer
+ * downloaded. Meant to be run regularly from cron, like {@link Cleanup}.
+ *
+ * @version $Revision$
+ */
+public class StorageMigrator
+{
+    /** log4j log */
+    private static Logger log = Logger.getLogger(StorageMigrator.class);
+
+    /**
+     * Migrates bitstreams between asset stores.
+     *
+     * @param argv -
+     *            Command-line arguments
+     */
+    public static void main(String[] argv)
+    {
+        Context context = null;
+
+        try
+        {
+            log.info("Migrating bitstreams between asset stores");
+
+            // set up command line parser
+            CommandLineParser parser = new PosixParser();
+            CommandLine line = null;
+
+            // create an options object and populate it
+            Options options = new Options();
+
+            options.addOption("l", "limit", true, "Move at most this many bitstreams");
+            options.addOption("v", "verbose", false, "Print each bitstream moved");
+            options.addOption("h", "help", false, "Help");
+
+            try
+            {
+                line = parser.parse(options, argv);
+            }
+            catch (ParseException e)
+            {
+                log.fatal(e);
+                System.exit(1);
+            }
+
+            // user asks for help
+            if (line.hasOption('h'))
+            {
+                printHelp(options);
+                System.exit(0);
+            }
+
+            int limit = -1;
+            if (line.hasOption('l'))
+            {
+                limit = Integer.parseInt(line.getOptionValue('l'));
+            }
+            boolean verbose = line.hasOption('v');
+
+            context = new Context();
+            context.setIgnoreAuthorization(true);
+
+            StoragePolicy policy = BitstreamStorageManager.getStoragePolicy();
+            BitstreamDAO dao = BitstreamDAOFactory.getInstance(context);
+
+            // Read everything first: each move commits, which would close an
+            // open result set
+            List<Integer> ids = new ArrayList<Integer>();
+            List<Long> accessed = new ArrayList<Long>();
+
+            TableRowIterator tri = DatabaseManager.query(context,
+                    "SELECT bitstream_id, last_accessed FROM bitstream " +
+                    "WHERE deleted <> '1'");
+
+            try
+            {
+                while (tri.hasNext())
+                {
+                    TableRow row = tri.next();
+                    Date date = row.getDateColumn("last_accessed");
+
+                    ids.add(new Integer(row.getIntColumn("bitstream_id")));
+                    accessed.add(new Long(date == null ? 0 : date.getTime()));
+                }
+            }
+            finally
+            {
+                tri.close();
+            }
+
+            int moved = 0;
+
+            for (int i = 0; i < ids.size() && (limit < 0 || moved < limit); i++)
+            {
+                Bitstream bitstream = dao.retrieve(ids.get(i).intValue());
+
+                if (bitstream == null || BitstreamStorageManager
+                        .isRegisteredBitstream(bitstream.getInternalID()))
+                {
+                    continue;
+                }
+
+                int from = bitstream.getStoreNumber();
+                int store = policy.migrate(context, bitstream,
+                        accessed.get(i).longValue());
+
+                try
+                {
+                    if (BitstreamStorageManager.migrate(context, bitstream,
+                            store))
+                    {
+                        moved++;
+                        if (verbose)
+                        {
+                            System.out.println("Moved bitstream "
+                                    + bitstream.getID() + " from store "
+                                    + from + " to store " + store);
+                        }
+                    }
+                }
+                catch (IOException ioe)
+                {
+                    // One unreadable file shouldn't stop the rest moving
+                    log.error("Could not move bitstream " + bitstream.getID()
+                            + " to store " + store, ioe);
+                }
+
+                context.removeCached(bitstream, bitstream.getID());
+            }
+
+            context.complete();
+            context = null;
+
+            log.info("Moved " + moved + " bitstreams");
+            System.out.println("Moved " + moved + " bitstreams");
+
+            System.exit(0);
+        }
+        catch (Exception e)
+        {
+            log.fatal("Caught exception:", e);
+            System.exit(1);
+        }
+        finally
+        {
+            if (context != null)
+            {
+                context.abort();
+            }
+        }
+    }
+
+    private static void printHelp(Options options)
+    {
+        HelpFormatter myhelp = new HelpFormatter();
+        myhelp.printHelp("StorageMigrator\n", options);
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * StoragePolicy.java
+ *
+ * Version: $Revision$
+ *
+ * Date: $Date$
+ *
+ * Copyright (c) 2002-2005, Hewlett-Packard Company and Massachusetts
+ * Institute of Technology.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * - Neither the name of the Hewlett-Packard Company nor the name of the
+ * Massachusetts Institute of Technology nor the names of their
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package org.dspace.storage.bitstore;
+
+import org.dspace.content.Bitstream;
+import org.dspace.core.Context;
+
+/**
+ * Decides which asset store a bitstream is kept in. The policy is asked once
+ * a new bitstream has been stored, when its size is known, and again for
+ * every bitstream when the asset stores are migrated (see
+ * {@link StorageMigrator}), when its format, collection and how recently it
+ * was downloaded are known too.
+ * <P>
+ * The policy in use is configured as a single plugin; the default is
+ * {@link ConfigurableStoragePolicy}.
+ *
+ * @version $Revision$
+ */
+public interface StoragePolicy
+{
+    /**
+     * Choose the asset store for a bitstream that has just been stored.
+     *
+     * @param context
+     *            the current context
+     * @param bitstream
+     *            the new bitstream, with its size and checksum set
+     * @return the store number to keep the bitstream in
+     */
+    public int place(Context context, Bitstream bitstream);
+
+    /**
+     * Choose the asset store for an existing bitstream.
+     *
+     * @param context
+     *            the current context
+     * @param bitstream
+     *            the bitstream
+     * @param lastAccessed
+     *            when the bitstream was last downloaded, or stored if it
+     *            has not been, in milliseconds; 0 if that is not known
+     * @return the store number to keep the bitstream in, which is its
+     *         current store if it should stay where it is
+     */
+    public int migrate(Context context, Bitstream bitstream, long lastAccessed);
+}
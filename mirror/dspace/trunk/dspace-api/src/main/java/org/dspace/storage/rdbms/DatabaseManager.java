@@ -60,13 +60,13 @@ import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import org.apache.commons.dbcp.ConnectionFactory;
@@ -113,10 +113,12 @@ public class DatabaseManager
     private static final Pattern DB_SAFE_NAME = Pattern.compile("^[a-zA-Z_1-9]+$");
 
     /**
-     * A map of database column information. The key is the table name, a
-     * String; the value is an array of ColumnInfo objects.
+     * A map of database table information. The key is the canonical table
+     * name; the value is the TableInfo describing its columns, worked out
+     * the first time the table is used.
      */
-    private static Map info = new HashMap();
+    private static Map<String, TableInfo> info =
+        new ConcurrentHashMap<String, TableInfo>();
 
     /**
      * Protected Constructor to prevent instantiation except by derived classes.
@@ -232,6 +234,54 @@ public class DatabaseManager
         }
     }
     
+    /**
+     * Return an iterator with the results of executing query, like
+     * {@link #query(Context, String, Object...)}, but have the driver fetch
+     * the results a number of rows at a time rather than all at once. This
+     * is for queries whose results are too large to hold in memory, e.g. the
+     * metadata of every item in the archive.
+     * 
+     * @param context
+     *            Current DSpace context
+     * @param fetchSize
+     *            The number of rows to fetch at a time
+     * @param query
+     *            The SQL query
+     * @param parameters
+     * 			  A set of SQL parameters to be included in query. The order of 
+     * 			  the parameters must correspond to the order of their reference 
+     * 			  within the query.
+     * @return A TableRowIterator with the results of the query
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    public static TableRowIterator queryLarge(Context context, int fetchSize,
+            String query, Object... parameters) throws SQLException
+    {
+        if (log.isDebugEnabled())
+        {
+            log.debug("Running query \"" + query + "\" " + fetchSize + " rows at a time");
+        }
+
+        PreparedStatement statement = context.getDBConnection().prepareStatement(query);
+        try
+        {
+            statement.setFetchSize(fetchSize);
+            loadParameters(statement, parameters);
+
+            TableRowIterator retTRI = new TableRowIterator(statement.executeQuery());
+
+            retTRI.setStatement(statement);
+            return retTRI;
+        }
+        catch (SQLException sqle)
+        {
+            try { statement.close(); } catch (SQLException s) { }
+
+            throw sqle;
+        }
+    }
+
     /**
      * Return an iterator with the results of executing statement. The table
      * parameter indicates the type of result. If table is null, the column
@@ -416,7 +466,7 @@ public class DatabaseManager
     public static TableRow create(Context context, String table)
             throws SQLException
     {
-        TableRow row = new TableRow(canonicalize(table), getColumnNames(table));
+        TableRow row = row(table);
         insert(context, row);
 
         return row;
@@ -441,9 +491,15 @@ public class DatabaseManager
             throws SQLException
     {
         String ctable = canonicalize(table);
+        String sql = getTableInfo(ctable).getFindSQL();
 
-        return findByUnique(context, ctable, getPrimaryKeyColumn(ctable),
-                new Integer(id));
+        if (sql == null)
+        {
+            throw new SQLException("Unable to execute select query because table ("
+                    + ctable + ") has no primary key.");
+        }
+
+        return querySingleTable(context, ctable, sql, new Integer(id));
     }
 
     /**
@@ -498,9 +554,15 @@ public class DatabaseManager
             throws SQLException
     {
         String ctable = canonicalize(table);
+        String sql = getTableInfo(ctable).getDeleteSQL();
+
+        if (sql == null)
+        {
+            throw new SQLException("Unable to execute delete query because table ("
+                    + ctable + ") has no primary key.");
+        }
 
-        return deleteByValue(context, ctable, getPrimaryKeyColumn(ctable),
-                new Integer(id));
+        return updateQuery(context, sql, new Integer(id));
     }
 
     /**
@@ -584,7 +646,9 @@ public class DatabaseManager
      */
     public static TableRow row(String table) throws SQLException
     {
-        return new TableRow(canonicalize(table), getColumnNames(table));
+        String ctable = canonicalize(table);
+
+        return new TableRow(ctable, getTableInfo(ctable));
     }
     
     /**
@@ -600,71 +664,211 @@ public class DatabaseManager
     public static void insert(Context context, TableRow row)
             throws SQLException
     {
-        int newID = -1;
         String table = canonicalize(row.getTable());
-        Statement statement = null;
-        ResultSet rs = null;
+        TableInfo tinfo = getTableInfo(table);
 
-        try
-        {
-            // Get an ID (primary key) for this row by using the "getnextid"
-            // SQL function in Postgres, or directly with sequences in Oracle
-            String myQuery = "SELECT getnextid('" + table + "') AS result";
+        // Get an ID (primary key) for this row from the table's sequence
+        int newID = IDAllocator.getInstance(table).nextID(
+                context.getDBConnection());
 
-            if ("oracle".equals(ConfigurationManager.getProperty("db.name")))
-            {
-                myQuery = "SELECT " + table + "_seq" + ".nextval FROM dual";
-            }
+        // Set the ID in the table row object
+        row.setColumn(tinfo.getPrimaryKey().getName(), newID);
 
-            statement = context.getDBConnection().createStatement();
-            rs = statement.executeQuery(myQuery);
+        execute(context.getDBConnection(), tinfo.getInsertSQL(),
+                Arrays.asList(tinfo.getColumns()), row);
+    }
 
-            rs.next();
+    /**
+     * Insert a number of table rows into the RDBMS. The rows are assigned new
+     * IDs in as few round trips as possible, and then sent to the database
+     * with a single JDBC batch per table. This is much cheaper than calling
+     * {@link #insert(Context, TableRow)} once per row when creating large
+     * numbers of rows, e.g. during bulk ingest.
+     * 
+     * @param context
+     *            Current DSpace context
+     * @param rows
+     *            The rows to insert. These need not all be for the same table.
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    public static void insert(Context context, List<TableRow> rows)
+            throws SQLException
+    {
+        insert(context, rows, false);
+    }
 
-            newID = rs.getInt(1);
-        }
-        finally
+    /**
+     * Insert a number of table rows into the RDBMS like
+     * {@link #insert(Context, List)}, but taking their IDs straight from each
+     * table's sequence instead of from a block of IDs reserved earlier by
+     * this JVM. The IDs then follow the order in which rows were inserted by
+     * all the JVMs sharing the database, as needed by tables that are read
+     * back in ID order, such as queues.
+     * 
+     * @param context
+     *            Current DSpace context
+     * @param rows
+     *            The rows to insert. These need not all be for the same table.
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    public static void insertInSequence(Context context, List<TableRow> rows)
+            throws SQLException
+    {
+        insert(context, rows, true);
+    }
+
+    private static void insert(Context context, List<TableRow> rows,
+            boolean inSequence) throws SQLException
+    {
+        // Group the rows by table, preserving the order they were given in
+        Map<String, List<TableRow>> byTable =
+            new LinkedHashMap<String, List<TableRow>>();
+
+        for (TableRow row : rows)
         {
-            if (rs != null)
-            {
-                try { rs.close(); } catch (SQLException sqle) { }
-            }
+            String table = canonicalize(row.getTable());
+            List<TableRow> tableRows = byTable.get(table);
 
-            if (statement != null)
+            if (tableRows == null)
             {
-                try { statement.close(); } catch (SQLException sqle) { }
+                tableRows = new ArrayList<TableRow>();
+                byTable.put(table, tableRows);
             }
+
+            tableRows.add(row);
         }
 
-        if (newID < 0)
-            throw new SQLException("Unable to retrieve sequence ID");
+        for (Map.Entry<String, List<TableRow>> entry : byTable.entrySet())
+        {
+            String table = entry.getKey();
+            List<TableRow> tableRows = entry.getValue();
 
-        // Set the ID in the table row object
-        row.setColumn(getPrimaryKeyColumn(table), newID);
+            TableInfo tinfo = getTableInfo(table);
+
+            IDAllocator allocator = IDAllocator.getInstance(table);
+            int[] ids = inSequence
+                ? allocator.reserve(context.getDBConnection(), tableRows.size())
+                : allocator.nextIDs(context.getDBConnection(), tableRows.size());
+            String pk = tinfo.getPrimaryKey().getName();
 
-        StringBuffer sql = new StringBuffer().append("INSERT INTO ").append(
-                table).append(" ( ");
+            for (int i = 0; i < ids.length; i++)
+            {
+                tableRows.get(i).setColumn(pk, ids[i]);
+            }
 
-        ColumnInfo[] info = getColumnInfo(table);
+            executeBatch(context.getDBConnection(), tinfo.getInsertSQL(),
+                    Arrays.asList(tinfo.getColumns()), tableRows);
+        }
+    }
 
-        for (int i = 0; i < info.length; i++)
+    /**
+     * Reserve a number of new IDs from a table's sequence, without inserting
+     * anything. This is for callers which write rows themselves, e.g. when
+     * loading a copy of a table which will later replace the original, and
+     * so must not clash with IDs handed out by {@link #insert}.
+     *
+     * @param context
+     *            Current DSpace context
+     * @param table
+     *            The table whose sequence the IDs are taken from
+     * @param count
+     *            The number of IDs required
+     * @return an array of <code>count</code> new IDs
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    public static int[] getNextIDs(Context context, String table, int count)
+            throws SQLException
+    {
+        return IDAllocator.getInstance(canonicalize(table)).nextIDs(
+                context.getDBConnection(), count);
+    }
+
+    /**
+     * Insert rows given as arrays of column values, with a single JDBC batch.
+     * Unlike {@link #insert(Context, List)}, nothing is looked up about the
+     * table and no IDs are assigned, so this suits tables which the caller
+     * has just created itself, with primary keys from {@link #getNextIDs}.
+     * A null value is sent as a character NULL, so may only be given for
+     * character columns.
+     * 
+     * @param context
+     *            Current DSpace context
+     * @param table
+     *            The table to insert into
+     * @param columns
+     *            The columns to set, in the order the values are given
+     * @param rows
+     *            The values of each row
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    public static void insertValues(Context context, String table,
+            String[] columns, List<Object[]> rows) throws SQLException
+    {
+        if (rows.isEmpty())
         {
-            sql.append((i == 0) ? "" : ",").append(info[i].getName());
+            return;
         }
 
-        sql.append(") VALUES ( ");
+        StringBuffer sql = new StringBuffer("INSERT INTO " + table + " (");
+        StringBuffer params = new StringBuffer();
+        for (int i = 0; i < columns.length; i++)
+        {
+            sql.append(i == 0 ? "" : ", ").append(columns[i]);
+            params.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") VALUES (").append(params).append(")");
 
-        // Values to insert
-        for (int i = 0; i < info.length; i++)
+        if (log.isDebugEnabled())
         {
-            sql.append((i == 0) ? "" : ",").append("?");
+            log.debug("Running batch query \"" + sql + "\" for "
+                    + rows.size() + " rows");
         }
 
-        // Watch the syntax
-        sql.append(")");
+        PreparedStatement statement = null;
+        try
+        {
+            statement = context.getDBConnection().prepareStatement(sql.toString());
+
+            for (Object[] row : rows)
+            {
+                for (int i = 0; i < row.length; i++)
+                {
+                    if (row[i] == null)
+                    {
+                        statement.setNull(i + 1, Types.VARCHAR);
+                    }
+                    else if (row[i] instanceof Integer)
+                    {
+                        statement.setInt(i + 1, ((Integer) row[i]).intValue());
+                    }
+                    else
+                    {
+                        statement.setObject(i + 1, row[i]);
+                    }
+                }
+
+                statement.addBatch();
+            }
 
-        execute(context.getDBConnection(), sql.toString(), Arrays.asList(info),
-                row);
+            statement.executeBatch();
+        }
+        finally
+        {
+            if (statement != null)
+            {
+                try
+                {
+                    statement.close();
+                }
+                catch (SQLException sqle)
+                {
+                }
+            }
+        }
     }
 
     /**
@@ -681,34 +885,33 @@ public class DatabaseManager
      */
     public static int update(Context context, TableRow row) throws SQLException
     {
-        String table = canonicalize(row.getTable());
+        TableInfo tinfo = getTableInfo(row.getTable());
 
-        StringBuffer sql = new StringBuffer().append("update ").append(table)
-                .append(" set ");
+        // The row may have been read from an ad-hoc query, in which case its
+        // ordinals need not match those of the table
+        TableInfo rinfo = row.getTableInfo();
 
-        List columns = new ArrayList();
-        ColumnInfo pk = getPrimaryKeyColumnInfo(table);
-        ColumnInfo[] info = getNonPrimaryKeyColumns(table);
+        List<ColumnInfo> columns = new ArrayList<ColumnInfo>();
+        ColumnInfo[] info = tinfo.getColumns();
+        int pk = tinfo.getPrimaryKeyOrdinal();
 
-        String seperator = "";
         for (int i = 0; i < info.length; i++)
         {
             // Only update this column if it has changed
-            if (row.hasColumnChanged(info[i].getName()))
+            if (i != pk && ((rinfo == tinfo) ? row.hasColumnChanged(i)
+                    : row.hasColumnChanged(info[i].getName())))
             {
-                sql.append(seperator).append(info[i].getName()).append(" = ?");
                 columns.add(info[i]);
-                seperator = ", ";
             }
         }
 
         // Only execute the update if there is anything to update
         if (columns.size() > 0)
         {
-            sql.append(" where ").append(pk.getName()).append(" = ?");
-            columns.add(pk);
+            String sql = tinfo.getUpdateSQL(columns);
+            columns.add(info[pk]);
 
-            return execute(context.getDBConnection(), sql.toString(), columns, row);
+            return execute(context.getDBConnection(), sql, columns, row);
         }
 
         return 1;
@@ -748,16 +951,7 @@ public class DatabaseManager
      */
     static ColumnInfo[] getColumnInfo(String table) throws SQLException
     {
-        Map cinfo = getColumnInfoInternal(table);
-
-        if (cinfo == null)
-        {
-            return null;
-        }
-
-        Collection info = cinfo.values();
-
-        return (ColumnInfo[]) info.toArray(new ColumnInfo[info.size()]);
+        return getTableInfo(table).getColumns();
     }
 
     /**
@@ -774,9 +968,10 @@ public class DatabaseManager
     static ColumnInfo getColumnInfo(String table, String column)
             throws SQLException
     {
-        Map info = getColumnInfoInternal(table);
+        TableInfo tinfo = getTableInfo(table);
+        int ordinal = tinfo.getOrdinal(column);
 
-        return (info == null) ? null : (ColumnInfo) info.get(column);
+        return (ordinal < 0) ? null : tinfo.getColumns()[ordinal];
     }
 
     /**
@@ -792,20 +987,20 @@ public class DatabaseManager
     static ColumnInfo[] getNonPrimaryKeyColumns(String table)
             throws SQLException
     {
-        String pk = getPrimaryKeyColumn(table);
-        ColumnInfo[] info = getColumnInfo(table);
-        ColumnInfo[] results = new ColumnInfo[info.length - 1];
-        int rcount = 0;
+        TableInfo tinfo = getTableInfo(table);
+        ColumnInfo[] info = tinfo.getColumns();
+        int pk = tinfo.getPrimaryKeyOrdinal();
+        List<ColumnInfo> results = new ArrayList<ColumnInfo>();
 
         for (int i = 0; i < info.length; i++)
         {
-            if (!pk.equals(info[i].getName()))
+            if (i != pk)
             {
-                results[rcount++] = info[i];
+                results.add(info[i]);
             }
         }
 
-        return results;
+        return results.toArray(new ColumnInfo[results.size()]);
     }
 
     /**
@@ -820,15 +1015,7 @@ public class DatabaseManager
      */
     protected static List getColumnNames(String table) throws SQLException
     {
-        List results = new ArrayList();
-        ColumnInfo[] info = getColumnInfo(table);
-
-        for (int i = 0; i < info.length; i++)
-        {
-            results.add(info[i].getName());
-        }
-
-        return results;
+        return getTableInfo(table).getColumnNames();
     }
 
     /**
@@ -1078,26 +1265,40 @@ public class DatabaseManager
     static TableRow process(ResultSet results, String table)
             throws SQLException
     {
-        String dbName =ConfigurationManager.getProperty("db.name");
-        ResultSetMetaData meta = results.getMetaData();
-        int columns = meta.getColumnCount() + 1;
-
-        List columnNames = (table == null) ? getColumnNames(meta)
-                : getColumnNames(table);
+        return process(results, new RowReader(results.getMetaData(),
+                canonicalize(table)));
+    }
 
-        TableRow row = new TableRow(canonicalize(table), columnNames);
+    /**
+     * Convert the current row in a ResultSet into a TableRow object, using a
+     * RowReader which has already worked out where each result column goes.
+     * 
+     * @param results
+     *            A ResultSet to process
+     * @param reader
+     *            The RowReader for this ResultSet
+     * @return A TableRow object with the data from the ResultSet
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    static TableRow process(ResultSet results, RowReader reader)
+            throws SQLException
+    {
+        String dbName =ConfigurationManager.getProperty("db.name");
+        TableRow row = new TableRow(reader.table, reader.info);
 
         // Process the columns in order
         // (This ensures maximum backwards compatibility with
         // old JDBC drivers)
-        for (int i = 1; i < columns; i++)
+        for (int i = 1; i <= reader.ordinals.length; i++)
         {
-            String name = meta.getColumnName(i);
-            int jdbctype = meta.getColumnType(i);
+            int ordinal = reader.ordinals[i - 1];
+            int jdbctype = reader.types[i - 1];
+            Object value;
 
             if (jdbctype == Types.BIT)
             {
-                row.setColumn(name, results.getBoolean(i));
+                value = Boolean.valueOf(results.getBoolean(i));
             }
             else if ((jdbctype == Types.INTEGER) || (jdbctype == Types.NUMERIC)
                     || (jdbctype == Types.DECIMAL))
@@ -1109,37 +1310,37 @@ public class DatabaseManager
                     // Otherwise, store it as long
                     long longValue = results.getLong(i);
                     if (longValue <= (long)Integer.MAX_VALUE)
-                        row.setColumn(name, (int)longValue);
+                        value = Integer.valueOf((int)longValue);
                     else
-                        row.setColumn(name, longValue);
+                        value = Long.valueOf(longValue);
                 }
                 else
-                    row.setColumn(name, results.getInt(i));
+                    value = Integer.valueOf(results.getInt(i));
             }
             else if (jdbctype == Types.BIGINT)
             {
-                row.setColumn(name, results.getLong(i));
+                value = Long.valueOf(results.getLong(i));
             }
             else if (jdbctype == Types.CLOB && "oracle".equals(dbName))
             {
                 // Support CLOBs in place of TEXT columns in Oracle
-                row.setColumn(name, results.getString(i));
+                value = results.getString(i);
             }
             else if (jdbctype == Types.VARCHAR)
             {
+                value = null;
+
                 try
                 {
                     byte[] bytes = results.getBytes(i);
 
                     if (bytes != null)
                     {
-                        String mystring = new String(results.getBytes(i),
-                                "UTF-8");
-                        row.setColumn(name, mystring);
+                        value = new String(bytes, "UTF-8");
                     }
                     else
                     {
-                        row.setColumn(name, results.getString(i));
+                        value = results.getString(i);
                     }
                 }
                 catch (UnsupportedEncodingException e)
@@ -1149,15 +1350,15 @@ public class DatabaseManager
             }
             else if (jdbctype == Types.DATE)
             {
-                row.setColumn(name, results.getDate(i));
+                value = results.getDate(i);
             }
             else if (jdbctype == Types.TIME)
             {
-                row.setColumn(name, results.getTime(i));
+                value = results.getTime(i);
             }
             else if (jdbctype == Types.TIMESTAMP)
             {
-                row.setColumn(name, results.getTimestamp(i));
+                value = results.getTimestamp(i);
             }
             else
             {
@@ -1165,10 +1366,7 @@ public class DatabaseManager
                         + jdbctype);
             }
 
-            if (results.wasNull())
-            {
-                row.setColumnNull(name);
-            }
+            row.setColumnValue(ordinal, results.wasNull() ? null : value);
         }
 
         // Now that we've prepped the TableRow, reset the flags so that we can detect which columns have changed
@@ -1226,19 +1424,7 @@ public class DatabaseManager
      */
     static ColumnInfo getPrimaryKeyColumnInfo(String table) throws SQLException
     {
-        ColumnInfo[] cinfo = getColumnInfo(canonicalize(table));
-
-        for (int i = 0; i < cinfo.length; i++)
-        {
-            ColumnInfo info = cinfo[i];
-
-            if (info.isPrimaryKey())
-            {
-                return info;
-            }
-        }
-
-        return null;
+        return getTableInfo(table).getPrimaryKey();
     }
 
     /**
@@ -1260,7 +1446,6 @@ public class DatabaseManager
     private static int execute(Connection connection, String sql, List columns,
             TableRow row) throws SQLException
     {
-        String dbName =ConfigurationManager.getProperty("db.name");
         PreparedStatement statement = null;
 
         if (log.isDebugEnabled())
@@ -1271,88 +1456,64 @@ public class DatabaseManager
         try
         {
             statement = connection.prepareStatement(sql);
-        	
-            int count = 0;
+            loadParameters(statement, columns, row);
 
-            for (Iterator iterator = columns.iterator(); iterator.hasNext();)
+            return statement.executeUpdate();
+        }
+        finally
+        {
+            if (statement != null)
             {
-                count++;
-
-                ColumnInfo info = (ColumnInfo) iterator.next();
-                String column = info.getName();
-                int jdbctype = info.getType();
-
-                if (row.isColumnNull(column))
-                {
-                    statement.setNull(count, jdbctype);
-
-                    continue;
-                }
-                else if (jdbctype == Types.BIT)
-                {
-                    statement.setBoolean(count, row.getBooleanColumn(column));
-
-                    continue;
-                }
-                else if ((jdbctype == Types.INTEGER) || (jdbctype == Types.NUMERIC)
-                        || (jdbctype == Types.DECIMAL))
-                {
-                    // If we are using Oracle, we can pass in long values, so always do so.
-                    if ("oracle".equals(dbName))
-                        statement.setLong(count, row.getLongColumn(column));
-                    else
-                        statement.setInt(count, row.getIntColumn(column));
-
-                    continue;
-                }
-                else if (jdbctype == Types.BIGINT)
+                try
                 {
-                    statement.setLong(count, row.getLongColumn(column));
+                    statement.close();
                 }
-                else if (jdbctype == Types.CLOB && "oracle".equals(dbName))
+                catch (SQLException sqle)
                 {
-                    // Support CLOBs in place of TEXT columns in Oracle
-                    statement.setString(count, row.getStringColumn(column));
-
-                    continue;
                 }
-                else if (jdbctype == Types.VARCHAR)
-                {
-                    statement.setString(count, row.getStringColumn(column));
+            }
+        }
+    }
 
-                    continue;
-                }
-                else if (jdbctype == Types.DATE)
-                {
-                    java.sql.Date d = new java.sql.Date(row.getDateColumn(
-                            column).getTime());
-                    statement.setDate(count, d);
+    /**
+     * Execute SQL as a single batched PreparedStatement on Connection, once
+     * for each of the given rows. Bind parameters in columns to the values in
+     * each table row before adding it to the batch.
+     * 
+     * @param connection
+     *            The SQL connection
+     * @param sql
+     *            The query to execute
+     * @param columns
+     *            The columns to bind
+     * @param rows
+     *            The rows
+     * @return The number of rows affected by each execution of the query.
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    private static int[] executeBatch(Connection connection, String sql,
+            List columns, List<TableRow> rows) throws SQLException
+    {
+        PreparedStatement statement = null;
 
-                    continue;
-                }
-                else if (jdbctype == Types.TIME)
-                {
-                    Time t = new Time(row.getDateColumn(column).getTime());
-                    statement.setTime(count, t);
+        if (log.isDebugEnabled())
+        {
+            log.debug("Running batch query \"" + sql + "\" for "
+                    + rows.size() + " rows");
+        }
 
-                    continue;
-                }
-                else if (jdbctype == Types.TIMESTAMP)
-                {
-                    Timestamp t = new Timestamp(row.getDateColumn(column)
-                            .getTime());
-                    statement.setTimestamp(count, t);
+        try
+        {
+            statement = connection.prepareStatement(sql);
 
-                    continue;
-                }
-                else
-                {
-                    throw new IllegalArgumentException(
-                            "Unsupported JDBC type: " + jdbctype);
-                }
+            for (TableRow row : rows)
+            {
+                loadParameters(statement, columns, row);
+                statement.addBatch();
             }
 
-            return statement.executeUpdate();
+            return statement.executeBatch();
         }
         finally
         {
@@ -1370,25 +1531,124 @@ public class DatabaseManager
     }
 
     /**
-     * Return metadata about a table.
+     * Bind the values of the given columns in a table row to the parameters
+     * of a prepared statement, in order.
+     * 
+     * @param statement
+     *            The statement to bind parameters on
+     * @param columns
+     *            The columns to bind
+     * @param row
+     *            The row
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    private static void loadParameters(PreparedStatement statement,
+            List columns, TableRow row) throws SQLException
+    {
+        String dbName =ConfigurationManager.getProperty("db.name");
+        int count = 0;
+
+        for (Iterator iterator = columns.iterator(); iterator.hasNext();)
+        {
+            count++;
+
+            ColumnInfo info = (ColumnInfo) iterator.next();
+            String column = info.getName();
+            int jdbctype = info.getType();
+
+            if (row.isColumnNull(column))
+            {
+                statement.setNull(count, jdbctype);
+
+                continue;
+            }
+            else if (jdbctype == Types.BIT)
+            {
+                statement.setBoolean(count, row.getBooleanColumn(column));
+
+                continue;
+            }
+            else if ((jdbctype == Types.INTEGER) || (jdbctype == Types.NUMERIC)
+                    || (jdbctype == Types.DECIMAL))
+            {
+                // If we are using Oracle, we can pass in long values, so always do so.
+                if ("oracle".equals(dbName))
+                    statement.setLong(count, row.getLongColumn(column));
+                else
+                    statement.setInt(count, row.getIntColumn(column));
+
+                continue;
+            }
+            else if (jdbctype == Types.BIGINT)
+            {
+                statement.setLong(count, row.getLongColumn(column));
+            }
+            else if (jdbctype == Types.CLOB && "oracle".equals(dbName))
+            {
+                // Support CLOBs in place of TEXT columns in Oracle
+                statement.setString(count, row.getStringColumn(column));
+
+                continue;
+            }
+            else if (jdbctype == Types.VARCHAR)
+            {
+                statement.setString(count, row.getStringColumn(column));
+
+                continue;
+            }
+            else if (jdbctype == Types.DATE)
+            {
+                java.sql.Date d = new java.sql.Date(row.getDateColumn(
+                        column).getTime());
+                statement.setDate(count, d);
+
+                continue;
+            }
+            else if (jdbctype == Types.TIME)
+            {
+                Time t = new Time(row.getDateColumn(column).getTime());
+                statement.setTime(count, t);
+
+                continue;
+            }
+            else if (jdbctype == Types.TIMESTAMP)
+            {
+                Timestamp t = new Timestamp(row.getDateColumn(column)
+                        .getTime());
+                statement.setTimestamp(count, t);
+
+                continue;
+            }
+            else
+            {
+                throw new IllegalArgumentException(
+                        "Unsupported JDBC type: " + jdbctype);
+            }
+        }
+    }
+
+    /**
+     * Return metadata about a table. This is read from the database the first
+     * time the table is used, and cached from then on.
      * 
      * @param table
      *            The name of the table
-     * @return An map of info.
+     * @return The table's TableInfo.
      * @exception SQLException
      *                If a database error occurs
      */
-    private static Map getColumnInfoInternal(String table) throws SQLException
+    static TableInfo getTableInfo(String table) throws SQLException
     {
         String ctable = canonicalize(table);
-        Map results = (Map) info.get(ctable);
+        TableInfo results = info.get(ctable);
 
         if (results != null)
         {
             return results;
         }
 
-        results = retrieveColumnInfo(ctable);
+        results = new TableInfo(ctable, retrieveColumnInfo(ctable));
         info.put(ctable, results);
 
         return results;
@@ -1399,13 +1659,13 @@ public class DatabaseManager
      * 
      * @param table
      *            The RDBMS table.
-     * @return A map of information about the columns. The key is the name of
-     *         the column, a String; the value is a ColumnInfo object.
+     * @return Information about the columns, in the order they appear in
+     *         the table.
      * @exception SQLException
      *                If there is a problem retrieving information from the
      *                RDBMS.
      */
-    private static Map retrieveColumnInfo(String table) throws SQLException
+    private static ColumnInfo[] retrieveColumnInfo(String table) throws SQLException
     {
         Connection connection = null;
         ResultSet pkcolumns = null;
@@ -1417,7 +1677,7 @@ public class DatabaseManager
             connection = getConnection();
 
             DatabaseMetaData metadata = connection.getMetaData();
-            HashMap results = new HashMap();
+            List<ColumnInfo> results = new ArrayList<ColumnInfo>();
 
             int max = metadata.getMaxTableNameLength();
             String tname = (table.length() >= max) ? table
@@ -1443,10 +1703,10 @@ public class DatabaseManager
                     cinfo.setIsPrimaryKey(true);
                 }
 
-                results.put(column, cinfo);
+                results.add(cinfo);
             }
 
-            return results;
+            return results.toArray(new ColumnInfo[results.size()]);
         }
         finally
         {
@@ -1476,6 +1736,8 @@ public class DatabaseManager
         if (initialized)
         {
             initialized = false;
+            IDAllocator.reset();
+
             // Get the registered DBCP pooling driver
             PoolingDriver driver = (PoolingDriver)DriverManager.getDriver("jdbc:apache:commons:dbcp:");
 
@@ -1694,6 +1956,11 @@ public class DatabaseManager
 	    		Timestamp timestamp = (Timestamp) parameter;
 	    		statement.setTimestamp(idx,timestamp);
 	    	}
+	    	else if (parameter instanceof Boolean)
+	    	{
+	    		Boolean bool = (Boolean) parameter;
+	    		statement.setBoolean(idx,bool.booleanValue());
+	    	}
 	    	else
 	    	{
 	    		throw new SQLException("Attempting to insert unknown datatype ("+parameter.getClass().getName()+") into SQL statement.");
@@ -1702,132 +1969,3 @@ public class DatabaseManager
 	}
 
 }
-
-/**
- * Represents a column in an RDBMS table.
- */
-
-class ColumnInfo
-{
-    /** The name of the column */
-    private String name;
-
-    /** The JDBC type of the column */
-    private int type;
-
-    /** True if this column is a primary key */
-    private boolean isPrimaryKey;
-
-    /**
-     * Constructor
-     */
-    ColumnInfo()
-    {
-    }
-
-    /**
-     * Constructor
-     */
-    ColumnInfo(String name, int type)
-    {
-        this.name = name;
-        this.type = type;
-    }
-
-    /**
-     * Return the column name.
-     * 
-     * @return - The column name
-     */
-    public String getName()
-    {
-        return name;
-    }
-
-    /**
-     * Set the column name
-     * 
-     * @param v -
-     *            The column name
-     */
-    void setName(String v)
-    {
-        name = v;
-    }
-
-    /**
-     * Return the JDBC type. This is one of the constants from java.sql.Types.
-     * 
-     * @return - The JDBC type
-     * @see java.sql.Types
-     */
-    public int getType()
-    {
-        return type;
-    }
-
-    /**
-     * Set the JDBC type. This should be one of the constants from
-     * java.sql.Types.
-     * 
-     * @param v -
-     *            The JDBC type
-     * @see java.sql.Types
-     */
-    void setType(int v)
-    {
-        type = v;
-    }
-
-    /**
-     * Return true if this column is a primary key.
-     * 
-     * @return True if this column is a primary key, false otherwise.
-     */
-    public boolean isPrimaryKey()
-    {
-        return isPrimaryKey;
-    }
-
-    /**
-     * Set whether this column is a primary key.
-     * 
-     * @param v
-     *            True if this column is a primary key.
-     */
-    void setIsPrimaryKey(boolean v)
-    {
-        this.isPrimaryKey = v;
-    }
-
-    /*
-     * Return true if this object is equal to other, false otherwise.
-     * 
-     * @return True if this object is equal to other, false otherwise.
-     */
-    public boolean equals(Object other)
-    {
-        if (!(other instanceof ColumnInfo))
-        {
-            return false;
-        }
-
-        ColumnInfo theOther = (ColumnInfo) other;
-
-        return ((name != null) ? name.equals(theOther.name)
-                : (theOther.name == null))
-                && (type == theOther.type)
-                && (isPrimaryKey == theOther.isPrimaryKey);
-    }
-
-    /*
-     * Return a hashCode for this object.
-     * 
-     * @return A hashcode for this object.
-     */
-    public int hashCode()
-    {
-        return new StringBuffer().append(name).append(type)
-                .append(isPrimaryKey).toString().hashCode();
-    }
-}
@@ -0,0 +1,303 @@
+/*
+ * IDAllocator.java
+ *
+ * Version: $Revision$
+ *
+ * Date: $Date$
+ *
+ * Copyright (c) 2002-2005, Hewlett-Packard Company and Massachusetts
+ * Institute of Technology.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * - Neither the name of the Hewlett-Packard Company nor the name of the
+ * Massachusetts Institute of Technology nor the names of their
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package org.dspace.storage.rdbms;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.dspace.core.ConfigurationManager;
+
+/**
+ * Hands out primary key values for a single table. Rather than asking the
+ * database for one ID per INSERT, a block of values is reserved from the
+ * table's sequence in a single query and then handed out from memory without
+ * locking. A new block is only fetched once the current one is used up.
+ * <p>
+ * The block size is read from <code>db.id.blocksize</code> in dspace.cfg. A
+ * value of 1 (the default) reserves one ID per query, exactly as DatabaseManager
+ * has always done. Larger values make bulk ingest much cheaper, at the cost of
+ * gaps in the ID sequence when the JVM exits with reserved IDs still unused;
+ * since several JVMs (webapps and command line tools) may allocate from the
+ * same sequence, IDs are unique but no longer strictly increasing in time.
+ *
+ * @version $Revision$
+ */
+class IDAllocator
+{
+    /** log4j category */
+    private static Logger log = Logger.getLogger(IDAllocator.class);
+
+    /** The allocators that exist in this JVM, keyed by canonical table name */
+    private static ConcurrentHashMap<String, IDAllocator> allocators =
+        new ConcurrentHashMap<String, IDAllocator>();
+
+    /** The canonical name of the table that IDs are allocated for */
+    private String table;
+
+    /** The block of IDs currently being handed out */
+    private volatile Block block = new Block(new int[0]);
+
+    /**
+     * Return the allocator for the given table, creating it if necessary.
+     *
+     * @param table
+     *            The canonical name of the table
+     * @return The allocator for that table
+     */
+    static IDAllocator getInstance(String table)
+    {
+        IDAllocator allocator = allocators.get(table);
+
+        if (allocator == null)
+        {
+            allocator = new IDAllocator(table);
+            IDAllocator existing = allocators.putIfAbsent(table, allocator);
+
+            if (existing != null)
+            {
+                allocator = existing;
+            }
+        }
+
+        return allocator;
+    }
+
+    /**
+     * Discard all reserved IDs. The unused IDs are simply lost, which leaves
+     * a gap in the sequence but is otherwise harmless.
+     */
+    static void reset()
+    {
+        allocators.clear();
+    }
+
+    private IDAllocator(String table)
+    {
+        this.table = table;
+    }
+
+    /**
+     * Return a new ID which is safe to use as the primary key of a new row.
+     *
+     * @param connection
+     *            The connection to use if a new block has to be reserved
+     * @return a new ID
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    int nextID(Connection connection) throws SQLException
+    {
+        while (true)
+        {
+            Block current = block;
+            int id = current.next();
+
+            if (id >= 0)
+            {
+                return id;
+            }
+
+            synchronized (this)
+            {
+                // Another thread may already have refilled it
+                if (block == current)
+                {
+                    block = new Block(reserve(connection, getBlockSize()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Return <code>count</code> new IDs, reserving them with as few queries
+     * as possible.
+     *
+     * @param connection
+     *            The connection to use if a new block has to be reserved
+     * @param count
+     *            The number of IDs required
+     * @return an array of <code>count</code> new IDs
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    int[] nextIDs(Connection connection, int count) throws SQLException
+    {
+        int[] ids = new int[count];
+        int filled = 0;
+
+        // Use up whatever is left of the current block first
+        while (filled < count)
+        {
+            int id = block.next();
+
+            if (id < 0)
+            {
+                break;
+            }
+
+            ids[filled++] = id;
+        }
+
+        if (filled < count)
+        {
+            int[] reserved = reserve(connection, count - filled);
+            System.arraycopy(reserved, 0, ids, filled, reserved.length);
+        }
+
+        return ids;
+    }
+
+    /**
+     * Reserve <code>size</code> values from the table's sequence in a single
+     * round trip. Unlike {@link #nextIDs}, this never hands out IDs from a
+     * block reserved earlier, so they are in the order the sequence gave
+     * them out across every JVM using the database.
+     */
+    int[] reserve(Connection connection, int size) throws SQLException
+    {
+        String query;
+
+        if ("oracle".equals(ConfigurationManager.getProperty("db.name")))
+        {
+            query = "SELECT " + table + "_seq.nextval FROM dual " +
+                    "CONNECT BY LEVEL <= ?";
+        }
+        else if (size == 1)
+        {
+            query = "SELECT getnextid('" + table + "') AS result";
+        }
+        else
+        {
+            query = "SELECT getnextid('" + table + "') AS result " +
+                    "FROM generate_series(1, ?)";
+        }
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("Reserving " + size + " IDs for " + table);
+        }
+
+        PreparedStatement statement = null;
+        ResultSet rs = null;
+
+        try
+        {
+            statement = connection.prepareStatement(query);
+
+            if (query.indexOf('?') != -1)
+            {
+                statement.setInt(1, size);
+            }
+
+            rs = statement.executeQuery();
+
+            int[] ids = new int[size];
+            int count = 0;
+
+            while (count < size && rs.next())
+            {
+                ids[count++] = rs.getInt(1);
+            }
+
+            if (count < size)
+            {
+                throw new SQLException("Unable to retrieve sequence ID");
+            }
+
+            return ids;
+        }
+        finally
+        {
+            if (rs != null)
+            {
+                try { rs.close(); } catch (SQLException sqle) { }
+            }
+
+            if (statement != null)
+            {
+                try { statement.close(); } catch (SQLException sqle) { }
+            }
+        }
+    }
+
+    private static int getBlockSize()
+    {
+        int size = ConfigurationManager.getIntProperty("db.id.blocksize");
+
+        return (size < 1) ? 1 : size;
+    }
+
+    /**
+     * A block of reserved IDs. IDs are claimed with an atomic increment, so
+     * any number of threads can take IDs from the same block concurrently.
+     */
+    private static class Block
+    {
+        private int[] ids;
+
+        private AtomicInteger position = new AtomicInteger(0);
+
+        Block(int[] ids)
+        {
+            this.ids = ids;
+        }
+
+        /**
+         * @return the next unused ID in this block, or -1 if the block has
+         *         been used up
+         */
+        int next()
+        {
+            if (position.get() >= ids.length)
+            {
+                return -1;
+            }
+
+            int i = position.getAndIncrement();
+
+            return (i < ids.length) ? ids[i] : -1;
+        }
+    }
+}
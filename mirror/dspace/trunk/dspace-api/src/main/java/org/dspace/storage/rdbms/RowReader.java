@@ -0,0 +1,106 @@
+/*
+ * RowReader.java
+ *
+ * Version: $Revision$
+ *
+ * Date: $Date$
+ *
+ * Copyright (c) 2002-2005, Hewlett-Packard Company and Massachusetts
+ * Institute of Technology.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * - Neither the name of the Hewlett-Packard Company nor the name of the
+ * Massachusetts Institute of Technology nor the names of their
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package org.dspace.storage.rdbms;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Knows where each column of a ResultSet goes in a TableRow. This is worked
+ * out once per ResultSet, rather than once per row.
+ *
+ * @version $Revision$
+ */
+class RowReader
+{
+    /** The canonical name of the table, or null for ad-hoc results */
+    final String table;
+
+    /** The columns of the rows to create */
+    final TableInfo info;
+
+    /** The TableRow column ordinal of each ResultSet column */
+    final int[] ordinals;
+
+    /** The JDBC type of each ResultSet column */
+    final int[] types;
+
+    /**
+     * Constructor
+     * 
+     * @param meta
+     *            The ResultSetMetaData
+     * @param table
+     *            The canonical name of the table, or null if the column
+     *            names are to be read from the ResultSetMetaData.
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    RowReader(ResultSetMetaData meta, String table) throws SQLException
+    {
+        int columns = meta.getColumnCount();
+
+        this.table = table;
+        this.info = (table == null) ? TableInfo.forColumnNames(null,
+                DatabaseManager.getColumnNames(meta)) : DatabaseManager
+                .getTableInfo(table);
+        this.ordinals = new int[columns];
+        this.types = new int[columns];
+
+        for (int i = 0; i < columns; i++)
+        {
+            types[i] = meta.getColumnType(i + 1);
+
+            if (table == null)
+            {
+                ordinals[i] = i;
+                continue;
+            }
+
+            String name = meta.getColumnName(i + 1);
+            ordinals[i] = info.getOrdinal(name);
+
+            if (ordinals[i] < 0)
+            {
+                throw new IllegalArgumentException("No such column " + name);
+            }
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * TableInfo.java
+ *
+ * Version: $Revision$
+ *
+ * Date: $Date$
+ *
+ * Copyright (c) 2002-2005, Hewlett-Packard Company and Massachusetts
+ * Institute of Technology.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * - Neither the name of the Hewlett-Packard Company nor the name of the
+ * Massachusetts Institute of Technology nor the names of their
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package org.dspace.storage.rdbms;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Everything DatabaseManager and TableRow need to know about the columns of
+ * a table, worked out once and then shared by every row of that table. This
+ * holds the columns in a fixed order, so that a TableRow can keep its values
+ * in arrays indexed by column ordinal rather than in maps, along with the
+ * SQL used to insert, find, update and delete rows of the table.
+ * <p>
+ * Instances are also created for the results of ad-hoc queries that are not
+ * associated with a table; these have column names but no SQL.
+ * <p>
+ * Instances are immutable once constructed, apart from the cache of UPDATE
+ * statements, and so may be shared freely between threads.
+ *
+ * @version $Revision$
+ */
+class TableInfo
+{
+    /** The canonical name of the table, or null for ad-hoc results */
+    private final String table;
+
+    /** The columns, in ordinal order */
+    private final ColumnInfo[] columns;
+
+    /** The canonical column names, in ordinal order */
+    private final String[] names;
+
+    /** Map of canonical column name to ordinal */
+    private final Map<String, Integer> ordinals;
+
+    /** Ordinal of the primary key column, or -1 if there is none */
+    private final int pk;
+
+    /** The unmodifiable list of column names */
+    private final List<String> columnNames;
+
+    private final String insertSQL;
+
+    private final String findSQL;
+
+    private final String deleteSQL;
+
+    /**
+     * UPDATE statements, keyed by a bitmask of the columns they set. Only
+     * used for tables with fewer than 64 columns, which is all of them.
+     */
+    private final Map<Long, String> updateSQL = new ConcurrentHashMap<Long, String>();
+
+    /**
+     * Constructor
+     *
+     * @param table
+     *            The canonical name of the table, or null if the columns are
+     *            not those of a table.
+     * @param columns
+     *            The columns, in the order they should be stored
+     */
+    TableInfo(String table, ColumnInfo[] columns)
+    {
+        this.table = table;
+        this.columns = columns;
+        this.names = new String[columns.length];
+
+        Map<String, Integer> ordinals = new HashMap<String, Integer>();
+        int pk = -1;
+
+        for (int i = 0; i < columns.length; i++)
+        {
+            names[i] = TableRow.canonicalize(columns[i].getName());
+            ordinals.put(names[i], new Integer(i));
+
+            if (pk < 0 && columns[i].isPrimaryKey())
+            {
+                pk = i;
+            }
+        }
+
+        List<String> columnNames = new ArrayList<String>(names.length);
+        Collections.addAll(columnNames, names);
+
+        this.ordinals = ordinals;
+        this.pk = pk;
+        this.columnNames = Collections.unmodifiableList(columnNames);
+
+        if (table != null)
+        {
+            insertSQL = buildInsertSQL();
+        }
+        else
+        {
+            insertSQL = null;
+        }
+
+        if (table != null && pk >= 0)
+        {
+            findSQL = "select * from " + table + " where " + names[pk] + " = ? ";
+            deleteSQL = "delete from " + table + " where " + names[pk] + " = ? ";
+        }
+        else
+        {
+            findSQL = null;
+            deleteSQL = null;
+        }
+    }
+
+    /**
+     * Create an instance for a list of column names, with no type or primary
+     * key information.
+     *
+     * @param table
+     *            The name of the table, or null
+     * @param columns
+     *            The column names. Each element of the list is a String.
+     */
+    static TableInfo forColumnNames(String table, List columns)
+    {
+        ColumnInfo[] info = new ColumnInfo[columns.size()];
+
+        for (int i = 0; i < info.length; i++)
+        {
+            info[i] = new ColumnInfo((String) columns.get(i), java.sql.Types.OTHER);
+        }
+
+        return new TableInfo(table, info);
+    }
+
+    /**
+     * @return the canonical name of the table, or null
+     */
+    String getTable()
+    {
+        return table;
+    }
+
+    /**
+     * @return the number of columns
+     */
+    int getColumnCount()
+    {
+        return columns.length;
+    }
+
+    /**
+     * @return the columns, in ordinal order. The array must not be modified.
+     */
+    ColumnInfo[] getColumns()
+    {
+        return columns;
+    }
+
+    /**
+     * @return the canonical column names, in ordinal order
+     */
+    List<String> getColumnNames()
+    {
+        return columnNames;
+    }
+
+    /**
+     * @param ordinal
+     *            A column ordinal
+     * @return the canonical name of the column with that ordinal
+     */
+    String getName(int ordinal)
+    {
+        return names[ordinal];
+    }
+
+    /**
+     * Return the ordinal of the named column. The name is looked up as given
+     * first, so callers that already use the canonical form (which is almost
+     * all of them) never pay for case conversion.
+     *
+     * @param column
+     *            The column name (case-insensitive)
+     * @return the ordinal of the column, or -1 if there is no such column
+     */
+    int getOrdinal(String column)
+    {
+        Integer ordinal = ordinals.get(column);
+
+        if (ordinal == null)
+        {
+            ordinal = ordinals.get(TableRow.canonicalize(column));
+        }
+
+        return (ordinal == null) ? -1 : ordinal.intValue();
+    }
+
+    /**
+     * @return the primary key column, or null if the table has no primary key
+     */
+    ColumnInfo getPrimaryKey()
+    {
+        return (pk < 0) ? null : columns[pk];
+    }
+
+    /**
+     * @return the ordinal of the primary key column, or -1 if the table has
+     *         no primary key
+     */
+    int getPrimaryKeyOrdinal()
+    {
+        return pk;
+    }
+
+    /**
+     * @return SQL to insert every column of a row
+     */
+    String getInsertSQL()
+    {
+        return insertSQL;
+    }
+
+    /**
+     * @return SQL to select a row by its primary key, or null if the table has
+     *         no primary key
+     */
+    String getFindSQL()
+    {
+        return findSQL;
+    }
+
+    /**
+     * @return SQL to delete a row by its primary key, or null if the table has
+     *         no primary key
+     */
+    String getDeleteSQL()
+    {
+        return deleteSQL;
+    }
+
+    /**
+     * Return SQL to update the given columns of a row, identified by its
+     * primary key. The SQL for each combination of columns is built once and
+     * then reused.
+     *
+     * @param updated
+     *            The columns to set, in ordinal order. The primary key column
+     *            must not be among them.
+     * @return the UPDATE statement
+     */
+    String getUpdateSQL(List<ColumnInfo> updated)
+    {
+        Long key = null;
+
+        if (columns.length < 64)
+        {
+            long mask = 0;
+
+            for (ColumnInfo column : updated)
+            {
+                mask |= 1L << getOrdinal(column.getName());
+            }
+
+            key = new Long(mask);
+            String sql = updateSQL.get(key);
+
+            if (sql != null)
+            {
+                return sql;
+            }
+        }
+
+        StringBuffer sql = new StringBuffer().append("update ").append(table)
+                .append(" set ");
+
+        String seperator = "";
+        for (ColumnInfo column : updated)
+        {
+            sql.append(seperator).append(column.getName()).append(" = ?");
+            seperator = ", ";
+        }
+
+        sql.append(" where ").append(names[pk]).append(" = ?");
+
+        if (key != null)
+        {
+            updateSQL.put(key, sql.toString());
+        }
+
+        return sql.toString();
+    }
+
+    private String buildInsertSQL()
+    {
+        StringBuffer sql = new StringBuffer().append("INSERT INTO ").append(
+                table).append(" ( ");
+
+        for (int i = 0; i < columns.length; i++)
+        {
+            sql.append((i == 0) ? "" : ",").append(columns[i].getName());
+        }
+
+        sql.append(") VALUES ( ");
+
+        // Values to insert
+        for (int i = 0; i < columns.length; i++)
+        {
+            sql.append((i == 0) ? "" : ",").append("?");
+        }
+
+        // Watch the syntax
+        sql.append(")");
+
+        return sql.toString();
+    }
+}
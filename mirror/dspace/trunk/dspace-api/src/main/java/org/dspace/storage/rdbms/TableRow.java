@@ -39,10 +39,8 @@
  */
 package org.dspace.storage.rdbms;
 
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 import org.dspace.core.ConfigurationManager;
 
@@ -65,14 +63,18 @@ public class TableRow
     /** The name of the database table containing this row */
     private String table;
 
+    /** The columns of this row, shared with all other rows of the table */
+    private TableInfo info;
+
     /**
-     * A map of column names to column values. The key of the map is a String,
-     * the column name; the value is an Object, either an Integer, Boolean,
-     * Date, or String. If the value is NULL_OBJECT, then the column was NULL.
+     * The column values, indexed by column ordinal. Each value is an Object,
+     * either an Integer, Long, Boolean, Date, or String. If the value is
+     * NULL_OBJECT, then the column was NULL.
      */
-    private Map data = new HashMap();
+    private Object[] data;
 
-    private Map changed = new HashMap();
+    /** Whether each column has changed, indexed by column ordinal */
+    private boolean[] changed;
 
     /**
      * Constructor
@@ -86,10 +88,25 @@ public class TableRow
      *            IllegalArgumentException to be thrown.
      */
     public TableRow(String table, List columns)
+    {
+        this(table, TableInfo.forColumnNames(table, columns));
+    }
+
+    /**
+     * Constructor for rows whose columns are already known.
+     * 
+     * @param table
+     *            The name of the database table containing this row.
+     * @param info
+     *            The columns of the row
+     */
+    TableRow(String table, TableInfo info)
     {
         this.table = table;
-        nullColumns(columns);
-        resetChanged(columns);
+        this.info = info;
+        this.data = new Object[info.getColumnCount()];
+        this.changed = new boolean[info.getColumnCount()];
+        Arrays.fill(data, NULL_OBJECT);
     }
 
     /**
@@ -112,7 +129,7 @@ public class TableRow
      */
     public boolean hasColumn(String column)
     {
-        return data.get(canonicalize(column)) != null;
+        return info.getOrdinal(column) >= 0;
     }
 
     /**
@@ -124,7 +141,9 @@ public class TableRow
      */
     public boolean hasColumnChanged(String column)
     {
-        return changed.get(canonicalize(column)) == Boolean.TRUE;
+        int ordinal = info.getOrdinal(column);
+
+        return (ordinal >= 0) && changed[ordinal];
     }
 
     /**
@@ -136,12 +155,7 @@ public class TableRow
      */
     public boolean isColumnNull(String column)
     {
-        if (!hasColumn(column))
-        {
-            throw new IllegalArgumentException("No such column " + column);
-        }
-
-        return data.get(canonicalize(column)) == NULL_OBJECT;
+        return data[ordinal(column)] == NULL_OBJECT;
     }
     
     /**
@@ -157,26 +171,13 @@ public class TableRow
      */
     public int getIntColumn(String column)
     {
-        if (!hasColumn(column))
-        {
-            throw new IllegalArgumentException("No such column " + column);
-        }
+        Object value = data[ordinal(column)];
 
-        String name = canonicalize(column);
-
-        if (isColumnNull(name))
+        if (value == NULL_OBJECT)
         {
             return -1;
         }
 
-        Object value = data.get(name);
-
-        if (value == null)
-        {
-            throw new IllegalArgumentException("Column " + column
-                    + " not present");
-        }
-
         if (!(value instanceof Integer))
         {
             throw new IllegalArgumentException("Value for " + column
@@ -198,26 +199,13 @@ public class TableRow
      */
     public long getLongColumn(String column)
     {
-        if (!hasColumn(column))
-        {
-            throw new IllegalArgumentException("No such column " + column);
-        }
-
-        String name = canonicalize(column);
+        Object value = data[ordinal(column)];
 
-        if (isColumnNull(name))
+        if (value == NULL_OBJECT)
         {
             return -1;
         }
 
-        Object value = data.get(name);
-
-        if (value == null)
-        {
-            throw new IllegalArgumentException("Column " + column
-                    + " not present");
-        }
-
         // If the value is an integer, it can be represented without error as a long
         // So, allow the return of a long. (This is needed for Oracle support).
         if ((value instanceof Integer))
@@ -247,26 +235,13 @@ public class TableRow
      */
     public String getStringColumn(String column)
     {
-        if (!hasColumn(column))
-        {
-            throw new IllegalArgumentException("No such column " + column);
-        }
-
-        String name = canonicalize(column);
+        Object value = data[ordinal(column)];
 
-        if (isColumnNull(name))
+        if (value == NULL_OBJECT)
         {
             return null;
         }
 
-        Object value = data.get(name);
-
-        if (value == null)
-        {
-            throw new IllegalArgumentException("Column " + column
-                    + " not present");
-        }
-
         if (!(value instanceof String))
         {
             throw new IllegalArgumentException("Value is not an string");
@@ -288,27 +263,13 @@ public class TableRow
      */
     public boolean getBooleanColumn(String column)
     {
-        if (!hasColumn(column))
-        {
-            throw new IllegalArgumentException("No such column " + column);
-        }
+        Object value = data[ordinal(column)];
 
-        String name = canonicalize(column);
-
-        if (isColumnNull(name))
+        if (value == NULL_OBJECT)
         {
             return false;
         }
 
-        Object value = data.get(name);
-
-        // make sure that we tolerate integers or booleans
-        if (value == null)
-        {
-            throw new IllegalArgumentException("Column " + column
-                    + " not present");
-        }
-
         if ((value instanceof Boolean))
         {
             return ((Boolean) value).booleanValue();
@@ -344,26 +305,13 @@ public class TableRow
      */
     public java.util.Date getDateColumn(String column)
     {
-        if (!hasColumn(column))
-        {
-            throw new IllegalArgumentException("No such column " + column);
-        }
+        Object value = data[ordinal(column)];
 
-        String name = canonicalize(column);
-
-        if (isColumnNull(name))
+        if (value == NULL_OBJECT)
         {
             return null;
         }
 
-        Object value = data.get(name);
-
-        if (value == null)
-        {
-            throw new IllegalArgumentException("Column " + column
-                    + " not present");
-        }
-
         if (!(value instanceof java.util.Date))
         {
             throw new IllegalArgumentException("Value is not a Date");
@@ -382,12 +330,7 @@ public class TableRow
      */
     public void setColumnNull(String column)
     {
-        if (!hasColumn(column))
-        {
-            throw new IllegalArgumentException("No such column " + column);
-        }
-
-        setColumnNullInternal(canonicalize(column));
+        setColumnInternal(ordinal(column), NULL_OBJECT);
     }
 
     /**
@@ -402,31 +345,18 @@ public class TableRow
      */
     public void setColumn(String column, boolean b)
     {
-        if (!hasColumn(column))
-        {
-            throw new IllegalArgumentException("No such column " + column);
-        }
-
-        String canonName = canonicalize(column);
+        int ordinal = ordinal(column);
         if ("oracle".equals(ConfigurationManager.getProperty("db.name")))
         {
             // if oracle, use 1 or 0 for true/false
-            Integer value = b ? new Integer(1) : new Integer(0);
-            if (!value.equals(data.get(canonName)))
-            {
-                data.put(canonName, value);
-                changed.put(canonName, Boolean.TRUE);
-            }
+            Integer value = Integer.valueOf(b ? 1 : 0);
+            setColumnInternal(ordinal, value);
         }
         else
         {
             // default to postgres true/false
             Boolean value = b ? Boolean.TRUE : Boolean.FALSE;
-            if (!value.equals(data.get(canonName)))
-            {
-                data.put(canonName, value);
-                changed.put(canonName, Boolean.TRUE);
-            }
+            setColumnInternal(ordinal, value);
         }
     }
 
@@ -442,18 +372,9 @@ public class TableRow
      */
     public void setColumn(String column, String s)
     {
-        if (!hasColumn(column))
-        {
-            throw new IllegalArgumentException("No such column " + column);
-        }
-
-        String canonName = canonicalize(column);
+        int ordinal = ordinal(column);
         Object value = (s == null) ? NULL_OBJECT : s;
-        if (!value.equals(data.get(canonName)))
-        {
-            data.put(canonName, value);
-            changed.put(canonName, Boolean.TRUE);
-        }
+        setColumnInternal(ordinal, value);
     }
 
     /**
@@ -468,18 +389,9 @@ public class TableRow
      */
     public void setColumn(String column, int i)
     {
-        if (!hasColumn(column))
-        {
-            throw new IllegalArgumentException("No such column " + column);
-        }
-
-        String canonName = canonicalize(column);
-        Integer value = new Integer(i);
-        if (!value.equals(data.get(canonName)))
-        {
-            data.put(canonName, value);
-            changed.put(canonName, Boolean.TRUE);
-        }
+        int ordinal = ordinal(column);
+        Integer value = Integer.valueOf(i);
+        setColumnInternal(ordinal, value);
     }
 
     /**
@@ -494,18 +406,9 @@ public class TableRow
      */
     public void setColumn(String column, long l)
     {
-        if (!hasColumn(column))
-        {
-            throw new IllegalArgumentException("No such column " + column);
-        }
-
-        String canonName = canonicalize(column);
-        Long value = new Long(l);
-        if (!value.equals(data.get(canonName)))
-        {
-            data.put(canonName, value);
-            changed.put(canonName, Boolean.TRUE);
-        }
+        int ordinal = ordinal(column);
+        Long value = Long.valueOf(l);
+        setColumnInternal(ordinal, value);
     }
 
     /**
@@ -521,18 +424,9 @@ public class TableRow
      */
     public void setColumn(String column, java.util.Date d)
     {
-        if (!hasColumn(column))
-        {
-            throw new IllegalArgumentException("No such column " + column);
-        }
-
-        String canonName = canonicalize(column);
+        int ordinal = ordinal(column);
         Object value = (d == null) ? NULL_OBJECT : d;
-        if (!value.equals(data.get(canonName)))
-        {
-            data.put(canonName, value);
-            changed.put(canonName, Boolean.TRUE);
-        }
+        setColumnInternal(ordinal, value);
     }
 
     ////////////////////////////////////////
@@ -560,11 +454,10 @@ public class TableRow
     	
     	result.append(NEWLINE);
 
-        for (Iterator iterator = data.keySet().iterator(); iterator.hasNext();)
+        for (int i = 0; i < data.length; i++)
         {
-            String column = (String) iterator.next();
-            result.append("\t").append(column).append(" = ").append(
-                    isColumnNull(column) ? "NULL" : data.get(column)).append(
+            result.append("\t").append(info.getName(i)).append(" = ").append(
+                    (data[i] == NULL_OBJECT) ? "NULL" : data[i]).append(
                     NEWLINE);
         }
 
@@ -594,7 +487,10 @@ public class TableRow
             return false;
         }
 
-        return data.equals(((TableRow) obj).data);
+        TableRow other = (TableRow) obj;
+
+        return info.getColumnNames().equals(other.info.getColumnNames())
+                && Arrays.equals(data, other.data);
     }
 
     /**
@@ -617,56 +513,89 @@ public class TableRow
     }
 
     /**
-     * Set columns to null.
-     * 
-     * @param columns -
-     *            A list of the columns to set to null. Each element of the list
-     *            is a String.
+     * package private method to reset the flags of which columns have been updated
+     * This is used by the database manager after it has finished processing the contents
+     * of a resultset, so that it can update only columns that have been updated.
+     * Note that this method does not reset the values themselves, only the flags,
+     * and should not be considered safe to call from anywhere other than the DatabaseManager.
      */
-    private void nullColumns(List columns)
+    void resetChanged()
     {
-        for (Iterator iterator = columns.iterator(); iterator.hasNext();)
-        {
-            setColumnNullInternal((String) iterator.next());
-        }
+        Arrays.fill(changed, false);
     }
 
-    private void resetChanged(List columns)
+    /**
+     * Return the columns of this row.
+     */
+    TableInfo getTableInfo()
     {
-        for (Iterator iterator = columns.iterator(); iterator.hasNext();)
-        {
-            changed.put(canonicalize((String) iterator.next()), Boolean.FALSE);
-        }
+        return info;
     }
 
     /**
-     * package private method to reset the flags of which columns have been updated
-     * This is used by the database manager after it has finished processing the contents
-     * of a resultset, so that it can update only columns that have been updated.
-     * Note that this method does not reset the values themselves, only the flags,
-     * and should not be considered safe to call from anywhere other than the DatabaseManager.
+     * Return true if the column with the given ordinal has been updated.
      */
-    void resetChanged()
+    boolean hasColumnChanged(int ordinal)
+    {
+        return changed[ordinal];
+    }
+
+    /**
+     * Return the raw value of the column with the given ordinal, which is
+     * null if the column is an SQL NULL. Used by the DatabaseManager to read
+     * rows without looking up columns by name.
+     */
+    Object getColumnValue(int ordinal)
     {
-        for (Iterator iterator = changed.keySet().iterator(); iterator.hasNext();)
+        Object value = data[ordinal];
+
+        return (value == NULL_OBJECT) ? null : value;
+    }
+
+    /**
+     * Set the raw value of the column with the given ordinal, or set it to
+     * an SQL NULL if the value is null. Used by the DatabaseManager when
+     * reading rows from a ResultSet.
+     */
+    void setColumnValue(int ordinal, Object value)
+    {
+        setColumnInternal(ordinal, (value == null) ? NULL_OBJECT : value);
+    }
+
+    /**
+     * Return the ordinal of the named column, or throw an
+     * IllegalArgumentException if there is no such column.
+     * 
+     * @param column
+     *            The column name (case-insensitive)
+     */
+    private int ordinal(String column)
+    {
+        int ordinal = info.getOrdinal(column);
+
+        if (ordinal < 0)
         {
-            changed.put(canonicalize((String) iterator.next()), Boolean.FALSE);
+            throw new IllegalArgumentException("No such column " + column);
         }
+
+        return ordinal;
     }
 
     /**
-     * Internal method to set column to null. The public method ensures that
-     * column actually exists.
+     * Internal method to set a column value, flagging the column as changed
+     * if the value is different. The public methods ensure that the column
+     * actually exists.
      * 
-     * @param column
+     * @param ordinal
+     * @param value
      */
-    private void setColumnNullInternal(String column)
+    private void setColumnInternal(int ordinal, Object value)
     {
-        String canonName = canonicalize(column);
-        if (data.get(canonName) != NULL_OBJECT)
+        if (value == NULL_OBJECT ? data[ordinal] != NULL_OBJECT
+                : !value.equals(data[ordinal]))
         {
-            data.put(canonName, NULL_OBJECT);
-            changed.put(canonName, Boolean.TRUE);
+            data[ordinal] = value;
+            changed[ordinal] = true;
         }
     }
 }
@@ -68,6 +68,12 @@ public class TableRowIterator
      */
     private String table;
 
+    /**
+     * Maps the columns of the results onto TableRows; created with the first
+     * row
+     */
+    private RowReader reader = null;
+
     /**
      * True if there is a next row
      */
@@ -148,7 +154,12 @@ public class TableRowIterator
 
         hasAdvanced = false;
 
-        return DatabaseManager.process(results, table);
+        if (reader == null)
+        {
+            reader = new RowReader(results.getMetaData(), table);
+        }
+
+        return DatabaseManager.process(results, reader);
     }
 
     /**
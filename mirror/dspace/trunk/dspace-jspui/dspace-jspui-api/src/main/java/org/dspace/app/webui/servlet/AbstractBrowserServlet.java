@@ -82,6 +82,8 @@ public abstract class AbstractBrowserServlet extends DSpaceServlet
             String valueFocusLang = request.getParameter("vfocus_lang");
             int focus = UIUtil.getIntParameter(request, "focus");
             int offset = UIUtil.getIntParameter(request, "offset");
+            int seekID = UIUtil.getIntParameter(request, "seek_id");
+            String seekValue = request.getParameter("seek_value");
             int resultsperpage = UIUtil.getIntParameter(request, "rpp");
             int sortBy = UIUtil.getIntParameter(request, "sort_by");
             int etAl = UIUtil.getIntParameter(request, "etal");
@@ -245,6 +247,7 @@ public abstract class AbstractBrowserServlet extends DSpaceServlet
             scope.setJumpToValueLang(valueFocusLang);
             scope.setStartsWith(startsWith);
             scope.setOffset(offset);
+            scope.setSeek(seekValue, seekID);
             scope.setResultsPerPage(resultsperpage);
             scope.setSortBy(sortBy);
             scope.setBrowseLevel(level);
@@ -3,7 +3,6 @@ package org.dspace.app.webui.servlet;
 import org.dspace.core.Context;
 import org.dspace.core.Constants;
 import org.dspace.core.LogManager;
-import org.dspace.core.Utils;
 import org.dspace.core.ConfigurationManager;
 import org.dspace.core.PluginManager;
 import org.dspace.content.DSpaceObject;
@@ -14,6 +13,7 @@ import org.dspace.content.Community;
 import org.dspace.content.DCValue;
 import org.dspace.authorize.AuthorizeException;
 import org.dspace.authorize.AuthorizeManager;
+import org.dspace.app.util.BitstreamDelivery;
 import org.dspace.app.webui.util.JSPManager;
 import org.dspace.app.webui.util.Authenticate;
 import org.dspace.app.webui.util.UIUtil;
@@ -29,7 +29,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.ServletException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.sql.SQLException;
 import java.net.URL;
 import java.net.URLEncoder;
@@ -48,26 +47,23 @@ public class DSpaceObjectServlet extends DSpaceServlet
         // OK, we have a valid URI. What is it?
         if (dso.getType() == Constants.BITSTREAM)
         {
-            // FIXME: Check for if-modified-since header
             Bitstream bitstream = (Bitstream) dso;
 
             log.info(LogManager.getHeader(context, "view_bitstream",
                     "bitstream_id=" + bitstream.getID()));
 
-            // Pipe the bits
-            InputStream is = bitstream.retrieve();
+            // Check read access before any headers are set
+            AuthorizeManager.authorizeAction(context, bitstream,
+                    Constants.READ);
 
-                    // Set the response MIME type
+            // Set the response MIME type
             response.setContentType(bitstream.getFormat().getMIMEType());
 
-            response.setHeader("Content-Length", String
-                    .valueOf(bitstream.getSize()));
             response.setHeader("Content-disposition", "attachment; filename=" +
                     bitstream.getName());
 
-            Utils.bufferedCopy(is, response.getOutputStream());
-            is.close();
-            response.getOutputStream().flush();
+            // Send the bits, or as much of them as the request asks for
+            BitstreamDelivery.send(request, response, bitstream);
         }
         else if (dso.getType() == Constants.ITEM)
         {
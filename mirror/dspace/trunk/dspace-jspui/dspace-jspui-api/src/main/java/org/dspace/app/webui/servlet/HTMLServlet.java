@@ -40,8 +40,10 @@
 package org.dspace.app.webui.servlet;
 
 import org.apache.log4j.Logger;
+import org.dspace.app.util.BitstreamDelivery;
 import org.dspace.app.webui.util.JSPManager;
 import org.dspace.authorize.AuthorizeException;
+import org.dspace.authorize.AuthorizeManager;
 import org.dspace.content.Bitstream;
 import org.dspace.content.Bundle;
 import org.dspace.content.Item;
@@ -50,7 +52,6 @@ import org.dspace.core.ConfigurationManager;
 import org.dspace.core.Constants;
 import org.dspace.core.Context;
 import org.dspace.core.LogManager;
-import org.dspace.core.Utils;
 import org.dspace.uri.ResolvableIdentifier;
 import org.dspace.uri.IdentifierService;
 import org.dspace.uri.IdentifierException;
@@ -62,7 +63,6 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URLDecoder;
 import java.sql.SQLException;
 
@@ -253,19 +253,15 @@ public class HTMLServlet extends DSpaceServlet
                 log.info(LogManager.getHeader(context, "view_html", "uri="
                         + uri + ",bitstream_id=" + bitstream.getID()));
 
+                // Check read access before any headers are set
+                AuthorizeManager.authorizeAction(context, bitstream,
+                        Constants.READ);
+
                 // Set the response MIME type
                 response.setContentType(bitstream.getFormat().getMIMEType());
 
-                // Response length
-                response.setHeader("Content-Length", String.valueOf(bitstream
-                        .getSize()));
-
-                // Pipe the bits
-                InputStream is = bitstream.retrieve();
-
-                Utils.bufferedCopy(is, response.getOutputStream());
-                is.close();
-                response.getOutputStream().flush();
+                // Send the bits, or as much of them as the request asks for
+                BitstreamDelivery.send(request, response, bitstream);
             }
             else
             {
@@ -40,7 +40,6 @@
 package org.dspace.app.webui.servlet;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.sql.SQLException;
 
 import javax.servlet.ServletException;
@@ -48,14 +47,15 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.log4j.Logger;
+import org.dspace.app.util.BitstreamDelivery;
 import org.dspace.app.webui.util.JSPManager;
 import org.dspace.authorize.AuthorizeException;
+import org.dspace.authorize.AuthorizeManager;
 import org.dspace.content.Bitstream;
 import org.dspace.content.dao.BitstreamDAOFactory;
 import org.dspace.core.Constants;
 import org.dspace.core.Context;
 import org.dspace.core.LogManager;
-import org.dspace.core.Utils;
 
 /**
  * Servlet for retrieving bitstreams. The bits are simply piped to the user.
@@ -115,19 +115,15 @@ public class RetrieveServlet extends DSpaceServlet
             log.info(LogManager.getHeader(context, "view_bitstream",
                     "bitstream_id=" + bitstream.getID()));
 
+            // Check read access before any headers are set
+            AuthorizeManager.authorizeAction(context, bitstream,
+                    Constants.READ);
+
             // Set the response MIME type
             response.setContentType(bitstream.getFormat().getMIMEType());
 
-            // Response length
-            response.setHeader("Content-Length", String.valueOf(bitstream
-                    .getSize()));
-
-            // Pipe the bits
-            InputStream is = bitstream.retrieve();
-
-            Utils.bufferedCopy(is, response.getOutputStream());
-            is.close();
-            response.getOutputStream().flush();
+            // Send the bits, or as much of them as the request asks for
+            BitstreamDelivery.send(request, response, bitstream);
         }
         else
         {
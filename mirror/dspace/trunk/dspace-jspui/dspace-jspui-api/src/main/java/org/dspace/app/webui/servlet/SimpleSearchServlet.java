@@ -43,6 +43,7 @@ import java.io.IOException;
 import java.net.URLEncoder;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -58,6 +59,7 @@ import org.dspace.authorize.AuthorizeException;
 import org.dspace.content.Collection;
 import org.dspace.content.Community;
 import org.dspace.content.Item;
+import org.dspace.content.dao.ItemDAOFactory;
 import org.dspace.uri.ObjectIdentifier;
 import org.dspace.uri.IdentifierService;
 import org.dspace.uri.IdentifierException;
@@ -276,14 +278,14 @@ public class SimpleSearchServlet extends DSpaceServlet
 
             for (int i = 0; i < qResults.getHitTypes().size(); i++)
             {
-                Integer myId    = (Integer) qResults.getHitIds().get(i);
+                int myId        = qResults.getHitIds()[i];
                 String myURI = (String) qResults.getHitURIs().get(i);
                 Integer myType  = (Integer) qResults.getHitTypes().get(i);
 
                 switch (myType.intValue())
                 {
                 case Constants.ITEM:
-                    if (myId != null)
+                    if (myId != -1)
                     {
                         resultsItems[itemCount] = Item.find(context, myId);
                     }
@@ -302,7 +304,7 @@ public class SimpleSearchServlet extends DSpaceServlet
                     break;
 
                 case Constants.COLLECTION:
-                    if (myId != null)
+                    if (myId != -1)
                     {
                         resultsCollections[collCount] = Collection.find(context, myId);
                     }
@@ -322,7 +324,7 @@ public class SimpleSearchServlet extends DSpaceServlet
                     break;
 
                 case Constants.COMMUNITY:
-                    if (myId != null)
+                    if (myId != -1)
                     {
                         resultsCommunities[commCount] = Community.find(context, myId);
                     }
@@ -343,6 +345,11 @@ public class SimpleSearchServlet extends DSpaceServlet
                 }
             }
 
+            // Load the metadata for the whole page of items in one go,
+            // rather than one item at a time as the results are displayed
+            ItemDAOFactory.getInstance(context).loadMetadata(
+                    Arrays.asList(resultsItems));
+
             // Log
             log.info(LogManager.getHeader(context, "search", logInfo + "query=\""
                     + query + "\",results=(" + resultsCommunities.length + ","
@@ -148,6 +148,16 @@
     if (bi.hasNextPage())
     {
         next = next + "&amp;offset=" + bi.getNextOffset();
+
+        // let the next page carry on from the last result on this one
+        if (bi.getNextSeekID() > -1)
+        {
+            next = next + "&amp;seek_id=" + bi.getNextSeekID();
+            if (bi.getNextSeekValue() != null)
+            {
+                next = next + "&amp;seek_value=" + URLEncoder.encode(bi.getNextSeekValue());
+            }
+        }
     }
 
     if (bi.hasPrevPage())
@@ -52,6 +52,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.log4j.Logger;
+import org.dspace.app.util.BitstreamDelivery;
 import org.dspace.authorize.AuthorizeException;
 import org.dspace.authorize.AuthorizeManager;
 import org.dspace.content.Bitstream;
@@ -473,15 +474,9 @@ class DAVBitstream extends DAVDSpaceObject
             // Set the response MIME type
             this.response.setContentType(this.bitstream.getFormat().getMIMEType());
 
-            // Response length
-            this.response.setHeader("Content-Length", String.valueOf(this.bitstream
-                    .getSize()));
-
-            // Pipe the bits
-            InputStream is = this.bitstream.retrieve();
-            Utils.bufferedCopy(is, this.response.getOutputStream());
-            is.close();
-            this.response.getOutputStream().flush();
+            // Send the bits, or as much of them as the request asks for
+            BitstreamDelivery.send(this.request, this.response,
+                    this.bitstream);
         }
     }
 
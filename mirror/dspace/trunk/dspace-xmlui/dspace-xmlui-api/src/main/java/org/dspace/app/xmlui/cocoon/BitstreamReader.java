@@ -41,13 +41,13 @@
 package org.dspace.app.xmlui.cocoon;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.sql.SQLException;
 import java.util.Map;
 
 import javax.mail.internet.MimeUtility;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.avalon.excalibur.pool.Recyclable;
@@ -59,9 +59,8 @@ import org.apache.cocoon.environment.Request;
 import org.apache.cocoon.environment.Response;
 import org.apache.cocoon.environment.SourceResolver;
 import org.apache.cocoon.environment.http.HttpEnvironment;
-import org.apache.cocoon.environment.http.HttpResponse;
 import org.apache.cocoon.reading.AbstractReader;
-import org.apache.cocoon.util.ByteRange;
+import org.dspace.app.util.BitstreamDelivery;
 import org.dspace.app.xmlui.utils.AuthenticationUtil;
 import org.dspace.app.xmlui.utils.ContextUtil;
 import org.dspace.authorize.AuthorizeException;
@@ -141,12 +140,6 @@ public class BitstreamReader extends AbstractReader implements Recyclable
 	private final static String AUTH_REQUIRED_HEADER = "xmlui.BitstreamReader.auth_header";
 	private final static String AUTH_REQUIRED_MESSAGE = "xmlui.BitstreamReader.auth_message";
 
-    /**
-     * How big of a buffer should we use when reading from the bitstream before
-     * writting to the HTTP response?
-     */
-    protected static final int BUFFER_SIZE = 8192;
-
     /**
      * When should a bitstream expire in milliseconds. This should be set to
      * some low value just to prevent someone hiting DSpace repeatily from
@@ -162,8 +155,8 @@ public class BitstreamReader extends AbstractReader implements Recyclable
     /** The Cocoon request */
     protected Request request;
 
-    /** The bitstream file */
-    protected InputStream bitstreamInputStream;
+    /** The bitstream to send */
+    protected Bitstream bitstream;
 
     /** The bitstream's reported size */
     protected long bitstreamSize;
@@ -302,7 +295,7 @@ public class BitstreamReader extends AbstractReader implements Recyclable
 
             // Success, bitstream found and the user has access to read it.
             // Store these for later retreval:
-            this.bitstreamInputStream = bitstream.retrieve();
+            this.bitstream = bitstream;
             this.bitstreamSize = bitstream.getSize();
             this.bitstreamMimeType = bitstream.getFormat().getMIMEType();
             this.bitstreamName = bitstream.getName();
@@ -455,17 +448,15 @@ public class BitstreamReader extends AbstractReader implements Recyclable
 	 *
 	 * 2) We accept partial downloads, thus if you lose a connection half way
 	 * through most web browser will enable you to resume downloading the
-	 * bitstream.
+	 * bitstream. Conditional requests are answered with 304 when the
+	 * client's copy is still current.
 	 */
     public void generate() throws IOException, SAXException,
             ProcessingException
     {
-    	if (this.bitstreamInputStream == null)
+    	if (this.bitstream == null)
 	    	return;
 
-        byte[] buffer = new byte[BUFFER_SIZE];
-        int length = -1;
-
         response.setDateHeader("Expires", System.currentTimeMillis()
                 + expires);
 
@@ -490,84 +481,21 @@ public class BitstreamReader extends AbstractReader implements Recyclable
 	        response.setHeader("Content-Disposition", "attachment;filename=" + name);
         }
 
-        // Turn off partial downloads, they cause problems
-        // and are only rarely used. Specifically some windows pdf
-        // viewers are incapable of handling this request. By
-        // uncommenting the following two lines you will turn this feature back on.
-        // response.setHeader("Accept-Ranges", "bytes");
-        // String ranges = request.getHeader("Range");
-        String ranges = null;
+        // Validators, conditional requests and byte ranges are all handled
+        // the same way as the other interfaces deliver bitstreams
+        HttpServletRequest httpRequest = (HttpServletRequest)
+                objectModel.get(HttpEnvironment.HTTP_REQUEST_OBJECT);
+        HttpServletResponse httpResponse = (HttpServletResponse)
+                objectModel.get(HttpEnvironment.HTTP_RESPONSE_OBJECT);
 
-
-        ByteRange byteRange = null;
-        if (ranges != null)
-        {
-            try
-            {
-                ranges = ranges.substring(ranges.indexOf('=') + 1);
-                byteRange = new ByteRange(ranges);
-            }
-            catch (NumberFormatException e)
-            {
-                byteRange = null;
-                if (response instanceof HttpResponse)
-                {
-                    // Respond with status 416 (Request range not
-                    // satisfiable)
-                    ((HttpResponse) response).setStatus(416);
-                }
-            }
-        }
-
-        if (byteRange != null)
+        try
         {
-            String entityLength;
-            String entityRange;
-            if (this.bitstreamSize != -1)
-            {
-                entityLength = "" + this.bitstreamSize;
-                entityRange = byteRange.intersection(
-                        new ByteRange(0, this.bitstreamSize)).toString();
-            }
-            else
-            {
-                entityLength = "*";
-                entityRange = byteRange.toString();
-            }
-
-            response.setHeader("Content-Range", entityRange + "/"
-                    + entityLength);
-            if (response instanceof HttpResponse)
-            {
-                // Response with status 206 (Partial content)
-                ((HttpResponse) response).setStatus(206);
-            }
-
-            int pos = 0;
-            int posEnd;
-            while ((length = this.bitstreamInputStream.read(buffer)) > -1)
-            {
-                posEnd = pos + length - 1;
-                ByteRange intersection = byteRange
-                        .intersection(new ByteRange(pos, posEnd));
-                if (intersection != null)
-                {
-                    out.write(buffer, (int) intersection.getStart()
-                            - pos, (int) intersection.length());
-                }
-                pos += length;
-            }
+            BitstreamDelivery.send(httpRequest, httpResponse, this.bitstream,
+                    out);
         }
-        else
+        catch (AuthorizeException ae)
         {
-            response.setHeader("Content-Length", String
-                    .valueOf(this.bitstreamSize));
-
-            while ((length = this.bitstreamInputStream.read(buffer)) > -1)
-            {
-                out.write(buffer, 0, length);
-            }
-            out.flush();
+            throw new ProcessingException("Unable to read bitstream.", ae);
         }
     }
 
@@ -585,7 +513,7 @@ public class BitstreamReader extends AbstractReader implements Recyclable
     public void recycle() {        
         this.response = null;
         this.request = null;
-        this.bitstreamInputStream = null;
+        this.bitstream = null;
         this.bitstreamSize = 0;
         this.bitstreamMimeType = null;
     }
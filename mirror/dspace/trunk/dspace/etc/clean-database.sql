@@ -85,6 +85,11 @@ DROP TABLE WorkspaceItem;
 DROP TABLE Handle;
 DROP TABLE EPersonGroup2EPerson;
 DROP TABLE ResourcePolicy;
+DROP TABLE ResourcePolicyChange;
+DROP TABLE EventQueue;
+DROP TABLE EventQueueLock;
+DROP TABLE BrowseCount;
+DROP TABLE BrowseCountDelta;
 DROP TABLE Collection2Item;
 DROP TABLE Community2Collection;
 DROP TABLE Community2Community;
@@ -147,6 +152,9 @@ DROP SEQUENCE metadatafieldregistry_seq;
 DROP SEQUENCE metadatavalue_seq;
 DROP SEQUENCE group2group_seq;
 DROP SEQUENCE group2groupcache_seq;
+DROP SEQUENCE eventqueue_seq;
+DROP SEQUENCE resourcepolicychange_seq;
+DROP SEQUENCE browsecountdelta_seq;
 
 -- Drop the getnextid() function
 DROP FUNCTION getnextid(VARCHAR(40));
@@ -157,10 +157,14 @@ CREATE TABLE Bitstream
    deleted                 BOOL,
    store_number            INTEGER,
    sequence_id             INTEGER,
-   uuid                    VARCHAR(36)
+   uuid                    VARCHAR(36),
+   last_accessed           TIMESTAMP,
+   last_modified           TIMESTAMP
 );
 
 CREATE INDEX bit_bitstream_fk_idx ON Bitstream(bitstream_format_id);
+-- Content-addressed bitstreams share files; cleanup counts them by file
+CREATE INDEX bit_internal_id_idx ON Bitstream(store_number, internal_id);
 
 -------------------------------------------------------
 -- EPerson table
@@ -460,6 +464,18 @@ CREATE INDEX resourcepolicy_type_id_idx ON ResourcePolicy(resource_type_id,resou
 CREATE INDEX rp_eperson_fk_idx ON ResourcePolicy(eperson_id);
 CREATE INDEX rp_epersongroup_fk_idx ON ResourcePolicy(epersongroup_id);
 
+-------------------------------------------------------
+-- ResourcePolicyChange table
+-------------------------------------------------------
+-- One row inserted by every transaction that changes ResourcePolicy, so
+-- that cached policies can be expired in every JVM; old rows are pruned
+CREATE SEQUENCE resourcepolicychange_seq;
+
+CREATE TABLE ResourcePolicyChange
+(
+  change_id            INTEGER PRIMARY KEY
+);
+
 -------------------------------------------------------
 -- EPersonGroup2EPerson table
 -------------------------------------------------------
@@ -783,4 +799,61 @@ CREATE TABLE externalidentifier (
     tombstone integer
 );
 
-CREATE INDEX externalidentifier_idx ON externalidentifier(namespace, identifier);
\ No newline at end of file
+CREATE INDEX externalidentifier_idx ON externalidentifier(namespace, identifier);
+
+-------------------------------------------------------
+-- EventQueue table
+-------------------------------------------------------
+-- Events waiting to be delivered by AsynchronousDispatcher, one row
+-- per event and consumer, written in the transaction that caused them
+CREATE SEQUENCE eventqueue_seq;
+
+CREATE TABLE EventQueue
+(
+  queue_id             INTEGER PRIMARY KEY,
+  consumer             VARCHAR(64),
+  event_type           INTEGER,
+  subject_type         INTEGER,
+  subject_id           INTEGER,
+  object_type          INTEGER,
+  object_id            INTEGER,
+  detail               TEXT,
+  transaction_id       VARCHAR(64),
+  eperson_id           INTEGER,
+  time_stamp           BIGINT,
+  attempts             INTEGER
+);
+
+CREATE INDEX eventqueue_consumer_idx ON EventQueue(consumer, queue_id);
+
+-- One row per consumer, locked by the worker delivering its events
+CREATE TABLE EventQueueLock
+(
+  consumer             VARCHAR(64) PRIMARY KEY
+);
+
+-------------------------------------------------------
+-- BrowseCount table
+-------------------------------------------------------
+-- The number of rows in each browse table, kept up to date as the
+-- browse tables are written so that browsing doesn't have to count them
+CREATE TABLE BrowseCount
+(
+  table_name           VARCHAR(64) PRIMARY KEY,
+  total                INTEGER
+);
+
+-- Changes to the counts not yet folded into BrowseCount.  Indexing appends
+-- here rather than updating BrowseCount, so that concurrent indexing never
+-- contends for one row; the browse adds them up.  Indexing folds them into
+-- BrowseCount every hundred or so, and pruning folds in the rest.
+CREATE SEQUENCE browsecountdelta_seq;
+
+CREATE TABLE BrowseCountDelta
+(
+  delta_id             INTEGER PRIMARY KEY,
+  table_name           VARCHAR(64),
+  delta                INTEGER
+);
+
+CREATE INDEX browsecountdelta_table_idx ON BrowseCountDelta(table_name);
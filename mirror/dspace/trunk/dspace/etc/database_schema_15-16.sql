@@ -32,6 +32,78 @@ CREATE TABLE externalidentifier (
 
 CREATE INDEX externalidentifier_idx ON externalidentifier(namespace, identifier);
 
+-- Log of policy changes, used to expire cached resource policies
+CREATE SEQUENCE resourcepolicychange_seq;
+
+CREATE TABLE ResourcePolicyChange
+(
+  change_id            INTEGER PRIMARY KEY
+);
+
+-- Queue of events for asynchronous delivery
+CREATE SEQUENCE eventqueue_seq;
+
+CREATE TABLE EventQueue
+(
+  queue_id             INTEGER PRIMARY KEY,
+  consumer             VARCHAR(64),
+  event_type           INTEGER,
+  subject_type         INTEGER,
+  subject_id           INTEGER,
+  object_type          INTEGER,
+  object_id            INTEGER,
+  detail               TEXT,
+  transaction_id       VARCHAR(64),
+  eperson_id           INTEGER,
+  time_stamp           BIGINT,
+  attempts             INTEGER
+);
+
+CREATE INDEX eventqueue_consumer_idx ON EventQueue(consumer, queue_id);
+
+CREATE TABLE EventQueueLock
+(
+  consumer             VARCHAR(64) PRIMARY KEY
+);
+
+-- Row counts of the browse tables
+CREATE TABLE BrowseCount
+(
+  table_name           VARCHAR(64) PRIMARY KEY,
+  total                INTEGER
+);
+
+-- Changes to the browse table row counts not yet folded into BrowseCount
+CREATE SEQUENCE browsecountdelta_seq;
+
+CREATE TABLE BrowseCountDelta
+(
+  delta_id             INTEGER PRIMARY KEY,
+  table_name           VARCHAR(64),
+  delta                INTEGER
+);
+
+CREATE INDEX browsecountdelta_table_idx ON BrowseCountDelta(table_name);
+
+-- Content-addressed bitstreams share files; cleanup counts them by file
+CREATE INDEX bit_internal_id_idx ON Bitstream(store_number, internal_id);
+
+-- When each bitstream was last downloaded, or stored if it hasn't been,
+-- for moving it between storage tiers. Existing bitstreams count from now.
+ALTER TABLE bitstream ADD last_accessed TIMESTAMP;
+UPDATE bitstream SET last_accessed = CURRENT_TIMESTAMP;
+
+-- When each bitstream's bits were stored, sent as its Last-Modified time.
+-- Existing bitstreams count from now.
+ALTER TABLE bitstream ADD last_modified TIMESTAMP;
+UPDATE bitstream SET last_modified = CURRENT_TIMESTAMP;
+
+-- The browse tables also have to be recreated, as the distinct value tables
+-- now keep a count of the items referring to each value, the sort columns
+-- are indexed together with the row id, and BrowseCount has to be filled:
+--
+-- [dspace]/bin/index-init
+
 -- We also need to do the following at some point during the upgrade.  Before the upgrade has
 -- finished but after the update script has been run
 --